@@ -0,0 +1,110 @@
+package config;
+
+import com.zaxxer.hikari.HikariConfig;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Una base de datos lógica (la de referencia o un shard de pedidos) con un
+ * pool de conexiones por {@link TipoCarga}, o la base en memoria, cuyas
+ * conexiones son {@link SesionMemoria}.
+ */
+public final class BaseDatos {
+
+    private final String nombre;
+    private final Map<TipoCarga, Bulkhead> pools = new EnumMap<>(TipoCarga.class);
+    // Solo en la base en memoria
+    private final ReentrantReadWriteLock bloqueoMemoria;
+
+    BaseDatos(String nombre, Function<TipoCarga, HikariConfig> configuracion) {
+        this.nombre = nombre;
+        this.bloqueoMemoria = null;
+        for (TipoCarga tipo : TipoCarga.values()) {
+            pools.put(tipo, new Bulkhead(nombre + "-" + tipo.name().toLowerCase(Locale.ROOT), tipo, configuracion.apply(tipo)));
+        }
+    }
+
+    /**
+     * Crea la base en memoria.
+     */
+    BaseDatos(String nombre) {
+        this.nombre = nombre;
+        this.bloqueoMemoria = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Obtiene una conexión del pool interactivo.
+     *
+     * @return Conexión a la base de datos.
+     * @throws SQLException Si ocurre un error al obtener la conexión.
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnection(TipoCarga.INTERACTIVA);
+    }
+
+    /**
+     * Obtiene una conexión del pool de una clase de carga. Sus sentencias
+     * quedan medidas por {@link RegistroConsultasLentas}.
+     *
+     * @param tipo Clase de carga de la operación.
+     * @return Conexión a la base de datos.
+     * @throws CargaRechazadaException Si el pool y su cola de espera están
+     * llenos.
+     * @throws SQLException Si ocurre un error al obtener la conexión.
+     */
+    public Connection getConnection(TipoCarga tipo) throws SQLException {
+        if (bloqueoMemoria != null) {
+            return SesionMemoria.abrir(bloqueoMemoria);
+        }
+        return RegistroConsultasLentas.envolver(pools.get(tipo).obtener(), this);
+    }
+
+    /**
+     * Obtiene una conexión del pool de lotes sin medir sus sentencias.
+     */
+    Connection getConnectionSinRegistro() throws SQLException {
+        if (bloqueoMemoria != null) {
+            return SesionMemoria.abrir(bloqueoMemoria);
+        }
+        return pools.get(TipoCarga.LOTE).obtener();
+    }
+
+    /**
+     * Indica si es la base en memoria.
+     *
+     * @return true si las conexiones son {@link SesionMemoria}.
+     */
+    public boolean enMemoria() {
+        return bloqueoMemoria != null;
+    }
+
+    /**
+     * Devuelve el estado de cada pool de la base.
+     *
+     * @return Métricas en el orden de {@link TipoCarga} (vacío en la base en
+     * memoria).
+     */
+    public List<MetricasBulkhead> metricas() {
+        List<MetricasBulkhead> metricas = new ArrayList<>();
+        for (Bulkhead pool : pools.values()) {
+            metricas.add(pool.metricas());
+        }
+        return metricas;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
@@ -0,0 +1,245 @@
+package config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexiones de una clase de carga con cola de espera acotada.
+ *
+ * Un semáforo admite como mucho tamaño del pool + límite de la cola pedidos a
+ * la vez, contando las conexiones en uso y los hilos que esperan una. El
+ * pedido que no entra se rechaza sin esperar con
+ * {@link CargaRechazadaException}. El permiso se devuelve al cerrar la
+ * conexión.
+ *
+ * La conexión entregada envuelve a la del pool sin reflexión. Sus sentencias
+ * y los ResultSet de esas sentencias devuelven el envoltorio en
+ * {@code getConnection()} y {@code getStatement()}, así que cerrar la conexión
+ * por cualquiera de esos caminos también devuelve el permiso. Las llamadas a
+ * procedimientos ({@code prepareCall}) no se envuelven: la aplicación no las
+ * usa.
+ */
+final class Bulkhead {
+
+    private final String nombre;
+    private final TipoCarga tipo;
+    private final HikariDataSource ds;
+    private final Semaphore admitidos;
+
+    private final LongAdder obtenidas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder nanosEspera = new LongAdder();
+
+    Bulkhead(String nombre, TipoCarga tipo, HikariConfig config) {
+        this.nombre = nombre;
+        this.tipo = tipo;
+        config.setPoolName(nombre);
+        config.setMaximumPoolSize(tipo.getTamanoPool());
+        this.ds = new HikariDataSource(config);
+        this.admitidos = new Semaphore(tipo.getTamanoPool() + tipo.getLimiteCola());
+    }
+
+    Connection obtener() throws SQLException {
+        if (!admitidos.tryAcquire()) {
+            rechazadas.increment();
+            throw new CargaRechazadaException(nombre, tipo);
+        }
+
+        long inicio = System.nanoTime();
+        Connection conn;
+        try {
+            conn = ds.getConnection();
+        } catch (SQLException | RuntimeException ex) {
+            admitidos.release();
+            throw ex;
+        }
+        nanosEspera.add(System.nanoTime() - inicio);
+        obtenidas.increment();
+        return new ConexionAdmitida(conn);
+    }
+
+    MetricasBulkhead metricas() {
+        HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+        long cantidad = obtenidas.sum();
+        return new MetricasBulkhead(nombre, tipo,
+                pool != null ? pool.getActiveConnections() : 0,
+                pool != null ? pool.getIdleConnections() : 0,
+                pool != null ? pool.getThreadsAwaitingConnection() : 0,
+                cantidad, rechazadas.sum(),
+                cantidad == 0 ? 0 : nanosEspera.sum() / cantidad / 1000);
+    }
+
+    /**
+     * Conexión que devuelve el permiso una sola vez, aunque se cierre más de
+     * una vez.
+     */
+    private final class ConexionAdmitida extends ConexionDelegada {
+
+        private final AtomicBoolean cerrada = new AtomicBoolean();
+
+        private ConexionAdmitida(Connection conexion) {
+            super(conexion);
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return new SentenciaAdmitida(this, conexion.createStatement());
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            return new SentenciaAdmitida(this, conexion.createStatement(resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+                throws SQLException {
+            return new SentenciaAdmitida(this, conexion.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this, conexion.prepareStatement(sql));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this, conexion.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this, conexion.prepareStatement(sql, columnIndexes));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this, conexion.prepareStatement(sql, columnNames));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this, conexion.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            return new SentenciaPreparadaAdmitida(this,
+                    conexion.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!cerrada.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                conexion.close();
+            } finally {
+                admitidos.release();
+            }
+        }
+    }
+
+    /**
+     * Sentencia de una {@link ConexionAdmitida}: solo cambia los métodos que
+     * devuelven la conexión o un ResultSet.
+     */
+    private static final class SentenciaAdmitida extends SentenciaDelegada {
+
+        private final ConexionAdmitida conexion;
+
+        private SentenciaAdmitida(ConexionAdmitida conexion, Statement sentencia) {
+            super(sentencia);
+            this.conexion = conexion;
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return ResultadoAdmitido.de(this, sentencia.executeQuery(sql));
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return ResultadoAdmitido.de(this, sentencia.getResultSet());
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return ResultadoAdmitido.de(this, sentencia.getGeneratedKeys());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return conexion;
+        }
+    }
+
+    private static final class SentenciaPreparadaAdmitida extends SentenciaPreparadaDelegada {
+
+        private final ConexionAdmitida conexion;
+
+        private SentenciaPreparadaAdmitida(ConexionAdmitida conexion, PreparedStatement sentencia) {
+            super(sentencia);
+            this.conexion = conexion;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return ResultadoAdmitido.de(this, preparada.executeQuery());
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return ResultadoAdmitido.de(this, preparada.executeQuery(sql));
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return ResultadoAdmitido.de(this, preparada.getResultSet());
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return ResultadoAdmitido.de(this, preparada.getGeneratedKeys());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return conexion;
+        }
+    }
+
+    /**
+     * ResultSet de una sentencia admitida, que la devuelve en
+     * {@code getStatement()}.
+     */
+    private static final class ResultadoAdmitido extends ResultadoDelegado {
+
+        private final Statement sentencia;
+
+        private ResultadoAdmitido(Statement sentencia, ResultSet resultado) {
+            super(resultado);
+            this.sentencia = sentencia;
+        }
+
+        private static ResultSet de(Statement sentencia, ResultSet resultado) {
+            return resultado == null ? null : new ResultadoAdmitido(sentencia, resultado);
+        }
+
+        @Override
+        public Statement getStatement() {
+            return sentencia;
+        }
+    }
+}
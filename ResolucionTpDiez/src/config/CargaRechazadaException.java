@@ -0,0 +1,31 @@
+package config;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Se lanza cuando un pool de conexiones tiene todas sus conexiones en uso y la
+ * cola de espera llena. El pedido se rechaza sin esperar; quien llama puede
+ * reintentar más tarde o informar que el sistema está saturado.
+ */
+public class CargaRechazadaException extends SQLTransientConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String pool;
+    private final TipoCarga tipoCarga;
+
+    public CargaRechazadaException(String pool, TipoCarga tipoCarga) {
+        super("El pool " + pool + " está saturado: " + tipoCarga.getTamanoPool() + " conexiones en uso y "
+                + tipoCarga.getLimiteCola() + " pedidos en espera.");
+        this.pool = pool;
+        this.tipoCarga = tipoCarga;
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public TipoCarga getTipoCarga() {
+        return tipoCarga;
+    }
+}
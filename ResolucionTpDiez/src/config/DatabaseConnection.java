@@ -1,30 +1,219 @@
 package config;
 
 import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Administra los pools de conexiones.
+ *
+ * Hay una base de referencia (productos, categorías) y uno o más shards donde
+ * se guardan los pedidos con sus items. Sin la propiedad {@code db.shards} hay
+ * un único shard que es la misma base de referencia, y todo funciona como una
+ * sola base de datos.
+ *
+ * Con varios shards, cada uno usa {@code auto_increment_increment = N} y
+ * {@code auto_increment_offset = k + 1}, de modo que los IDs generados son
+ * únicos entre shards sin una secuencia central y el shard de un pedido se
+ * obtiene de su propio ID. Todos los shards de una instalación deben
+ * configurarse siempre en el mismo orden.
+ *
+ * Propiedades del sistema:
+ * <ul>
+ * <li>{@code db.url}, {@code db.usuario}, {@code db.password}: base de
+ * referencia.</li>
+ * <li>{@code db.shards}: URLs JDBC de los shards separadas por coma (mismo
+ * usuario y contraseña). Para pruebas locales pueden ser varias instancias de
+ * MySQL en distintos puertos.</li>
+ * <li>{@code db.pool.<clase>.tamano}, {@code db.pool.<clase>.cola}: tamaño y
+ * cola de espera de cada pool (ver {@link TipoCarga}).</li>
+ * <li>{@code db.backend}: {@code mysql} (por defecto) o {@code memoria}. Con
+ * {@code memoria} no se usa MySQL: hay una única base en memoria, sin shards,
+ * y los servicios deben usar los DAOs que entrega {@code dao.FabricaDAO}.</li>
+ * </ul>
+ *
+ * Cada base tiene un pool por {@link TipoCarga}. Las conexiones de
+ * {@link #getConnection()} salen del pool interactivo.
+ */
 public class DatabaseConnection {
 
-    private static final HikariConfig config = new HikariConfig();
-    private static final HikariDataSource ds;
+    private static final String USUARIO = System.getProperty("db.usuario", "root"); // Usuario BD
+    private static final String PASSWORD = System.getProperty("db.password", ""); // Password BD
+
+    private static final boolean EN_MEMORIA = System.getProperty("db.backend", "mysql").equalsIgnoreCase("memoria");
+
+    private static final BaseDatos referencia;
+    private static final BaseDatos[] shards;
+    private static final AtomicInteger siguienteShard = new AtomicInteger();
 
     static {
-        config.setJdbcUrl("jdbc:mysql://localhost:3307/db"); // Seteamos la url de nuestra BD
-        config.setUsername("root"); // Usuario BD
-        config.setPassword(""); // Password BD
-        config.setMaximumPoolSize(10);  // Maximo 10 conexiones
-        ds = new HikariDataSource(config);  // Inicialización del datasource con la configuración anterior
+        if (EN_MEMORIA) {
+            referencia = new BaseDatos("memoria");
+            shards = new BaseDatos[]{referencia};
+        } else {
+            // Seteamos la url de nuestra BD
+            String urlReferencia = System.getProperty("db.url", "jdbc:mysql://localhost:3307/db");
+            referencia = new BaseDatos("referencia", tipo -> configurar(urlReferencia, null));
+
+            String urlsShards = System.getProperty("db.shards", "").trim();
+            if (urlsShards.isEmpty()) {
+                shards = new BaseDatos[]{referencia};
+            } else {
+                String[] urls = urlsShards.split(",");
+                shards = new BaseDatos[urls.length];
+                for (int k = 0; k < urls.length; k++) {
+                    String url = urls[k].trim();
+                    String inicializacion = "SET SESSION auto_increment_increment = " + urls.length
+                            + ", auto_increment_offset = " + (k + 1);
+                    shards[k] = new BaseDatos("shard-" + k, tipo -> configurar(url, inicializacion));
+                }
+            }
+        }
+    }
+
+    private static HikariConfig configurar(String url, String inicializacion) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(USUARIO);
+        config.setPassword(PASSWORD);
+        if (inicializacion != null) {
+            config.setConnectionInitSql(inicializacion);
+        }
+        // Cache de sentencias preparadas del driver: las actualizaciones parciales
+        // generan un texto SQL por combinación de columnas y se reutilizan
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        // El driver recuerda autocommit, solo lectura y aislamiento, y omite
+        // las llamadas que no cambian el valor
+        config.addDataSourceProperty("useLocalSessionState", "true");
+        config.addDataSourceProperty("cacheServerConfiguration", "true");
+        // Permite recorrer resultados grandes con un cursor del servidor (setFetchSize > 0)
+        config.addDataSourceProperty("useCursorFetch", "true");
+        return config;
     }
 
     /**
-     * Obtiene una conexión activa del pool de conexiones.
+     * Obtiene una conexión activa del pool interactivo de la base de
+     * referencia. Sus sentencias quedan medidas por
+     * {@link RegistroConsultasLentas}.
      *
      * @return Conexión a la base de datos.
      * @throws SQLException Si ocurre un error al obtener la conexión.
      */
     public static Connection getConnection() throws SQLException {
-        return ds.getConnection();
+        return referencia.getConnection();
+    }
+
+    /**
+     * Indica si se usa la base en memoria en lugar de MySQL.
+     *
+     * @return true si {@code db.backend} es {@code memoria}.
+     */
+    public static boolean enMemoria() {
+        return EN_MEMORIA;
+    }
+
+    /**
+     * Devuelve la base de referencia, donde están productos y categorías.
+     *
+     * @return Base de referencia.
+     */
+    public static BaseDatos referencia() {
+        return referencia;
+    }
+
+    /**
+     * Devuelve un shard de pedidos.
+     *
+     * @param indice Índice del shard, entre 0 y {@link #cantidadShards()} - 1.
+     * @return Shard indicado.
+     */
+    public static BaseDatos shard(int indice) {
+        return shards[indice];
+    }
+
+    /**
+     * Cantidad de shards de pedidos.
+     *
+     * @return Cantidad de shards (1 si no hay sharding).
+     */
+    public static int cantidadShards() {
+        return shards.length;
+    }
+
+    /**
+     * Indica si los pedidos están en bases distintas de la de referencia.
+     *
+     * @return true si hay más de un shard o el único shard no es la base de
+     * referencia.
+     */
+    public static boolean conShards() {
+        return shards.length > 1 || shards[0] != referencia;
+    }
+
+    /**
+     * Devuelve el shard donde está guardado un pedido, a partir de su ID.
+     *
+     * @param pedidoId ID del pedido (o de uno de sus items).
+     * @return Shard del pedido.
+     */
+    public static BaseDatos shardDePedido(int pedidoId) {
+        return shards[Math.floorMod(pedidoId - 1, shards.length)];
+    }
+
+    /**
+     * Elige el shard para un pedido nuevo a partir de una clave, por ejemplo
+     * la clave de idempotencia, para que los reintentos lleguen al mismo
+     * shard.
+     *
+     * @param clave Clave del pedido.
+     * @return Shard elegido.
+     */
+    public static BaseDatos shardParaClave(String clave) {
+        return shards[Math.floorMod(clave.hashCode(), shards.length)];
+    }
+
+    /**
+     * Elige el shard para un pedido nuevo sin clave, repartiendo en forma
+     * circular.
+     *
+     * @return Shard elegido.
+     */
+    public static BaseDatos siguienteShard() {
+        return shards[Math.floorMod(siguienteShard.getAndIncrement(), shards.length)];
+    }
+
+    /**
+     * Devuelve todas las bases distintas: la de referencia y los shards.
+     *
+     * @return Bases sin repetir, empezando por la de referencia.
+     */
+    public static List<BaseDatos> todas() {
+        Set<BaseDatos> bases = new LinkedHashSet<>();
+        bases.add(referencia);
+        for (BaseDatos shard : shards) {
+            bases.add(shard);
+        }
+        return new ArrayList<>(bases);
+    }
+
+    /**
+     * Devuelve el estado de los pools de todas las bases.
+     *
+     * @return Métricas de cada pool, agrupadas por base.
+     */
+    public static List<MetricasBulkhead> metricas() {
+        List<MetricasBulkhead> metricas = new ArrayList<>();
+        for (BaseDatos base : todas()) {
+            metricas.addAll(base.metricas());
+        }
+        return metricas;
     }
 }
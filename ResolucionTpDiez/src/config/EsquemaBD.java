@@ -0,0 +1,250 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Define el esquema de la base de datos como una lista de migraciones
+ * numeradas. Cada migración se aplica una sola vez y queda registrada en la
+ * tabla {@code esquema_version}.
+ *
+ * Los pasos que agregan columnas o índices verifican antes si ya existen, para
+ * que las migraciones también puedan aplicarse sobre bases creadas a mano
+ * antes de que existiera este módulo.
+ */
+public class EsquemaBD {
+
+    /**
+     * Paso de una migración.
+     */
+    @FunctionalInterface
+    interface Paso {
+
+        void aplicar(Connection conn) throws Exception;
+    }
+
+    /**
+     * Migración numerada compuesta por uno o más pasos.
+     */
+    static final class Migracion {
+
+        private final int version;
+        private final String descripcion;
+        private final List<Paso> pasos;
+
+        Migracion(int version, String descripcion, Paso... pasos) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.pasos = List.of(pasos);
+        }
+    }
+
+    // Migraciones en orden de versión. Nunca se modifica una migración ya
+    // publicada: los cambios nuevos se agregan como una versión nueva.
+    private static final List<Migracion> MIGRACIONES = List.of(
+            new Migracion(1, "Tablas principales",
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS categorias (
+                            id INT AUTO_INCREMENT PRIMARY KEY,
+                            nombre VARCHAR(100) NOT NULL,
+                            descripcion VARCHAR(255)
+                        ) ENGINE=InnoDB
+                        """),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS productos (
+                            id INT AUTO_INCREMENT PRIMARY KEY,
+                            nombre VARCHAR(150) NOT NULL,
+                            descripcion VARCHAR(255),
+                            precio DECIMAL(12,2) NOT NULL,
+                            cantidad INT NOT NULL,
+                            id_categoria INT NULL
+                        ) ENGINE=InnoDB
+                        """),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS pedidos (
+                            id INT AUTO_INCREMENT PRIMARY KEY,
+                            fecha DATE NOT NULL,
+                            total DECIMAL(12,2) NOT NULL DEFAULT 0
+                        ) ENGINE=InnoDB
+                        """),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS items_pedido (
+                            id INT AUTO_INCREMENT PRIMARY KEY,
+                            pedido_id INT NOT NULL,
+                            producto_id INT NOT NULL,
+                            cantidad INT NOT NULL,
+                            subtotal DECIMAL(12,2) NOT NULL
+                        ) ENGINE=InnoDB
+                        """)),
+            new Migracion(2, "Índices de las consultas de los DAOs",
+                    indice("items_pedido", "idx_items_pedido_pedido", "(pedido_id)", false),
+                    indice("items_pedido", "idx_items_pedido_producto", "(producto_id)", false),
+                    indice("productos", "idx_productos_categoria", "(id_categoria)", false),
+                    indice("categorias", "uk_categorias_nombre", "(nombre)", true),
+                    // Cubre las consultas por rango de fechas: el id se incluye para
+                    // ordenar sin filesort y el total para no leer la tabla
+                    indice("pedidos", "idx_pedidos_fecha", "(fecha, id, total)", false)),
+            new Migracion(3, "Control de versión de productos y carga por nombre",
+                    columna("productos", "version", "INT NOT NULL DEFAULT 0"),
+                    indice("productos", "uk_productos_nombre", "(nombre)", true)),
+            new Migracion(4, "Claves de idempotencia de pedidos",
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS pedidos_idempotencia (
+                            clave VARCHAR(64) PRIMARY KEY,
+                            pedido_id INT NULL
+                        ) ENGINE=InnoDB
+                        """)),
+            new Migracion(5, "Marca de modificación para reconciliar caches",
+                    columna("productos", "actualizado_en",
+                            "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)"),
+                    columna("categorias", "actualizado_en",
+                            "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)"),
+                    indice("productos", "idx_productos_actualizado", "(actualizado_en)", false),
+                    indice("categorias", "idx_categorias_actualizado", "(actualizado_en)", false)),
+            // Las tablas históricas se particionan por año de la fecha del
+            // pedido (los items llevan la fecha de su pedido), así que los años
+            // viejos se pueden descartar con DROP PARTITION. La partición por
+            // año se agrega al archivar; pmax queda vacía. MySQL exige que la
+            // columna de partición forme parte de la clave primaria.
+            new Migracion(6, "Histórico de pedidos archivados",
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS pedidos_historico (
+                            id INT NOT NULL,
+                            fecha DATE NOT NULL,
+                            total DECIMAL(12,2) NOT NULL,
+                            PRIMARY KEY (id, fecha)
+                        ) ENGINE=InnoDB
+                        PARTITION BY RANGE COLUMNS (fecha) (PARTITION pmax VALUES LESS THAN (MAXVALUE))
+                        """),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS items_pedido_historico (
+                            id INT NOT NULL,
+                            pedido_id INT NOT NULL,
+                            producto_id INT NOT NULL,
+                            cantidad INT NOT NULL,
+                            subtotal DECIMAL(12,2) NOT NULL,
+                            fecha DATE NOT NULL,
+                            PRIMARY KEY (id, fecha),
+                            KEY idx_items_historico_pedido (pedido_id)
+                        ) ENGINE=InnoDB
+                        PARTITION BY RANGE COLUMNS (fecha) (PARTITION pmax VALUES LESS THAN (MAXVALUE))
+                        """),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS archivado_avance (
+                            trabajo VARCHAR(64) PRIMARY KEY,
+                            corte DATE NOT NULL,
+                            ultima_fecha DATE NULL,
+                            ultimo_id INT NOT NULL DEFAULT 0,
+                            actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                        ) ENGINE=InnoDB
+                        """))
+    );
+
+    /**
+     * Aplica las migraciones pendientes, cada una en su propia transacción, en
+     * la base de referencia y en cada shard de pedidos. Todas las bases tienen
+     * el mismo esquema aunque cada una use solo sus tablas. Con la base en
+     * memoria no hace nada.
+     *
+     * @throws Exception Si ocurre un error al consultar o modificar el esquema.
+     */
+    public static void inicializar() throws Exception {
+        // La base en memoria no tiene esquema
+        if (DatabaseConnection.enMemoria()) {
+            return;
+        }
+        for (BaseDatos base : DatabaseConnection.todas()) {
+            inicializar(base);
+        }
+    }
+
+    private static void inicializar(BaseDatos base) throws Exception {
+        try (Connection conn = base.getConnection(TipoCarga.LOTE)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS esquema_version (
+                        version INT PRIMARY KEY,
+                        descripcion VARCHAR(255) NOT NULL,
+                        aplicada_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    ) ENGINE=InnoDB
+                    """);
+            }
+
+            int actual = versionActual(conn);
+            for (Migracion migracion : MIGRACIONES) {
+                if (migracion.version > actual) {
+                    aplicar(conn, migracion);
+                }
+            }
+        }
+    }
+
+    /**
+     * Devuelve la última versión aplicada, o 0 si no hay ninguna.
+     */
+    private static int versionActual(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM esquema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void aplicar(Connection conn, Migracion migracion) throws Exception {
+        // En MySQL las sentencias DDL confirman implícitamente; la transacción
+        // protege el registro de la versión
+        conn.setAutoCommit(false);
+        try {
+            for (Paso paso : migracion.pasos) {
+                paso.aplicar(conn);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO esquema_version (version, descripcion) VALUES (?, ?)")) {
+                stmt.setInt(1, migracion.version);
+                stmt.setString(2, migracion.descripcion);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (Exception ex) {
+            conn.rollback();
+            throw new IllegalStateException("Falló la migración " + migracion.version + " (" + migracion.descripcion + ")", ex);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    static Paso sql(String sentencia) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(sentencia);
+            }
+        };
+    }
+
+    static Paso indice(String tabla, String nombre, String columnas, boolean unico) {
+        return conn -> {
+            if (!existe(conn, "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?", tabla, nombre)) {
+                sql("CREATE " + (unico ? "UNIQUE " : "") + "INDEX " + nombre + " ON " + tabla + " " + columnas).aplicar(conn);
+            }
+        };
+    }
+
+    static Paso columna(String tabla, String nombre, String definicion) {
+        return conn -> {
+            if (!existe(conn, "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?", tabla, nombre)) {
+                sql("ALTER TABLE " + tabla + " ADD COLUMN " + nombre + " " + definicion).aplicar(conn);
+            }
+        };
+    }
+
+    private static boolean existe(Connection conn, String sql, String tabla, String nombre) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tabla);
+            stmt.setString(2, nombre);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package config;
+
+/**
+ * Estado de un pool de conexiones de una clase de carga en un momento dado.
+ */
+public final class MetricasBulkhead {
+
+    private final String pool;
+    private final TipoCarga tipoCarga;
+    private final int activas;
+    private final int inactivas;
+    private final int esperando;
+    private final long obtenidas;
+    private final long rechazadas;
+    private final long esperaPromedioMicros;
+
+    MetricasBulkhead(String pool, TipoCarga tipoCarga, int activas, int inactivas, int esperando,
+            long obtenidas, long rechazadas, long esperaPromedioMicros) {
+        this.pool = pool;
+        this.tipoCarga = tipoCarga;
+        this.activas = activas;
+        this.inactivas = inactivas;
+        this.esperando = esperando;
+        this.obtenidas = obtenidas;
+        this.rechazadas = rechazadas;
+        this.esperaPromedioMicros = esperaPromedioMicros;
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public TipoCarga getTipoCarga() {
+        return tipoCarga;
+    }
+
+    public int getActivas() {
+        return activas;
+    }
+
+    public int getInactivas() {
+        return inactivas;
+    }
+
+    public int getEsperando() {
+        return esperando;
+    }
+
+    public long getObtenidas() {
+        return obtenidas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public long getEsperaPromedioMicros() {
+        return esperaPromedioMicros;
+    }
+
+    /**
+     * Fracción de las conexiones del pool que están en uso.
+     *
+     * @return Valor entre 0 y 1.
+     */
+    public double getSaturacion() {
+        return (double) activas / tipoCarga.getTamanoPool();
+    }
+
+    /**
+     * Fracción de la cola de espera ocupada.
+     *
+     * @return Valor entre 0 y 1 (0 si la cola tiene límite 0).
+     */
+    public double getOcupacionCola() {
+        return tipoCarga.getLimiteCola() == 0 ? 0 : Math.min(1.0, (double) esperando / tipoCarga.getLimiteCola());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: activas=%d/%d, inactivas=%d, esperando=%d/%d, obtenidas=%d, rechazadas=%d, espera promedio=%d us",
+                pool, activas, tipoCarga.getTamanoPool(), inactivas, esperando, tipoCarga.getLimiteCola(),
+                obtenidas, rechazadas, esperaPromedioMicros);
+    }
+}
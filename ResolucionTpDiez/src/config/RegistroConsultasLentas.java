@@ -0,0 +1,662 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registra las sentencias que superan un umbral de tiempo, con sus parámetros,
+ * la cantidad de filas y el tiempo transcurrido, y captura su plan de
+ * ejecución con EXPLAIN.
+ *
+ * Se engancha en {@link BaseDatos}: las conexiones que entregan los pools se
+ * envuelven para medir todas las sentencias, tanto las de los DAOs como las
+ * consultas armadas a mano. Los envoltorios delegan directo en el driver y
+ * solo toman la hora en los {@code execute*} y en cada
+ * {@code ResultSet.next()}. El tiempo de una consulta es el de ejecución más
+ * la suma de los {@code next()}, es decir, lo que tardan la base y el driver
+ * en entregar las filas; lo que tarde quien las procesa entre un
+ * {@code next()} y el siguiente no cuenta, así que un recorrido largo con un
+ * cursor del servidor solo se registra si la base es la lenta. El umbral se
+ * evalúa al terminar de leer o al cerrar el ResultSet, la sentencia o la
+ * conexión, lo que ocurra primero.
+ *
+ * El EXPLAIN se ejecuta en segundo plano en otra conexión de la misma base
+ * (del pool de lotes), con una cola acotada y un límite de planes por minuto,
+ * y cada sentencia se explica como mucho una vez cada diez minutos. Para una
+ * consulta rápida el costo es medir el tiempo y guardar los parámetros; nada
+ * más.
+ *
+ * Se configura con propiedades del sistema:
+ * <ul>
+ * <li>{@code consultasLentas.umbralMs}: umbral en milisegundos (500 por
+ * defecto; 0 o negativo lo desactiva y las conexiones no se envuelven).</li>
+ * <li>{@code consultasLentas.explainPorMinuto}: máximo de EXPLAIN por minuto
+ * (6 por defecto).</li>
+ * <li>{@code consultasLentas.mostrarTextos}: si es true, los parámetros de
+ * texto se registran completos; por defecto se ocultan.</li>
+ * </ul>
+ */
+public final class RegistroConsultasLentas {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistroConsultasLentas.class);
+
+    private static final long UMBRAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("consultasLentas.umbralMs", 500));
+    private static final long INTERVALO_EXPLAIN_NANOS = TimeUnit.MINUTES.toNanos(1)
+            / Math.max(1, Integer.getInteger("consultasLentas.explainPorMinuto", 6));
+    private static final boolean MOSTRAR_TEXTOS = Boolean.getBoolean("consultasLentas.mostrarTextos");
+    private static final long REPETICION_EXPLAIN_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int MAX_SENTENCIAS_EXPLICADAS = 1000;
+
+    private static final AtomicLong ultimoExplain = new AtomicLong(System.nanoTime() - INTERVALO_EXPLAIN_NANOS);
+    private static final ConcurrentHashMap<String, Long> sentenciasExplicadas = new ConcurrentHashMap<>();
+
+    // Un solo hilo y cola chica: si el EXPLAIN no da abasto, se descarta
+    private static final ThreadPoolExecutor explicador = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(16), r -> {
+                Thread hilo = new Thread(r, "explain-consultas-lentas");
+                hilo.setDaemon(true);
+                return hilo;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private RegistroConsultasLentas() {
+    }
+
+    /**
+     * Indica si el registro está activo.
+     *
+     * @return true si el umbral es mayor a cero.
+     */
+    public static boolean activo() {
+        return UMBRAL_NANOS > 0;
+    }
+
+    /**
+     * Envuelve una conexión para medir sus sentencias. Si el registro está
+     * desactivado devuelve la misma conexión.
+     *
+     * @param conn Conexión entregada por el pool.
+     * @param base Base a la que pertenece la conexión, donde se ejecuta el
+     * EXPLAIN.
+     * @return Conexión que mide sus sentencias.
+     */
+    public static Connection envolver(Connection conn, BaseDatos base) {
+        if (!activo()) {
+            return conn;
+        }
+        return new ConexionMedida(conn, base);
+    }
+
+    /**
+     * Conexión que entrega sentencias medidas. Al cerrarse termina las
+     * consultas que sus sentencias dejaron abiertas, que el driver cierra sin
+     * pasar por los envoltorios.
+     */
+    private static final class ConexionMedida extends ConexionDelegada {
+
+        private final BaseDatos base;
+        private final List<Medicion> abiertas = new ArrayList<>(4);
+
+        private ConexionMedida(Connection conexion, BaseDatos base) {
+            super(conexion);
+            this.base = base;
+        }
+
+        private Medicion medicion(Statement sentencia, String sql) {
+            Medicion medicion = new Medicion(base, sentencia, sql, abiertas);
+            abiertas.add(medicion);
+            return medicion;
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return new SentenciaMedida(this, conexion.createStatement());
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            return new SentenciaMedida(this, conexion.createStatement(resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            return new SentenciaMedida(this, conexion.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return new SentenciaPreparadaMedida(this, conexion.prepareStatement(sql), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            return new SentenciaPreparadaMedida(this, conexion.prepareStatement(sql, autoGeneratedKeys), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            return new SentenciaPreparadaMedida(this, conexion.prepareStatement(sql, columnIndexes), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            return new SentenciaPreparadaMedida(this, conexion.prepareStatement(sql, columnNames), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            return new SentenciaPreparadaMedida(this, conexion.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            return new SentenciaPreparadaMedida(this,
+                    conexion.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            for (int i = abiertas.size() - 1; i >= 0; i--) {
+                abiertas.get(i).terminarConsulta();
+            }
+            abiertas.clear();
+            conexion.close();
+        }
+    }
+
+    /**
+     * Sentencia sin parámetros medida. Solo se redefinen las ejecuciones, el
+     * acceso al resultado y el cierre; el resto pasa directo al driver.
+     */
+    private static final class SentenciaMedida extends SentenciaDelegada {
+
+        private final ConexionMedida conexion;
+        private final Medicion medicion;
+
+        private SentenciaMedida(ConexionMedida conexion, Statement sentencia) {
+            super(sentencia);
+            this.conexion = conexion;
+            this.medicion = conexion.medicion(sentencia, null);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.consulta(this, inicio, sentencia.executeQuery(sql));
+        }
+
+        @Override
+        public int executeUpdate(String sql) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return (int) medicion.actualizacion(inicio, sentencia.executeUpdate(sql));
+        }
+
+        @Override
+        public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return (int) medicion.actualizacion(inicio, sentencia.executeUpdate(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return (int) medicion.actualizacion(inicio, sentencia.executeUpdate(sql, columnIndexes));
+        }
+
+        @Override
+        public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return (int) medicion.actualizacion(inicio, sentencia.executeUpdate(sql, columnNames));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.actualizacion(inicio, sentencia.executeLargeUpdate(sql));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.actualizacion(inicio, sentencia.executeLargeUpdate(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.actualizacion(inicio, sentencia.executeLargeUpdate(sql, columnIndexes));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.actualizacion(inicio, sentencia.executeLargeUpdate(sql, columnNames));
+        }
+
+        @Override
+        public boolean execute(String sql) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.ejecucion(inicio, sentencia.execute(sql));
+        }
+
+        @Override
+        public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.ejecucion(inicio, sentencia.execute(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.ejecucion(inicio, sentencia.execute(sql, columnIndexes));
+        }
+
+        @Override
+        public boolean execute(String sql, String[] columnNames) throws SQLException {
+            long inicio = medicion.empezar(sql);
+            return medicion.ejecucion(inicio, sentencia.execute(sql, columnNames));
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.lote(inicio, sentencia.executeBatch());
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.lote(inicio, sentencia.executeLargeBatch());
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return medicion.resultado(this, sentencia.getResultSet());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return conexion;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            medicion.cerrar();
+            sentencia.close();
+        }
+    }
+
+    /**
+     * Sentencia preparada medida, que además guarda los parámetros para el
+     * registro y el EXPLAIN.
+     */
+    private static final class SentenciaPreparadaMedida extends SentenciaPreparadaDelegada {
+
+        private final ConexionMedida conexion;
+        private final Medicion medicion;
+
+        private SentenciaPreparadaMedida(ConexionMedida conexion, PreparedStatement sentencia, String sql) {
+            super(sentencia);
+            this.conexion = conexion;
+            this.medicion = conexion.medicion(sentencia, sql);
+        }
+
+        @Override
+        protected void alAsignar(int indice, Object valor) {
+            medicion.guardarParametro(indice, valor);
+        }
+
+        @Override
+        public void clearParameters() throws SQLException {
+            medicion.borrarParametros();
+            preparada.clearParameters();
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.consulta(this, inicio, preparada.executeQuery());
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return (int) medicion.actualizacion(inicio, preparada.executeUpdate());
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.actualizacion(inicio, preparada.executeLargeUpdate());
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.ejecucion(inicio, preparada.execute());
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.lote(inicio, preparada.executeBatch());
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            long inicio = medicion.empezar(null);
+            return medicion.lote(inicio, preparada.executeLargeBatch());
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return medicion.resultado(this, preparada.getResultSet());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return conexion;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            medicion.cerrar();
+            preparada.close();
+        }
+    }
+
+    /**
+     * Mide las ejecuciones de una sentencia y guarda sus parámetros. Una
+     * consulta queda abierta hasta que se termina de leer, se cierra su
+     * ResultSet, se vuelve a ejecutar la sentencia o se cierran la sentencia
+     * o la conexión, y el umbral se evalúa en el primero de esos momentos.
+     */
+    private static final class Medicion {
+
+        private final BaseDatos base;
+        private final Statement sentencia;
+        private final List<Medicion> abiertas;
+        private String sql;
+        private Object[] parametros = new Object[8];
+        private int cantidadParametros;
+        // Tiempo de un execute() con resultado, hasta que se pida el ResultSet
+        private long ejecucionPendiente;
+        private Recorrido consulta;
+
+        private Medicion(BaseDatos base, Statement sentencia, String sql, List<Medicion> abiertas) {
+            this.base = base;
+            this.sentencia = sentencia;
+            this.sql = sql;
+            this.abiertas = abiertas;
+        }
+
+        /**
+         * Termina la consulta anterior, que el driver cierra al volver a
+         * ejecutar, y toma el tiempo de inicio.
+         *
+         * @param sqlEjecutado Texto de la sentencia sin preparar, o null.
+         */
+        private long empezar(String sqlEjecutado) {
+            terminarConsulta();
+            ejecucionPendiente = 0;
+            if (sqlEjecutado != null) {
+                sql = sqlEjecutado;
+            }
+            return System.nanoTime();
+        }
+
+        private long actualizacion(long inicio, long filas) {
+            long transcurrido = System.nanoTime() - inicio;
+            if (transcurrido >= UMBRAL_NANOS) {
+                registrar(transcurrido, filas);
+            }
+            return filas;
+        }
+
+        private int[] lote(long inicio, int[] filas) {
+            long transcurrido = System.nanoTime() - inicio;
+            if (transcurrido >= UMBRAL_NANOS) {
+                long total = 0;
+                for (int filasSentencia : filas) {
+                    total += Math.max(filasSentencia, 0);
+                }
+                registrar(transcurrido, total);
+            }
+            return filas;
+        }
+
+        private long[] lote(long inicio, long[] filas) {
+            long transcurrido = System.nanoTime() - inicio;
+            if (transcurrido >= UMBRAL_NANOS) {
+                long total = 0;
+                for (long filasSentencia : filas) {
+                    total += Math.max(filasSentencia, 0);
+                }
+                registrar(transcurrido, total);
+            }
+            return filas;
+        }
+
+        private ResultSet consulta(Statement envoltorio, long inicio, ResultSet resultado) {
+            consulta = new Recorrido(resultado, envoltorio, this, System.nanoTime() - inicio);
+            return consulta;
+        }
+
+        /**
+         * Con resultado, el tiempo se guarda hasta que se pida el ResultSet;
+         * sin resultado, se evalúa como una actualización.
+         */
+        private boolean ejecucion(long inicio, boolean hayResultado) throws SQLException {
+            long transcurrido = System.nanoTime() - inicio;
+            if (hayResultado) {
+                ejecucionPendiente = transcurrido;
+            } else if (transcurrido >= UMBRAL_NANOS) {
+                registrar(transcurrido, sentencia.getUpdateCount());
+            }
+            return hayResultado;
+        }
+
+        private ResultSet resultado(Statement envoltorio, ResultSet resultado) {
+            if (resultado == null) {
+                return null;
+            }
+            if (consulta != null && consulta.esDe(resultado)) {
+                return consulta;
+            }
+            terminarConsulta();
+            consulta = new Recorrido(resultado, envoltorio, this, ejecucionPendiente);
+            ejecucionPendiente = 0;
+            return consulta;
+        }
+
+        private void terminarConsulta() {
+            if (consulta != null) {
+                consulta.terminar();
+            }
+        }
+
+        private void cerrar() {
+            terminarConsulta();
+            abiertas.remove(this);
+        }
+
+        private void guardarParametro(int indice, Object valor) {
+            if (indice > parametros.length) {
+                parametros = Arrays.copyOf(parametros, Math.max(indice, parametros.length * 2));
+            }
+            parametros[indice - 1] = valor;
+            cantidadParametros = Math.max(cantidadParametros, indice);
+        }
+
+        private void borrarParametros() {
+            Arrays.fill(parametros, 0, cantidadParametros, null);
+            cantidadParametros = 0;
+        }
+
+        private void registrar(long transcurrido, long filas) {
+            String textoParametros = describirParametros(parametros, cantidadParametros);
+            log.warn("Consulta lenta ({} ms, {} filas): {} parámetros={}",
+                    TimeUnit.NANOSECONDS.toMillis(transcurrido), filas, compactar(sql), textoParametros);
+            programarExplain(base, sql, Arrays.copyOf(parametros, cantidadParametros));
+        }
+    }
+
+    /**
+     * Cuenta las filas de una consulta y suma el tiempo que pasa dentro de
+     * cada {@code next()}, que es cuando el driver trae del servidor el
+     * siguiente bloque de filas. El umbral se evalúa con el {@code next()} que
+     * ya no trae fila, o con el cierre si la lectura se corta antes.
+     */
+    private static final class Recorrido extends ResultadoDelegado {
+
+        private final Statement sentencia;
+        private final Medicion medicion;
+        private final long ejecucion;
+        private long lectura;
+        private long filas;
+        private boolean terminado;
+
+        private Recorrido(ResultSet resultado, Statement sentencia, Medicion medicion, long ejecucion) {
+            super(resultado);
+            this.sentencia = sentencia;
+            this.medicion = medicion;
+            this.ejecucion = ejecucion;
+        }
+
+        private boolean esDe(ResultSet otro) {
+            return resultado == otro;
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            long inicio = System.nanoTime();
+            boolean hay = resultado.next();
+            lectura += System.nanoTime() - inicio;
+            if (hay) {
+                filas++;
+            } else {
+                terminar();
+            }
+            return hay;
+        }
+
+        private void terminar() {
+            if (terminado) {
+                return;
+            }
+            terminado = true;
+            if (medicion.consulta == this) {
+                medicion.consulta = null;
+            }
+            long transcurrido = ejecucion + lectura;
+            if (transcurrido >= UMBRAL_NANOS) {
+                medicion.registrar(transcurrido, filas);
+            }
+        }
+
+        @Override
+        public Statement getStatement() {
+            return sentencia;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            terminar();
+            resultado.close();
+        }
+    }
+
+    private static String describirParametros(Object[] parametros, int cantidad) {
+        StringBuilder texto = new StringBuilder("[");
+        for (int i = 0; i < cantidad; i++) {
+            if (i > 0) {
+                texto.append(", ");
+            }
+            Object valor = parametros[i];
+            if (valor instanceof String && !MOSTRAR_TEXTOS) {
+                texto.append("<texto de ").append(((String) valor).length()).append(" caracteres>");
+            } else {
+                texto.append(valor);
+            }
+        }
+        return texto.append(']').toString();
+    }
+
+    /**
+     * Encola el EXPLAIN de una sentencia si lo permiten el límite por minuto y
+     * la última vez que se explicó la misma sentencia.
+     */
+    private static void programarExplain(BaseDatos base, String sql, Object[] parametros) {
+        if (sql == null || !explicable(sql)) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        Long anterior = sentenciasExplicadas.get(sql);
+        if (anterior != null && ahora - anterior < REPETICION_EXPLAIN_NANOS) {
+            return;
+        }
+        long ultimo = ultimoExplain.get();
+        if (ahora - ultimo < INTERVALO_EXPLAIN_NANOS || !ultimoExplain.compareAndSet(ultimo, ahora)) {
+            return;
+        }
+        if (sentenciasExplicadas.size() >= MAX_SENTENCIAS_EXPLICADAS) {
+            sentenciasExplicadas.clear();
+        }
+        sentenciasExplicadas.put(sql, ahora);
+        explicador.execute(() -> explicar(base, sql, parametros));
+    }
+
+    private static boolean explicable(String sql) {
+        String inicio = sql.stripLeading();
+        if (inicio.length() < 6) {
+            return false;
+        }
+        String verbo = inicio.substring(0, 6).toUpperCase(Locale.ROOT);
+        return verbo.equals("SELECT") || verbo.equals("UPDATE") || verbo.equals("DELETE") || verbo.equals("INSERT");
+    }
+
+    private static void explicar(BaseDatos base, String sql, Object[] parametros) {
+        try (Connection conn = base.getConnectionSinRegistro();
+                PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                stmt.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData columnas = rs.getMetaData();
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    plan.append("\n  ");
+                    for (int c = 1; c <= columnas.getColumnCount(); c++) {
+                        plan.append(columnas.getColumnLabel(c)).append('=').append(rs.getString(c)).append(' ');
+                    }
+                }
+                log.warn("Plan de la consulta lenta en {} {}:{}", base, compactar(sql), plan);
+            }
+        } catch (CargaRechazadaException ex) {
+            // El pool de lotes está saturado: que se vea, porque mientras dure
+            // no se obtiene ningún plan
+            log.warn("No se pudo obtener el plan de {}: {}", compactar(sql), ex.getMessage());
+        } catch (Exception ex) {
+            log.debug("No se pudo obtener el plan de {}: {}", compactar(sql), ex.getMessage());
+        }
+    }
+
+    private static String compactar(String sql) {
+        return sql == null ? "<lote>" : sql.replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,217 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Conexión a la base en memoria. Implementa la parte de {@link Connection} que
+ * usa {@link TransactionTemplate} (autocommit, solo lectura, commit, rollback y
+ * cierre); los DAOs en memoria la obtienen con {@link #de(Connection)} para
+ * acceder a los datos.
+ *
+ * El aislamiento es serializable con un único escritor: una transacción de
+ * escritura toma el bloqueo de escritura de la base en su primer acceso y lo
+ * mantiene hasta confirmar o deshacer, y una de solo lectura toma el de
+ * lectura. En autocommit cada acceso toma el bloqueo solo mientras dura. Las
+ * modificaciones de una transacción registran cómo deshacerse y
+ * {@code rollback} las aplica en orden inverso.
+ */
+public final class SesionMemoria implements InvocationHandler {
+
+    /**
+     * Acceso a los datos abierto por {@link #acceder(boolean)}. Al cerrarse
+     * libera el bloqueo si se tomó solo para ese acceso.
+     */
+    public interface Acceso extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private static final Acceso SIN_BLOQUEO = () -> {
+    };
+
+    // Mismo orden de magnitud que innodb_lock_wait_timeout
+    private static final long ESPERA_BLOQUEO_SEGUNDOS = 50;
+
+    private final ReentrantReadWriteLock bloqueo;
+    private boolean autoCommit = true;
+    private boolean soloLectura;
+    private boolean cerrada;
+    private Lock bloqueoTransaccion;
+    private final Deque<Runnable> deshacer = new ArrayDeque<>();
+
+    private SesionMemoria(ReentrantReadWriteLock bloqueo) {
+        this.bloqueo = bloqueo;
+    }
+
+    static Connection abrir(ReentrantReadWriteLock bloqueo) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new SesionMemoria(bloqueo));
+    }
+
+    /**
+     * Obtiene la sesión de una conexión de la base en memoria.
+     *
+     * @param conn Conexión entregada por la base en memoria.
+     * @return Sesión de la conexión.
+     * @throws IllegalArgumentException Si la conexión no es de la base en
+     * memoria.
+     */
+    public static SesionMemoria de(Connection conn) {
+        if (Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof SesionMemoria sesion) {
+            return sesion;
+        }
+        throw new IllegalArgumentException("La conexión no pertenece a la base en memoria.");
+    }
+
+    /**
+     * Abre un acceso a los datos. Debe cerrarse al terminar, normalmente con
+     * try-with-resources.
+     *
+     * @param escritura true si el acceso modifica datos.
+     * @return Acceso abierto.
+     * @throws SQLException Si la conexión está cerrada, es de solo lectura y se
+     * pide escribir, o no se obtuvo el bloqueo a tiempo.
+     */
+    public Acceso acceder(boolean escritura) throws SQLException {
+        if (cerrada) {
+            throw new SQLException("La conexión está cerrada.");
+        }
+        if (escritura && soloLectura) {
+            throw new SQLException("La conexión es de solo lectura.");
+        }
+        if (!autoCommit) {
+            if (bloqueoTransaccion == null) {
+                bloqueoTransaccion = tomar(soloLectura ? bloqueo.readLock() : bloqueo.writeLock());
+            }
+            return SIN_BLOQUEO;
+        }
+        Lock acceso = tomar(escritura ? bloqueo.writeLock() : bloqueo.readLock());
+        return acceso::unlock;
+    }
+
+    /**
+     * Registra cómo deshacer una modificación ya aplicada. En autocommit no
+     * hace nada, porque cada acceso se confirma al terminar.
+     *
+     * @param accion Acción que revierte la modificación.
+     */
+    public void registrarDeshacer(Runnable accion) {
+        if (!autoCommit) {
+            deshacer.push(accion);
+        }
+    }
+
+    private static Lock tomar(Lock lock) throws SQLException {
+        try {
+            if (lock.tryLock(ESPERA_BLOQUEO_SEGUNDOS, TimeUnit.SECONDS)) {
+                return lock;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        throw new SQLTimeoutException("Se agotó la espera del bloqueo de la base en memoria.");
+    }
+
+    private void confirmar() {
+        deshacer.clear();
+        liberar();
+    }
+
+    private void deshacerCambios() {
+        while (!deshacer.isEmpty()) {
+            deshacer.pop().run();
+        }
+        liberar();
+    }
+
+    private void liberar() {
+        if (bloqueoTransaccion != null) {
+            bloqueoTransaccion.unlock();
+            bloqueoTransaccion = null;
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+        switch (metodo.getName()) {
+            case "setAutoCommit" -> {
+                boolean valor = (Boolean) args[0];
+                if (valor && !autoCommit) {
+                    confirmar();
+                }
+                autoCommit = valor;
+                return null;
+            }
+            case "getAutoCommit" -> {
+                return autoCommit;
+            }
+            case "setReadOnly" -> {
+                soloLectura = (Boolean) args[0];
+                return null;
+            }
+            case "isReadOnly" -> {
+                return soloLectura;
+            }
+            case "commit" -> {
+                confirmar();
+                return null;
+            }
+            case "rollback" -> {
+                deshacerCambios();
+                return null;
+            }
+            case "close" -> {
+                if (!cerrada) {
+                    deshacerCambios();
+                    cerrada = true;
+                }
+                return null;
+            }
+            case "isClosed" -> {
+                return cerrada;
+            }
+            case "isValid" -> {
+                return !cerrada;
+            }
+            case "setTransactionIsolation" -> {
+                // Siempre serializable
+                return null;
+            }
+            case "getTransactionIsolation" -> {
+                return Connection.TRANSACTION_SERIALIZABLE;
+            }
+            case "unwrap" -> {
+                if (((Class<?>) args[0]).isInstance(proxy)) {
+                    return proxy;
+                }
+                throw new SQLException("No es una conexión de " + args[0]);
+            }
+            case "isWrapperFor" -> {
+                return ((Class<?>) args[0]).isInstance(proxy);
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "toString" -> {
+                return "SesionMemoria@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            default -> throw new SQLFeatureNotSupportedException(
+                    "La base en memoria no admite SQL (" + metodo.getName() + "); use los DAOs en memoria.");
+        }
+    }
+}
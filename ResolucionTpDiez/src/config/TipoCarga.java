@@ -0,0 +1,58 @@
+package config;
+
+import java.util.Locale;
+
+/**
+ * Clase de carga de una operación. Cada base de datos tiene un pool de
+ * conexiones separado por clase, de modo que un reporte pesado no puede
+ * ocupar las conexiones que necesitan las consultas interactivas o la
+ * creación de pedidos.
+ *
+ * El tamaño de cada pool y el límite de su cola de espera se configuran con
+ * las propiedades del sistema {@code db.pool.<clase>.tamano} y
+ * {@code db.pool.<clase>.cola}, por ejemplo {@code db.pool.lote.tamano}.
+ */
+public enum TipoCarga {
+    /**
+     * Consultas cortas de usuario: lecturas por ID y detalles.
+     */
+    INTERACTIVA(6, 50),
+    /**
+     * Transacciones de escritura cortas, como la creación de pedidos.
+     */
+    ESCRITURA(4, 50),
+    /**
+     * Recorridos, listados completos, exportaciones, importaciones y reportes.
+     * Pocas conexiones y una cola corta: ante saturación es preferible
+     * rechazar el trabajo a dejarlo esperando.
+     */
+    LOTE(2, 4);
+
+    private final int tamanoPool;
+    private final int limiteCola;
+
+    TipoCarga(int tamanoPool, int limiteCola) {
+        String prefijo = "db.pool." + name().toLowerCase(Locale.ROOT) + ".";
+        this.tamanoPool = Integer.getInteger(prefijo + "tamano", tamanoPool);
+        this.limiteCola = Integer.getInteger(prefijo + "cola", limiteCola);
+    }
+
+    /**
+     * Cantidad máxima de conexiones del pool.
+     *
+     * @return Tamaño del pool.
+     */
+    public int getTamanoPool() {
+        return tamanoPool;
+    }
+
+    /**
+     * Cantidad máxima de hilos esperando una conexión. Los pedidos que
+     * excedan este límite se rechazan de inmediato.
+     *
+     * @return Límite de la cola de espera.
+     */
+    public int getLimiteCola() {
+        return limiteCola;
+    }
+}
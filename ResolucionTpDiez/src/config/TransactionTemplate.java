@@ -0,0 +1,400 @@
+package config;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ejecuta operaciones de base de datos dentro de una transacción, centralizando
+ * el manejo de commit, rollback y cierre de la conexión que antes se repetía
+ * en cada servicio.
+ *
+ * Las llamadas anidadas en el mismo hilo sobre la misma {@link BaseDatos} se
+ * unen a la transacción exterior y reutilizan su conexión, por lo que componer
+ * operaciones no pide más de una conexión al pool. Solo la llamada exterior
+ * confirma o deshace. Las operaciones sobre bases distintas (por ejemplo la de
+ * referencia y un shard de pedidos) abren transacciones independientes.
+ *
+ * Cada operación se etiqueta con su {@link TipoCarga}, que decide de qué pool
+ * sale la conexión. Si no se indica, las lecturas usan el pool interactivo y
+ * las escrituras el de escritura. Una llamada anidada usa la conexión de la
+ * transacción exterior sin importar su clase.
+ *
+ * Con {@link #alConfirmar} una operación deja acciones para después del
+ * commit, por ejemplo publicar eventos. Se ejecutan cuando termina bien la
+ * transacción más exterior del hilo, ya devuelta la conexión, y se descartan
+ * si cualquiera de las transacciones que las contienen se deshace.
+ *
+ * El estado de la conexión (autocommit, solo lectura y nivel de aislamiento)
+ * se fija en cada transacción. El driver conserva el estado de la sesión
+ * ({@code useLocalSessionState}, ver {@link DatabaseConnection}) y no va al
+ * servidor si el valor no cambia. No se restaura al terminar: el pool de
+ * Hikari ya lo restablece al devolver la conexión.
+ */
+public final class TransactionTemplate {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionTemplate.class);
+
+    /**
+     * Modo de acceso de la transacción.
+     */
+    public enum Modo {
+        /**
+         * Solo consultas. Con el aislamiento por defecto se ejecuta en
+         * autocommit, sin abrir ni confirmar transacciones.
+         */
+        SOLO_LECTURA,
+        /**
+         * Consultas y modificaciones dentro de una transacción.
+         */
+        LECTURA_ESCRITURA
+    }
+
+    /**
+     * Indica que se usa el nivel de aislamiento configurado en el servidor.
+     */
+    public static final int AISLAMIENTO_POR_DEFECTO = -1;
+
+    /**
+     * Operación que devuelve un resultado.
+     *
+     * @param <T> Tipo del resultado.
+     */
+    @FunctionalInterface
+    public interface Operacion<T> {
+
+        T ejecutar(Connection conn) throws Exception;
+    }
+
+    /**
+     * Operación sin resultado.
+     */
+    @FunctionalInterface
+    public interface Accion {
+
+        void ejecutar(Connection conn) throws Exception;
+    }
+
+    private static final ThreadLocal<Map<BaseDatos, Transaccion>> abiertas = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    // Transacción abierta más recientemente en el hilo, sobre cualquier base
+    private static final ThreadLocal<Transaccion> interior = new ThreadLocal<>();
+
+    private TransactionTemplate() {
+    }
+
+    /**
+     * Registra una acción para después de confirmar la transacción en curso
+     * del hilo. Si la transacción está anidada dentro de otra sobre una base
+     * distinta, la acción espera también a que la exterior confirme. Sin
+     * transacción en curso la acción se ejecuta enseguida.
+     *
+     * Las acciones no pueden deshacer lo confirmado: si una falla, el error
+     * se informa y se siguen ejecutando las demás.
+     *
+     * @param accion Acción a ejecutar después del commit.
+     */
+    public static void alConfirmar(Runnable accion) {
+        Transaccion actual = interior.get();
+        if (actual == null) {
+            ejecutarTodas(List.of(accion));
+        } else {
+            actual.alConfirmar.add(accion);
+        }
+    }
+
+    /**
+     * Ejecuta una consulta en modo solo lectura sobre la base de referencia.
+     *
+     * @param <T> Tipo del resultado.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla.
+     */
+    public static <T> T leer(Operacion<T> operacion) throws Exception {
+        return leer(DatabaseConnection.referencia(), operacion);
+    }
+
+    /**
+     * Ejecuta una consulta en modo solo lectura.
+     *
+     * @param <T> Tipo del resultado.
+     * @param base Base de datos sobre la que se opera.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla.
+     */
+    public static <T> T leer(BaseDatos base, Operacion<T> operacion) throws Exception {
+        return ejecutar(base, Modo.SOLO_LECTURA, AISLAMIENTO_POR_DEFECTO, operacion);
+    }
+
+    /**
+     * Ejecuta una consulta en modo solo lectura sobre la base de referencia,
+     * con una conexión del pool de la clase de carga indicada.
+     *
+     * @param <T> Tipo del resultado.
+     * @param carga Clase de carga de la operación.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla.
+     */
+    public static <T> T leer(TipoCarga carga, Operacion<T> operacion) throws Exception {
+        return leer(DatabaseConnection.referencia(), carga, operacion);
+    }
+
+    /**
+     * Ejecuta una consulta en modo solo lectura con una conexión del pool de
+     * la clase de carga indicada.
+     *
+     * @param <T> Tipo del resultado.
+     * @param base Base de datos sobre la que se opera.
+     * @param carga Clase de carga de la operación.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla.
+     */
+    public static <T> T leer(BaseDatos base, TipoCarga carga, Operacion<T> operacion) throws Exception {
+        return ejecutar(base, carga, Modo.SOLO_LECTURA, AISLAMIENTO_POR_DEFECTO, operacion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura que devuelve un resultado
+     * sobre la base de referencia.
+     *
+     * @param <T> Tipo del resultado.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla; la transacción se deshace.
+     */
+    public static <T> T escribir(Operacion<T> operacion) throws Exception {
+        return escribir(DatabaseConnection.referencia(), operacion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura que devuelve un resultado.
+     *
+     * @param <T> Tipo del resultado.
+     * @param base Base de datos sobre la que se opera.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla; la transacción se deshace.
+     */
+    public static <T> T escribir(BaseDatos base, Operacion<T> operacion) throws Exception {
+        return ejecutar(base, Modo.LECTURA_ESCRITURA, AISLAMIENTO_POR_DEFECTO, operacion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura sin resultado sobre la base
+     * de referencia.
+     *
+     * @param accion Acción a ejecutar.
+     * @throws Exception Si la acción falla; la transacción se deshace.
+     */
+    public static void ejecutar(Accion accion) throws Exception {
+        ejecutar(DatabaseConnection.referencia(), accion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura sin resultado.
+     *
+     * @param base Base de datos sobre la que se opera.
+     * @param accion Acción a ejecutar.
+     * @throws Exception Si la acción falla; la transacción se deshace.
+     */
+    public static void ejecutar(BaseDatos base, Accion accion) throws Exception {
+        ejecutar(base, TipoCarga.ESCRITURA, accion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura sin resultado sobre la base
+     * de referencia, con una conexión del pool de la clase de carga indicada.
+     *
+     * @param carga Clase de carga de la operación.
+     * @param accion Acción a ejecutar.
+     * @throws Exception Si la acción falla; la transacción se deshace.
+     */
+    public static void ejecutar(TipoCarga carga, Accion accion) throws Exception {
+        ejecutar(DatabaseConnection.referencia(), carga, accion);
+    }
+
+    /**
+     * Ejecuta una operación de lectura y escritura sin resultado con una
+     * conexión del pool de la clase de carga indicada.
+     *
+     * @param base Base de datos sobre la que se opera.
+     * @param carga Clase de carga de la operación.
+     * @param accion Acción a ejecutar.
+     * @throws Exception Si la acción falla; la transacción se deshace.
+     */
+    public static void ejecutar(BaseDatos base, TipoCarga carga, Accion accion) throws Exception {
+        ejecutar(base, carga, Modo.LECTURA_ESCRITURA, AISLAMIENTO_POR_DEFECTO, conn -> {
+            accion.ejecutar(conn);
+            return null;
+        });
+    }
+
+    /**
+     * Ejecuta una operación con el modo y el nivel de aislamiento indicados
+     * sobre la base de referencia.
+     *
+     * @param <T> Tipo del resultado.
+     * @param modo Modo de acceso.
+     * @param aislamiento Nivel de aislamiento de {@link Connection} o
+     * {@link #AISLAMIENTO_POR_DEFECTO}.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla; la transacción se deshace.
+     */
+    public static <T> T ejecutar(Modo modo, int aislamiento, Operacion<T> operacion) throws Exception {
+        return ejecutar(DatabaseConnection.referencia(), modo, aislamiento, operacion);
+    }
+
+    /**
+     * Ejecuta una operación con el modo y el nivel de aislamiento indicados,
+     * en el pool que corresponde al modo.
+     *
+     * @param <T> Tipo del resultado.
+     * @param base Base de datos sobre la que se opera.
+     * @param modo Modo de acceso.
+     * @param aislamiento Nivel de aislamiento de {@link Connection} o
+     * {@link #AISLAMIENTO_POR_DEFECTO}.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws Exception Si la operación falla; la transacción se deshace.
+     */
+    public static <T> T ejecutar(BaseDatos base, Modo modo, int aislamiento, Operacion<T> operacion) throws Exception {
+        TipoCarga carga = modo == Modo.SOLO_LECTURA ? TipoCarga.INTERACTIVA : TipoCarga.ESCRITURA;
+        return ejecutar(base, carga, modo, aislamiento, operacion);
+    }
+
+    /**
+     * Ejecuta una operación con el modo y el nivel de aislamiento indicados. Si
+     * ya hay una transacción abierta en el hilo sobre la misma base, la
+     * operación se une a ella y la clase de carga y el nivel de aislamiento
+     * pedidos se ignoran.
+     *
+     * @param <T> Tipo del resultado.
+     * @param base Base de datos sobre la que se opera.
+     * @param carga Clase de carga, que elige el pool de la conexión.
+     * @param modo Modo de acceso.
+     * @param aislamiento Nivel de aislamiento de {@link Connection} o
+     * {@link #AISLAMIENTO_POR_DEFECTO}.
+     * @param operacion Operación a ejecutar.
+     * @return Resultado de la operación.
+     * @throws IllegalStateException Si se pide escribir dentro de una
+     * transacción de solo lectura.
+     * @throws CargaRechazadaException Si el pool de la clase de carga está
+     * saturado.
+     * @throws Exception Si la operación falla; la transacción se deshace.
+     */
+    public static <T> T ejecutar(BaseDatos base, TipoCarga carga, Modo modo, int aislamiento, Operacion<T> operacion) throws Exception {
+        Map<BaseDatos, Transaccion> transacciones = abiertas.get();
+        Transaccion exterior = transacciones.get(base);
+        if (exterior != null) {
+            if (exterior.modo == Modo.SOLO_LECTURA && modo == Modo.LECTURA_ESCRITURA) {
+                throw new IllegalStateException("No se puede escribir dentro de una transacción de solo lectura.");
+            }
+            return operacion.ejecutar(exterior.conn);
+        }
+
+        Transaccion tx;
+        T resultado;
+        try (Connection conn = base.getConnection(carga)) {
+            tx = new Transaccion(conn, modo, interior.get());
+            transacciones.put(base, tx);
+            interior.set(tx);
+            try {
+                tx.iniciar(aislamiento);
+                resultado = operacion.ejecutar(conn);
+                tx.confirmar();
+            } catch (Exception ex) {
+                tx.deshacer(ex);
+                throw ex;
+            } finally {
+                transacciones.remove(base);
+                if (transacciones.isEmpty()) {
+                    abiertas.remove();
+                }
+                if (tx.envolvente == null) {
+                    interior.remove();
+                } else {
+                    interior.set(tx.envolvente);
+                }
+            }
+        }
+
+        if (tx.envolvente != null) {
+            tx.envolvente.alConfirmar.addAll(tx.alConfirmar);
+        } else {
+            ejecutarTodas(tx.alConfirmar);
+        }
+        return resultado;
+    }
+
+    private static void ejecutarTodas(List<Runnable> acciones) {
+        for (Runnable accion : acciones) {
+            try {
+                accion.run();
+            } catch (RuntimeException ex) {
+                log.error("Falló una acción posterior al commit", ex);
+            }
+        }
+    }
+
+    /**
+     * Estado de la transacción abierta en el hilo actual.
+     */
+    private static final class Transaccion {
+
+        private final Connection conn;
+        private final Modo modo;
+        // Transacción que estaba abierta al abrir esta, o null
+        private final Transaccion envolvente;
+        private final List<Runnable> alConfirmar = new ArrayList<>();
+        // false mientras la conexión siga en autocommit
+        private boolean enTransaccion;
+
+        private Transaccion(Connection conn, Modo modo, Transaccion envolvente) {
+            this.conn = conn;
+            this.modo = modo;
+            this.envolvente = envolvente;
+        }
+
+        private void iniciar(int nivel) throws Exception {
+            if (nivel != AISLAMIENTO_POR_DEFECTO) {
+                conn.setTransactionIsolation(nivel);
+            }
+
+            // Una lectura sin aislamiento explícito no necesita transacción
+            if (modo == Modo.SOLO_LECTURA && nivel == AISLAMIENTO_POR_DEFECTO) {
+                return;
+            }
+            if (modo == Modo.SOLO_LECTURA) {
+                conn.setReadOnly(true);
+            }
+            conn.setAutoCommit(false);
+            enTransaccion = true;
+        }
+
+        private void confirmar() throws Exception {
+            if (enTransaccion) {
+                conn.commit();
+            }
+        }
+
+        private void deshacer(Exception causa) {
+            if (!enTransaccion) {
+                return;
+            }
+            try {
+                conn.rollback();
+            } catch (Exception ex) {
+                causa.addSuppressed(ex);
+            }
+        }
+    }
+}
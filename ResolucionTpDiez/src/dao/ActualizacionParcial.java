@@ -0,0 +1,70 @@
+package dao;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Genera sentencias UPDATE que solo incluyen las columnas modificadas de una
+ * entidad. El SQL se guarda por máscara de columnas, de modo que cada
+ * combinación produce siempre el mismo texto y la cantidad de sentencias
+ * distintas queda acotada (2^n para n columnas). Así la cache de sentencias
+ * preparadas del driver las reutiliza.
+ */
+final class ActualizacionParcial {
+
+    private final String tabla;
+    private final String[] columnas;
+    private final String setAdicional;
+    private final String condicion;
+    private final ConcurrentHashMap<Integer, String> sentencias = new ConcurrentHashMap<>();
+
+    /**
+     * @param tabla Tabla a actualizar.
+     * @param columnas Columnas indexadas por número de campo de la entidad.
+     * @param setAdicional Asignación que se agrega siempre (por ejemplo
+     * {@code version = version + 1}) o null.
+     * @param condicion Condición WHERE con sus parámetros.
+     */
+    ActualizacionParcial(String tabla, String[] columnas, String setAdicional, String condicion) {
+        this.tabla = tabla;
+        this.columnas = columnas;
+        this.setAdicional = setAdicional;
+        this.condicion = condicion;
+    }
+
+    /**
+     * Devuelve el UPDATE para la máscara de campos indicada. Los parámetros de
+     * las columnas aparecen en orden creciente de número de campo, seguidos de
+     * los de la condición.
+     *
+     * @param mascara Máscara de campos modificados (distinta de 0).
+     * @return Sentencia SQL.
+     */
+    String sql(int mascara) {
+        return sentencias.computeIfAbsent(mascara, this::construir);
+    }
+
+    /**
+     * Cantidad de campos que la entidad puede marcar.
+     */
+    int cantidadCampos() {
+        return columnas.length;
+    }
+
+    private String construir(int mascara) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tabla).append(" SET ");
+        boolean primera = true;
+        for (int campo = 0; campo < columnas.length; campo++) {
+            if ((mascara & (1 << campo)) != 0) {
+                if (!primera) {
+                    sql.append(", ");
+                }
+                sql.append(columnas[campo]).append(" = ?");
+                primera = false;
+            }
+        }
+        if (setAdicional != null) {
+            sql.append(", ").append(setAdicional);
+        }
+        return sql.append(" WHERE ").append(condicion).toString();
+    }
+}
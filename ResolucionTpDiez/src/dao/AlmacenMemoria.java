@@ -0,0 +1,372 @@
+package dao;
+
+import config.DatabaseConnection;
+import config.SesionMemoria;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import model.Categoria;
+import model.CodecBinario;
+import model.Dinero;
+import model.ItemPedido;
+import model.Pedido;
+import model.Producto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Datos de la base en memoria ({@code db.backend=memoria}): una tabla por
+ * entidad, con los mismos índices únicos y secundarios que el esquema de MySQL,
+ * las claves de idempotencia y el histórico de pedidos archivados.
+ *
+ * Los datos se pueden guardar en una instantánea y restaurar al arrancar. El
+ * archivo se escribe y se lee con un mapeo en memoria, sin copias intermedias,
+ * con los registros en el formato de {@link CodecBinario}.
+ * Si la propiedad {@code db.memoria.snapshot} indica un archivo, se restaura
+ * al crear el almacén (si existe) y se guarda al terminar la JVM.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public final class AlmacenMemoria {
+
+    private static final Logger log = LoggerFactory.getLogger(AlmacenMemoria.class);
+
+    private static final int MAGICO = 0x54504D31; // "TPM1"
+    private static final int VERSION_FORMATO = 3;
+
+    final TablaMemoria<Categoria> categorias = new TablaMemoria<>();
+    final TablaMemoria.IndiceUnico<Categoria> categoriasPorNombre = categorias.indiceUnico("uk_categorias_nombre", Categoria::getNombre);
+
+    final TablaMemoria<Producto> productos = new TablaMemoria<>();
+    final TablaMemoria.IndiceUnico<Producto> productosPorNombre = productos.indiceUnico("uk_productos_nombre", Producto::getNombre);
+    final TablaMemoria.IndiceEnteros<Producto> productosPorCategoria = productos.indiceEnteros(Producto::getIdCategoria);
+
+    final TablaMemoria<Pedido> pedidos = new TablaMemoria<>();
+
+    final TablaMemoria<ItemPedido> items = new TablaMemoria<>();
+    final TablaMemoria.IndiceEnteros<ItemPedido> itemsPorPedido = items.indiceEnteros(ItemPedido::getIdPedido);
+
+    // Clave de idempotencia -> ID de pedido (null mientras está reservada)
+    final Map<String, Integer> clavesIdempotencia = new HashMap<>();
+
+    // Histórico de pedidos archivados y avance de cada trabajo de archivado
+    final TablaMemoria<Pedido> pedidosArchivados = new TablaMemoria<>();
+    final TablaMemoria<ItemPedido> itemsArchivados = new TablaMemoria<>();
+    final TablaMemoria.IndiceEnteros<ItemPedido> itemsArchivadosPorPedido = itemsArchivados.indiceEnteros(ItemPedido::getIdPedido);
+    final Map<String, ArchivoPedidosDAO.Avance> avancesArchivado = new HashMap<>();
+
+    private static final class Instancia {
+
+        private static final AlmacenMemoria ALMACEN = crear();
+
+        private static AlmacenMemoria crear() {
+            AlmacenMemoria almacen = new AlmacenMemoria();
+            String archivo = System.getProperty("db.memoria.snapshot");
+            if (archivo != null) {
+                Path ruta = Paths.get(archivo);
+                try {
+                    if (Files.exists(ruta)) {
+                        almacen.restaurar(ruta);
+                    }
+                } catch (Exception ex) {
+                    throw new IllegalStateException("No se pudo restaurar la instantánea " + ruta, ex);
+                }
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        almacen.guardar(ruta);
+                    } catch (Exception ex) {
+                        log.error("No se pudo guardar la instantánea {}", ruta, ex);
+                    }
+                }, "instantanea-memoria"));
+            }
+            return almacen;
+        }
+    }
+
+    private AlmacenMemoria() {
+    }
+
+    /**
+     * Devuelve el almacén de la base en memoria.
+     *
+     * @return Almacén único del proceso.
+     */
+    public static AlmacenMemoria instancia() {
+        return Instancia.ALMACEN;
+    }
+
+    /**
+     * Guarda todos los datos en un archivo. Se escribe primero en un archivo
+     * temporal que luego reemplaza al destino, así que una falla a mitad de
+     * camino no pierde la instantánea anterior. Mientras se escribe, las
+     * transacciones de escritura esperan.
+     *
+     * @param destino Archivo de la instantánea.
+     * @throws Exception Si ocurre un error al escribir.
+     */
+    public void guardar(Path destino) throws Exception {
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (Connection conn = DatabaseConnection.referencia().getConnection();
+                SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false);
+                FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanoInstantanea());
+            escribir(buffer);
+            buffer.force();
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reemplaza todos los datos por los de una instantánea. Las instantáneas
+     * de versiones anteriores se migran al leerlas y quedan en el formato
+     * actual con el siguiente {@link #guardar}: la versión 1 tenía campos de
+     * ancho fijo e importes en double, y la 2 no tenía el histórico de pedidos
+     * archivados, que queda vacío.
+     *
+     * Una instantánea de una versión desconocida, escrita por un binario más
+     * nuevo, se mueve al lado con el sufijo {@code .version-N} y los datos no
+     * se modifican: el proceso arranca vacío, con una advertencia, y no pisa
+     * la instantánea al guardar.
+     *
+     * @param origen Archivo de la instantánea.
+     * @return true si se cargaron los datos; false si la versión era
+     * desconocida y el archivo se apartó.
+     * @throws Exception Si el archivo no es una instantánea válida o no se
+     * puede leer.
+     */
+    public boolean restaurar(Path origen) throws Exception {
+        int version;
+        try (Connection conn = DatabaseConnection.referencia().getConnection();
+                SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(true);
+                FileChannel canal = FileChannel.open(origen, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGICO) {
+                throw new IOException("El archivo " + origen + " no es una instantánea de la base en memoria.");
+            }
+            version = buffer.getInt();
+            if (version == 1) {
+                leerVersion1(buffer);
+                return true;
+            }
+            if (version >= 2 && version <= VERSION_FORMATO) {
+                leer(buffer, version);
+                return true;
+            }
+        }
+        Path apartado = origen.resolveSibling(origen.getFileName() + ".version-" + version);
+        Files.move(origen, apartado, StandardCopyOption.REPLACE_EXISTING);
+        log.warn("La instantánea {} tiene la versión {} y esta versión solo lee hasta la {}; se movió a {} y se arranca vacío",
+                origen, version, VERSION_FORMATO, apartado);
+        return false;
+    }
+
+    private long tamanoInstantanea() {
+        long[] tamano = {8 + tamanoTabla(categorias) + tamanoTabla(productos) + tamanoTabla(pedidos) + tamanoTabla(items)
+                + CodecBinario.tamanoVarint(clavesIdempotencia.size()) + tamanoTabla(pedidosArchivados)
+                + tamanoTabla(itemsArchivados) + CodecBinario.tamanoVarint(avancesArchivado.size())};
+        categorias.todas().forEach(c -> tamano[0] += CodecBinario.tamano(c));
+        productos.todas().forEach(p -> tamano[0] += CodecBinario.tamano(p));
+        pedidos.todas().forEach(p -> tamano[0] += CodecBinario.tamano(p));
+        items.todas().forEach(i -> tamano[0] += CodecBinario.tamano(i));
+        clavesIdempotencia.forEach((clave, pedidoId) -> tamano[0] += CodecBinario.tamanoTexto(clave)
+                + CodecBinario.tamanoVarint(pedidoId == null ? 0 : pedidoId));
+        pedidosArchivados.todas().forEach(p -> tamano[0] += CodecBinario.tamano(p));
+        itemsArchivados.todas().forEach(i -> tamano[0] += CodecBinario.tamano(i));
+        avancesArchivado.forEach((trabajo, avance) -> tamano[0] += CodecBinario.tamanoTexto(trabajo)
+                + CodecBinario.tamanoFecha(avance.getCorte()) + CodecBinario.tamanoFecha(avance.getUltimaFecha())
+                + CodecBinario.tamanoVarint(avance.getUltimoId()));
+        return tamano[0];
+    }
+
+    private static int tamanoTabla(TablaMemoria<?> tabla) {
+        return CodecBinario.tamanoVarint(tabla.getUltimoId()) + CodecBinario.tamanoVarint(tabla.size());
+    }
+
+    private static void escribirTabla(ByteBuffer buffer, TablaMemoria<?> tabla) {
+        CodecBinario.escribirVarint(buffer, tabla.getUltimoId());
+        CodecBinario.escribirVarint(buffer, tabla.size());
+    }
+
+    private void escribir(ByteBuffer buffer) {
+        buffer.putInt(MAGICO).putInt(VERSION_FORMATO);
+
+        escribirTabla(buffer, categorias);
+        categorias.todas().forEach(c -> CodecBinario.escribir(buffer, c));
+
+        escribirTabla(buffer, productos);
+        productos.todas().forEach(p -> CodecBinario.escribir(buffer, p));
+
+        escribirTabla(buffer, pedidos);
+        pedidos.todas().forEach(p -> CodecBinario.escribir(buffer, p));
+
+        escribirTabla(buffer, items);
+        items.todas().forEach(i -> CodecBinario.escribir(buffer, i));
+
+        CodecBinario.escribirVarint(buffer, clavesIdempotencia.size());
+        clavesIdempotencia.forEach((clave, pedidoId) -> {
+            CodecBinario.escribirTexto(buffer, clave);
+            CodecBinario.escribirVarint(buffer, pedidoId == null ? 0 : pedidoId);
+        });
+
+        escribirTabla(buffer, pedidosArchivados);
+        pedidosArchivados.todas().forEach(p -> CodecBinario.escribir(buffer, p));
+
+        escribirTabla(buffer, itemsArchivados);
+        itemsArchivados.todas().forEach(i -> CodecBinario.escribir(buffer, i));
+
+        CodecBinario.escribirVarint(buffer, avancesArchivado.size());
+        avancesArchivado.forEach((trabajo, avance) -> {
+            CodecBinario.escribirTexto(buffer, trabajo);
+            CodecBinario.escribirFecha(buffer, avance.getCorte());
+            CodecBinario.escribirFecha(buffer, avance.getUltimaFecha());
+            CodecBinario.escribirVarint(buffer, avance.getUltimoId());
+        });
+    }
+
+    private void leer(ByteBuffer buffer, int version) {
+        categorias.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            Categoria c = CodecBinario.leerCategoria(buffer);
+            categorias.cargar(c.getId(), c);
+        }
+
+        productos.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            Producto p = CodecBinario.leerProducto(buffer);
+            productos.cargar(p.getId(), p);
+        }
+
+        pedidos.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            Pedido p = CodecBinario.leerPedido(buffer);
+            pedidos.cargar(p.getId(), p);
+        }
+
+        items.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            ItemPedido i = CodecBinario.leerItemPedido(buffer);
+            items.cargar(i.getId(), i);
+        }
+
+        clavesIdempotencia.clear();
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            String clave = CodecBinario.leerTexto(buffer);
+            int pedidoId = (int) CodecBinario.leerVarint(buffer);
+            clavesIdempotencia.put(clave, pedidoId == 0 ? null : pedidoId);
+        }
+
+        // La versión 2 termina acá: no tenía histórico de pedidos archivados
+        if (version < 3) {
+            pedidosArchivados.vaciar(0);
+            itemsArchivados.vaciar(0);
+            avancesArchivado.clear();
+            return;
+        }
+
+        pedidosArchivados.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            Pedido p = CodecBinario.leerPedido(buffer);
+            pedidosArchivados.cargar(p.getId(), p);
+        }
+
+        itemsArchivados.vaciar((int) CodecBinario.leerVarint(buffer));
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            ItemPedido i = CodecBinario.leerItemPedido(buffer);
+            itemsArchivados.cargar(i.getId(), i);
+        }
+
+        avancesArchivado.clear();
+        for (long n = CodecBinario.leerVarint(buffer); n > 0; n--) {
+            String trabajo = CodecBinario.leerTexto(buffer);
+            java.sql.Date corte = CodecBinario.leerFecha(buffer);
+            java.sql.Date ultimaFecha = CodecBinario.leerFecha(buffer);
+            avancesArchivado.put(trabajo, new ArchivoPedidosDAO.Avance(corte, ultimaFecha, (int) CodecBinario.leerVarint(buffer)));
+        }
+    }
+
+    /**
+     * Lee una instantánea de la versión 1: enteros de 4 bytes, textos con el
+     * largo en 4 bytes (-1 para null), importes en double y fechas en días
+     * desde la época. Solo tenía las tablas principales y las claves de
+     * idempotencia.
+     */
+    private void leerVersion1(ByteBuffer buffer) {
+        categorias.vaciar(buffer.getInt());
+        for (int n = buffer.getInt(); n > 0; n--) {
+            int id = buffer.getInt();
+            String nombre = leerTextoVersion1(buffer);
+            categorias.cargar(id, new Categoria(id, nombre, leerTextoVersion1(buffer)));
+        }
+
+        productos.vaciar(buffer.getInt());
+        for (int n = buffer.getInt(); n > 0; n--) {
+            int id = buffer.getInt();
+            String nombre = leerTextoVersion1(buffer);
+            String descripcion = leerTextoVersion1(buffer);
+            long precio = centavos(buffer.getDouble());
+            productos.cargar(id, new Producto(id, nombre, descripcion, precio, buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+
+        pedidos.vaciar(buffer.getInt());
+        for (int n = buffer.getInt(); n > 0; n--) {
+            int id = buffer.getInt();
+            java.sql.Date fecha = java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(buffer.getLong()));
+            pedidos.cargar(id, new Pedido(id, fecha, centavos(buffer.getDouble())));
+        }
+
+        items.vaciar(buffer.getInt());
+        for (int n = buffer.getInt(); n > 0; n--) {
+            int id = buffer.getInt();
+            int idPedido = buffer.getInt();
+            int idProducto = buffer.getInt();
+            int cantidad = buffer.getInt();
+            items.cargar(id, new ItemPedido(id, idPedido, idProducto, cantidad, centavos(buffer.getDouble())));
+        }
+
+        clavesIdempotencia.clear();
+        for (int n = buffer.getInt(); n > 0; n--) {
+            String clave = leerTextoVersion1(buffer);
+            int pedidoId = buffer.getInt();
+            clavesIdempotencia.put(clave, pedidoId == 0 ? null : pedidoId);
+        }
+
+        pedidosArchivados.vaciar(0);
+        itemsArchivados.vaciar(0);
+        avancesArchivado.clear();
+    }
+
+    private static String leerTextoVersion1(ByteBuffer buffer) {
+        int largo = buffer.getInt();
+        if (largo < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[largo];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Importe de la versión 1, guardado como double ya redondeado a dos
+     * decimales.
+     */
+    private static long centavos(double importe) {
+        return Math.round(importe * Dinero.CENTAVOS_POR_UNIDAD);
+    }
+
+    /**
+     * Trunca una fecha al día, como una columna DATE.
+     */
+    static java.sql.Date dia(java.util.Date fecha) {
+        return java.sql.Date.valueOf(new java.sql.Date(fecha.getTime()).toLocalDate());
+    }
+}
@@ -0,0 +1,67 @@
+package dao;
+
+import java.sql.Connection;
+import java.util.List;
+import model.ItemPedido;
+import model.Pedido;
+
+/**
+ * Operaciones sobre el histórico de pedidos archivados. La documentación de
+ * cada método está en {@link ArchivoPedidosDAOImpl};
+ * {@link ArchivoPedidosDAOMemoria} replica su comportamiento sin base de
+ * datos.
+ */
+public interface ArchivoPedidosDAO {
+
+    /**
+     * Punto de avance de un trabajo de archivado: el corte con que se inició y
+     * la clave (fecha, id) del último pedido movido.
+     */
+    final class Avance {
+
+        private final java.sql.Date corte;
+        private final java.sql.Date ultimaFecha;
+        private final int ultimoId;
+
+        public Avance(java.sql.Date corte, java.sql.Date ultimaFecha, int ultimoId) {
+            this.corte = corte;
+            this.ultimaFecha = ultimaFecha;
+            this.ultimoId = ultimoId;
+        }
+
+        public java.sql.Date getCorte() {
+            return corte;
+        }
+
+        /**
+         * @return Fecha del último pedido movido, o null si todavía no se movió
+         * ninguno.
+         */
+        public java.sql.Date getUltimaFecha() {
+            return ultimaFecha;
+        }
+
+        public int getUltimoId() {
+            return ultimoId;
+        }
+    }
+
+    Pedido leer(int id, Connection conn) throws Exception;
+
+    List<ItemPedido> listarItems(Connection conn, int pedidoId) throws Exception;
+
+    int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception;
+
+    void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            PedidoDAO.FilaPedidoItem procesador) throws Exception;
+
+    void prepararParticiones(Connection conn, java.util.Date corte) throws Exception;
+
+    List<Pedido> siguienteLote(Connection conn, java.util.Date corte, Avance desde, int limite) throws Exception;
+
+    int mover(Connection conn, List<Pedido> lote) throws Exception;
+
+    Avance leerAvance(Connection conn, String trabajo) throws Exception;
+
+    void guardarAvance(Connection conn, String trabajo, Avance avance) throws Exception;
+}
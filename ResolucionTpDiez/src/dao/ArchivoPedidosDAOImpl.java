@@ -0,0 +1,374 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import model.Dinero;
+import model.ItemPedido;
+import model.Pedido;
+
+public class ArchivoPedidosDAOImpl implements ArchivoPedidosDAO {
+
+    private static final String[] TABLAS_HISTORICO = {"pedidos_historico", "items_pedido_historico"};
+
+    private static final int TAMANO_FETCH_CURSOR = 1000;
+
+    /**
+     * Obtiene un pedido archivado por su ID. La clave primaria empieza por el
+     * ID, así que la consulta es una búsqueda por índice en cada partición.
+     *
+     * @param id Identificador del pedido.
+     * @param conn Conexión activa a la base de datos.
+     * @return Pedido archivado o null si no existe.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public Pedido leer(int id, Connection conn) throws Exception {
+        String sql = "SELECT id, fecha, total FROM pedidos_historico WHERE id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Pedido(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3)));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lista los items archivados de un pedido.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param pedidoId ID del pedido archivado.
+     * @return Items del pedido, ordenados por ID.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public List<ItemPedido> listarItems(Connection conn, int pedidoId) throws Exception {
+        String sql = "SELECT id, pedido_id, producto_id, cantidad, subtotal FROM items_pedido_historico WHERE pedido_id = ? ORDER BY id";
+        List<ItemPedido> items = new ArrayList<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, pedidoId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new ItemPedido(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4),
+                            Dinero.desdeDecimal(rs.getBigDecimal(5))));
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Obtiene el menor y el mayor ID de los pedidos archivados en un rango de
+     * fechas. Solo se leen las particiones de los años del rango.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @return Arreglo {minimo, maximo} o null si no hay pedidos archivados.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT MIN(id), MAX(id) FROM pedidos_historico WHERE 1 = 1");
+        if (desde != null) {
+            sql.append(" AND fecha >= ?");
+        }
+        if (hasta != null) {
+            sql.append(" AND fecha < ?");
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            if (desde != null) {
+                stmt.setDate(indice++, new java.sql.Date(desde.getTime()));
+            }
+            if (hasta != null) {
+                stmt.setDate(indice, new java.sql.Date(hasta.getTime()));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getObject(1) != null) {
+                    return new int[]{rs.getInt(1), rs.getInt(2)};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recorre los pedidos archivados junto con sus items, igual que
+     * {@link PedidoDAOImpl#recorrerConItems} sobre las tablas principales. Los
+     * items llevan la fecha de su pedido, así que el filtro de fechas también
+     * descarta las particiones de items fuera del rango.
+     *
+     * @param conn Conexión activa a la base de datos. No debe usarse para otras
+     * consultas mientras dure el recorrido.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @param idDesde ID de pedido mínimo (inclusive).
+     * @param idHasta ID de pedido máximo (inclusive).
+     * @param procesador Receptor de las filas.
+     * @throws Exception Si ocurre un error durante la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            PedidoDAO.FilaPedidoItem procesador) throws Exception {
+        StringBuilder sql = new StringBuilder("""
+        SELECT pe.id, pe.fecha, pe.total, ip.id AS item_id, ip.producto_id, ip.cantidad, ip.subtotal
+        FROM pedidos_historico pe
+        LEFT JOIN items_pedido_historico ip ON ip.pedido_id = pe.id AND ip.fecha = pe.fecha
+        WHERE pe.id BETWEEN ? AND ?
+        """);
+        if (desde != null) {
+            sql.append(" AND pe.fecha >= ?");
+        }
+        if (hasta != null) {
+            sql.append(" AND pe.fecha < ?");
+        }
+        sql.append(" ORDER BY pe.id, ip.id");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TAMANO_FETCH_CURSOR);
+            int indice = 1;
+            stmt.setInt(indice++, idDesde);
+            stmt.setInt(indice++, idHasta);
+            if (desde != null) {
+                stmt.setDate(indice++, new java.sql.Date(desde.getTime()));
+            }
+            if (hasta != null) {
+                stmt.setDate(indice, new java.sql.Date(hasta.getTime()));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3)), rs.getInt(4), rs.getInt(5),
+                            rs.getInt(6), Dinero.desdeDecimal(rs.getBigDecimal(7)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Agrega a cada tabla histórica una partición por cada año que puede
+     * recibir pedidos anteriores al corte, desde el año siguiente a su última
+     * partición hasta el del día anterior al corte. Una tabla que todavía no
+     * tiene particiones anuales empieza por el año del pedido más viejo, entre
+     * los de la tabla principal y los que ya guarda su {@code pmax}. Las
+     * particiones nuevas se separan de {@code pmax}, así que la
+     * reorganización solo copia las filas que {@code pmax} ya tenía.
+     *
+     * @param conn Conexión activa a la base de datos, fuera de una
+     * transacción: en MySQL las sentencias DDL confirman implícitamente.
+     * @param corte Fecha de corte del archivado (exclusiva).
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public void prepararParticiones(Connection conn, java.util.Date corte) throws Exception {
+        int hastaAnio = new java.sql.Date(corte.getTime()).toLocalDate().minusDays(1).getYear();
+        for (String tabla : TABLAS_HISTORICO) {
+            int desdeAnio;
+            int ultimoAnio = ultimoAnioParticionado(conn, tabla);
+            if (ultimoAnio > 0) {
+                desdeAnio = ultimoAnio + 1;
+            } else {
+                java.sql.Date masVieja = fechaMasVieja(conn, tabla);
+                if (masVieja == null) {
+                    // Sin pedidos no hay años que separar de pmax
+                    continue;
+                }
+                desdeAnio = masVieja.toLocalDate().getYear();
+            }
+            if (desdeAnio > hastaAnio) {
+                continue;
+            }
+
+            StringBuilder sql = new StringBuilder("ALTER TABLE ").append(tabla).append(" REORGANIZE PARTITION pmax INTO (");
+            for (int anio = desdeAnio; anio <= hastaAnio; anio++) {
+                sql.append("PARTITION p").append(anio).append(" VALUES LESS THAN ('")
+                        .append(LocalDate.of(anio + 1, 1, 1)).append("'), ");
+            }
+            sql.append("PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Devuelve el año de la última partición anual de una tabla histórica, o 0
+     * si solo tiene {@code pmax}.
+     */
+    private int ultimoAnioParticionado(Connection conn, String tabla) throws Exception {
+        String sql = """
+        SELECT partition_name FROM information_schema.partitions
+        WHERE table_schema = DATABASE() AND table_name = ? AND partition_name <> 'pmax'
+        """;
+        int ultimo = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tabla);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ultimo = Math.max(ultimo, Integer.parseInt(rs.getString(1).substring(1)));
+                }
+            }
+        }
+        return ultimo;
+    }
+
+    /**
+     * Fecha del pedido más viejo entre la tabla principal y una tabla
+     * histórica, o null si ninguna de las dos tiene filas.
+     */
+    private java.sql.Date fechaMasVieja(Connection conn, String tabla) throws Exception {
+        java.sql.Date masVieja = null;
+        for (String origen : new String[]{"pedidos", tabla}) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT MIN(fecha) FROM " + origen);
+                    ResultSet rs = stmt.executeQuery()) {
+                java.sql.Date fecha = rs.next() ? rs.getDate(1) : null;
+                if (fecha != null && (masVieja == null || fecha.before(masVieja))) {
+                    masVieja = fecha;
+                }
+            }
+        }
+        return masVieja;
+    }
+
+    /**
+     * Lee y bloquea el siguiente lote de pedidos anteriores al corte, en orden
+     * de (fecha, id) a partir del último pedido movido. Se recorre el índice
+     * {@code idx_pedidos_fecha} desde esa clave, sin pasar por las filas
+     * borradas en los lotes anteriores que InnoDB todavía no purgó.
+     *
+     * @param conn Conexión activa a la base de datos, dentro de una
+     * transacción.
+     * @param corte Fecha de corte (exclusiva).
+     * @param desde Avance del trabajo, o null para empezar desde el principio.
+     * @param limite Cantidad máxima de pedidos.
+     * @return Pedidos del lote; vacía si no quedan pedidos para archivar.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public List<Pedido> siguienteLote(Connection conn, java.util.Date corte, Avance desde, int limite) throws Exception {
+        boolean continuar = desde != null && desde.getUltimaFecha() != null;
+        String sql = "SELECT id, fecha, total FROM pedidos WHERE fecha < ?"
+                + (continuar ? " AND (fecha > ? OR (fecha = ? AND id > ?))" : "")
+                + " ORDER BY fecha, id LIMIT ? FOR UPDATE";
+        List<Pedido> lote = new ArrayList<>(limite);
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int indice = 1;
+            stmt.setDate(indice++, new java.sql.Date(corte.getTime()));
+            if (continuar) {
+                stmt.setDate(indice++, desde.getUltimaFecha());
+                stmt.setDate(indice++, desde.getUltimaFecha());
+                stmt.setInt(indice++, desde.getUltimoId());
+            }
+            stmt.setInt(indice, limite);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lote.add(new Pedido(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3))));
+                }
+            }
+        }
+        return lote;
+    }
+
+    /**
+     * Copia los pedidos del lote y sus items a las tablas históricas y los
+     * borra de las tablas principales, con cuatro sentencias por lote.
+     *
+     * @param conn Conexión activa a la base de datos, en la misma transacción
+     * en que se bloqueó el lote.
+     * @param lote Pedidos devueltos por {@link #siguienteLote}.
+     * @return Cantidad de items movidos.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public int mover(Connection conn, List<Pedido> lote) throws Exception {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        StringBuilder ids = new StringBuilder("(");
+        for (int i = 0; i < lote.size(); i++) {
+            ids.append(i == 0 ? "?" : ", ?");
+        }
+        ids.append(")");
+
+        ejecutar(conn, "INSERT INTO pedidos_historico (id, fecha, total) SELECT id, fecha, total FROM pedidos WHERE id IN " + ids, lote);
+        int items = ejecutar(conn, """
+        INSERT INTO items_pedido_historico (id, pedido_id, producto_id, cantidad, subtotal, fecha)
+        SELECT ip.id, ip.pedido_id, ip.producto_id, ip.cantidad, ip.subtotal, pe.fecha
+        FROM items_pedido ip
+        JOIN pedidos pe ON pe.id = ip.pedido_id
+        WHERE ip.pedido_id IN\s""" + ids, lote);
+        ejecutar(conn, "DELETE FROM items_pedido WHERE pedido_id IN " + ids, lote);
+        ejecutar(conn, "DELETE FROM pedidos WHERE id IN " + ids, lote);
+        return items;
+    }
+
+    private int ejecutar(Connection conn, String sql, List<Pedido> lote) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < lote.size(); i++) {
+                stmt.setInt(i + 1, lote.get(i).getId());
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Lee el avance guardado de un trabajo de archivado.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param trabajo Nombre del trabajo.
+     * @return Avance guardado o null si el trabajo nunca avanzó.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public Avance leerAvance(Connection conn, String trabajo) throws Exception {
+        String sql = "SELECT corte, ultima_fecha, ultimo_id FROM archivado_avance WHERE trabajo = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, trabajo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Avance(rs.getDate(1), rs.getDate(2), rs.getInt(3));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Guarda el avance de un trabajo de archivado. Se llama en la misma
+     * transacción que mueve el lote, así que el avance nunca queda adelante ni
+     * atrás de los datos.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param trabajo Nombre del trabajo.
+     * @param avance Avance a guardar.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public void guardarAvance(Connection conn, String trabajo, Avance avance) throws Exception {
+        String sql = """
+        INSERT INTO archivado_avance (trabajo, corte, ultima_fecha, ultimo_id) VALUES (?, ?, ?, ?) AS nuevo
+        ON DUPLICATE KEY UPDATE corte = nuevo.corte, ultima_fecha = nuevo.ultima_fecha, ultimo_id = nuevo.ultimo_id
+        """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, trabajo);
+            stmt.setDate(2, avance.getCorte());
+            stmt.setDate(3, avance.getUltimaFecha());
+            stmt.setInt(4, avance.getUltimoId());
+            stmt.executeUpdate();
+        }
+    }
+}
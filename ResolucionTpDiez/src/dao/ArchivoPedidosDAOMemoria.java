@@ -0,0 +1,121 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import model.ItemPedido;
+import model.Pedido;
+
+/**
+ * Implementación de {@link ArchivoPedidosDAO} sobre la base en memoria. El
+ * histórico no se particiona: {@link #prepararParticiones} no hace nada.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class ArchivoPedidosDAOMemoria implements ArchivoPedidosDAO {
+
+    private static final Comparator<Pedido> POR_FECHA_E_ID = Comparator.comparing(Pedido::getFecha)
+            .thenComparingInt(Pedido::getId);
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public Pedido leer(int id, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            Pedido pedido = almacen.pedidosArchivados.get(id);
+            return pedido == null ? null : new Pedido(pedido.getId(), pedido.getFecha(), pedido.getTotal());
+        }
+    }
+
+    @Override
+    public List<ItemPedido> listarItems(Connection conn, int pedidoId) throws Exception {
+        List<ItemPedido> items = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int id : almacen.itemsArchivadosPorPedido.buscar(pedidoId)) {
+                items.add(ItemPedidoDAOMemoria.copiar(almacen.itemsArchivados.get(id)));
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception {
+        return PedidoDAOMemoria.rangoIds(SesionMemoria.de(conn), almacen.pedidosArchivados, desde, hasta);
+    }
+
+    @Override
+    public void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            PedidoDAO.FilaPedidoItem procesador) throws Exception {
+        PedidoDAOMemoria.recorrerConItems(SesionMemoria.de(conn), almacen.pedidosArchivados, almacen.itemsArchivados,
+                almacen.itemsArchivadosPorPedido, desde, hasta, idDesde, idHasta, procesador);
+    }
+
+    @Override
+    public void prepararParticiones(Connection conn, java.util.Date corte) throws Exception {
+    }
+
+    @Override
+    public List<Pedido> siguienteLote(Connection conn, java.util.Date corte, Avance desde, int limite) throws Exception {
+        java.sql.Date dia = AlmacenMemoria.dia(corte);
+        Pedido ultimo = desde == null || desde.getUltimaFecha() == null ? null
+                : new Pedido(desde.getUltimoId(), desde.getUltimaFecha(), 0);
+        List<Pedido> candidatos = new ArrayList<>();
+        // Con el bloqueo de escritura, como el FOR UPDATE de MySQL
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(true)) {
+            for (Pedido pedido : almacen.pedidos.todas()) {
+                if (pedido.getFecha().before(dia) && (ultimo == null || POR_FECHA_E_ID.compare(pedido, ultimo) > 0)) {
+                    candidatos.add(pedido);
+                }
+            }
+        }
+        candidatos.sort(POR_FECHA_E_ID);
+        List<Pedido> lote = new ArrayList<>(Math.min(limite, candidatos.size()));
+        for (Pedido pedido : candidatos.subList(0, Math.min(limite, candidatos.size()))) {
+            lote.add(new Pedido(pedido.getId(), pedido.getFecha(), pedido.getTotal()));
+        }
+        return lote;
+    }
+
+    @Override
+    public int mover(Connection conn, List<Pedido> lote) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        int movidos = 0;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (Pedido copia : lote) {
+                Pedido pedido = almacen.pedidos.get(copia.getId());
+                if (pedido == null) {
+                    continue;
+                }
+                for (int idItem : almacen.itemsPorPedido.buscar(pedido.getId())) {
+                    almacen.itemsArchivados.insertar(sesion, idItem, almacen.items.eliminar(sesion, idItem));
+                    movidos++;
+                }
+                almacen.pedidosArchivados.insertar(sesion, pedido.getId(), almacen.pedidos.eliminar(sesion, pedido.getId()));
+            }
+        }
+        return movidos;
+    }
+
+    @Override
+    public Avance leerAvance(Connection conn, String trabajo) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return almacen.avancesArchivado.get(trabajo);
+        }
+    }
+
+    @Override
+    public void guardarAvance(Connection conn, String trabajo, Avance avance) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Avance anterior = almacen.avancesArchivado.put(trabajo, avance);
+            sesion.registrarDeshacer(() -> {
+                if (anterior == null) {
+                    almacen.avancesArchivado.remove(trabajo);
+                } else {
+                    almacen.avancesArchivado.put(trabajo, anterior);
+                }
+            });
+        }
+    }
+}
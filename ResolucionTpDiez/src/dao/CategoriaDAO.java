@@ -0,0 +1,20 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.List;
+import model.Categoria;
+
+/**
+ * Operaciones de acceso a categorías. La documentación de cada método está en
+ * {@link CategoriaDAOImpl}; {@link CategoriaDAOMemoria} replica su
+ * comportamiento sin base de datos.
+ */
+public interface CategoriaDAO extends GenericDAO<Categoria> {
+
+    boolean actualizarCambios(Categoria categoria, Connection conn) throws Exception;
+
+    boolean existeNombre(String nombre, Connection conn) throws Exception;
+
+    List<Categoria> listarActualizadasDesde(Connection conn, Timestamp desde) throws Exception;
+}
@@ -5,11 +5,20 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import model.Categoria;
 
-public class CategoriaDAOImpl implements GenericDAO<Categoria> {
+public class CategoriaDAOImpl implements CategoriaDAO {
+
+    // Columnas en el orden de los campos Categoria.CAMPO_*
+    private static final ActualizacionParcial ACTUALIZACION_PARCIAL = new ActualizacionParcial("categorias",
+            new String[]{"nombre", "descripcion"}, null, "id = ?");
+
+    // Internado opcional del nombre, compartido con las consultas de productos
+    // y pedidos que lo leen
+    private static final InternadorCadenas CATEGORIAS = InternadorCadenas.columna("categoria");
 
     /**
      * Inserta una nueva categoría en la base de datos.
@@ -32,6 +41,7 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
                     categoria.setId(rs.getInt(1));
                 }
             }
+            categoria.limpiarCambios();
         }
     }
 
@@ -51,7 +61,7 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return new Categoria(rs.getInt("id"), rs.getString("nombre"), rs.getString("descripcion"));
+                    return new Categoria(rs.getInt("id"), CATEGORIAS.internar(rs.getString("nombre")), rs.getString("descripcion"));
                 }
             }
         }
@@ -74,7 +84,7 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
         try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
-                Categoria c = new Categoria(rs.getInt("id"), rs.getString("nombre"), rs.getString("descripcion"));
+                Categoria c = new Categoria(rs.getInt("id"), CATEGORIAS.internar(rs.getString("nombre")), rs.getString("descripcion"));
                 lista.add(c);
             }
         }
@@ -99,6 +109,48 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
             stmt.setString(2, categoria.getDescripcion());
             stmt.setInt(3, categoria.getId());
             stmt.executeUpdate();
+            categoria.limpiarCambios();
+        }
+    }
+
+    /**
+     * Actualiza solo las columnas modificadas de la categoría. Si no hay
+     * cambios no se ejecuta ninguna sentencia.
+     *
+     * @param categoria Categoría con cambios registrados (debe incluir el id).
+     * @param conn Conexión activa a la base de datos.
+     * @return true si se ejecutó la actualización, false si no había cambios.
+     * @throws Exception Si ocurre algún error durante la ejecución SQL.
+     */
+    @Override
+    public boolean actualizarCambios(Categoria categoria, Connection conn) throws Exception {
+        int mascara = categoria.getCamposModificados();
+        if (mascara == 0) {
+            return false;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(ACTUALIZACION_PARCIAL.sql(mascara))) {
+            int indice = 1;
+            for (int campo = 0; campo < ACTUALIZACION_PARCIAL.cantidadCampos(); campo++) {
+                if (categoria.estaModificado(campo)) {
+                    asignarCampo(stmt, indice++, campo, categoria);
+                }
+            }
+            stmt.setInt(indice, categoria.getId());
+            stmt.executeUpdate();
+            categoria.limpiarCambios();
+        }
+        return true;
+    }
+
+    /**
+     * Asigna el valor de un campo de la categoría al parámetro indicado.
+     */
+    private void asignarCampo(PreparedStatement stmt, int indice, int campo, Categoria categoria) throws Exception {
+        switch (campo) {
+            case Categoria.CAMPO_NOMBRE -> stmt.setString(indice, categoria.getNombre());
+            case Categoria.CAMPO_DESCRIPCION -> stmt.setString(indice, categoria.getDescripcion());
+            default -> throw new IllegalArgumentException("Campo desconocido: " + campo);
         }
     }
 
@@ -119,6 +171,31 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
         }
     }
 
+    /**
+     * Lista las categorías creadas o modificadas desde un momento dado, según
+     * la columna {@code actualizado_en}. No informa las categorías eliminadas.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param desde Momento desde el cual buscar, inclusive.
+     * @return Categorías modificadas.
+     * @throws Exception Si ocurre algún error durante la ejecución SQL.
+     */
+    @Override
+    public List<Categoria> listarActualizadasDesde(Connection conn, Timestamp desde) throws Exception {
+        List<Categoria> lista = new ArrayList<>();
+        String sql = "SELECT * FROM categorias WHERE actualizado_en >= ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, desde);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lista.add(new Categoria(rs.getInt("id"), CATEGORIAS.internar(rs.getString("nombre")), rs.getString("descripcion")));
+                }
+            }
+        }
+        return lista;
+    }
+
     /**
      * Verifica si ya existe una categoría con el nombre especificado.
      *
@@ -128,6 +205,7 @@ public class CategoriaDAOImpl implements GenericDAO<Categoria> {
      * contrario.
      * @throws Exception Si ocurre algún error durante la ejecución SQL.
      */
+    @Override
     public boolean existeNombre(String nombre, Connection conn) throws Exception {
         String sql = "SELECT COUNT(*) FROM categorias WHERE nombre = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -0,0 +1,104 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import model.Categoria;
+
+/**
+ * Implementación de {@link CategoriaDAO} sobre la base en memoria. La
+ * conexión debe ser de la base en memoria.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class CategoriaDAOMemoria implements CategoriaDAO {
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public void crear(Categoria categoria, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            int id = almacen.categorias.siguienteId();
+            almacen.categorias.insertar(sesion, id, new Categoria(id, categoria.getNombre(), categoria.getDescripcion()));
+            categoria.setId(id);
+        }
+        categoria.limpiarCambios();
+    }
+
+    @Override
+    public Categoria leer(int id, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return copiar(almacen.categorias.get(id));
+        }
+    }
+
+    @Override
+    public List<Categoria> listar(Connection conn) throws Exception {
+        List<Categoria> lista = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (Categoria categoria : almacen.categorias.todas()) {
+                lista.add(copiar(categoria));
+            }
+        }
+        return lista;
+    }
+
+    @Override
+    public void actualizar(Categoria categoria, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.categorias.reemplazar(sesion, categoria.getId(),
+                    new Categoria(categoria.getId(), categoria.getNombre(), categoria.getDescripcion()));
+        }
+        categoria.limpiarCambios();
+    }
+
+    @Override
+    public boolean actualizarCambios(Categoria categoria, Connection conn) throws Exception {
+        if (!categoria.tieneCambios()) {
+            return false;
+        }
+
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Categoria actual = almacen.categorias.get(categoria.getId());
+            if (actual != null) {
+                almacen.categorias.reemplazar(sesion, actual.getId(), new Categoria(actual.getId(),
+                        categoria.estaModificado(Categoria.CAMPO_NOMBRE) ? categoria.getNombre() : actual.getNombre(),
+                        categoria.estaModificado(Categoria.CAMPO_DESCRIPCION) ? categoria.getDescripcion() : actual.getDescripcion()));
+            }
+        }
+        categoria.limpiarCambios();
+        return true;
+    }
+
+    @Override
+    public void eliminar(int id, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.categorias.eliminar(sesion, id);
+        }
+    }
+
+    @Override
+    public boolean existeNombre(String nombre, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return almacen.categoriasPorNombre.buscar(nombre) != null;
+        }
+    }
+
+    /**
+     * La base en memoria no registra cuándo se modificó cada fila: devuelve
+     * todas las categorías, que incluyen a las modificadas.
+     */
+    @Override
+    public List<Categoria> listarActualizadasDesde(Connection conn, Timestamp desde) throws Exception {
+        return listar(conn);
+    }
+
+    private static Categoria copiar(Categoria categoria) {
+        return categoria == null ? null : new Categoria(categoria.getId(), categoria.getNombre(), categoria.getDescripcion());
+    }
+}
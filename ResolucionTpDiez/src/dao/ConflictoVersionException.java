@@ -0,0 +1,34 @@
+package dao;
+
+/**
+ * Se lanza cuando una actualización condicionada por versión no modifica
+ * ninguna fila porque otra transacción cambió el registro antes.
+ */
+public class ConflictoVersionException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entidad;
+    private final int id;
+    private final int versionEsperada;
+
+    public ConflictoVersionException(String entidad, int id, int versionEsperada) {
+        super("El registro " + entidad + " con ID " + id + " fue modificado por otra operación (versión esperada "
+                + versionEsperada + ").");
+        this.entidad = entidad;
+        this.id = id;
+        this.versionEsperada = versionEsperada;
+    }
+
+    public String getEntidad() {
+        return entidad;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getVersionEsperada() {
+        return versionEsperada;
+    }
+}
@@ -0,0 +1,53 @@
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de enteros guardados ordenados en un arreglo. Los IDs nuevos suelen
+ * ser los mayores, así que agregar al final no mueve elementos.
+ */
+final class ConjuntoEnteros {
+
+    private int[] elementos = new int[4];
+    private int tamano;
+
+    boolean add(int valor) {
+        int i = Arrays.binarySearch(elementos, 0, tamano, valor);
+        if (i >= 0) {
+            return false;
+        }
+        int posicion = -i - 1;
+        if (tamano == elementos.length) {
+            elementos = Arrays.copyOf(elementos, tamano * 2);
+        }
+        System.arraycopy(elementos, posicion, elementos, posicion + 1, tamano - posicion);
+        elementos[posicion] = valor;
+        tamano++;
+        return true;
+    }
+
+    boolean remove(int valor) {
+        int i = Arrays.binarySearch(elementos, 0, tamano, valor);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(elementos, i + 1, elementos, i, tamano - i - 1);
+        tamano--;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return tamano == 0;
+    }
+
+    int size() {
+        return tamano;
+    }
+
+    /**
+     * Devuelve una copia de los elementos en orden.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(elementos, tamano);
+    }
+}
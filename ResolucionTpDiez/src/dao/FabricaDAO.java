@@ -0,0 +1,37 @@
+package dao;
+
+import config.DatabaseConnection;
+
+/**
+ * Crea los DAOs del backend configurado en {@link DatabaseConnection}: los
+ * de MySQL o los de la base en memoria.
+ */
+public final class FabricaDAO {
+
+    private FabricaDAO() {
+    }
+
+    public static CategoriaDAO categorias() {
+        return DatabaseConnection.enMemoria() ? new CategoriaDAOMemoria() : new CategoriaDAOImpl();
+    }
+
+    public static ProductoDAO productos() {
+        return DatabaseConnection.enMemoria() ? new ProductoDAOMemoria() : new ProductoDAOImpl();
+    }
+
+    public static PedidoDAO pedidos() {
+        return DatabaseConnection.enMemoria() ? new PedidoDAOMemoria() : new PedidoDAOImpl();
+    }
+
+    public static ItemPedidoDAO itemsPedido() {
+        return DatabaseConnection.enMemoria() ? new ItemPedidoDAOMemoria() : new ItemPedidoDAOImpl();
+    }
+
+    public static IdempotenciaDAO idempotencia() {
+        return DatabaseConnection.enMemoria() ? new IdempotenciaDAOMemoria() : new IdempotenciaDAOImpl();
+    }
+
+    public static ArchivoPedidosDAO archivoPedidos() {
+        return DatabaseConnection.enMemoria() ? new ArchivoPedidosDAOMemoria() : new ArchivoPedidosDAOImpl();
+    }
+}
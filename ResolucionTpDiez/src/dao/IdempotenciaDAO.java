@@ -0,0 +1,17 @@
+package dao;
+
+import java.sql.Connection;
+
+/**
+ * Operaciones sobre las claves de idempotencia de pedidos. La documentación de
+ * cada método está en {@link IdempotenciaDAOImpl}; {@link IdempotenciaDAOMemoria}
+ * replica su comportamiento sin base de datos.
+ */
+public interface IdempotenciaDAO {
+
+    boolean reservar(String clave, Connection conn) throws Exception;
+
+    void asociarPedido(String clave, int pedidoId, Connection conn) throws Exception;
+
+    Integer buscarPedidoId(String clave, Connection conn) throws Exception;
+}
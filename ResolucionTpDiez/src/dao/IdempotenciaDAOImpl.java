@@ -0,0 +1,83 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * Acceso a la tabla de claves de idempotencia de pedidos.
+ *
+ * La tabla asocia cada clave enviada por el cliente con el pedido que generó:
+ * {@code pedidos_idempotencia (clave VARCHAR(64) PRIMARY KEY, pedido_id INT)}.
+ * La clave primaria es la que garantiza que dos envíos concurrentes con la
+ * misma clave no puedan crear dos pedidos.
+ */
+public class IdempotenciaDAOImpl implements IdempotenciaDAO {
+
+    /**
+     * Reserva una clave de idempotencia dentro de la transacción actual. Si
+     * otra transacción ya la insertó (aunque todavía no haya confirmado), la
+     * base de datos bloquea esta inserción hasta que la otra termine.
+     *
+     * @param clave Clave de idempotencia enviada por el cliente.
+     * @param conn Conexión activa a la base de datos.
+     * @return true si la clave se reservó, false si ya existía.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public boolean reservar(String clave, Connection conn) throws Exception {
+        String sql = "INSERT INTO pedidos_idempotencia (clave, pedido_id) VALUES (?, NULL)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, clave);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLIntegrityConstraintViolationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Asocia una clave ya reservada con el pedido creado.
+     *
+     * @param clave Clave de idempotencia reservada.
+     * @param pedidoId ID del pedido creado.
+     * @param conn Conexión activa a la base de datos.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public void asociarPedido(String clave, int pedidoId, Connection conn) throws Exception {
+        String sql = "UPDATE pedidos_idempotencia SET pedido_id = ? WHERE clave = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, pedidoId);
+            stmt.setString(2, clave);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Busca el pedido asociado a una clave de idempotencia.
+     *
+     * @param clave Clave de idempotencia.
+     * @param conn Conexión activa a la base de datos.
+     * @return ID del pedido o null si la clave no existe o aún no tiene pedido.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public Integer buscarPedidoId(String clave, Connection conn) throws Exception {
+        String sql = "SELECT pedido_id FROM pedidos_idempotencia WHERE clave = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, clave);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int pedidoId = rs.getInt(1);
+                    return rs.wasNull() ? null : pedidoId;
+                }
+            }
+        }
+        return null;
+    }
+}
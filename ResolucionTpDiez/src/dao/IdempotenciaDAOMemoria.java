@@ -0,0 +1,46 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+
+/**
+ * Implementación de {@link IdempotenciaDAO} sobre la base en memoria. Las
+ * transacciones de escritura de la base en memoria son de un único escritor,
+ * así que dos reservas de la misma clave no pueden cruzarse.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class IdempotenciaDAOMemoria implements IdempotenciaDAO {
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public boolean reservar(String clave, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            if (almacen.clavesIdempotencia.containsKey(clave)) {
+                return false;
+            }
+            almacen.clavesIdempotencia.put(clave, null);
+            sesion.registrarDeshacer(() -> almacen.clavesIdempotencia.remove(clave));
+            return true;
+        }
+    }
+
+    @Override
+    public void asociarPedido(String clave, int pedidoId, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            if (almacen.clavesIdempotencia.containsKey(clave)) {
+                Integer anterior = almacen.clavesIdempotencia.put(clave, pedidoId);
+                sesion.registrarDeshacer(() -> almacen.clavesIdempotencia.put(clave, anterior));
+            }
+        }
+    }
+
+    @Override
+    public Integer buscarPedidoId(String clave, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return almacen.clavesIdempotencia.get(clave);
+        }
+    }
+}
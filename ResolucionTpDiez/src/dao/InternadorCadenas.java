@@ -0,0 +1,115 @@
+package dao;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tabla de internado para columnas de texto con pocos valores distintos, como
+ * el nombre de la categoría: los mapeadores de filas la usan para que las
+ * filas con el mismo valor compartan un único String en lugar de uno nuevo por
+ * fila.
+ *
+ * La tabla es de tamaño fijo y con pérdida: cada valor tiene un solo lugar,
+ * elegido por su hash, y si otro valor lo ocupa se reemplaza. No crece ni
+ * retiene más de su capacidad, no usa candados, y un valor que no entra se
+ * devuelve tal como llegó. Con pocos valores distintos casi todos los accesos
+ * aciertan.
+ *
+ * Es opcional por columna: la propiedad del sistema {@code dao.internar}
+ * lista las columnas separadas por coma (por ejemplo
+ * {@code categoria,descripcion}) y {@code dao.internar.capacidad} fija los
+ * lugares de cada tabla (por defecto 4096). Las columnas no listadas usan una
+ * tabla inactiva que no hace nada.
+ */
+public final class InternadorCadenas {
+
+    private static final Set<String> COLUMNAS_ACTIVAS = columnasActivas(System.getProperty("dao.internar", ""));
+    private static final int CAPACIDAD = Integer.getInteger("dao.internar.capacidad", 4096);
+    private static final InternadorCadenas INACTIVO = new InternadorCadenas(0);
+    private static final Map<String, InternadorCadenas> POR_COLUMNA = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<String> lugares;
+    private final int mascara;
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    /**
+     * Crea una tabla independiente.
+     *
+     * @param capacidad Lugares de la tabla; se redondea a la potencia de 2
+     * siguiente. Con 0 la tabla queda inactiva.
+     */
+    public InternadorCadenas(int capacidad) {
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("La capacidad no puede ser negativa.");
+        }
+        int tamano = capacidad == 0 ? 0 : Integer.highestOneBit(Math.max(1, capacidad - 1)) << 1;
+        this.lugares = tamano == 0 ? null : new AtomicReferenceArray<>(tamano);
+        this.mascara = tamano - 1;
+    }
+
+    /**
+     * Devuelve la tabla compartida de una columna lógica, activa solo si la
+     * columna figura en {@code dao.internar}. Los mapeadores que leen la misma
+     * columna en distintas consultas comparten la tabla.
+     *
+     * @param columna Nombre lógico de la columna, por ejemplo
+     * {@code categoria}.
+     * @return Tabla de la columna, o una inactiva.
+     */
+    public static InternadorCadenas columna(String columna) {
+        if (!COLUMNAS_ACTIVAS.contains(columna)) {
+            return INACTIVO;
+        }
+        return POR_COLUMNA.computeIfAbsent(columna, c -> new InternadorCadenas(CAPACIDAD));
+    }
+
+    /**
+     * Devuelve el String guardado igual al valor, o guarda el valor si no lo
+     * hay.
+     *
+     * @param valor Valor leído; puede ser null.
+     * @return Un String igual al valor, posiblemente compartido.
+     */
+    public String internar(String valor) {
+        if (lugares == null || valor == null) {
+            return valor;
+        }
+        int hash = valor.hashCode();
+        int lugar = (hash ^ (hash >>> 16)) & mascara;
+        String guardado = lugares.get(lugar);
+        if (guardado != null && guardado.equals(valor)) {
+            aciertos.increment();
+            return guardado;
+        }
+        fallos.increment();
+        lugares.lazySet(lugar, valor);
+        return valor;
+    }
+
+    public boolean isActivo() {
+        return lugares != null;
+    }
+
+    public long getAciertos() {
+        return aciertos.sum();
+    }
+
+    public long getFallos() {
+        return fallos.sum();
+    }
+
+    private static Set<String> columnasActivas(String propiedad) {
+        Set<String> columnas = new HashSet<>();
+        for (String columna : propiedad.split(",")) {
+            if (!columna.isBlank()) {
+                columnas.add(columna.trim());
+            }
+        }
+        return columnas;
+    }
+}
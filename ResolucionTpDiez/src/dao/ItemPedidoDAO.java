@@ -0,0 +1,31 @@
+package dao;
+
+import java.sql.Connection;
+import java.util.List;
+import model.ItemPedido;
+
+/**
+ * Operaciones de acceso a items de pedido. La documentación de cada método
+ * está en {@link ItemPedidoDAOImpl}; {@link ItemPedidoDAOMemoria} replica su
+ * comportamiento sin base de datos.
+ */
+public interface ItemPedidoDAO extends GenericDAO<ItemPedido> {
+
+    /**
+     * Recibe cada item del recorrido por rango de IDs, con la indicación de
+     * si su pedido existe.
+     */
+    @FunctionalInterface
+    interface FilaItem {
+
+        void procesar(int itemId, int pedidoId, int productoId, boolean pedidoExiste) throws Exception;
+    }
+
+    boolean actualizarCambios(ItemPedido item, Connection conn) throws Exception;
+
+    List<ItemPedido> listarPorPedido(Connection conn, int pedidoId) throws Exception;
+
+    int[] rangoIds(Connection conn) throws Exception;
+
+    void recorrerConPedido(Connection conn, int idDesde, int idHasta, FilaItem procesador) throws Exception;
+}
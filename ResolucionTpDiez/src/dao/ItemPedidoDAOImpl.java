@@ -1,11 +1,19 @@
 package dao;
 
 import java.util.List;
+import model.Dinero;
 import model.ItemPedido;
 import java.sql.*;
 import java.util.*;
 
-public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
+public class ItemPedidoDAOImpl implements ItemPedidoDAO {
+
+    // Columnas en el orden de los campos ItemPedido.CAMPO_*
+    private static final ActualizacionParcial ACTUALIZACION_PARCIAL = new ActualizacionParcial("items_pedido",
+            new String[]{"pedido_id", "producto_id", "cantidad", "subtotal"}, null, "id = ?");
+
+    // Filas que trae el driver por viaje en los recorridos con cursor
+    private static final int TAMANO_FETCH_CURSOR = 1000;
 
     /**
      * Inserta un nuevo item de pedido en la base de datos.
@@ -21,7 +29,7 @@ public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
             stmt.setInt(1, item.getIdPedido());
             stmt.setInt(2, item.getIdProducto());
             stmt.setInt(3, item.getCantidad());
-            stmt.setDouble(4, item.getSubtotal());
+            stmt.setBigDecimal(4, Dinero.aDecimal(item.getSubtotal()));
             stmt.executeUpdate();
 
             try (ResultSet rs = stmt.getGeneratedKeys()) {
@@ -29,6 +37,7 @@ public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
                     item.setId(rs.getInt(1));
                 }
             }
+            item.limpiarCambios();
         }
     }
 
@@ -49,10 +58,10 @@ public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
                 if (rs.next()) {
                     return new ItemPedido(
                             rs.getInt("id"),
-                            rs.getInt("id_pedido"),
-                            rs.getInt("id_producto"),
+                            rs.getInt("pedido_id"),
+                            rs.getInt("producto_id"),
                             rs.getInt("cantidad"),
-                            rs.getDouble("subtotal")
+                            Dinero.desdeDecimal(rs.getBigDecimal("subtotal"))
                     );
                 }
             }
@@ -70,15 +79,15 @@ public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
     @Override
     public List<ItemPedido> listar(Connection conn) throws Exception {
         List<ItemPedido> lista = new ArrayList<>();
-        String sql = "SELECT * FROM item_pedido";
+        String sql = "SELECT * FROM items_pedido";
         try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 lista.add(new ItemPedido(
                         rs.getInt("id"),
-                        rs.getInt("id_pedido"),
-                        rs.getInt("id_producto"),
+                        rs.getInt("pedido_id"),
+                        rs.getInt("producto_id"),
                         rs.getInt("cantidad"),
-                        rs.getDouble("subtotal")
+                        Dinero.desdeDecimal(rs.getBigDecimal("subtotal"))
                 ));
             }
         }
@@ -94,14 +103,140 @@ public class ItemPedidoDAOImpl implements GenericDAO<ItemPedido> {
      */
     @Override
     public void actualizar(ItemPedido item, Connection conn) throws Exception {
-        String sql = "UPDATE items_pedido SET id_pedido = ?, id_producto = ?, cantidad = ?, subtotal = ? WHERE id = ?";
+        String sql = "UPDATE items_pedido SET pedido_id = ?, producto_id = ?, cantidad = ?, subtotal = ? WHERE id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, item.getIdPedido());
             stmt.setInt(2, item.getIdProducto());
             stmt.setInt(3, item.getCantidad());
-            stmt.setDouble(4, item.getSubtotal());
+            stmt.setBigDecimal(4, Dinero.aDecimal(item.getSubtotal()));
             stmt.setInt(5, item.getId());
             stmt.executeUpdate();
+            item.limpiarCambios();
+        }
+    }
+
+    /**
+     * Actualiza solo las columnas modificadas del item de pedido. Si no hay
+     * cambios no se ejecuta ninguna sentencia.
+     *
+     * @param item Item de pedido con cambios registrados (debe incluir el id).
+     * @param conn Conexión activa a la base de datos.
+     * @return true si se ejecutó la actualización, false si no había cambios.
+     * @throws Exception Si ocurre algún error durante la ejecución SQL.
+     */
+    @Override
+    public boolean actualizarCambios(ItemPedido item, Connection conn) throws Exception {
+        int mascara = item.getCamposModificados();
+        if (mascara == 0) {
+            return false;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(ACTUALIZACION_PARCIAL.sql(mascara))) {
+            int indice = 1;
+            for (int campo = 0; campo < ACTUALIZACION_PARCIAL.cantidadCampos(); campo++) {
+                if (item.estaModificado(campo)) {
+                    asignarCampo(stmt, indice++, campo, item);
+                }
+            }
+            stmt.setInt(indice, item.getId());
+            stmt.executeUpdate();
+            item.limpiarCambios();
+        }
+        return true;
+    }
+
+    /**
+     * Lista los items de un pedido.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param pedidoId ID del pedido.
+     * @return Items del pedido ordenados por ID.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public List<ItemPedido> listarPorPedido(Connection conn, int pedidoId) throws Exception {
+        List<ItemPedido> lista = new ArrayList<>();
+        String sql = "SELECT * FROM items_pedido WHERE pedido_id = ? ORDER BY id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, pedidoId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lista.add(new ItemPedido(
+                            rs.getInt("id"),
+                            rs.getInt("pedido_id"),
+                            rs.getInt("producto_id"),
+                            rs.getInt("cantidad"),
+                            Dinero.desdeDecimal(rs.getBigDecimal("subtotal"))
+                    ));
+                }
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Devuelve el menor y el mayor ID de item, para dividir los recorridos en
+     * rangos.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @return {ID mínimo, ID máximo}, o null si no hay items.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public int[] rangoIds(Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MIN(id), MAX(id) FROM items_pedido");
+                ResultSet rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getObject(1) != null) {
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recorre los items de un rango de IDs, en orden, indicando si su pedido
+     * existe. Usa un cursor del servidor y solo lee las columnas de IDs, así
+     * que la memoria no depende del tamaño del rango.
+     *
+     * @param conn Conexión activa a la base de datos. No debe usarse para otras
+     * consultas mientras dure el recorrido.
+     * @param idDesde ID de item mínimo (inclusive).
+     * @param idHasta ID de item máximo (inclusive).
+     * @param procesador Receptor de las filas.
+     * @throws Exception Si ocurre un error durante la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void recorrerConPedido(Connection conn, int idDesde, int idHasta, FilaItem procesador) throws Exception {
+        String sql = """
+        SELECT ip.id, ip.pedido_id, ip.producto_id, pe.id IS NOT NULL
+        FROM items_pedido ip
+        LEFT JOIN pedidos pe ON pe.id = ip.pedido_id
+        WHERE ip.id BETWEEN ? AND ?
+        ORDER BY ip.id
+        """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TAMANO_FETCH_CURSOR);
+            stmt.setInt(1, idDesde);
+            stmt.setInt(2, idHasta);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getBoolean(4));
+                }
+            }
+        }
+    }
+
+    /**
+     * Asigna el valor de un campo del item de pedido al parámetro indicado.
+     */
+    private void asignarCampo(PreparedStatement stmt, int indice, int campo, ItemPedido item) throws Exception {
+        switch (campo) {
+            case ItemPedido.CAMPO_ID_PEDIDO -> stmt.setInt(indice, item.getIdPedido());
+            case ItemPedido.CAMPO_ID_PRODUCTO -> stmt.setInt(indice, item.getIdProducto());
+            case ItemPedido.CAMPO_CANTIDAD -> stmt.setInt(indice, item.getCantidad());
+            case ItemPedido.CAMPO_SUBTOTAL -> stmt.setBigDecimal(indice, Dinero.aDecimal(item.getSubtotal()));
+            default -> throw new IllegalArgumentException("Campo desconocido: " + campo);
         }
     }
 
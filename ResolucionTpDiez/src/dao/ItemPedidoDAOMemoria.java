@@ -0,0 +1,163 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import model.ItemPedido;
+
+/**
+ * Implementación de {@link ItemPedidoDAO} sobre la base en memoria. La
+ * conexión debe ser de la base en memoria.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class ItemPedidoDAOMemoria implements ItemPedidoDAO {
+
+    // Items que se copian por bloque en los recorridos
+    private static final int TAMANO_BLOQUE = 1000;
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public void crear(ItemPedido item, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            int id = almacen.items.siguienteId();
+            almacen.items.insertar(sesion, id, fila(id, item));
+            item.setId(id);
+        }
+        item.limpiarCambios();
+    }
+
+    @Override
+    public ItemPedido leer(int id, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return copiar(almacen.items.get(id));
+        }
+    }
+
+    @Override
+    public List<ItemPedido> listar(Connection conn) throws Exception {
+        List<ItemPedido> lista = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (ItemPedido item : almacen.items.todas()) {
+                lista.add(copiar(item));
+            }
+        }
+        return lista;
+    }
+
+    @Override
+    public void actualizar(ItemPedido item, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.items.reemplazar(sesion, item.getId(), fila(item.getId(), item));
+        }
+        item.limpiarCambios();
+    }
+
+    @Override
+    public boolean actualizarCambios(ItemPedido item, Connection conn) throws Exception {
+        if (!item.tieneCambios()) {
+            return false;
+        }
+
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            ItemPedido actual = almacen.items.get(item.getId());
+            if (actual != null) {
+                almacen.items.reemplazar(sesion, actual.getId(), new ItemPedido(actual.getId(),
+                        item.estaModificado(ItemPedido.CAMPO_ID_PEDIDO) ? item.getIdPedido() : actual.getIdPedido(),
+                        item.estaModificado(ItemPedido.CAMPO_ID_PRODUCTO) ? item.getIdProducto() : actual.getIdProducto(),
+                        item.estaModificado(ItemPedido.CAMPO_CANTIDAD) ? item.getCantidad() : actual.getCantidad(),
+                        item.estaModificado(ItemPedido.CAMPO_SUBTOTAL) ? item.getSubtotal() : actual.getSubtotal()));
+            }
+        }
+        item.limpiarCambios();
+        return true;
+    }
+
+    @Override
+    public List<ItemPedido> listarPorPedido(Connection conn, int pedidoId) throws Exception {
+        List<ItemPedido> lista = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int id : almacen.itemsPorPedido.buscar(pedidoId)) {
+                lista.add(copiar(almacen.items.get(id)));
+            }
+        }
+        return lista;
+    }
+
+    @Override
+    public int[] rangoIds(Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            int[] ids = almacen.items.idsOrdenados();
+            return ids.length == 0 ? null : new int[]{ids[0], ids[ids.length - 1]};
+        }
+    }
+
+    @Override
+    public void recorrerConPedido(Connection conn, int idDesde, int idHasta, FilaItem procesador) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        int[] ids;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(false)) {
+            ids = almacen.items.idsOrdenados();
+        }
+        int inicio = posicion(ids, idDesde);
+        int fin = posicion(ids, idHasta + 1L);
+
+        // {itemId, pedidoId, productoId, 1 si el pedido existe}
+        int[][] bloque = new int[TAMANO_BLOQUE][4];
+        for (int desdeBloque = inicio; desdeBloque < fin; desdeBloque += TAMANO_BLOQUE) {
+            int filas = 0;
+            try (SesionMemoria.Acceso acceso = sesion.acceder(false)) {
+                for (int i = desdeBloque; i < Math.min(fin, desdeBloque + TAMANO_BLOQUE); i++) {
+                    ItemPedido item = almacen.items.get(ids[i]);
+                    if (item == null) {
+                        continue;
+                    }
+                    int[] fila = bloque[filas++];
+                    fila[0] = item.getId();
+                    fila[1] = item.getIdPedido();
+                    fila[2] = item.getIdProducto();
+                    fila[3] = almacen.pedidos.get(item.getIdPedido()) != null ? 1 : 0;
+                }
+            }
+
+            for (int i = 0; i < filas; i++) {
+                int[] fila = bloque[i];
+                procesador.procesar(fila[0], fila[1], fila[2], fila[3] == 1);
+            }
+        }
+    }
+
+    @Override
+    public void eliminar(int id, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.items.eliminar(sesion, id);
+        }
+    }
+
+    /**
+     * Posición del primer ID mayor o igual al valor.
+     */
+    private static int posicion(int[] ids, long valor) {
+        if (valor > Integer.MAX_VALUE) {
+            return ids.length;
+        }
+        int i = Arrays.binarySearch(ids, (int) valor);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static ItemPedido fila(int id, ItemPedido item) {
+        return new ItemPedido(id, item.getIdPedido(), item.getIdProducto(), item.getCantidad(),
+                item.getSubtotal());
+    }
+
+    static ItemPedido copiar(ItemPedido item) {
+        return item == null ? null : new ItemPedido(item.getId(), item.getIdPedido(), item.getIdProducto(),
+                item.getCantidad(), item.getSubtotal());
+    }
+}
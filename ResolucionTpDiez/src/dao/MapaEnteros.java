@@ -0,0 +1,172 @@
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de claves int a objetos con direccionamiento abierto, sin crear un
+ * Integer ni un nodo por entrada. Los valores no pueden ser null.
+ *
+ * No es seguro para hilos por sí mismo: en la base en memoria lo protege el
+ * bloqueo de lectura y escritura de la base.
+ *
+ * @param <V> Tipo de los valores.
+ */
+final class MapaEnteros<V> {
+
+    /**
+     * Recibe cada entrada del mapa.
+     */
+    @FunctionalInterface
+    interface Entrada<V> {
+
+        void aceptar(int clave, V valor);
+    }
+
+    private int[] claves;
+    private Object[] valores;
+    private int tamano;
+
+    MapaEnteros() {
+        this(16);
+    }
+
+    MapaEnteros(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(4, capacidadInicial) * 2 - 1);
+        claves = new int[capacidad];
+        valores = new Object[capacidad];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int clave) {
+        int mascara = claves.length - 1;
+        for (int i = posicion(clave, mascara); valores[i] != null; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                return (V) valores[i];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(int clave) {
+        return get(clave) != null;
+    }
+
+    /**
+     * Asocia un valor a la clave.
+     *
+     * @return Valor anterior o null.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int clave, V valor) {
+        if (valor == null) {
+            throw new IllegalArgumentException("El valor no puede ser null.");
+        }
+        int mascara = claves.length - 1;
+        int i = posicion(clave, mascara);
+        for (; valores[i] != null; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                V anterior = (V) valores[i];
+                valores[i] = valor;
+                return anterior;
+            }
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        // Factor de carga máximo 0,5: las búsquedas recorren pocas posiciones
+        if (++tamano * 2 > claves.length) {
+            redimensionar(claves.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Quita la clave. Las entradas que siguen en la misma secuencia se
+     * corren hacia atrás para no dejar marcas de borrado.
+     *
+     * @return Valor quitado o null.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int clave) {
+        int mascara = claves.length - 1;
+        int i = posicion(clave, mascara);
+        while (valores[i] != null && claves[i] != clave) {
+            i = (i + 1) & mascara;
+        }
+        if (valores[i] == null) {
+            return null;
+        }
+        V quitado = (V) valores[i];
+
+        int libre = i;
+        for (int j = (i + 1) & mascara; valores[j] != null; j = (j + 1) & mascara) {
+            int ideal = posicion(claves[j], mascara);
+            // La entrada j puede ocupar el hueco si su posición ideal no está
+            // entre el hueco y j (en orden circular)
+            if (((j - ideal) & mascara) >= ((j - libre) & mascara)) {
+                claves[libre] = claves[j];
+                valores[libre] = valores[j];
+                libre = j;
+            }
+        }
+        valores[libre] = null;
+        tamano--;
+        return quitado;
+    }
+
+    int size() {
+        return tamano;
+    }
+
+    void clear() {
+        Arrays.fill(valores, null);
+        tamano = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Entrada<V> entrada) {
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] != null) {
+                entrada.aceptar(claves[i], (V) valores[i]);
+            }
+        }
+    }
+
+    /**
+     * Devuelve las claves ordenadas de menor a mayor.
+     */
+    int[] clavesOrdenadas() {
+        int[] resultado = new int[tamano];
+        int n = 0;
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] != null) {
+                resultado[n++] = claves[i];
+            }
+        }
+        Arrays.sort(resultado);
+        return resultado;
+    }
+
+    private void redimensionar(int capacidad) {
+        int[] clavesAnteriores = claves;
+        Object[] valoresAnteriores = valores;
+        claves = new int[capacidad];
+        valores = new Object[capacidad];
+        int mascara = capacidad - 1;
+        for (int i = 0; i < valoresAnteriores.length; i++) {
+            if (valoresAnteriores[i] != null) {
+                int j = posicion(clavesAnteriores[i], mascara);
+                while (valores[j] != null) {
+                    j = (j + 1) & mascara;
+                }
+                claves[j] = clavesAnteriores[i];
+                valores[j] = valoresAnteriores[i];
+            }
+        }
+    }
+
+    private static int posicion(int clave, int mascara) {
+        // Mezcla los bits para que IDs consecutivos no queden agrupados
+        int h = clave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+}
@@ -0,0 +1,48 @@
+package dao;
+
+import java.sql.Connection;
+import model.DetallePedido;
+import model.Pedido;
+
+/**
+ * Operaciones de acceso a pedidos. La documentación de cada método está en
+ * {@link PedidoDAOImpl}; {@link PedidoDAOMemoria} replica su comportamiento sin
+ * base de datos.
+ */
+public interface PedidoDAO extends GenericDAO<Pedido> {
+
+    /**
+     * Recibe cada fila del recorrido de pedidos con sus items. Para un pedido
+     * sin items, itemId vale 0. Los importes van en centavos.
+     */
+    @FunctionalInterface
+    interface FilaPedidoItem {
+
+        void procesar(int pedidoId, java.sql.Date fecha, long total, int itemId, int productoId,
+                int cantidad, long subtotal) throws Exception;
+    }
+
+    /**
+     * Recibe el total de pedidos de un día, en centavos.
+     */
+    @FunctionalInterface
+    interface TotalDiario {
+
+        void procesar(java.sql.Date dia, int cantidadPedidos, long total) throws Exception;
+    }
+
+    boolean actualizarCambios(Pedido pedido, Connection conn) throws Exception;
+
+    void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            FilaPedidoItem procesador) throws Exception;
+
+    void recorrerPorFechas(Connection conn, java.util.Date desde, java.util.Date hasta,
+            Procesador<Pedido> procesador) throws Exception;
+
+    void totalesPorDia(Connection conn, java.util.Date desde, java.util.Date hasta,
+            TotalDiario procesador) throws Exception;
+
+    int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception;
+
+    DetallePedido leerDetalle(Connection conn, int pedidoId) throws Exception;
+}
@@ -3,9 +3,21 @@ package dao;
 import config.DatabaseConnection;
 import java.sql.*;
 import java.util.*;
+import model.DetallePedido;
+import model.Dinero;
 import model.Pedido;
 
-public class PedidoDAOImpl implements GenericDAO<Pedido> {
+public class PedidoDAOImpl implements PedidoDAO {
+
+    // Filas que el cursor del servidor entrega por viaje en los recorridos
+    private static final int TAMANO_FETCH_CURSOR = 1000;
+
+    // Internado opcional del nombre de la categoría en el detalle
+    private static final InternadorCadenas CATEGORIAS = InternadorCadenas.columna("categoria");
+
+    // Columnas en el orden de los campos Pedido.CAMPO_*
+    private static final ActualizacionParcial ACTUALIZACION_PARCIAL = new ActualizacionParcial("pedidos",
+            new String[]{"fecha", "total"}, null, "id = ?");
 
     /**
      * Inserta un nuevo pedido en la base de datos.
@@ -20,7 +32,7 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
 
         try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setDate(1, new java.sql.Date(pedido.getFecha().getTime()));
-            stmt.setDouble(2, pedido.getTotal());
+            stmt.setBigDecimal(2, Dinero.aDecimal(pedido.getTotal()));
 
             stmt.executeUpdate();
 
@@ -29,6 +41,7 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
                     pedido.setId(rs.getInt(1));
                 }
             }
+            pedido.limpiarCambios();
         }
     }
 
@@ -51,7 +64,7 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
                     return new Pedido(
                             rs.getInt("id"),
                             rs.getDate("fecha"),
-                            rs.getDouble("total")
+                            Dinero.desdeDecimal(rs.getBigDecimal("total"))
                     );
                 }
             }
@@ -76,7 +89,7 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
                 pedidos.add(new Pedido(
                         rs.getInt("id"),
                         rs.getDate("fecha"),
-                        rs.getDouble("total")
+                        Dinero.desdeDecimal(rs.getBigDecimal("total"))
                 ));
             }
         }
@@ -96,15 +109,57 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setDate(1, new java.sql.Date(pedido.getFecha().getTime()));
-            stmt.setDouble(2, pedido.getTotal());
+            stmt.setBigDecimal(2, Dinero.aDecimal(pedido.getTotal()));
             stmt.setInt(3, pedido.getId());
 
             stmt.executeUpdate();
+            pedido.limpiarCambios();
+        }
+    }
+
+    /**
+     * Actualiza solo las columnas modificadas del pedido. Si no hay
+     * cambios no se ejecuta ninguna sentencia.
+     *
+     * @param pedido Pedido con cambios registrados (debe incluir el id).
+     * @param conn Conexión activa a la base de datos.
+     * @return true si se ejecutó la actualización, false si no había cambios.
+     * @throws Exception Si ocurre algún error durante la ejecución SQL.
+     */
+    @Override
+    public boolean actualizarCambios(Pedido pedido, Connection conn) throws Exception {
+        int mascara = pedido.getCamposModificados();
+        if (mascara == 0) {
+            return false;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(ACTUALIZACION_PARCIAL.sql(mascara))) {
+            int indice = 1;
+            for (int campo = 0; campo < ACTUALIZACION_PARCIAL.cantidadCampos(); campo++) {
+                if (pedido.estaModificado(campo)) {
+                    asignarCampo(stmt, indice++, campo, pedido);
+                }
+            }
+            stmt.setInt(indice, pedido.getId());
+            stmt.executeUpdate();
+            pedido.limpiarCambios();
+        }
+        return true;
+    }
+
+    /**
+     * Asigna el valor de un campo del pedido al parámetro indicado.
+     */
+    private void asignarCampo(PreparedStatement stmt, int indice, int campo, Pedido pedido) throws Exception {
+        switch (campo) {
+            case Pedido.CAMPO_FECHA -> stmt.setDate(indice, new java.sql.Date(pedido.getFecha().getTime()));
+            case Pedido.CAMPO_TOTAL -> stmt.setBigDecimal(indice, Dinero.aDecimal(pedido.getTotal()));
+            default -> throw new IllegalArgumentException("Campo desconocido: " + campo);
         }
     }
 
     /**
-     * Elimina un pedido de la base de datos por su ID.
+     * Elimina un pedido de la base de datos por su ID, junto con sus items.
      *
      * @param id Identificador del pedido a eliminar.
      * @param conn Conexión activa a la base de datos.
@@ -112,52 +167,245 @@ public class PedidoDAOImpl implements GenericDAO<Pedido> {
      */
     @Override
     public void eliminar(int id, Connection conn) throws Exception {
-        String sql = "DELETE FROM pedidos WHERE id = ?";
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        // Sin clave foránea, los items se borran primero para no dejarlos
+        // huérfanos
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM items_pedido WHERE pedido_id = ?")) {
+            stmt.setInt(1, id);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM pedidos WHERE id = ?")) {
             stmt.setInt(1, id);
             stmt.executeUpdate();
         }
     }
 
     /**
-     * Muestra el detalle de un pedido por consola, incluyendo producto,
-     * categoría, cantidad y subtotal.
+     * Recorre los pedidos junto con sus items en una única consulta ordenada
+     * por pedido e item, usando un cursor del servidor para que la memoria no
+     * dependa de la cantidad de filas. Las filas se entregan a medida que
+     * llegan, sin armar listas intermedias. Solo lee la tabla principal: los
+     * pedidos archivados se recorren con
+     * {@link ArchivoPedidosDAOImpl#recorrerConItems}.
+     *
+     * @param conn Conexión activa a la base de datos. No debe usarse para otras
+     * consultas mientras dure el recorrido.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @param idDesde ID de pedido mínimo (inclusive).
+     * @param idHasta ID de pedido máximo (inclusive).
+     * @param procesador Receptor de las filas.
+     * @throws Exception Si ocurre un error durante la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            FilaPedidoItem procesador) throws Exception {
+        StringBuilder sql = new StringBuilder("""
+        SELECT pe.id, pe.fecha, pe.total, ip.id AS item_id, ip.producto_id, ip.cantidad, ip.subtotal
+        FROM pedidos pe
+        LEFT JOIN items_pedido ip ON ip.pedido_id = pe.id
+        WHERE pe.id BETWEEN ? AND ?
+        """);
+        if (desde != null) {
+            sql.append(" AND pe.fecha >= ?");
+        }
+        if (hasta != null) {
+            sql.append(" AND pe.fecha < ?");
+        }
+        sql.append(" ORDER BY pe.id, ip.id");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TAMANO_FETCH_CURSOR);
+            int indice = 1;
+            stmt.setInt(indice++, idDesde);
+            stmt.setInt(indice++, idHasta);
+            if (desde != null) {
+                stmt.setDate(indice++, new java.sql.Date(desde.getTime()));
+            }
+            if (hasta != null) {
+                stmt.setDate(indice, new java.sql.Date(hasta.getTime()));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3)), rs.getInt(4), rs.getInt(5),
+                            rs.getInt(6), Dinero.desdeDecimal(rs.getBigDecimal(7)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre los pedidos con fecha dentro de un rango, ordenados por fecha e
+     * ID, usando un cursor del servidor. Incluye los pedidos archivados: cada
+     * tabla se lee solo por índice ({@code idx_pedidos_fecha (fecha, id,
+     * total)} en la principal y las particiones de los años del rango en el
+     * histórico) y el servidor ordena la unión.
+     *
+     * @param conn Conexión activa a la base de datos. No debe usarse para otras
+     * consultas mientras dure el recorrido.
+     * @param desde Fecha mínima (inclusive).
+     * @param hasta Fecha máxima (exclusiva).
+     * @param procesador Receptor de los pedidos.
+     * @throws Exception Si ocurre un error durante la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void recorrerPorFechas(Connection conn, java.util.Date desde, java.util.Date hasta,
+            Procesador<Pedido> procesador) throws Exception {
+        String sql = """
+        SELECT id, fecha, total FROM pedidos WHERE fecha >= ? AND fecha < ?
+        UNION ALL
+        SELECT id, fecha, total FROM pedidos_historico WHERE fecha >= ? AND fecha < ?
+        ORDER BY fecha, id
+        """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TAMANO_FETCH_CURSOR);
+            asignarRangoDoble(stmt, desde, hasta);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(new Pedido(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre la cantidad de pedidos y el total vendido por día dentro de un
+     * rango, en orden de fecha, incluidos los pedidos archivados. Un ID está
+     * en una sola de las dos tablas, así que la unión no cuenta dos veces un
+     * pedido.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param desde Fecha mínima (inclusive).
+     * @param hasta Fecha máxima (exclusiva).
+     * @param procesador Receptor de los totales diarios.
+     * @throws Exception Si ocurre un error durante la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void totalesPorDia(Connection conn, java.util.Date desde, java.util.Date hasta,
+            TotalDiario procesador) throws Exception {
+        String sql = """
+        SELECT fecha, COUNT(*), SUM(total) FROM (
+            SELECT fecha, total FROM pedidos WHERE fecha >= ? AND fecha < ?
+            UNION ALL
+            SELECT fecha, total FROM pedidos_historico WHERE fecha >= ? AND fecha < ?
+        ) t
+        GROUP BY fecha ORDER BY fecha
+        """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TAMANO_FETCH_CURSOR);
+            asignarRangoDoble(stmt, desde, hasta);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(rs.getDate(1), rs.getInt(2), Dinero.desdeDecimal(rs.getBigDecimal(3)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Asigna el rango de fechas a las dos mitades de una unión entre la tabla
+     * principal y el histórico.
+     */
+    private static void asignarRangoDoble(PreparedStatement stmt, java.util.Date desde, java.util.Date hasta) throws Exception {
+        java.sql.Date inicio = new java.sql.Date(desde.getTime());
+        java.sql.Date fin = new java.sql.Date(hasta.getTime());
+        stmt.setDate(1, inicio);
+        stmt.setDate(2, fin);
+        stmt.setDate(3, inicio);
+        stmt.setDate(4, fin);
+    }
+
+    /**
+     * Obtiene el menor y el mayor ID de los pedidos en un rango de fechas, sin
+     * contar los archivados ({@link ArchivoPedidosDAOImpl#rangoIds}).
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @return Arreglo {minimo, maximo} o null si no hay pedidos.
+     * @throws Exception Si ocurre un error durante la ejecución SQL.
+     */
+    @Override
+    public int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT MIN(id), MAX(id) FROM pedidos WHERE 1 = 1");
+        if (desde != null) {
+            sql.append(" AND fecha >= ?");
+        }
+        if (hasta != null) {
+            sql.append(" AND fecha < ?");
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            if (desde != null) {
+                stmt.setDate(indice++, new java.sql.Date(desde.getTime()));
+            }
+            if (hasta != null) {
+                stmt.setDate(indice, new java.sql.Date(hasta.getTime()));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getObject(1) != null) {
+                    return new int[]{rs.getInt(1), rs.getInt(2)};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lee el detalle de un pedido con una sola consulta: sus datos y, por cada
+     * item, el nombre del producto y de su categoría. Se omiten los items cuyo
+     * producto no existe o no tiene categoría. El resultado queda completo en
+     * memoria, así que se puede mostrar después de liberar la conexión.
      *
      * @param conn Conexión activa a la base de datos.
-     * @param pedidoId ID del pedido cuyo detalle se quiere mostrar.
+     * @param pedidoId ID del pedido.
+     * @return Detalle del pedido, o null si no existe.
      * @throws SQLException Si ocurre un error durante la ejecución SQL.
      */
-    public void mostrarDetallePedido(Connection conn, int pedidoId) throws SQLException {
+    @Override
+    public DetallePedido leerDetalle(Connection conn, int pedidoId) throws SQLException {
         String sql = """
-        SELECT 
+        SELECT
+            pe.id,
+            pe.fecha,
+            pe.total,
             p.nombre AS producto,
             c.nombre AS categoria,
             ip.cantidad,
             ip.subtotal
         FROM pedidos pe
-        JOIN items_pedido ip ON pe.id = ip.pedido_id
-        JOIN productos p ON ip.producto_id = p.id
-        JOIN categorias c ON p.id_categoria = c.id
+        LEFT JOIN (items_pedido ip
+            JOIN productos p ON ip.producto_id = p.id
+            JOIN categorias c ON p.id_categoria = c.id) ON pe.id = ip.pedido_id
         WHERE pe.id = ?
+        ORDER BY ip.id
     """;
 
+        DetallePedido detalle = null;
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, pedidoId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
+                    if (detalle == null) {
+                        detalle = new DetallePedido(rs.getInt(1), rs.getDate(2), Dinero.desdeDecimal(rs.getBigDecimal(3)));
+                    }
                     String producto = rs.getString("producto");
-                    String categoria = rs.getString("categoria");
-                    int cantidad = rs.getInt("cantidad");
-                    double subtotal = rs.getDouble("subtotal");
-
-                    System.out.println("Producto=" + producto
-                            + ", Categoría=" + categoria
-                            + ", Cantidad=" + cantidad
-                            + ", Subtotal=" + subtotal);
+                    if (producto != null) {
+                        detalle.agregarLinea(new DetallePedido.Linea(producto, CATEGORIAS.internar(rs.getString("categoria")),
+                                rs.getInt("cantidad"), Dinero.desdeDecimal(rs.getBigDecimal("subtotal"))));
+                    }
                 }
             }
         }
+        return detalle;
     }
 
 }
@@ -0,0 +1,269 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import model.Categoria;
+import model.DetallePedido;
+import model.Dinero;
+import model.ItemPedido;
+import model.Pedido;
+import model.Producto;
+
+/**
+ * Implementación de {@link PedidoDAO} sobre la base en memoria. La conexión
+ * debe ser de la base en memoria.
+ *
+ * Los recorridos copian las filas con el bloqueo de lectura tomado y llaman al
+ * procesador después de liberarlo, para no frenar a las escrituras mientras el
+ * procesador trabaja. {@link #recorrerConItems} avanza de a bloques de
+ * pedidos, así que la memoria usada no depende del tamaño del resultado.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class PedidoDAOMemoria implements PedidoDAO {
+
+    // Pedidos que se copian por bloque en los recorridos
+    private static final int TAMANO_BLOQUE = 1000;
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public void crear(Pedido pedido, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            int id = almacen.pedidos.siguienteId();
+            almacen.pedidos.insertar(sesion, id, fila(id, pedido));
+            pedido.setId(id);
+        }
+        pedido.limpiarCambios();
+    }
+
+    @Override
+    public Pedido leer(int id, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return copiar(almacen.pedidos.get(id));
+        }
+    }
+
+    @Override
+    public List<Pedido> listar(Connection conn) throws Exception {
+        List<Pedido> pedidos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (Pedido pedido : almacen.pedidos.todas()) {
+                pedidos.add(copiar(pedido));
+            }
+        }
+        return pedidos;
+    }
+
+    @Override
+    public void actualizar(Pedido pedido, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.pedidos.reemplazar(sesion, pedido.getId(), fila(pedido.getId(), pedido));
+        }
+        pedido.limpiarCambios();
+    }
+
+    @Override
+    public boolean actualizarCambios(Pedido pedido, Connection conn) throws Exception {
+        if (!pedido.tieneCambios()) {
+            return false;
+        }
+
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Pedido actual = almacen.pedidos.get(pedido.getId());
+            if (actual != null) {
+                almacen.pedidos.reemplazar(sesion, actual.getId(), new Pedido(actual.getId(),
+                        pedido.estaModificado(Pedido.CAMPO_FECHA) ? AlmacenMemoria.dia(pedido.getFecha()) : actual.getFecha(),
+                        pedido.estaModificado(Pedido.CAMPO_TOTAL) ? pedido.getTotal() : actual.getTotal()));
+            }
+        }
+        pedido.limpiarCambios();
+        return true;
+    }
+
+    @Override
+    public void eliminar(int id, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (int idItem : almacen.itemsPorPedido.buscar(id)) {
+                almacen.items.eliminar(sesion, idItem);
+            }
+            almacen.pedidos.eliminar(sesion, id);
+        }
+    }
+
+    @Override
+    public void recorrerConItems(Connection conn, java.util.Date desde, java.util.Date hasta, int idDesde, int idHasta,
+            FilaPedidoItem procesador) throws Exception {
+        recorrerConItems(SesionMemoria.de(conn), almacen.pedidos, almacen.items, almacen.itemsPorPedido,
+                desde, hasta, idDesde, idHasta, procesador);
+    }
+
+    /**
+     * Recorrido de {@link #recorrerConItems} sobre un par de tablas de pedidos
+     * e items; {@link ArchivoPedidosDAOMemoria} lo usa con las del histórico.
+     */
+    static void recorrerConItems(SesionMemoria sesion, TablaMemoria<Pedido> pedidos, TablaMemoria<ItemPedido> tablaItems,
+            TablaMemoria.IndiceEnteros<ItemPedido> itemsPorPedido, java.util.Date desde, java.util.Date hasta,
+            int idDesde, int idHasta, FilaPedidoItem procesador) throws Exception {
+        int[] ids;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(false)) {
+            ids = pedidos.idsOrdenados();
+        }
+        int inicio = posicion(ids, idDesde);
+        int fin = posicion(ids, idHasta + 1L);
+
+        List<Pedido> bloque = new ArrayList<>(TAMANO_BLOQUE);
+        List<ItemPedido[]> itemsBloque = new ArrayList<>(TAMANO_BLOQUE);
+        for (int desdeBloque = inicio; desdeBloque < fin; desdeBloque += TAMANO_BLOQUE) {
+            bloque.clear();
+            itemsBloque.clear();
+            try (SesionMemoria.Acceso acceso = sesion.acceder(false)) {
+                for (int i = desdeBloque; i < Math.min(fin, desdeBloque + TAMANO_BLOQUE); i++) {
+                    Pedido pedido = pedidos.get(ids[i]);
+                    if (pedido == null || !enRango(pedido, desde, hasta)) {
+                        continue;
+                    }
+                    int[] idsItems = itemsPorPedido.buscar(pedido.getId());
+                    ItemPedido[] items = new ItemPedido[idsItems.length];
+                    for (int j = 0; j < idsItems.length; j++) {
+                        items[j] = ItemPedidoDAOMemoria.copiar(tablaItems.get(idsItems[j]));
+                    }
+                    bloque.add(copiar(pedido));
+                    itemsBloque.add(items);
+                }
+            }
+
+            for (int i = 0; i < bloque.size(); i++) {
+                Pedido pedido = bloque.get(i);
+                java.sql.Date fecha = (java.sql.Date) pedido.getFecha();
+                ItemPedido[] items = itemsBloque.get(i);
+                if (items.length == 0) {
+                    procesador.procesar(pedido.getId(), fecha, pedido.getTotal(), 0, 0, 0, 0);
+                }
+                for (ItemPedido item : items) {
+                    procesador.procesar(pedido.getId(), fecha, pedido.getTotal(), item.getId(), item.getIdProducto(),
+                            item.getCantidad(), item.getSubtotal());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void recorrerPorFechas(Connection conn, java.util.Date desde, java.util.Date hasta,
+            Procesador<Pedido> procesador) throws Exception {
+        List<Pedido> pedidos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            // Como la unión de PedidoDAOImpl, incluye los pedidos archivados
+            for (TablaMemoria<Pedido> tabla : List.of(almacen.pedidos, almacen.pedidosArchivados)) {
+                tabla.todas().forEach(pedido -> {
+                    if (enRango(pedido, desde, hasta)) {
+                        pedidos.add(copiar(pedido));
+                    }
+                });
+            }
+        }
+        pedidos.sort(Comparator.comparing(Pedido::getFecha).thenComparingInt(Pedido::getId));
+        for (Pedido pedido : pedidos) {
+            procesador.procesar(pedido);
+        }
+    }
+
+    @Override
+    public void totalesPorDia(Connection conn, java.util.Date desde, java.util.Date hasta,
+            TotalDiario procesador) throws Exception {
+        // Día -> {cantidad de pedidos, total}
+        Map<java.sql.Date, long[]> totales = new TreeMap<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (TablaMemoria<Pedido> tabla : List.of(almacen.pedidos, almacen.pedidosArchivados)) {
+                tabla.todas().forEach(pedido -> {
+                    if (enRango(pedido, desde, hasta)) {
+                        long[] total = totales.computeIfAbsent((java.sql.Date) pedido.getFecha(), dia -> new long[2]);
+                        total[0]++;
+                        total[1] = Dinero.sumar(total[1], pedido.getTotal());
+                    }
+                });
+            }
+        }
+        for (Map.Entry<java.sql.Date, long[]> total : totales.entrySet()) {
+            procesador.procesar(total.getKey(), (int) total.getValue()[0], total.getValue()[1]);
+        }
+    }
+
+    @Override
+    public int[] rangoIds(Connection conn, java.util.Date desde, java.util.Date hasta) throws Exception {
+        return rangoIds(SesionMemoria.de(conn), almacen.pedidos, desde, hasta);
+    }
+
+    static int[] rangoIds(SesionMemoria sesion, TablaMemoria<Pedido> pedidos, java.util.Date desde, java.util.Date hasta)
+            throws Exception {
+        int[] rango = null;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(false)) {
+            for (Pedido pedido : pedidos.todas()) {
+                if (!enRango(pedido, desde, hasta)) {
+                    continue;
+                }
+                if (rango == null) {
+                    rango = new int[]{pedido.getId(), pedido.getId()};
+                }
+                rango[1] = pedido.getId();
+            }
+        }
+        return rango;
+    }
+
+    @Override
+    public DetallePedido leerDetalle(Connection conn, int pedidoId) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            Pedido pedido = almacen.pedidos.get(pedidoId);
+            if (pedido == null) {
+                return null;
+            }
+            DetallePedido detalle = new DetallePedido(pedido.getId(), pedido.getFecha(), pedido.getTotal());
+            // Mismas reglas que el JOIN de PedidoDAOImpl: se omiten los items
+            // sin producto o sin categoría
+            for (int id : almacen.itemsPorPedido.buscar(pedidoId)) {
+                ItemPedido item = almacen.items.get(id);
+                Producto producto = almacen.productos.get(item.getIdProducto());
+                Categoria categoria = producto == null ? null : almacen.categorias.get(producto.getIdCategoria());
+                if (categoria != null) {
+                    detalle.agregarLinea(new DetallePedido.Linea(producto.getNombre(), categoria.getNombre(),
+                            item.getCantidad(), item.getSubtotal()));
+                }
+            }
+            return detalle;
+        }
+    }
+
+    private static boolean enRango(Pedido pedido, java.util.Date desde, java.util.Date hasta) {
+        return (desde == null || !pedido.getFecha().before(AlmacenMemoria.dia(desde)))
+                && (hasta == null || pedido.getFecha().before(AlmacenMemoria.dia(hasta)));
+    }
+
+    /**
+     * Posición del primer ID mayor o igual al valor.
+     */
+    private static int posicion(int[] ids, long valor) {
+        if (valor > Integer.MAX_VALUE) {
+            return ids.length;
+        }
+        int i = Arrays.binarySearch(ids, (int) valor);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static Pedido fila(int id, Pedido pedido) {
+        return new Pedido(id, AlmacenMemoria.dia(pedido.getFecha()), pedido.getTotal());
+    }
+
+    private static Pedido copiar(Pedido pedido) {
+        return pedido == null ? null : new Pedido(pedido.getId(), pedido.getFecha(), pedido.getTotal());
+    }
+}
@@ -0,0 +1,12 @@
+package dao;
+
+/**
+ * Recibe, uno por uno, los elementos de un recorrido en streaming.
+ *
+ * @param <T> Tipo de los elementos.
+ */
+@FunctionalInterface
+public interface Procesador<T> {
+
+    void procesar(T elemento) throws Exception;
+}
@@ -0,0 +1,56 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.AjustePrecio;
+import model.Producto;
+
+/**
+ * Operaciones de acceso a productos. La documentación de cada método está en
+ * {@link ProductoDAOImpl}; {@link ProductoDAOMemoria} replica su
+ * comportamiento sin base de datos.
+ */
+public interface ProductoDAO extends GenericDAO<Producto> {
+
+    boolean actualizarCambios(Producto producto, Connection conn) throws Exception;
+
+    List<Producto> listarPorCategoria(Connection conn, int idCategoria) throws Exception;
+
+    boolean existeCategoria(Connection conn, int idCategoria) throws Exception;
+
+    Integer descontarStock(Connection conn, int idProducto, int cantidad) throws Exception;
+
+    void devolverStock(Connection conn, int idProducto, int cantidad) throws Exception;
+
+    Map<Integer, String[]> nombresConCategoria(Connection conn, Set<Integer> idsProducto) throws Exception;
+
+    Set<Integer> categoriasExistentes(Connection conn, Set<Integer> idsCategoria) throws Exception;
+
+    void upsertLote(List<Producto> productos, Connection conn) throws Exception;
+
+    Set<Integer> productosExistentes(Connection conn, Set<Integer> idsProducto) throws Exception;
+
+    List<Producto> listarActualizadosDesde(Connection conn, Timestamp desde) throws Exception;
+
+    Timestamp horaServidor(Connection conn) throws Exception;
+
+    void crearLote(List<Producto> productos, Connection conn) throws Exception;
+
+    Set<String> nombresExistentes(Connection conn, Set<String> nombres) throws Exception;
+
+    List<Producto> listarConStockMenorA(Connection conn, int umbral) throws Exception;
+
+    int[] rangoIds(Connection conn) throws Exception;
+
+    void recorrerConStockMenorA(Connection conn, int umbral, int idDesde, int idHasta,
+            Procesador<Producto> procesador) throws Exception;
+
+    Integer idFinLote(Connection conn, int idCategoria, int despuesDe, int tamano) throws Exception;
+
+    int ajustarPrecios(Connection conn, int idCategoria, int despuesDe, int hasta, AjustePrecio ajuste) throws Exception;
+
+    int ajustarPrecios(Connection conn, Set<Integer> idsProducto, AjustePrecio ajuste) throws Exception;
+}
@@ -2,9 +2,28 @@ package dao;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import model.AjustePrecio;
+import model.Dinero;
 import model.Producto;
 
-public class ProductoDAOImpl implements GenericDAO<Producto> {
+public class ProductoDAOImpl implements ProductoDAO {
+
+    // Columnas en el orden de los campos Producto.CAMPO_*
+    private static final ActualizacionParcial ACTUALIZACION_PARCIAL = new ActualizacionParcial("productos",
+            new String[]{"nombre", "descripcion", "precio", "cantidad", "id_categoria"},
+            "version = version + 1", "id = ? AND version = ?");
+
+    // Filas por sentencia INSERT múltiple en las cargas masivas
+    public static final int FILAS_POR_SENTENCIA = 500;
+
+    // Internado opcional de columnas con pocos valores distintos
+    private static final InternadorCadenas DESCRIPCIONES = InternadorCadenas.columna("descripcion");
+    private static final InternadorCadenas CATEGORIAS = InternadorCadenas.columna("categoria");
+
+    // Sentencias INSERT múltiples por cantidad de filas
+    private static final ConcurrentHashMap<Integer, String> UPSERTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, String> INSERTS = new ConcurrentHashMap<>();
 
     /**
      * Inserta un nuevo producto en la base de datos.
@@ -20,7 +39,7 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
         try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, producto.getNombre());
             stmt.setString(2, producto.getDescripcion());
-            stmt.setDouble(3, producto.getPrecio());
+            stmt.setBigDecimal(3, Dinero.aDecimal(producto.getPrecio()));
             stmt.setInt(4, producto.getCantidad());
             stmt.setInt(5, producto.getIdCategoria());
             stmt.executeUpdate();
@@ -28,9 +47,101 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     producto.setId(rs.getInt(1));
+                    producto.setVersion(0);
+                }
+            }
+            producto.limpiarCambios();
+        }
+    }
+
+    /**
+     * Inserta un lote de productos con sentencias INSERT de varias filas, de
+     * hasta {@link #FILAS_POR_SENTENCIA} filas cada una, y asigna a cada
+     * producto su ID. Se lee cada clave generada, en el orden de las filas de
+     * la sentencia, sin suponer que los IDs son consecutivos: eso depende de
+     * la configuración de autoincremento del servidor.
+     *
+     * @param productos Productos a insertar, ya validados.
+     * @param conn Conexión activa a la base de datos.
+     * @throws Exception Si ocurre un error en la ejecución SQL, por ejemplo un
+     * nombre repetido.
+     */
+    @Override
+    public void crearLote(List<Producto> productos, Connection conn) throws Exception {
+        for (int desde = 0; desde < productos.size(); desde += FILAS_POR_SENTENCIA) {
+            int hasta = Math.min(desde + FILAS_POR_SENTENCIA, productos.size());
+            String sql = INSERTS.computeIfAbsent(hasta - desde, ProductoDAOImpl::sqlInsert);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                int indice = 1;
+                for (int i = desde; i < hasta; i++) {
+                    Producto producto = productos.get(i);
+                    stmt.setString(indice++, producto.getNombre());
+                    stmt.setString(indice++, producto.getDescripcion());
+                    stmt.setBigDecimal(indice++, Dinero.aDecimal(producto.getPrecio()));
+                    stmt.setInt(indice++, producto.getCantidad());
+                    stmt.setInt(indice++, producto.getIdCategoria());
+                }
+                stmt.executeUpdate();
+
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    for (int i = desde; i < hasta; i++) {
+                        if (!rs.next()) {
+                            throw new SQLException("Se esperaban " + (hasta - desde) + " claves generadas y se recibieron "
+                                    + (i - desde) + ".");
+                        }
+                        Producto producto = productos.get(i);
+                        producto.setId(rs.getInt(1));
+                        producto.setVersion(0);
+                        producto.limpiarCambios();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String sqlInsert(int filas) {
+        StringBuilder sql = new StringBuilder("INSERT INTO productos (nombre, descripcion, precio, cantidad, id_categoria) VALUES ");
+        for (int i = 0; i < filas; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Devuelve cuáles de los nombres indicados ya usa algún producto, con una
+     * sola consulta sobre el índice único de nombre.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param nombres Nombres a verificar.
+     * @return Conjunto con los nombres que ya existen.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Set<String> nombresExistentes(Connection conn, Set<String> nombres) throws Exception {
+        Set<String> existentes = new HashSet<>();
+        if (nombres.isEmpty()) {
+            return existentes;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT nombre FROM productos WHERE nombre IN (");
+        for (int i = 0; i < nombres.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            for (String nombre : nombres) {
+                stmt.setString(indice++, nombre);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existentes.add(rs.getString(1));
                 }
             }
         }
+        return existentes;
     }
 
     /**
@@ -47,17 +158,10 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                Integer idCat = rs.getObject("id_categoria") != null ? rs.getInt("id_categoria") : null;
-                return new Producto(
-                        rs.getInt("id"),
-                        rs.getString("nombre"),
-                        rs.getString("descripcion"),
-                        rs.getDouble("precio"),
-                        rs.getInt("cantidad"),
-                        idCat
-                );
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapear(rs);
+                }
             }
         }
         return null;
@@ -78,43 +182,87 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
         try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
-                Integer idCat = rs.getObject("id_categoria") != null ? rs.getInt("id_categoria") : null;
-                productos.add(new Producto(
-                        rs.getInt("id"),
-                        rs.getString("nombre"),
-                        rs.getString("descripcion"),
-                        rs.getDouble("precio"),
-                        rs.getInt("cantidad"),
-                        idCat
-                ));
+                productos.add(mapear(rs));
             }
         }
         return productos;
     }
 
     /**
-     * Actualiza los datos de un producto existente.
+     * Actualiza los datos de un producto existente solo si nadie lo modificó
+     * desde que se leyó. La condición sobre la columna version evita perder
+     * actualizaciones concurrentes sin mantener bloqueos de fila mientras se
+     * ejecuta la lógica de negocio. Si la actualización se aplica, se
+     * incrementa la versión del objeto recibido.
      *
-     * @param producto Producto con los datos actualizados (debe incluir el id).
+     * @param producto Producto con los datos actualizados (debe incluir el id y
+     * la versión leída).
      * @param conn Conexión activa a la base de datos.
+     * @throws ConflictoVersionException Si el producto fue modificado o
+     * eliminado por otra operación.
      * @throws Exception Si ocurre un error en la ejecución SQL.
      */
     @Override
     public void actualizar(Producto producto, Connection conn) throws Exception {
-        String sql = "UPDATE productos SET nombre = ?, descripcion = ?, precio = ?, cantidad = ?, id_categoria = ? WHERE id = ?";
+        String sql = "UPDATE productos SET nombre = ?, descripcion = ?, precio = ?, cantidad = ?, id_categoria = ?, version = version + 1 "
+                + "WHERE id = ? AND version = ?";
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, producto.getNombre());
             stmt.setString(2, producto.getDescripcion());
-            stmt.setDouble(3, producto.getPrecio());
+            stmt.setBigDecimal(3, Dinero.aDecimal(producto.getPrecio()));
             stmt.setInt(4, producto.getCantidad());
             stmt.setInt(5, producto.getIdCategoria());
             stmt.setInt(6, producto.getId());
+            stmt.setInt(7, producto.getVersion());
 
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() == 0) {
+                throw new ConflictoVersionException("producto", producto.getId(), producto.getVersion());
+            }
+            producto.setVersion(producto.getVersion() + 1);
+            producto.limpiarCambios();
         }
     }
 
+    /**
+     * Actualiza solo las columnas modificadas del producto, con la misma
+     * verificación de versión que {@link #actualizar}. Si no hay cambios no se
+     * ejecuta ninguna sentencia.
+     *
+     * @param producto Producto con cambios registrados (debe incluir el id y la
+     * versión leída).
+     * @param conn Conexión activa a la base de datos.
+     * @return true si se ejecutó la actualización, false si no había cambios.
+     * @throws ConflictoVersionException Si el producto fue modificado o
+     * eliminado por otra operación.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public boolean actualizarCambios(Producto producto, Connection conn) throws Exception {
+        int mascara = producto.getCamposModificados();
+        if (mascara == 0) {
+            return false;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(ACTUALIZACION_PARCIAL.sql(mascara))) {
+            int indice = 1;
+            for (int campo = 0; campo < ACTUALIZACION_PARCIAL.cantidadCampos(); campo++) {
+                if (producto.estaModificado(campo)) {
+                    asignarCampo(stmt, indice++, campo, producto);
+                }
+            }
+            stmt.setInt(indice++, producto.getId());
+            stmt.setInt(indice, producto.getVersion());
+
+            if (stmt.executeUpdate() == 0) {
+                throw new ConflictoVersionException("producto", producto.getId(), producto.getVersion());
+            }
+            producto.setVersion(producto.getVersion() + 1);
+            producto.limpiarCambios();
+        }
+        return true;
+    }
+
     /**
      * Elimina un producto de la base de datos por su ID.
      *
@@ -139,6 +287,7 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
      * @return Lista de productos que pertenecen a la categoría dada.
      * @throws Exception Si ocurre un error en la ejecución SQL.
      */
+    @Override
     public List<Producto> listarPorCategoria(Connection conn, int idCategoria) throws Exception {
         String sql = "SELECT * FROM productos WHERE id_categoria = ?";
         List<Producto> productos = new ArrayList<>();
@@ -147,14 +296,7 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
             stmt.setInt(1, idCategoria);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    productos.add(new Producto(
-                            rs.getInt("id"),
-                            rs.getString("nombre"),
-                            rs.getString("descripcion"),
-                            rs.getDouble("precio"),
-                            rs.getInt("cantidad"),
-                            rs.getInt("id_categoria")
-                    ));
+                    productos.add(mapear(rs));
                 }
             }
         }
@@ -169,6 +311,7 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
      * @return true si la categoría existe, false en caso contrario.
      * @throws Exception Si ocurre un error en la ejecución SQL.
      */
+    @Override
     public boolean existeCategoria(Connection conn, int idCategoria) throws Exception {
         String sql = "SELECT COUNT(*) FROM categorias WHERE id = ?";
 
@@ -182,4 +325,465 @@ public class ProductoDAOImpl implements GenericDAO<Producto> {
         }
         return false;
     }
+
+    /**
+     * Descuenta stock de un producto en una sola sentencia, solo si alcanza.
+     * La condición sobre la cantidad reemplaza al control de versión: dos
+     * pedidos simultáneos del mismo producto se ordenan por el bloqueo de la
+     * fila y ninguno falla mientras haya stock para ambos.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idProducto ID del producto.
+     * @param cantidad Cantidad a descontar.
+     * @return Stock que queda, o null si el producto no existe o no tiene
+     * stock suficiente.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Integer descontarStock(Connection conn, int idProducto, int cantidad) throws Exception {
+        String sql = "UPDATE productos SET cantidad = cantidad - ?, version = version + 1 WHERE id = ? AND cantidad >= ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, cantidad);
+            stmt.setInt(2, idProducto);
+            stmt.setInt(3, cantidad);
+            if (stmt.executeUpdate() == 0) {
+                return null;
+            }
+        }
+        // La fila quedó bloqueada por la actualización: nadie la cambia hasta confirmar
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT cantidad FROM productos WHERE id = ?")) {
+            stmt.setInt(1, idProducto);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Devuelve stock a un producto en una sola sentencia, sin leerlo antes. Se
+     * usa para compensar un pedido que no pudo confirmarse.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idProducto ID del producto.
+     * @param cantidad Cantidad a sumar al stock.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public void devolverStock(Connection conn, int idProducto, int cantidad) throws Exception {
+        String sql = "UPDATE productos SET cantidad = cantidad + ?, version = version + 1 WHERE id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, cantidad);
+            stmt.setInt(2, idProducto);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Obtiene el nombre de cada producto y el de su categoría con una sola
+     * consulta.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idsProducto IDs de los productos.
+     * @return Mapa de ID de producto a {nombre, categoría}. La categoría es
+     * null si el producto no tiene una.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Map<Integer, String[]> nombresConCategoria(Connection conn, Set<Integer> idsProducto) throws Exception {
+        Map<Integer, String[]> nombres = new HashMap<>();
+        if (idsProducto.isEmpty()) {
+            return nombres;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT p.id, p.nombre, c.nombre FROM productos p LEFT JOIN categorias c ON c.id = p.id_categoria WHERE p.id IN (");
+        for (int i = 0; i < idsProducto.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            for (int idProducto : idsProducto) {
+                stmt.setInt(indice++, idProducto);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    nombres.put(rs.getInt(1), new String[]{rs.getString(2), CATEGORIAS.internar(rs.getString(3))});
+                }
+            }
+        }
+        return nombres;
+    }
+
+    /**
+     * Devuelve cuáles de las categorías indicadas existen, con una sola
+     * consulta.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idsCategoria IDs de categoría a verificar.
+     * @return Conjunto con los IDs que existen.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Set<Integer> categoriasExistentes(Connection conn, Set<Integer> idsCategoria) throws Exception {
+        Set<Integer> existentes = new HashSet<>();
+        if (idsCategoria.isEmpty()) {
+            return existentes;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT id FROM categorias WHERE id IN (");
+        for (int i = 0; i < idsCategoria.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            for (int idCategoria : idsCategoria) {
+                stmt.setInt(indice++, idCategoria);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existentes.add(rs.getInt(1));
+                }
+            }
+        }
+        return existentes;
+    }
+
+    /**
+     * Devuelve cuáles de los productos indicados existen, con una sola
+     * consulta.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idsProducto IDs de producto a verificar.
+     * @return Conjunto con los IDs que existen.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Set<Integer> productosExistentes(Connection conn, Set<Integer> idsProducto) throws Exception {
+        Set<Integer> existentes = new HashSet<>();
+        if (idsProducto.isEmpty()) {
+            return existentes;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT id FROM productos WHERE id IN (");
+        for (int i = 0; i < idsProducto.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            for (int idProducto : idsProducto) {
+                stmt.setInt(indice++, idProducto);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existentes.add(rs.getInt(1));
+                }
+            }
+        }
+        return existentes;
+    }
+
+    /**
+     * Lista los productos con menos stock que un umbral. Recorre la tabla
+     * completa en el servidor: la usa {@link service.MonitorStockBajo} al
+     * iniciar y después de una importación, no en cada consulta.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param umbral Cantidad mínima de stock (exclusiva).
+     * @return Productos con {@code cantidad < umbral}.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public List<Producto> listarConStockMenorA(Connection conn, int umbral) throws Exception {
+        String sql = "SELECT * FROM productos WHERE cantidad < ?";
+        List<Producto> productos = new ArrayList<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, umbral);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    productos.add(mapear(rs));
+                }
+            }
+        }
+        return productos;
+    }
+
+    /**
+     * Devuelve el menor y el mayor ID de producto, para dividir los recorridos
+     * en rangos.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @return {ID mínimo, ID máximo}, o null si no hay productos.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public int[] rangoIds(Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MIN(id), MAX(id) FROM productos");
+                ResultSet rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getObject(1) != null) {
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recorre los productos de un rango de IDs con menos stock que un umbral,
+     * en orden de ID. A diferencia de {@link #listarConStockMenorA}, recorre
+     * solo el rango por la clave primaria y entrega las filas a medida que
+     * llegan, para revisar la tabla por partes.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param umbral Cantidad mínima de stock (exclusiva).
+     * @param idDesde ID de producto mínimo (inclusive).
+     * @param idHasta ID de producto máximo (inclusive).
+     * @param procesador Receptor de los productos.
+     * @throws Exception Si ocurre un error en la ejecución SQL o en el
+     * procesador.
+     */
+    @Override
+    public void recorrerConStockMenorA(Connection conn, int umbral, int idDesde, int idHasta,
+            Procesador<Producto> procesador) throws Exception {
+        String sql = "SELECT * FROM productos WHERE id BETWEEN ? AND ? AND cantidad < ? ORDER BY id";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, idDesde);
+            stmt.setInt(2, idHasta);
+            stmt.setInt(3, umbral);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procesador.procesar(mapear(rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Devuelve el ID que cierra el próximo lote de productos de una categoría:
+     * el del producto número {@code tamano} después de {@code despuesDe}, en
+     * orden de ID. Se resuelve sobre el índice por categoría, que incluye el
+     * ID, sin leer la tabla.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idCategoria ID de la categoría.
+     * @param despuesDe ID donde terminó el lote anterior (0 al empezar).
+     * @param tamano Cantidad de productos por lote.
+     * @return ID del último producto del lote, o null si quedan menos de
+     * {@code tamano} productos.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Integer idFinLote(Connection conn, int idCategoria, int despuesDe, int tamano) throws Exception {
+        String sql = "SELECT id FROM productos WHERE id_categoria = ? AND id > ? ORDER BY id LIMIT 1 OFFSET ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, idCategoria);
+            stmt.setInt(2, despuesDe);
+            stmt.setInt(3, tamano - 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Ajusta el precio de los productos de una categoría dentro de un rango de
+     * IDs con una sola sentencia, incrementando su versión. El cálculo se hace
+     * en DECIMAL, igual que {@link AjustePrecio#aplicar}. Los productos cuyo
+     * precio quedaría en 0 o menos no se modifican.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idCategoria ID de la categoría.
+     * @param despuesDe ID mínimo (exclusivo).
+     * @param hasta ID máximo (inclusive).
+     * @param ajuste Cambio de precio.
+     * @return Cantidad de productos modificados.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public int ajustarPrecios(Connection conn, int idCategoria, int despuesDe, int hasta, AjustePrecio ajuste) throws Exception {
+        String nuevo = expresionPrecio(ajuste);
+        String sql = "UPDATE productos SET precio = " + nuevo + ", version = version + 1"
+                + " WHERE id_categoria = ? AND id > ? AND id <= ? AND " + nuevo + " > 0";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int indice = asignarAjuste(stmt, 1, ajuste);
+            stmt.setInt(indice++, idCategoria);
+            stmt.setInt(indice++, despuesDe);
+            stmt.setInt(indice++, hasta);
+            asignarAjuste(stmt, indice, ajuste);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Ajusta el precio de los productos indicados con una sola sentencia,
+     * incrementando su versión. Los productos cuyo precio quedaría en 0 o
+     * menos no se modifican.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param idsProducto IDs de los productos.
+     * @param ajuste Cambio de precio.
+     * @return Cantidad de productos modificados.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public int ajustarPrecios(Connection conn, Set<Integer> idsProducto, AjustePrecio ajuste) throws Exception {
+        if (idsProducto.isEmpty()) {
+            return 0;
+        }
+
+        String nuevo = expresionPrecio(ajuste);
+        StringBuilder sql = new StringBuilder("UPDATE productos SET precio = ").append(nuevo)
+                .append(", version = version + 1 WHERE id IN (");
+        for (int i = 0; i < idsProducto.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") AND ").append(nuevo).append(" > 0");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = asignarAjuste(stmt, 1, ajuste);
+            for (int idProducto : idsProducto) {
+                stmt.setInt(indice++, idProducto);
+            }
+            asignarAjuste(stmt, indice, ajuste);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Expresión SQL del precio ajustado, con un parámetro. ROUND sobre DECIMAL
+     * redondea alejándose de cero, igual que {@link AjustePrecio#aplicar}.
+     */
+    private static String expresionPrecio(AjustePrecio ajuste) {
+        return ajuste.isPorcentual() ? "ROUND(precio * ? / " + AjustePrecio.ESCALA_PORCENTAJE + ", 2)" : "(precio + ?)";
+    }
+
+    private static int asignarAjuste(PreparedStatement stmt, int indice, AjustePrecio ajuste) throws SQLException {
+        if (ajuste.isPorcentual()) {
+            stmt.setLong(indice, AjustePrecio.ESCALA_PORCENTAJE + ajuste.getValor());
+        } else {
+            stmt.setBigDecimal(indice, Dinero.aDecimal(ajuste.getValor()));
+        }
+        return indice + 1;
+    }
+
+    /**
+     * Lista los productos creados o modificados desde un momento dado, según
+     * la columna {@code actualizado_en}. No informa los productos eliminados.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @param desde Momento desde el cual buscar, inclusive.
+     * @return Productos modificados.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public List<Producto> listarActualizadosDesde(Connection conn, Timestamp desde) throws Exception {
+        String sql = "SELECT * FROM productos WHERE actualizado_en >= ?";
+        List<Producto> productos = new ArrayList<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, desde);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    productos.add(mapear(rs));
+                }
+            }
+        }
+        return productos;
+    }
+
+    /**
+     * Devuelve la hora actual del servidor de base de datos. Las marcas de
+     * {@code actualizado_en} se comparan siempre contra este reloj y no contra
+     * el de la aplicación.
+     *
+     * @param conn Conexión activa a la base de datos.
+     * @return Hora del servidor, con milisegundos.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public Timestamp horaServidor(Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT CURRENT_TIMESTAMP(3)"); ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    /**
+     * Inserta o actualiza un lote de productos usando el nombre como clave
+     * única. Las filas se envían en sentencias INSERT de varias filas de hasta
+     * {@link #FILAS_POR_SENTENCIA} filas; si el nombre ya existe se actualizan
+     * descripción, precio, cantidad y categoría, y se incrementa la versión.
+     *
+     * @param productos Productos a guardar.
+     * @param conn Conexión activa a la base de datos.
+     * @throws Exception Si ocurre un error en la ejecución SQL.
+     */
+    @Override
+    public void upsertLote(List<Producto> productos, Connection conn) throws Exception {
+        for (int desde = 0; desde < productos.size(); desde += FILAS_POR_SENTENCIA) {
+            int hasta = Math.min(desde + FILAS_POR_SENTENCIA, productos.size());
+            String sql = UPSERTS.computeIfAbsent(hasta - desde, ProductoDAOImpl::sqlUpsert);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int indice = 1;
+                for (int i = desde; i < hasta; i++) {
+                    Producto producto = productos.get(i);
+                    stmt.setString(indice++, producto.getNombre());
+                    stmt.setString(indice++, producto.getDescripcion());
+                    stmt.setBigDecimal(indice++, Dinero.aDecimal(producto.getPrecio()));
+                    stmt.setInt(indice++, producto.getCantidad());
+                    stmt.setInt(indice++, producto.getIdCategoria());
+                }
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static String sqlUpsert(int filas) {
+        StringBuilder sql = new StringBuilder("INSERT INTO productos (nombre, descripcion, precio, cantidad, id_categoria) VALUES ");
+        for (int i = 0; i < filas; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        return sql.append(" AS nuevo ON DUPLICATE KEY UPDATE descripcion = nuevo.descripcion, precio = nuevo.precio, ")
+                .append("cantidad = nuevo.cantidad, id_categoria = nuevo.id_categoria, version = productos.version + 1")
+                .toString();
+    }
+
+    /**
+     * Asigna el valor de un campo del producto al parámetro indicado.
+     */
+    private void asignarCampo(PreparedStatement stmt, int indice, int campo, Producto producto) throws Exception {
+        switch (campo) {
+            case Producto.CAMPO_NOMBRE -> stmt.setString(indice, producto.getNombre());
+            case Producto.CAMPO_DESCRIPCION -> stmt.setString(indice, producto.getDescripcion());
+            case Producto.CAMPO_PRECIO -> stmt.setBigDecimal(indice, Dinero.aDecimal(producto.getPrecio()));
+            case Producto.CAMPO_CANTIDAD -> stmt.setInt(indice, producto.getCantidad());
+            case Producto.CAMPO_ID_CATEGORIA -> stmt.setInt(indice, producto.getIdCategoria());
+            default -> throw new IllegalArgumentException("Campo desconocido: " + campo);
+        }
+    }
+
+    /**
+     * Construye un producto a partir de la fila actual del ResultSet.
+     */
+    private Producto mapear(ResultSet rs) throws Exception {
+        return new Producto(
+                rs.getInt("id"),
+                rs.getString("nombre"),
+                DESCRIPCIONES.internar(rs.getString("descripcion")),
+                Dinero.desdeDecimal(rs.getBigDecimal("precio")),
+                rs.getInt("cantidad"),
+                rs.getInt("id_categoria"),
+                rs.getInt("version")
+        );
+    }
 }
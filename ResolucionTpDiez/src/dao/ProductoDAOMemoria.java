@@ -0,0 +1,366 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.AjustePrecio;
+import model.Categoria;
+import model.Producto;
+
+/**
+ * Implementación de {@link ProductoDAO} sobre la base en memoria, con el mismo
+ * control de versión que {@link ProductoDAOImpl}. La conexión debe ser de la
+ * base en memoria.
+ */
+@SuppressWarnings("try") // Los SesionMemoria.Acceso de los try solo sostienen el bloqueo
+public class ProductoDAOMemoria implements ProductoDAO {
+
+    private final AlmacenMemoria almacen = AlmacenMemoria.instancia();
+
+    @Override
+    public void crear(Producto producto, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            int id = almacen.productos.siguienteId();
+            almacen.productos.insertar(sesion, id, fila(id, producto, 0));
+            producto.setId(id);
+            producto.setVersion(0);
+        }
+        producto.limpiarCambios();
+    }
+
+    @Override
+    public void crearLote(List<Producto> productos, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (Producto producto : productos) {
+                int id = almacen.productos.siguienteId();
+                almacen.productos.insertar(sesion, id, fila(id, producto, 0));
+                producto.setId(id);
+                producto.setVersion(0);
+                producto.limpiarCambios();
+            }
+        }
+    }
+
+    @Override
+    public Set<String> nombresExistentes(Connection conn, Set<String> nombres) throws Exception {
+        Set<String> existentes = new HashSet<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (String nombre : nombres) {
+                if (almacen.productosPorNombre.buscar(nombre) != null) {
+                    existentes.add(nombre);
+                }
+            }
+        }
+        return existentes;
+    }
+
+    @Override
+    public Producto leer(int id, Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return copiar(almacen.productos.get(id));
+        }
+    }
+
+    @Override
+    public List<Producto> listar(Connection conn) throws Exception {
+        List<Producto> productos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (Producto producto : almacen.productos.todas()) {
+                productos.add(copiar(producto));
+            }
+        }
+        return productos;
+    }
+
+    @Override
+    public void actualizar(Producto producto, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Producto actual = vigente(producto);
+            almacen.productos.reemplazar(sesion, actual.getId(), fila(actual.getId(), producto, actual.getVersion() + 1));
+        }
+        producto.setVersion(producto.getVersion() + 1);
+        producto.limpiarCambios();
+    }
+
+    @Override
+    public boolean actualizarCambios(Producto producto, Connection conn) throws Exception {
+        if (!producto.tieneCambios()) {
+            return false;
+        }
+
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Producto actual = vigente(producto);
+            almacen.productos.reemplazar(sesion, actual.getId(), new Producto(actual.getId(),
+                    producto.estaModificado(Producto.CAMPO_NOMBRE) ? producto.getNombre() : actual.getNombre(),
+                    producto.estaModificado(Producto.CAMPO_DESCRIPCION) ? producto.getDescripcion() : actual.getDescripcion(),
+                    producto.estaModificado(Producto.CAMPO_PRECIO) ? producto.getPrecio() : actual.getPrecio(),
+                    producto.estaModificado(Producto.CAMPO_CANTIDAD) ? producto.getCantidad() : actual.getCantidad(),
+                    producto.estaModificado(Producto.CAMPO_ID_CATEGORIA) ? producto.getIdCategoria() : actual.getIdCategoria(),
+                    actual.getVersion() + 1));
+        }
+        producto.setVersion(producto.getVersion() + 1);
+        producto.limpiarCambios();
+        return true;
+    }
+
+    @Override
+    public void eliminar(int id, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            almacen.productos.eliminar(sesion, id);
+        }
+    }
+
+    @Override
+    public List<Producto> listarPorCategoria(Connection conn, int idCategoria) throws Exception {
+        List<Producto> productos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int id : almacen.productosPorCategoria.buscar(idCategoria)) {
+                productos.add(copiar(almacen.productos.get(id)));
+            }
+        }
+        return productos;
+    }
+
+    @Override
+    public boolean existeCategoria(Connection conn, int idCategoria) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            return almacen.categorias.get(idCategoria) != null;
+        }
+    }
+
+    @Override
+    public Integer descontarStock(Connection conn, int idProducto, int cantidad) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Producto actual = almacen.productos.get(idProducto);
+            if (actual == null || actual.getCantidad() < cantidad) {
+                return null;
+            }
+            int restante = actual.getCantidad() - cantidad;
+            almacen.productos.reemplazar(sesion, idProducto, new Producto(idProducto, actual.getNombre(),
+                    actual.getDescripcion(), actual.getPrecio(), restante,
+                    actual.getIdCategoria(), actual.getVersion() + 1));
+            return restante;
+        }
+    }
+
+    @Override
+    public void devolverStock(Connection conn, int idProducto, int cantidad) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            Producto actual = almacen.productos.get(idProducto);
+            if (actual != null) {
+                almacen.productos.reemplazar(sesion, idProducto, new Producto(idProducto, actual.getNombre(),
+                        actual.getDescripcion(), actual.getPrecio(), actual.getCantidad() + cantidad,
+                        actual.getIdCategoria(), actual.getVersion() + 1));
+            }
+        }
+    }
+
+    @Override
+    public List<Producto> listarConStockMenorA(Connection conn, int umbral) throws Exception {
+        List<Producto> productos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (Producto producto : almacen.productos.todas()) {
+                if (producto.getCantidad() < umbral) {
+                    productos.add(copiar(producto));
+                }
+            }
+        }
+        return productos;
+    }
+
+    @Override
+    public int[] rangoIds(Connection conn) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            int[] ids = almacen.productos.idsOrdenados();
+            return ids.length == 0 ? null : new int[]{ids[0], ids[ids.length - 1]};
+        }
+    }
+
+    @Override
+    public void recorrerConStockMenorA(Connection conn, int umbral, int idDesde, int idHasta,
+            Procesador<Producto> procesador) throws Exception {
+        List<Producto> productos = new ArrayList<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int id : almacen.productos.idsOrdenados()) {
+                if (id < idDesde || id > idHasta) {
+                    continue;
+                }
+                Producto producto = almacen.productos.get(id);
+                if (producto != null && producto.getCantidad() < umbral) {
+                    productos.add(copiar(producto));
+                }
+            }
+        }
+        for (Producto producto : productos) {
+            procesador.procesar(producto);
+        }
+    }
+
+    @Override
+    public Integer idFinLote(Connection conn, int idCategoria, int despuesDe, int tamano) throws Exception {
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            int contados = 0;
+            for (int id : almacen.productosPorCategoria.buscar(idCategoria)) {
+                if (id > despuesDe && ++contados == tamano) {
+                    return id;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int ajustarPrecios(Connection conn, int idCategoria, int despuesDe, int hasta, AjustePrecio ajuste) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        int modificados = 0;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (int id : almacen.productosPorCategoria.buscar(idCategoria)) {
+                if (id > despuesDe && id <= hasta && ajustarPrecio(sesion, id, ajuste)) {
+                    modificados++;
+                }
+            }
+        }
+        return modificados;
+    }
+
+    @Override
+    public int ajustarPrecios(Connection conn, Set<Integer> idsProducto, AjustePrecio ajuste) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        int modificados = 0;
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (int id : idsProducto) {
+                if (ajustarPrecio(sesion, id, ajuste)) {
+                    modificados++;
+                }
+            }
+        }
+        return modificados;
+    }
+
+    private boolean ajustarPrecio(SesionMemoria sesion, int id, AjustePrecio ajuste) throws Exception {
+        Producto actual = almacen.productos.get(id);
+        if (actual == null) {
+            return false;
+        }
+        long precio = ajuste.aplicar(actual.getPrecio());
+        if (precio <= 0) {
+            return false;
+        }
+        almacen.productos.reemplazar(sesion, id, new Producto(id, actual.getNombre(), actual.getDescripcion(), precio,
+                actual.getCantidad(), actual.getIdCategoria(), actual.getVersion() + 1));
+        return true;
+    }
+
+    @Override
+    public Map<Integer, String[]> nombresConCategoria(Connection conn, Set<Integer> idsProducto) throws Exception {
+        Map<Integer, String[]> nombres = new HashMap<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int idProducto : idsProducto) {
+                Producto producto = almacen.productos.get(idProducto);
+                if (producto != null) {
+                    Categoria categoria = almacen.categorias.get(producto.getIdCategoria());
+                    nombres.put(idProducto, new String[]{producto.getNombre(), categoria == null ? null : categoria.getNombre()});
+                }
+            }
+        }
+        return nombres;
+    }
+
+    @Override
+    public Set<Integer> categoriasExistentes(Connection conn, Set<Integer> idsCategoria) throws Exception {
+        Set<Integer> existentes = new HashSet<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int idCategoria : idsCategoria) {
+                if (almacen.categorias.get(idCategoria) != null) {
+                    existentes.add(idCategoria);
+                }
+            }
+        }
+        return existentes;
+    }
+
+    @Override
+    public Set<Integer> productosExistentes(Connection conn, Set<Integer> idsProducto) throws Exception {
+        Set<Integer> existentes = new HashSet<>();
+        try (SesionMemoria.Acceso acceso = SesionMemoria.de(conn).acceder(false)) {
+            for (int idProducto : idsProducto) {
+                if (almacen.productos.get(idProducto) != null) {
+                    existentes.add(idProducto);
+                }
+            }
+        }
+        return existentes;
+    }
+
+    /**
+     * La base en memoria no registra cuándo se modificó cada fila: devuelve
+     * todos los productos, que incluyen a los modificados.
+     */
+    @Override
+    public List<Producto> listarActualizadosDesde(Connection conn, Timestamp desde) throws Exception {
+        return listar(conn);
+    }
+
+    @Override
+    public Timestamp horaServidor(Connection conn) throws Exception {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Inserta o actualiza un lote de productos usando el nombre como clave
+     * única, igual que {@link ProductoDAOImpl#upsertLote}. Dentro de una
+     * transacción el lote completo se deshace si falla.
+     */
+    @Override
+    public void upsertLote(List<Producto> productos, Connection conn) throws Exception {
+        SesionMemoria sesion = SesionMemoria.de(conn);
+        try (SesionMemoria.Acceso acceso = sesion.acceder(true)) {
+            for (Producto producto : productos) {
+                Integer id = almacen.productosPorNombre.buscar(producto.getNombre());
+                if (id == null) {
+                    int nuevo = almacen.productos.siguienteId();
+                    almacen.productos.insertar(sesion, nuevo, fila(nuevo, producto, 0));
+                } else {
+                    Producto actual = almacen.productos.get(id);
+                    almacen.productos.reemplazar(sesion, id, new Producto(id, actual.getNombre(), producto.getDescripcion(),
+                            producto.getPrecio(), producto.getCantidad(), producto.getIdCategoria(),
+                            actual.getVersion() + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Devuelve la fila guardada si su versión coincide con la del producto.
+     */
+    private Producto vigente(Producto producto) throws ConflictoVersionException {
+        Producto actual = almacen.productos.get(producto.getId());
+        if (actual == null || actual.getVersion() != producto.getVersion()) {
+            throw new ConflictoVersionException("producto", producto.getId(), producto.getVersion());
+        }
+        return actual;
+    }
+
+    private static Producto fila(int id, Producto producto, int version) {
+        return new Producto(id, producto.getNombre(), producto.getDescripcion(), producto.getPrecio(),
+                producto.getCantidad(), producto.getIdCategoria(), version);
+    }
+
+    private static Producto copiar(Producto producto) {
+        return producto == null ? null : new Producto(producto.getId(), producto.getNombre(), producto.getDescripcion(),
+                producto.getPrecio(), producto.getCantidad(), producto.getIdCategoria(), producto.getVersion());
+    }
+}
@@ -0,0 +1,287 @@
+package dao;
+
+import config.SesionMemoria;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Tabla de la base en memoria: filas por ID con sus índices secundarios.
+ *
+ * Las filas guardadas no se entregan a quien llama: los DAOs guardan y
+ * devuelven copias. Cada modificación hecha dentro de una transacción registra
+ * en la sesión cómo deshacerse, incluyendo los índices.
+ *
+ * @param <T> Tipo de las filas.
+ */
+final class TablaMemoria<T> {
+
+    private final MapaEnteros<T> filas = new MapaEnteros<>();
+    private final List<Indice<T>> indices = new ArrayList<>();
+    private int ultimoId;
+
+    /**
+     * Agrega un índice único sobre una columna de texto. Igual que la
+     * intercalación por defecto de MySQL, no distingue mayúsculas.
+     */
+    IndiceUnico<T> indiceUnico(String nombre, Function<T, String> columna) {
+        IndiceUnico<T> indice = new IndiceUnico<>(nombre, columna);
+        indices.add(indice);
+        return indice;
+    }
+
+    /**
+     * Agrega un índice no único sobre una columna entera.
+     */
+    IndiceEnteros<T> indiceEnteros(ToIntFunction<T> columna) {
+        IndiceEnteros<T> indice = new IndiceEnteros<>(columna);
+        indices.add(indice);
+        return indice;
+    }
+
+    /**
+     * Reserva el próximo ID. Como en InnoDB, un ID reservado no se reutiliza
+     * aunque la inserción falle o se deshaga.
+     */
+    int siguienteId() {
+        return ++ultimoId;
+    }
+
+    int getUltimoId() {
+        return ultimoId;
+    }
+
+    T get(int id) {
+        return filas.get(id);
+    }
+
+    int size() {
+        return filas.size();
+    }
+
+    int[] idsOrdenados() {
+        return filas.clavesOrdenadas();
+    }
+
+    /**
+     * Devuelve las filas ordenadas por ID.
+     */
+    List<T> todas() {
+        int[] ids = filas.clavesOrdenadas();
+        List<T> resultado = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            resultado.add(filas.get(id));
+        }
+        return resultado;
+    }
+
+    void insertar(SesionMemoria sesion, int id, T fila) throws SQLIntegrityConstraintViolationException {
+        verificar(id, fila);
+        poner(id, fila);
+        sesion.registrarDeshacer(() -> quitar(id));
+    }
+
+    /**
+     * Reemplaza una fila existente.
+     *
+     * @return Fila anterior o null si no existía (en ese caso no se modifica
+     * nada).
+     */
+    T reemplazar(SesionMemoria sesion, int id, T fila) throws SQLIntegrityConstraintViolationException {
+        T anterior = filas.get(id);
+        if (anterior == null) {
+            return null;
+        }
+        verificar(id, fila);
+        quitar(id);
+        poner(id, fila);
+        sesion.registrarDeshacer(() -> {
+            quitar(id);
+            poner(id, anterior);
+        });
+        return anterior;
+    }
+
+    /**
+     * Elimina una fila.
+     *
+     * @return Fila eliminada o null si no existía.
+     */
+    T eliminar(SesionMemoria sesion, int id) {
+        T anterior = quitar(id);
+        if (anterior != null) {
+            sesion.registrarDeshacer(() -> poner(id, anterior));
+        }
+        return anterior;
+    }
+
+    /**
+     * Carga una fila sin registrar cómo deshacerla. Se usa al restaurar una
+     * instantánea.
+     */
+    void cargar(int id, T fila) {
+        poner(id, fila);
+        ultimoId = Math.max(ultimoId, id);
+    }
+
+    void vaciar(int ultimoId) {
+        filas.clear();
+        for (Indice<T> indice : indices) {
+            indice.vaciar();
+        }
+        this.ultimoId = ultimoId;
+    }
+
+    private void verificar(int id, T fila) throws SQLIntegrityConstraintViolationException {
+        for (Indice<T> indice : indices) {
+            indice.verificar(id, fila);
+        }
+    }
+
+    private void poner(int id, T fila) {
+        filas.put(id, fila);
+        for (Indice<T> indice : indices) {
+            indice.agregar(id, fila);
+        }
+    }
+
+    private T quitar(int id) {
+        T fila = filas.remove(id);
+        if (fila != null) {
+            for (Indice<T> indice : indices) {
+                indice.quitar(id, fila);
+            }
+        }
+        return fila;
+    }
+
+    private interface Indice<T> {
+
+        void verificar(int id, T fila) throws SQLIntegrityConstraintViolationException;
+
+        void agregar(int id, T fila);
+
+        void quitar(int id, T fila);
+
+        void vaciar();
+    }
+
+    /**
+     * Índice único sobre una columna de texto.
+     */
+    static final class IndiceUnico<T> implements Indice<T> {
+
+        private final String nombre;
+        private final Function<T, String> columna;
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        private IndiceUnico(String nombre, Function<T, String> columna) {
+            this.nombre = nombre;
+            this.columna = columna;
+        }
+
+        /**
+         * Busca el ID de la fila con el valor indicado.
+         *
+         * @return ID o null si no hay ninguna.
+         */
+        Integer buscar(String valor) {
+            return valor == null ? null : ids.get(clave(valor));
+        }
+
+        @Override
+        public void verificar(int id, T fila) throws SQLIntegrityConstraintViolationException {
+            String valor = columna.apply(fila);
+            Integer existente = buscar(valor);
+            if (existente != null && existente != id) {
+                throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + valor + "' for key '" + nombre + "'");
+            }
+        }
+
+        @Override
+        public void agregar(int id, T fila) {
+            String valor = columna.apply(fila);
+            if (valor != null) {
+                ids.put(clave(valor), id);
+            }
+        }
+
+        @Override
+        public void quitar(int id, T fila) {
+            String valor = columna.apply(fila);
+            if (valor != null) {
+                ids.remove(clave(valor), id);
+            }
+        }
+
+        @Override
+        public void vaciar() {
+            ids.clear();
+        }
+
+        private static String clave(String valor) {
+            return valor.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Índice no único sobre una columna entera.
+     */
+    static final class IndiceEnteros<T> implements Indice<T> {
+
+        private static final int[] VACIO = new int[0];
+
+        private final ToIntFunction<T> columna;
+        private final MapaEnteros<ConjuntoEnteros> ids = new MapaEnteros<>();
+
+        private IndiceEnteros(ToIntFunction<T> columna) {
+            this.columna = columna;
+        }
+
+        /**
+         * Devuelve los IDs de las filas con el valor indicado, en orden.
+         */
+        int[] buscar(int valor) {
+            ConjuntoEnteros conjunto = ids.get(valor);
+            return conjunto == null ? VACIO : conjunto.toArray();
+        }
+
+        boolean contiene(int valor) {
+            return ids.containsKey(valor);
+        }
+
+        @Override
+        public void verificar(int id, T fila) {
+        }
+
+        @Override
+        public void agregar(int id, T fila) {
+            int valor = columna.applyAsInt(fila);
+            ConjuntoEnteros conjunto = ids.get(valor);
+            if (conjunto == null) {
+                conjunto = new ConjuntoEnteros();
+                ids.put(valor, conjunto);
+            }
+            conjunto.add(id);
+        }
+
+        @Override
+        public void quitar(int id, T fila) {
+            int valor = columna.applyAsInt(fila);
+            ConjuntoEnteros conjunto = ids.get(valor);
+            if (conjunto != null && conjunto.remove(id) && conjunto.isEmpty()) {
+                ids.remove(valor);
+            }
+        }
+
+        @Override
+        public void vaciar() {
+            ids.clear();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package dao;
+
+import config.DatabaseConnection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import model.AjustePrecio;
+import model.Categoria;
+import model.ItemPedido;
+import model.Pedido;
+import model.Producto;
+
+/**
+ * Verifica que ninguna sentencia de los DAOs recorra una tabla completa.
+ *
+ * Cada método de los DAOs se ejecuta contra una conexión simulada que no llega
+ * a la base de datos y solo registra el SQL y los parámetros que se asignan.
+ * Después, cada sentencia registrada se pasa por EXPLAIN en la base real con
+ * esos mismos parámetros. Se informa como problema todo acceso de tipo
+ * {@code ALL} (tabla completa) o {@code index} (índice completo), salvo en los
+ * listados que por definición leen todas las filas.
+ *
+ * El optimizador elige recorridos completos en tablas con muy pocas filas, por
+ * lo que la verificación tiene sentido sobre una base con volúmenes de datos
+ * representativos.
+ */
+public class VerificadorPlanes {
+
+    @FunctionalInterface
+    private interface Llamada {
+
+        void ejecutar(Connection conn) throws Exception;
+    }
+
+    // Sentencia registrada por la conexión simulada
+    private static final class Sentencia {
+
+        private final String origen;
+        private final String sql;
+        private final boolean permiteRecorridoCompleto;
+        private final Map<Integer, Object> parametros = new TreeMap<>();
+
+        private Sentencia(String origen, String sql, boolean permiteRecorridoCompleto) {
+            this.origen = origen;
+            this.sql = sql;
+            this.permiteRecorridoCompleto = permiteRecorridoCompleto;
+        }
+    }
+
+    private final List<Sentencia> sentencias = new ArrayList<>();
+
+    /**
+     * Registra las sentencias de todos los métodos de los DAOs.
+     */
+    public VerificadorPlanes() throws Exception {
+        CategoriaDAOImpl categorias = new CategoriaDAOImpl();
+        ProductoDAOImpl productos = new ProductoDAOImpl();
+        PedidoDAOImpl pedidos = new PedidoDAOImpl();
+        ItemPedidoDAOImpl items = new ItemPedidoDAOImpl();
+        IdempotenciaDAOImpl idempotencia = new IdempotenciaDAOImpl();
+        ArchivoPedidosDAOImpl archivo = new ArchivoPedidosDAOImpl();
+        Date desde = new Date(0);
+        Date hasta = new Date();
+
+        registrar("CategoriaDAOImpl.crear", false, c -> categorias.crear(categoria(), c));
+        registrar("CategoriaDAOImpl.leer", false, c -> categorias.leer(1, c));
+        registrar("CategoriaDAOImpl.listar", true, c -> categorias.listar(c));
+        registrar("CategoriaDAOImpl.actualizar", false, c -> categorias.actualizar(categoria(), c));
+        registrar("CategoriaDAOImpl.actualizarCambios", false, c -> {
+            Categoria categoria = categoria();
+            categoria.setNombre("Verificación");
+            categorias.actualizarCambios(categoria, c);
+        });
+        registrar("CategoriaDAOImpl.eliminar", false, c -> categorias.eliminar(1, c));
+        registrar("CategoriaDAOImpl.existeNombre", false, c -> categorias.existeNombre("Verificación", c));
+        registrar("CategoriaDAOImpl.listarActualizadasDesde", false, c -> categorias.listarActualizadasDesde(c, new Timestamp(hasta.getTime())));
+
+        registrar("ProductoDAOImpl.crear", false, c -> productos.crear(producto(), c));
+        registrar("ProductoDAOImpl.leer", false, c -> productos.leer(1, c));
+        registrar("ProductoDAOImpl.listar", true, c -> productos.listar(c));
+        registrar("ProductoDAOImpl.actualizar", false, c -> productos.actualizar(producto(), c));
+        registrar("ProductoDAOImpl.actualizarCambios", false, c -> {
+            Producto producto = producto();
+            producto.setCantidad(1);
+            productos.actualizarCambios(producto, c);
+        });
+        registrar("ProductoDAOImpl.eliminar", false, c -> productos.eliminar(1, c));
+        registrar("ProductoDAOImpl.listarPorCategoria", false, c -> productos.listarPorCategoria(c, 1));
+        registrar("ProductoDAOImpl.existeCategoria", false, c -> productos.existeCategoria(c, 1));
+        registrar("ProductoDAOImpl.categoriasExistentes", false, c -> productos.categoriasExistentes(c, Set.of(1, 2)));
+        registrar("ProductoDAOImpl.upsertLote", false, c -> productos.upsertLote(List.of(producto()), c));
+        registrar("ProductoDAOImpl.descontarStock", false, c -> productos.descontarStock(c, 1, 1));
+        registrar("ProductoDAOImpl.devolverStock", false, c -> productos.devolverStock(c, 1, 1));
+        registrar("ProductoDAOImpl.nombresConCategoria", false, c -> productos.nombresConCategoria(c, Set.of(1, 2)));
+        registrar("ProductoDAOImpl.productosExistentes", false, c -> productos.productosExistentes(c, Set.of(1, 2)));
+        registrar("ProductoDAOImpl.listarActualizadosDesde", false, c -> productos.listarActualizadosDesde(c, new Timestamp(hasta.getTime())));
+        registrar("ProductoDAOImpl.crearLote", false, c -> productos.crearLote(List.of(producto(), producto()), c));
+        registrar("ProductoDAOImpl.nombresExistentes", false, c -> productos.nombresExistentes(c, Set.of("Verificación", "Otro")));
+        registrar("ProductoDAOImpl.listarConStockMenorA", true, c -> productos.listarConStockMenorA(c, 5));
+        registrar("ProductoDAOImpl.rangoIds", false, c -> productos.rangoIds(c));
+        registrar("ProductoDAOImpl.recorrerConStockMenorA", false, c -> productos.recorrerConStockMenorA(c, 0, 1, 1000, p -> {
+        }));
+        registrar("ProductoDAOImpl.idFinLote", false, c -> productos.idFinLote(c, 1, 0, 1000));
+        registrar("ProductoDAOImpl.ajustarPrecios", false, c -> productos.ajustarPrecios(c, 1, 0, 1000, AjustePrecio.porcentaje(1000)));
+        registrar("ProductoDAOImpl.ajustarPreciosPorIds", false, c -> productos.ajustarPrecios(c, Set.of(1, 2), AjustePrecio.importe(100)));
+
+        registrar("PedidoDAOImpl.crear", false, c -> pedidos.crear(pedido(), c));
+        registrar("PedidoDAOImpl.leer", false, c -> pedidos.leer(1, c));
+        registrar("PedidoDAOImpl.listar", true, c -> pedidos.listar(c));
+        registrar("PedidoDAOImpl.actualizar", false, c -> pedidos.actualizar(pedido(), c));
+        registrar("PedidoDAOImpl.actualizarCambios", false, c -> {
+            Pedido pedido = pedido();
+            pedido.setTotal(1);
+            pedidos.actualizarCambios(pedido, c);
+        });
+        registrar("PedidoDAOImpl.eliminar", false, c -> pedidos.eliminar(1, c));
+        registrar("PedidoDAOImpl.leerDetalle", false, c -> pedidos.leerDetalle(c, 1));
+        registrar("PedidoDAOImpl.recorrerConItems", false, c -> pedidos.recorrerConItems(c, desde, hasta, 1, 1000, (p, f, t, i, pr, ca, s) -> {
+        }));
+        registrar("PedidoDAOImpl.rangoIds", false, c -> pedidos.rangoIds(c, desde, hasta));
+        registrar("PedidoDAOImpl.recorrerPorFechas", false, c -> pedidos.recorrerPorFechas(c, desde, hasta, p -> {
+        }));
+        registrar("PedidoDAOImpl.totalesPorDia", false, c -> pedidos.totalesPorDia(c, desde, hasta, (d, n, t) -> {
+        }));
+
+        registrar("ItemPedidoDAOImpl.crear", false, c -> items.crear(item(), c));
+        registrar("ItemPedidoDAOImpl.leer", false, c -> items.leer(1, c));
+        registrar("ItemPedidoDAOImpl.listar", true, c -> items.listar(c));
+        registrar("ItemPedidoDAOImpl.actualizar", false, c -> items.actualizar(item(), c));
+        registrar("ItemPedidoDAOImpl.actualizarCambios", false, c -> {
+            ItemPedido item = item();
+            item.setCantidad(1);
+            items.actualizarCambios(item, c);
+        });
+        registrar("ItemPedidoDAOImpl.eliminar", false, c -> items.eliminar(1, c));
+        registrar("ItemPedidoDAOImpl.listarPorPedido", false, c -> items.listarPorPedido(c, 1));
+        registrar("ItemPedidoDAOImpl.rangoIds", false, c -> items.rangoIds(c));
+        registrar("ItemPedidoDAOImpl.recorrerConPedido", false, c -> items.recorrerConPedido(c, 1, 1000, (i, p, pr, e) -> {
+        }));
+
+        registrar("IdempotenciaDAOImpl.reservar", false, c -> idempotencia.reservar("verificacion", c));
+        registrar("IdempotenciaDAOImpl.asociarPedido", false, c -> idempotencia.asociarPedido("verificacion", 1, c));
+        registrar("IdempotenciaDAOImpl.buscarPedidoId", false, c -> idempotencia.buscarPedidoId("verificacion", c));
+
+        ArchivoPedidosDAO.Avance avance = new ArchivoPedidosDAO.Avance(new java.sql.Date(hasta.getTime()),
+                new java.sql.Date(desde.getTime()), 1);
+        registrar("ArchivoPedidosDAOImpl.leer", false, c -> archivo.leer(1, c));
+        registrar("ArchivoPedidosDAOImpl.listarItems", false, c -> archivo.listarItems(c, 1));
+        registrar("ArchivoPedidosDAOImpl.rangoIds", false, c -> archivo.rangoIds(c, desde, hasta));
+        registrar("ArchivoPedidosDAOImpl.recorrerConItems", false, c -> archivo.recorrerConItems(c, desde, hasta, 1, 1000, (p, f, t, i, pr, ca, s) -> {
+        }));
+        registrar("ArchivoPedidosDAOImpl.siguienteLote", false, c -> archivo.siguienteLote(c, hasta, avance, 500));
+        registrar("ArchivoPedidosDAOImpl.mover", false, c -> archivo.mover(c, List.of(pedido())));
+        registrar("ArchivoPedidosDAOImpl.leerAvance", false, c -> archivo.leerAvance(c, "verificacion"));
+        registrar("ArchivoPedidosDAOImpl.guardarAvance", false, c -> archivo.guardarAvance(c, "verificacion", avance));
+    }
+
+    /**
+     * Ejecuta EXPLAIN sobre todas las sentencias registradas.
+     *
+     * @param conn Conexión a la base de datos real.
+     * @return Descripción de cada recorrido completo encontrado; vacía si no
+     * hay ninguno.
+     * @throws Exception Si ocurre un error al ejecutar EXPLAIN.
+     */
+    public List<String> verificar(Connection conn) throws Exception {
+        List<String> problemas = new ArrayList<>();
+        for (Sentencia sentencia : sentencias) {
+            if (sentencia.permiteRecorridoCompleto) {
+                continue;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sentencia.sql)) {
+                for (Map.Entry<Integer, Object> parametro : sentencia.parametros.entrySet()) {
+                    stmt.setObject(parametro.getKey(), parametro.getValue());
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String tipo = rs.getString("type");
+                        // La fila de la tabla destino de un INSERT no es una lectura
+                        if (tipo == null || "INSERT".equals(rs.getString("select_type"))) {
+                            continue;
+                        }
+                        if ("ALL".equals(tipo) || "index".equals(tipo)) {
+                            problemas.add(sentencia.origen + ": acceso " + tipo + " sobre " + rs.getString("table")
+                                    + " en [" + sentencia.sql.replaceAll("\\s+", " ").trim() + "]");
+                        }
+                    }
+                }
+            }
+        }
+        return problemas;
+    }
+
+    /**
+     * Ejecuta la verificación contra la base configurada en
+     * {@link DatabaseConnection} y termina con código 1 si hay recorridos
+     * completos.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> problemas;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            problemas = new VerificadorPlanes().verificar(conn);
+        }
+        if (problemas.isEmpty()) {
+            System.out.println("Ninguna sentencia recorre tablas completas.");
+            return;
+        }
+        for (String problema : problemas) {
+            System.err.println(problema);
+        }
+        System.exit(1);
+    }
+
+    private void registrar(String origen, boolean permiteRecorridoCompleto, Llamada llamada) throws Exception {
+        llamada.ejecutar(conexionSimulada(origen, permiteRecorridoCompleto));
+    }
+
+    private static Categoria categoria() {
+        return new Categoria(1, "Verificación", "Verificación");
+    }
+
+    private static Producto producto() {
+        return new Producto(1, "Verificación", "Verificación", 1, 1, 1, 0);
+    }
+
+    private static Pedido pedido() {
+        return new Pedido(1, new Date(), 1);
+    }
+
+    private static ItemPedido item() {
+        return new ItemPedido(1, 1, 1, 1, 1);
+    }
+
+    /**
+     * Crea una conexión que registra las sentencias preparadas y sus
+     * parámetros sin ejecutarlas. Las consultas devuelven resultados vacíos y
+     * las modificaciones informan una fila afectada.
+     */
+    private Connection conexionSimulada(String origen, boolean permiteRecorridoCompleto) {
+        InvocationHandler manejador = (proxy, metodo, args) -> {
+            String nombre = metodo.getName();
+            if (nombre.equals("prepareStatement")) {
+                Sentencia sentencia = new Sentencia(origen, (String) args[0], permiteRecorridoCompleto);
+                sentencias.add(sentencia);
+                return sentenciaSimulada(sentencia);
+            }
+            if (nombre.equals("createStatement")) {
+                throw new UnsupportedOperationException("Las sentencias de los DAOs deben ser preparadas: " + origen);
+            }
+            return valorPorDefecto(metodo.getReturnType());
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, manejador);
+    }
+
+    private static PreparedStatement sentenciaSimulada(Sentencia sentencia) {
+        InvocationHandler manejador = (proxy, metodo, args) -> {
+            String nombre = metodo.getName();
+            if (nombre.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                sentencia.parametros.put((Integer) args[0], nombre.equals("setNull") ? null : args[1]);
+                return null;
+            }
+            if (nombre.equals("executeQuery") || nombre.equals("getGeneratedKeys")) {
+                return resultadoVacio();
+            }
+            if (nombre.equals("executeUpdate")) {
+                return 1;
+            }
+            if (nombre.equals("executeBatch")) {
+                return new int[0];
+            }
+            return valorPorDefecto(metodo.getReturnType());
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, manejador);
+    }
+
+    private static ResultSet resultadoVacio() {
+        InvocationHandler manejador = (proxy, metodo, args) -> {
+            if (metodo.getName().equals("wasNull")) {
+                return true;
+            }
+            return valorPorDefecto(metodo.getReturnType());
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, manejador);
+    }
+
+    private static Object valorPorDefecto(Class<?> tipo) {
+        if (tipo == boolean.class) {
+            return false;
+        }
+        if (tipo == int.class) {
+            return 0;
+        }
+        if (tipo == long.class) {
+            return 0L;
+        }
+        if (tipo == double.class) {
+            return 0.0;
+        }
+        if (tipo == float.class) {
+            return 0.0f;
+        }
+        if (tipo == short.class) {
+            return (short) 0;
+        }
+        if (tipo == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+package main;
+
+import dao.InternadorCadenas;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import model.DetallePedido;
+import model.Producto;
+
+/**
+ * Mide cuánto heap ahorra {@link InternadorCadenas} en un listado grande: un
+ * millón de productos con pocas descripciones distintas y un millón de líneas
+ * de detalle con pocas categorías.
+ *
+ * Las filas se arman como lo hace el driver JDBC, decodificando un String
+ * nuevo desde los bytes de cada fila, y pasan por una tabla inactiva o activa
+ * según la corrida. El heap retenido es la diferencia de memoria usada, tras
+ * forzar la recolección, entre antes y después de armar el listado.
+ *
+ * Uso: {@code java main.BenchmarkInternado [filas] [valoresDistintos]}. Las
+ * cifras dependen de la JVM (compresión de punteros, Strings compactos);
+ * sirven para comparar las dos corridas entre sí.
+ */
+public class BenchmarkInternado {
+
+    private static final MemoryMXBean MEMORIA = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int filas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int distintos = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        byte[][] descripciones = new byte[distintos][];
+        byte[][] categorias = new byte[distintos][];
+        for (int i = 0; i < distintos; i++) {
+            descripciones[i] = ("Artículo importado del proveedor " + i + ", garantía de 12 meses").getBytes(StandardCharsets.UTF_8);
+            categorias[i] = ("Categoría " + i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        System.out.printf("%d filas, %d valores distintos por columna%n", filas, distintos);
+        System.out.printf("%-10s %-10s %14s %12s %10s%n", "Listado", "Internado", "Heap MB", "Bytes/fila", "ms");
+        for (boolean activo : new boolean[]{false, true}) {
+            InternadorCadenas tabla = new InternadorCadenas(activo ? 4096 : 0);
+            medir("Productos", activo, filas, () -> {
+                Random aleatorio = new Random(42);
+                List<Producto> productos = new ArrayList<>(filas);
+                for (int i = 1; i <= filas; i++) {
+                    byte[] descripcion = descripciones[aleatorio.nextInt(distintos)];
+                    productos.add(new Producto(i, "Producto " + i,
+                            tabla.internar(new String(descripcion, StandardCharsets.UTF_8)),
+                            aleatorio.nextInt(100_000), aleatorio.nextInt(500), 1 + aleatorio.nextInt(distintos), 0));
+                }
+                return productos;
+            });
+        }
+        for (boolean activo : new boolean[]{false, true}) {
+            InternadorCadenas tabla = new InternadorCadenas(activo ? 4096 : 0);
+            medir("Detalle", activo, filas, () -> {
+                Random aleatorio = new Random(42);
+                DetallePedido detalle = new DetallePedido(1, new java.util.Date(), 0);
+                for (int i = 1; i <= filas; i++) {
+                    byte[] categoria = categorias[aleatorio.nextInt(distintos)];
+                    detalle.agregarLinea(new DetallePedido.Linea("Producto " + i,
+                            tabla.internar(new String(categoria, StandardCharsets.UTF_8)),
+                            1 + aleatorio.nextInt(10), aleatorio.nextInt(100_000)));
+                }
+                return detalle;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface Listado {
+
+        Object armar();
+    }
+
+    private static void medir(String nombre, boolean activo, int filas, Listado listado) {
+        long antes = usado();
+        long inicio = System.nanoTime();
+        Object resultado = listado.armar();
+        long millis = (System.nanoTime() - inicio) / 1_000_000;
+        long retenido = usado() - antes;
+        System.out.printf("%-10s %-10s %14.1f %12.1f %10d%n", nombre, activo ? "sí" : "no",
+                retenido / (1024.0 * 1024.0), (double) retenido / filas, millis);
+        // Mantiene el listado vivo hasta después de medir
+        if (resultado.hashCode() == 42) {
+            System.out.println();
+        }
+    }
+
+    private static long usado() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORIA.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,416 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import model.Categoria;
+import model.CodecBinario;
+import model.Dinero;
+import model.ItemPedido;
+import model.Pedido;
+import model.Producto;
+
+/**
+ * Compara {@link CodecBinario} con la serialización de Java y con JSON:
+ * bytes por registro y tiempo de codificación y decodificación.
+ *
+ * Cada registro se codifica como un mensaje independiente, que es como se
+ * usan en las instantáneas por segmento y en los mensajes. Las entidades del
+ * modelo no son {@link Serializable}, así que para Java se usan clases
+ * equivalentes con los mismos campos. El JSON se escribe y se interpreta a
+ * mano, sin bibliotecas, como lo haría un formato mínimo.
+ *
+ * Uso: {@code java main.BenchmarkSerializacion [registros]}. Los tiempos son
+ * el mejor de varias rondas después de un calentamiento; sirven para comparar
+ * formatos entre sí en la misma máquina, no como valores absolutos.
+ */
+public class BenchmarkSerializacion {
+
+    private static final int RONDAS_CALENTAMIENTO = 5;
+    private static final int RONDAS = 5;
+
+    private interface Formato<T> {
+
+        byte[] codificar(T valor) throws Exception;
+
+        T decodificar(byte[] bytes) throws Exception;
+    }
+
+    // Evita que el compilador JIT descarte el trabajo medido
+    private static long sumidero;
+
+    public static void main(String[] args) throws Exception {
+        int registros = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        Random aleatorio = new Random(42);
+
+        List<Producto> productos = new ArrayList<>(registros);
+        List<Categoria> categorias = new ArrayList<>(registros);
+        List<Pedido> pedidos = new ArrayList<>(registros);
+        List<ItemPedido> items = new ArrayList<>(registros);
+        for (int i = 1; i <= registros; i++) {
+            productos.add(new Producto(i, "Producto " + i, i % 4 == 0 ? null : "Descripción del artículo número " + i,
+                    aleatorio.nextInt(100_000), aleatorio.nextInt(500), 1 + aleatorio.nextInt(50),
+                    aleatorio.nextInt(10)));
+            categorias.add(new Categoria(i, "Categoría " + i, "Descripción " + i));
+            pedidos.add(new Pedido(i, java.sql.Date.valueOf(LocalDate.of(2024, 1, 1).plusDays(aleatorio.nextInt(700))),
+                    aleatorio.nextInt(1_000_000)));
+            items.add(new ItemPedido(i, 1 + i / 3, 1 + aleatorio.nextInt(registros), 1 + aleatorio.nextInt(10),
+                    aleatorio.nextInt(100_000)));
+        }
+
+        System.out.printf("%d registros por entidad%n", registros);
+        System.out.printf("%-12s %-8s %12s %14s %14s%n", "Entidad", "Formato", "Bytes/reg", "Codificar ns", "Decodificar ns");
+
+        medir("Producto", productos, Map.of(
+                "binario", formato(CodecBinario::tamano, CodecBinario::escribir, CodecBinario::leerProducto),
+                "java", java(p -> new ProductoJava(p), ProductoJava::aModelo),
+                "json", json(BenchmarkSerializacion::json, BenchmarkSerializacion::producto)));
+        medir("Categoria", categorias, Map.of(
+                "binario", formato(CodecBinario::tamano, CodecBinario::escribir, CodecBinario::leerCategoria),
+                "java", java(c -> new CategoriaJava(c), CategoriaJava::aModelo),
+                "json", json(BenchmarkSerializacion::json, BenchmarkSerializacion::categoria)));
+        medir("Pedido", pedidos, Map.of(
+                "binario", formato(CodecBinario::tamano, CodecBinario::escribir, CodecBinario::leerPedido),
+                "java", java(p -> new PedidoJava(p), PedidoJava::aModelo),
+                "json", json(BenchmarkSerializacion::json, BenchmarkSerializacion::pedido)));
+        medir("ItemPedido", items, Map.of(
+                "binario", formato(CodecBinario::tamano, CodecBinario::escribir, CodecBinario::leerItemPedido),
+                "java", java(i -> new ItemPedidoJava(i), ItemPedidoJava::aModelo),
+                "json", json(BenchmarkSerializacion::json, BenchmarkSerializacion::itemPedido)));
+
+        if (sumidero == 42) {
+            System.out.println();
+        }
+    }
+
+    private static <T> void medir(String entidad, List<T> datos, Map<String, Formato<T>> formatos) throws Exception {
+        for (String nombre : List.of("binario", "java", "json")) {
+            Formato<T> formato = formatos.get(nombre);
+            byte[][] codificados = new byte[datos.size()][];
+            long mejorCodificar = Long.MAX_VALUE;
+            long mejorDecodificar = Long.MAX_VALUE;
+            for (int ronda = 0; ronda < RONDAS_CALENTAMIENTO + RONDAS; ronda++) {
+                long inicio = System.nanoTime();
+                for (int i = 0; i < datos.size(); i++) {
+                    codificados[i] = formato.codificar(datos.get(i));
+                }
+                long codificar = System.nanoTime() - inicio;
+
+                inicio = System.nanoTime();
+                for (byte[] bytes : codificados) {
+                    sumidero += formato.decodificar(bytes).hashCode();
+                }
+                long decodificar = System.nanoTime() - inicio;
+
+                if (ronda >= RONDAS_CALENTAMIENTO) {
+                    mejorCodificar = Math.min(mejorCodificar, codificar);
+                    mejorDecodificar = Math.min(mejorDecodificar, decodificar);
+                }
+            }
+
+            long bytes = 0;
+            for (byte[] codificado : codificados) {
+                bytes += codificado.length;
+            }
+            System.out.printf("%-12s %-8s %12.1f %14.0f %14.0f%n", entidad, nombre, (double) bytes / datos.size(),
+                    (double) mejorCodificar / datos.size(), (double) mejorDecodificar / datos.size());
+        }
+    }
+
+    // Formatos
+
+    @FunctionalInterface
+    private interface Tamano<T> {
+
+        int de(T valor);
+    }
+
+    @FunctionalInterface
+    private interface Escritura<T> {
+
+        void escribir(ByteBuffer buffer, T valor);
+    }
+
+    @FunctionalInterface
+    private interface Conversion<A, B> {
+
+        B aplicar(A valor) throws Exception;
+    }
+
+    private static <T> Formato<T> formato(Tamano<T> tamano, Escritura<T> escritura, Conversion<ByteBuffer, T> lectura) {
+        return new Formato<>() {
+            @Override
+            public byte[] codificar(T valor) {
+                ByteBuffer buffer = ByteBuffer.allocate(tamano.de(valor));
+                escritura.escribir(buffer, valor);
+                return buffer.array();
+            }
+
+            @Override
+            public T decodificar(byte[] bytes) throws Exception {
+                return lectura.aplicar(ByteBuffer.wrap(bytes));
+            }
+        };
+    }
+
+    private static <T, S extends Serializable> Formato<T> java(Conversion<T, S> aSerializable, Conversion<S, T> aModelo) {
+        return new Formato<>() {
+            @Override
+            public byte[] codificar(T valor) throws Exception {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                try (ObjectOutputStream salida = new ObjectOutputStream(bytes)) {
+                    salida.writeObject(aSerializable.aplicar(valor));
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decodificar(byte[] bytes) throws Exception {
+                try (ObjectInputStream entrada = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return aModelo.aplicar((S) entrada.readObject());
+                }
+            }
+        };
+    }
+
+    private static <T> Formato<T> json(Conversion<T, String> escritura, Conversion<Map<String, String>, T> lectura) {
+        return new Formato<>() {
+            @Override
+            public byte[] codificar(T valor) throws Exception {
+                return escritura.aplicar(valor).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decodificar(byte[] bytes) throws Exception {
+                return lectura.aplicar(leerObjeto(new String(bytes, StandardCharsets.UTF_8)));
+            }
+        };
+    }
+
+    // JSON
+
+    private static String json(Producto p) {
+        StringBuilder json = new StringBuilder(128).append('{');
+        campo(json, "id", p.getId()).append(',');
+        campo(json, "nombre", p.getNombre()).append(',');
+        campo(json, "descripcion", p.getDescripcion()).append(',');
+        importe(json, "precio", p.getPrecio()).append(',');
+        campo(json, "cantidad", p.getCantidad()).append(',');
+        campo(json, "idCategoria", p.getIdCategoria()).append(',');
+        campo(json, "version", p.getVersion());
+        return json.append('}').toString();
+    }
+
+    private static Producto producto(Map<String, String> json) {
+        return new Producto(Integer.parseInt(json.get("id")), json.get("nombre"), json.get("descripcion"),
+                Dinero.parsear(json.get("precio")), Integer.parseInt(json.get("cantidad")),
+                Integer.parseInt(json.get("idCategoria")), Integer.parseInt(json.get("version")));
+    }
+
+    private static String json(Categoria c) {
+        StringBuilder json = new StringBuilder(96).append('{');
+        campo(json, "id", c.getId()).append(',');
+        campo(json, "nombre", c.getNombre()).append(',');
+        campo(json, "descripcion", c.getDescripcion());
+        return json.append('}').toString();
+    }
+
+    private static Categoria categoria(Map<String, String> json) {
+        return new Categoria(Integer.parseInt(json.get("id")), json.get("nombre"), json.get("descripcion"));
+    }
+
+    private static String json(Pedido p) {
+        StringBuilder json = new StringBuilder(64).append('{');
+        campo(json, "id", p.getId()).append(',');
+        campo(json, "fecha", p.getFecha().toString()).append(',');
+        importe(json, "total", p.getTotal());
+        return json.append('}').toString();
+    }
+
+    private static Pedido pedido(Map<String, String> json) {
+        return new Pedido(Integer.parseInt(json.get("id")), java.sql.Date.valueOf(json.get("fecha")),
+                Dinero.parsear(json.get("total")));
+    }
+
+    private static String json(ItemPedido i) {
+        StringBuilder json = new StringBuilder(96).append('{');
+        campo(json, "id", i.getId()).append(',');
+        campo(json, "idPedido", i.getIdPedido()).append(',');
+        campo(json, "idProducto", i.getIdProducto()).append(',');
+        campo(json, "cantidad", i.getCantidad()).append(',');
+        importe(json, "subtotal", i.getSubtotal());
+        return json.append('}').toString();
+    }
+
+    private static ItemPedido itemPedido(Map<String, String> json) {
+        return new ItemPedido(Integer.parseInt(json.get("id")), Integer.parseInt(json.get("idPedido")),
+                Integer.parseInt(json.get("idProducto")), Integer.parseInt(json.get("cantidad")),
+                Dinero.parsear(json.get("subtotal")));
+    }
+
+    private static StringBuilder campo(StringBuilder json, String nombre, Object valor) {
+        json.append('"').append(nombre).append("\":");
+        if (valor instanceof String texto) {
+            json.append('"');
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\');
+                }
+                json.append(c);
+            }
+            return json.append('"');
+        }
+        return json.append(valor);
+    }
+
+    private static StringBuilder importe(StringBuilder json, String nombre, long centavos) {
+        json.append('"').append(nombre).append("\":");
+        return Dinero.formatear(json, centavos);
+    }
+
+    /**
+     * Interpreta un objeto JSON plano. Los valores quedan como texto (null
+     * para {@code null}).
+     */
+    private static Map<String, String> leerObjeto(String json) {
+        Map<String, String> campos = new HashMap<>();
+        int i = json.indexOf('{') + 1;
+        while (i < json.length() && json.charAt(i) != '}') {
+            int inicioClave = json.indexOf('"', i) + 1;
+            int finClave = json.indexOf('"', inicioClave);
+            String clave = json.substring(inicioClave, finClave);
+            i = json.indexOf(':', finClave) + 1;
+
+            String valor;
+            if (json.charAt(i) == '"') {
+                StringBuilder texto = new StringBuilder();
+                for (i++; json.charAt(i) != '"'; i++) {
+                    if (json.charAt(i) == '\\') {
+                        i++;
+                    }
+                    texto.append(json.charAt(i));
+                }
+                i++;
+                valor = texto.toString();
+            } else {
+                int fin = i;
+                while (fin < json.length() && json.charAt(fin) != ',' && json.charAt(fin) != '}') {
+                    fin++;
+                }
+                valor = json.substring(i, fin);
+                if (valor.equals("null")) {
+                    valor = null;
+                }
+                i = fin;
+            }
+            campos.put(clave, valor);
+            if (json.charAt(i) == ',') {
+                i++;
+            }
+        }
+        return campos;
+    }
+
+    // Equivalentes serializables de las entidades
+
+    private static final class ProductoJava implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final String nombre;
+        private final String descripcion;
+        private final long precio;
+        private final int cantidad;
+        private final int idCategoria;
+        private final int version;
+
+        private ProductoJava(Producto p) {
+            this.id = p.getId();
+            this.nombre = p.getNombre();
+            this.descripcion = p.getDescripcion();
+            this.precio = p.getPrecio();
+            this.cantidad = p.getCantidad();
+            this.idCategoria = p.getIdCategoria();
+            this.version = p.getVersion();
+        }
+
+        private Producto aModelo() {
+            return new Producto(id, nombre, descripcion, precio, cantidad, idCategoria, version);
+        }
+    }
+
+    private static final class CategoriaJava implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final String nombre;
+        private final String descripcion;
+
+        private CategoriaJava(Categoria c) {
+            this.id = c.getId();
+            this.nombre = c.getNombre();
+            this.descripcion = c.getDescripcion();
+        }
+
+        private Categoria aModelo() {
+            return new Categoria(id, nombre, descripcion);
+        }
+    }
+
+    private static final class PedidoJava implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final Date fecha;
+        private final long total;
+
+        private PedidoJava(Pedido p) {
+            this.id = p.getId();
+            this.fecha = p.getFecha();
+            this.total = p.getTotal();
+        }
+
+        private Pedido aModelo() {
+            return new Pedido(id, fecha, total);
+        }
+    }
+
+    private static final class ItemPedidoJava implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final int idPedido;
+        private final int idProducto;
+        private final int cantidad;
+        private final long subtotal;
+
+        private ItemPedidoJava(ItemPedido i) {
+            this.id = i.getId();
+            this.idPedido = i.getIdPedido();
+            this.idProducto = i.getIdProducto();
+            this.cantidad = i.getCantidad();
+            this.subtotal = i.getSubtotal();
+        }
+
+        private ItemPedido aModelo() {
+            return new ItemPedido(id, idPedido, idProducto, cantidad, subtotal);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package main;
+
+import javax.management.JMX;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import service.TrazasCrearPedido;
+import service.TrazasCrearPedidoMXBean;
+
+/**
+ * Vuelca las trazas de creación de pedidos de un proceso en ejecución, por
+ * JMX: percentiles por fase, qué parte del tiempo total se lleva cada fase y
+ * las últimas trazas.
+ *
+ * El proceso tiene que aceptar conexiones JMX remotas, por ejemplo con
+ * {@code -Dcom.sun.management.jmxremote.port=9010
+ * -Dcom.sun.management.jmxremote.authenticate=false
+ * -Dcom.sun.management.jmxremote.ssl=false}.
+ *
+ * Uso: {@code java main.VolcarTrazasPedidos host:puerto [reiniciar]}. Con
+ * {@code reiniciar}, después de volcar descarta las trazas para empezar una
+ * medición nueva.
+ */
+public class VolcarTrazasPedidos {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Uso: java main.VolcarTrazasPedidos host:puerto [reiniciar]");
+            System.exit(2);
+        }
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + args[0] + "/jmxrmi");
+        try (JMXConnector conector = JMXConnectorFactory.connect(url)) {
+            MBeanServerConnection servidor = conector.getMBeanServerConnection();
+            TrazasCrearPedidoMXBean trazas = JMX.newMXBeanProxy(servidor,
+                    new ObjectName(TrazasCrearPedido.NOMBRE_JMX), TrazasCrearPedidoMXBean.class);
+            System.out.print(trazas.volcar());
+            if (args.length > 1 && args[1].equalsIgnoreCase("reiniciar")) {
+                trazas.reiniciar();
+            }
+        }
+    }
+}
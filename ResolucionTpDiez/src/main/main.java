@@ -3,24 +3,28 @@ package main;
 import java.util.ArrayList;
 import java.util.List;
 import model.Categoria;
+import model.Dinero;
 import model.ItemPedido;
 import model.Pedido;
 import model.Producto;
 import service.CategoriaServiceImpl;
 import service.PedidoServiceImpl;
 import service.ProductoServiceImpl;
+import service.VerificadorConsistencia;
 
 public class main {
 
     public static void main(String[] args) {
         try {
-            
-            CategoriaServiceImpl categoriaService = new CategoriaServiceImpl(new dao.CategoriaDAOImpl());
+            config.EsquemaBD.inicializar();
+            service.CacheCatalogo.instancia().iniciar();
+
+            CategoriaServiceImpl categoriaService = new CategoriaServiceImpl(dao.FabricaDAO.categorias());
             ProductoServiceImpl productoService = new ProductoServiceImpl();
             PedidoServiceImpl pedidoService = new PedidoServiceImpl(
-                    new dao.PedidoDAOImpl(),
-                    new dao.ItemPedidoDAOImpl(),
-                    new dao.ProductoDAOImpl()
+                    dao.FabricaDAO.pedidos(),
+                    dao.FabricaDAO.itemsPedido(),
+                    dao.FabricaDAO.productos()
             );
 
             // 1) Crear categoría
@@ -29,8 +33,8 @@ public class main {
             System.out.println("Categoría creada con ID: " + categoria.getId());
 
             // 2) Crear productos asociados a la categoría
-            Producto producto1 = new Producto("Smartphone", "Teléfono inteligente", 50000.0, 10, categoria.getId());
-            Producto producto2 = new Producto("Auriculares", "Auriculares inalámbricos", 15000.0, 20, categoria.getId());
+            Producto producto1 = new Producto("Smartphone", "Teléfono inteligente", Dinero.deUnidades(50000), 10, categoria.getId());
+            Producto producto2 = new Producto("Auriculares", "Auriculares inalámbricos", Dinero.deUnidades(15000), 20, categoria.getId());
 
             producto1 = productoService.crear(producto1);
             producto2 = productoService.crear(producto2);
@@ -54,6 +58,16 @@ public class main {
             System.out.println("\nDetalle del pedido:");
             pedidoService.mostrarDetallePedido(pedido.getId());
 
+            // 5) Verificar la consistencia entre pedidos, items y productos
+            System.out.println();
+            VerificadorConsistencia verificador = new VerificadorConsistencia(
+                    dao.FabricaDAO.pedidos(),
+                    dao.FabricaDAO.itemsPedido(),
+                    dao.FabricaDAO.productos(),
+                    2, 10_000
+            );
+            verificador.verificar().escribir(System.out);
+
         } catch (Exception e) {
             System.err.println("Error en la ejecución: " + e.getMessage());
             e.printStackTrace();
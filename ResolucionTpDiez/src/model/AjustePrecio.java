@@ -0,0 +1,80 @@
+package model;
+
+/**
+ * Cambio de precio para aplicar a muchos productos a la vez: un porcentaje o
+ * un importe fijo. El mismo cálculo se hace en Java ({@link #aplicar}) y en SQL
+ * con aritmética DECIMAL exacta, así que ambos dan el mismo centavo.
+ */
+public final class AjustePrecio {
+
+    // Centésimas de punto porcentual por unidad: 10000 = 100 %
+    public static final long ESCALA_PORCENTAJE = 10_000;
+
+    private final boolean porcentual;
+    private final long valor;
+
+    private AjustePrecio(boolean porcentual, long valor) {
+        this.porcentual = porcentual;
+        this.valor = valor;
+    }
+
+    /**
+     * Ajuste porcentual, redondeado al centavo (la mitad se aleja de cero,
+     * como ROUND de MySQL).
+     *
+     * @param centesimasDePunto Porcentaje en centésimas de punto: 1050 sube un
+     * 10,50 % y -2000 baja un 20 %. Debe ser mayor a -10000.
+     */
+    public static AjustePrecio porcentaje(long centesimasDePunto) {
+        if (centesimasDePunto <= -ESCALA_PORCENTAJE || centesimasDePunto == 0) {
+            throw new IllegalArgumentException("El porcentaje debe ser distinto de 0 y mayor a -100 %.");
+        }
+        return new AjustePrecio(true, centesimasDePunto);
+    }
+
+    /**
+     * Ajuste por un importe fijo.
+     *
+     * @param centavos Importe a sumar (negativo para restar).
+     */
+    public static AjustePrecio importe(long centavos) {
+        if (centavos == 0) {
+            throw new IllegalArgumentException("El importe del ajuste debe ser distinto de 0.");
+        }
+        return new AjustePrecio(false, centavos);
+    }
+
+    public boolean isPorcentual() {
+        return porcentual;
+    }
+
+    /**
+     * @return Centésimas de punto si es porcentual, centavos si no.
+     */
+    public long getValor() {
+        return valor;
+    }
+
+    /**
+     * Calcula el precio ajustado.
+     *
+     * @param precio Precio actual en centavos.
+     * @return Precio nuevo en centavos.
+     */
+    public long aplicar(long precio) {
+        if (!porcentual) {
+            return Dinero.sumar(precio, valor);
+        }
+        long escalado = Dinero.multiplicar(precio, ESCALA_PORCENTAJE + valor);
+        long mitad = escalado >= 0 ? ESCALA_PORCENTAJE / 2 : -ESCALA_PORCENTAJE / 2;
+        return (escalado + mitad) / ESCALA_PORCENTAJE;
+    }
+
+    @Override
+    public String toString() {
+        if (porcentual) {
+            return Dinero.formatear(valor) + " %";
+        }
+        return Dinero.formatear(valor);
+    }
+}
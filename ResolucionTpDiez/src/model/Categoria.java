@@ -1,6 +1,11 @@
 package model;
 
-public class Categoria {
+public class Categoria extends EntidadRastreada {
+
+    // Números de campo para el registro de modificaciones
+    public static final int CAMPO_NOMBRE = 0;
+    public static final int CAMPO_DESCRIPCION = 1;
+
     // Declaramos atributos
     private int id;
     private String nombre;
@@ -28,6 +33,7 @@ public class Categoria {
 
     public void setNombre(String nombre) {
         this.nombre = nombre;
+        marcarModificado(CAMPO_NOMBRE);
     }
 
     public String getDescripcion() {
@@ -36,6 +42,7 @@ public class Categoria {
 
     public void setDescripcion(String descripcion) {
         this.descripcion = descripcion;
+        marcarModificado(CAMPO_DESCRIPCION);
     }
 
 }
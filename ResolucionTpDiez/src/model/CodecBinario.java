@@ -0,0 +1,334 @@
+package model;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * Formato binario compacto de las entidades del modelo, para instantáneas y
+ * mensajes. Escribe y lee directamente sobre un {@link ByteBuffer}: los textos
+ * se codifican carácter por carácter en el buffer, sin arreglos intermedios.
+ *
+ * Cada registro empieza con un byte de versión del formato, seguido de los
+ * campos en orden fijo:
+ * <ul>
+ * <li>IDs: varint sin signo (1 byte hasta 127, 2 hasta 16383...).</li>
+ * <li>Cantidades: varint con signo (zigzag).</li>
+ * <li>Importes: centavos como varint con signo.</li>
+ * <li>Fechas: días desde 1970-01-01 como varint con signo; 0 es null.</li>
+ * <li>Textos: largo en bytes más 1 como varint (0 es null) y el contenido
+ * en UTF-8.</li>
+ * </ul>
+ *
+ * Los métodos {@code tamano} devuelven los bytes exactos de un registro, para
+ * reservar el buffer de una vez. Escribir en un buffer sin lugar lanza
+ * {@link BufferOverflowException} y leer un registro truncado lanza
+ * {@link java.nio.BufferUnderflowException}.
+ */
+public final class CodecBinario {
+
+    /**
+     * Versión del formato de registro que se escribe.
+     */
+    public static final byte VERSION = 1;
+
+    private CodecBinario() {
+    }
+
+    public static void escribir(ByteBuffer buffer, Producto p) {
+        buffer.put(VERSION);
+        escribirId(buffer, p.getId());
+        escribirTexto(buffer, p.getNombre());
+        escribirTexto(buffer, p.getDescripcion());
+        escribirImporte(buffer, p.getPrecio());
+        escribirEntero(buffer, p.getCantidad());
+        escribirId(buffer, p.getIdCategoria());
+        escribirId(buffer, p.getVersion());
+    }
+
+    public static Producto leerProducto(ByteBuffer buffer) {
+        verificarVersion(buffer);
+        int id = leerId(buffer);
+        String nombre = leerTexto(buffer);
+        String descripcion = leerTexto(buffer);
+        long precio = leerImporte(buffer);
+        int cantidad = leerEntero(buffer);
+        int idCategoria = leerId(buffer);
+        return new Producto(id, nombre, descripcion, precio, cantidad, idCategoria, leerId(buffer));
+    }
+
+    public static int tamano(Producto p) {
+        return 1 + tamanoId(p.getId()) + tamanoTexto(p.getNombre()) + tamanoTexto(p.getDescripcion())
+                + tamanoImporte(p.getPrecio()) + tamanoEntero(p.getCantidad()) + tamanoId(p.getIdCategoria())
+                + tamanoId(p.getVersion());
+    }
+
+    public static void escribir(ByteBuffer buffer, Categoria c) {
+        buffer.put(VERSION);
+        escribirId(buffer, c.getId());
+        escribirTexto(buffer, c.getNombre());
+        escribirTexto(buffer, c.getDescripcion());
+    }
+
+    public static Categoria leerCategoria(ByteBuffer buffer) {
+        verificarVersion(buffer);
+        int id = leerId(buffer);
+        String nombre = leerTexto(buffer);
+        return new Categoria(id, nombre, leerTexto(buffer));
+    }
+
+    public static int tamano(Categoria c) {
+        return 1 + tamanoId(c.getId()) + tamanoTexto(c.getNombre()) + tamanoTexto(c.getDescripcion());
+    }
+
+    public static void escribir(ByteBuffer buffer, Pedido p) {
+        buffer.put(VERSION);
+        escribirId(buffer, p.getId());
+        escribirFecha(buffer, p.getFecha());
+        escribirImporte(buffer, p.getTotal());
+    }
+
+    public static Pedido leerPedido(ByteBuffer buffer) {
+        verificarVersion(buffer);
+        int id = leerId(buffer);
+        Date fecha = leerFecha(buffer);
+        return new Pedido(id, fecha, leerImporte(buffer));
+    }
+
+    public static int tamano(Pedido p) {
+        return 1 + tamanoId(p.getId()) + tamanoFecha(p.getFecha()) + tamanoImporte(p.getTotal());
+    }
+
+    public static void escribir(ByteBuffer buffer, ItemPedido i) {
+        buffer.put(VERSION);
+        escribirId(buffer, i.getId());
+        escribirId(buffer, i.getIdPedido());
+        escribirId(buffer, i.getIdProducto());
+        escribirEntero(buffer, i.getCantidad());
+        escribirImporte(buffer, i.getSubtotal());
+    }
+
+    public static ItemPedido leerItemPedido(ByteBuffer buffer) {
+        verificarVersion(buffer);
+        int id = leerId(buffer);
+        int idPedido = leerId(buffer);
+        int idProducto = leerId(buffer);
+        int cantidad = leerEntero(buffer);
+        return new ItemPedido(id, idPedido, idProducto, cantidad, leerImporte(buffer));
+    }
+
+    public static int tamano(ItemPedido i) {
+        return 1 + tamanoId(i.getId()) + tamanoId(i.getIdPedido()) + tamanoId(i.getIdProducto())
+                + tamanoEntero(i.getCantidad()) + tamanoImporte(i.getSubtotal());
+    }
+
+    private static void verificarVersion(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Versión de registro no soportada: " + version);
+        }
+    }
+
+    // Tipos primitivos del formato
+
+    /**
+     * Escribe un valor como varint sin signo: 7 bits por byte, el bit alto
+     * indica que sigue otro byte.
+     */
+    public static void escribirVarint(ByteBuffer buffer, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    public static long leerVarint(ByteBuffer buffer) {
+        long valor = 0;
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            byte b = buffer.get();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            if (b >= 0) {
+                return valor;
+            }
+        }
+        throw new IllegalArgumentException("Varint demasiado largo.");
+    }
+
+    public static int tamanoVarint(long valor) {
+        int bytes = 1;
+        while ((valor & ~0x7FL) != 0) {
+            valor >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Escribe un entero con signo en zigzag: los valores cercanos a 0,
+     * positivos o negativos, ocupan pocos bytes.
+     */
+    public static void escribirEntero(ByteBuffer buffer, long valor) {
+        escribirVarint(buffer, (valor << 1) ^ (valor >> 63));
+    }
+
+    public static int leerEntero(ByteBuffer buffer) {
+        return Math.toIntExact(leerEnteroLargo(buffer));
+    }
+
+    public static long leerEnteroLargo(ByteBuffer buffer) {
+        long zigzag = leerVarint(buffer);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static int tamanoEntero(long valor) {
+        return tamanoVarint((valor << 1) ^ (valor >> 63));
+    }
+
+    private static void escribirId(ByteBuffer buffer, int id) {
+        escribirVarint(buffer, id & 0xFFFFFFFFL);
+    }
+
+    private static int leerId(ByteBuffer buffer) {
+        return (int) leerVarint(buffer);
+    }
+
+    private static int tamanoId(int id) {
+        return tamanoVarint(id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Escribe un importe en centavos (ver {@link Dinero}).
+     */
+    public static void escribirImporte(ByteBuffer buffer, long importe) {
+        escribirEntero(buffer, importe);
+    }
+
+    public static long leerImporte(ByteBuffer buffer) {
+        return leerEnteroLargo(buffer);
+    }
+
+    public static int tamanoImporte(long importe) {
+        return tamanoEntero(importe);
+    }
+
+    private static long valorFecha(Date fecha) {
+        if (fecha == null) {
+            return 0;
+        }
+        long dia = new java.sql.Date(fecha.getTime()).toLocalDate().toEpochDay();
+        // El 0 queda para null: los días no negativos se corren uno
+        return dia >= 0 ? dia + 1 : dia;
+    }
+
+    public static void escribirFecha(ByteBuffer buffer, Date fecha) {
+        escribirEntero(buffer, valorFecha(fecha));
+    }
+
+    /**
+     * Lee una fecha escrita con {@link #escribirFecha}.
+     *
+     * @return Fecha como {@link java.sql.Date}, o null.
+     */
+    public static java.sql.Date leerFecha(ByteBuffer buffer) {
+        long valor = leerEnteroLargo(buffer);
+        if (valor == 0) {
+            return null;
+        }
+        return java.sql.Date.valueOf(LocalDate.ofEpochDay(valor > 0 ? valor - 1 : valor));
+    }
+
+    public static int tamanoFecha(Date fecha) {
+        return tamanoEntero(valorFecha(fecha));
+    }
+
+    /**
+     * Escribe un texto en UTF-8 precedido por su largo, codificando carácter
+     * por carácter en el buffer.
+     */
+    public static void escribirTexto(ByteBuffer buffer, String texto) {
+        if (texto == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        escribirVarint(buffer, largoUtf8(texto) + 1L);
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int punto = Character.toCodePoint(c, texto.charAt(++i));
+                buffer.put((byte) (0xF0 | (punto >> 18)));
+                buffer.put((byte) (0x80 | ((punto >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((punto >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (punto & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Sustituto suelto: se escribe '?', igual que String.getBytes
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Lee un texto escrito con {@link #escribirTexto}. Con un buffer sobre un
+     * arreglo el texto se decodifica directamente desde él.
+     */
+    public static String leerTexto(ByteBuffer buffer) {
+        long largo = leerVarint(buffer) - 1;
+        if (largo < 0) {
+            return null;
+        }
+        int bytes = Math.toIntExact(largo);
+        if (bytes > buffer.remaining()) {
+            throw new java.nio.BufferUnderflowException();
+        }
+        String texto;
+        if (buffer.hasArray()) {
+            texto = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), bytes, StandardCharsets.UTF_8);
+        } else {
+            texto = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), bytes)).toString();
+        }
+        buffer.position(buffer.position() + bytes);
+        return texto;
+    }
+
+    public static int tamanoTexto(String texto) {
+        if (texto == null) {
+            return 1;
+        }
+        int largo = largoUtf8(texto);
+        return tamanoVarint(largo + 1L) + largo;
+    }
+
+    /**
+     * Bytes que ocupa un texto en UTF-8.
+     */
+    public static int largoUtf8(String texto) {
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
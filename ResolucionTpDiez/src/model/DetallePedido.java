@@ -0,0 +1,82 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Detalle de un pedido para mostrar: sus datos y, por cada item, el nombre
+ * del producto y de su categoría. Se arma completo al leerlo, así que se puede
+ * mostrar o serializar después de devolver la conexión.
+ */
+public final class DetallePedido {
+
+    /**
+     * Un item del pedido con los nombres ya resueltos.
+     */
+    public static final class Linea {
+
+        private final String producto;
+        private final String categoria;
+        private final int cantidad;
+        private final long subtotal; // En centavos, ver Dinero
+
+        public Linea(String producto, String categoria, int cantidad, long subtotal) {
+            this.producto = producto;
+            this.categoria = categoria;
+            this.cantidad = cantidad;
+            this.subtotal = subtotal;
+        }
+
+        public String getProducto() {
+            return producto;
+        }
+
+        public String getCategoria() {
+            return categoria;
+        }
+
+        public int getCantidad() {
+            return cantidad;
+        }
+
+        public long getSubtotal() {
+            return subtotal;
+        }
+    }
+
+    private final int idPedido;
+    private final Date fecha;
+    private final long total; // En centavos, ver Dinero
+    private final List<Linea> lineas = new ArrayList<>();
+
+    public DetallePedido(int idPedido, Date fecha, long total) {
+        this.idPedido = idPedido;
+        this.fecha = fecha;
+        this.total = total;
+    }
+
+    public void agregarLinea(Linea linea) {
+        lineas.add(linea);
+    }
+
+    public int getIdPedido() {
+        return idPedido;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Items del pedido, en orden de ID; no se puede modificar.
+     */
+    public List<Linea> getLineas() {
+        return Collections.unmodifiableList(lineas);
+    }
+}
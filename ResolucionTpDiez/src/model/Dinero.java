@@ -0,0 +1,147 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * Aritmética de importes en centavos.
+ *
+ * Los importes del modelo son {@code long} con la cantidad de centavos, igual
+ * que las columnas DECIMAL(12,2): las sumas y productos son exactos y no crean
+ * objetos. Las operaciones lanzan {@link ArithmeticException} si el resultado
+ * no entra en un {@code long}, en lugar de dar un importe equivocado.
+ *
+ * {@link BigDecimal} se usa solo en el borde con JDBC, con
+ * {@link #desdeDecimal} y {@link #aDecimal}.
+ */
+public final class Dinero {
+
+    /**
+     * Decimales de los importes, los de las columnas DECIMAL(12,2).
+     */
+    public static final int ESCALA = 2;
+
+    public static final long CENTAVOS_POR_UNIDAD = 100;
+
+    /**
+     * Mayor importe que entra en una columna DECIMAL(12,2), en centavos.
+     */
+    public static final long MAXIMO = 999_999_999_999L;
+
+    private Dinero() {
+    }
+
+    /**
+     * Convierte unidades enteras a centavos.
+     */
+    public static long deUnidades(long unidades) {
+        return Math.multiplyExact(unidades, CENTAVOS_POR_UNIDAD);
+    }
+
+    public static long sumar(long importe, long otro) {
+        return Math.addExact(importe, otro);
+    }
+
+    public static long restar(long importe, long otro) {
+        return Math.subtractExact(importe, otro);
+    }
+
+    /**
+     * Multiplica un importe por una cantidad, como el subtotal de un item.
+     */
+    public static long multiplicar(long importe, long cantidad) {
+        return Math.multiplyExact(importe, cantidad);
+    }
+
+    /**
+     * Convierte el valor de una columna DECIMAL a centavos.
+     *
+     * @param valor Valor leído con {@code getBigDecimal}; null se toma como 0,
+     * como un {@code SUM} sin filas.
+     * @throws ArithmeticException Si el valor tiene más de dos decimales.
+     */
+    public static long desdeDecimal(BigDecimal valor) {
+        if (valor == null) {
+            return 0;
+        }
+        return valor.movePointRight(ESCALA).longValueExact();
+    }
+
+    /**
+     * Convierte centavos al valor exacto para una columna DECIMAL.
+     */
+    public static BigDecimal aDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, ESCALA);
+    }
+
+    /**
+     * Interpreta un importe escrito como {@code 1234}, {@code 1234.5} o
+     * {@code 1234.56}, con signo opcional.
+     *
+     * @throws NumberFormatException Si el texto no es un importe, tiene más
+     * de dos decimales o no entra en un {@code long}.
+     */
+    public static long parsear(String texto) {
+        try {
+            return parsearCentavos(texto);
+        } catch (ArithmeticException ex) {
+            throw new NumberFormatException("Importe fuera de rango: \"" + texto + "\"");
+        }
+    }
+
+    private static long parsearCentavos(String texto) {
+        int largo = texto.length();
+        int i = 0;
+        boolean negativo = false;
+        if (largo > 0 && (texto.charAt(0) == '-' || texto.charAt(0) == '+')) {
+            negativo = texto.charAt(0) == '-';
+            i++;
+        }
+        long centavos = 0;
+        int digitos = 0;
+        int decimales = -1;
+        for (; i < largo; i++) {
+            char c = texto.charAt(i);
+            if (c == '.' && decimales < 0) {
+                decimales = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || decimales == ESCALA) {
+                throw new NumberFormatException("Importe inválido: \"" + texto + "\"");
+            }
+            centavos = Math.addExact(Math.multiplyExact(centavos, 10), c - '0');
+            digitos++;
+            if (decimales >= 0) {
+                decimales++;
+            }
+        }
+        if (digitos == 0) {
+            throw new NumberFormatException("Importe inválido: \"" + texto + "\"");
+        }
+        for (int faltan = ESCALA - Math.max(decimales, 0); faltan > 0; faltan--) {
+            centavos = Math.multiplyExact(centavos, 10);
+        }
+        return negativo ? -centavos : centavos;
+    }
+
+    /**
+     * Escribe un importe con dos decimales, sin crear objetos intermedios.
+     *
+     * @return El mismo {@code destino}.
+     */
+    public static StringBuilder formatear(StringBuilder destino, long centavos) {
+        long unidades = centavos / CENTAVOS_POR_UNIDAD;
+        long resto = Math.abs(centavos % CENTAVOS_POR_UNIDAD);
+        if (centavos < 0 && unidades == 0) {
+            destino.append('-');
+        }
+        destino.append(unidades).append('.');
+        if (resto < 10) {
+            destino.append('0');
+        }
+        return destino.append(resto);
+    }
+
+    public static String formatear(long centavos) {
+        return formatear(new StringBuilder(24), centavos).toString();
+    }
+}
@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * Base de las entidades que registran qué campos se modificaron desde que se
+ * leyeron o guardaron. Los DAOs usan esta información para actualizar solo las
+ * columnas cambiadas.
+ *
+ * Cada entidad numera sus campos con constantes {@code CAMPO_*} y marca el
+ * campo correspondiente en sus setters. Los constructores no marcan cambios.
+ */
+public abstract class EntidadRastreada {
+
+    private int camposModificados;
+
+    /**
+     * Marca un campo como modificado.
+     *
+     * @param campo Número de campo (constante {@code CAMPO_*} de la entidad).
+     */
+    protected final void marcarModificado(int campo) {
+        camposModificados |= 1 << campo;
+    }
+
+    /**
+     * Devuelve la máscara de campos modificados, un bit por campo.
+     *
+     * @return Máscara de campos modificados.
+     */
+    public int getCamposModificados() {
+        return camposModificados;
+    }
+
+    /**
+     * Indica si un campo fue modificado.
+     *
+     * @param campo Número de campo.
+     * @return true si el campo fue modificado.
+     */
+    public boolean estaModificado(int campo) {
+        return (camposModificados & (1 << campo)) != 0;
+    }
+
+    /**
+     * Indica si hay algún campo modificado.
+     *
+     * @return true si hay cambios pendientes de guardar.
+     */
+    public boolean tieneCambios() {
+        return camposModificados != 0;
+    }
+
+    /**
+     * Descarta las marcas de modificación, normalmente después de guardar.
+     */
+    public void limpiarCambios() {
+        camposModificados = 0;
+    }
+}
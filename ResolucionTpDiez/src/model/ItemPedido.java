@@ -1,15 +1,22 @@
 package model;
 
-public class ItemPedido {
+public class ItemPedido extends EntidadRastreada {
+
+    // Números de campo para el registro de modificaciones
+    public static final int CAMPO_ID_PEDIDO = 0;
+    public static final int CAMPO_ID_PRODUCTO = 1;
+    public static final int CAMPO_CANTIDAD = 2;
+    public static final int CAMPO_SUBTOTAL = 3;
+
     // Declaramos los atributos
     private int id;
     private int idPedido;
     private int idProducto;
     private int cantidad;
-    private double subtotal;
+    private long subtotal; // En centavos, ver Dinero
 
     // Declaramos el constructor
-    public ItemPedido(int id, int idPedido, int idProducto, int cantidad, double subtotal) {
+    public ItemPedido(int id, int idPedido, int idProducto, int cantidad, long subtotal) {
         this.id = id;
         this.idPedido = idPedido;
         this.idProducto = idProducto;
@@ -32,6 +39,7 @@ public class ItemPedido {
 
     public void setIdPedido(int idPedido) {
         this.idPedido = idPedido;
+        marcarModificado(CAMPO_ID_PEDIDO);
     }
 
     public int getIdProducto() {
@@ -40,6 +48,7 @@ public class ItemPedido {
 
     public void setIdProducto(int idProducto) {
         this.idProducto = idProducto;
+        marcarModificado(CAMPO_ID_PRODUCTO);
     }
 
     public int getCantidad() {
@@ -48,14 +57,16 @@ public class ItemPedido {
 
     public void setCantidad(int cantidad) {
         this.cantidad = cantidad;
+        marcarModificado(CAMPO_CANTIDAD);
     }
 
-    public double getSubtotal() {
+    public long getSubtotal() {
         return subtotal;
     }
 
-    public void setSubtotal(double subtotal) {
+    public void setSubtotal(long subtotal) {
         this.subtotal = subtotal;
+        marcarModificado(CAMPO_SUBTOTAL);
     }
 
     
@@ -4,14 +4,19 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-public class Pedido {
+public class Pedido extends EntidadRastreada {
+
+    // Números de campo para el registro de modificaciones
+    public static final int CAMPO_FECHA = 0;
+    public static final int CAMPO_TOTAL = 1;
+
     //Declaramos los atributos
     private int id;
     private Date fecha;
-    private double total;
+    private long total; // En centavos, ver Dinero
 
     // Creamos el constrcutor
-    public Pedido(int id, Date fecha, double total) {
+    public Pedido(int id, Date fecha, long total) {
         this.id = id;
         this.fecha = fecha;
         this.total = total;
@@ -36,14 +41,16 @@ public class Pedido {
 
     public void setFecha(Date fecha) {
         this.fecha = fecha;
+        marcarModificado(CAMPO_FECHA);
     }
 
-    public double getTotal() {
+    public long getTotal() {
         return total;
     }
 
-    public void setTotal(double total) {
+    public void setTotal(long total) {
         this.total = total;
+        marcarModificado(CAMPO_TOTAL);
     }
 
 }
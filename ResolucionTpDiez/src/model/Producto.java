@@ -1,16 +1,25 @@
 package model;
 
-public class Producto {
+public class Producto extends EntidadRastreada {
+
+    // Números de campo para el registro de modificaciones
+    public static final int CAMPO_NOMBRE = 0;
+    public static final int CAMPO_DESCRIPCION = 1;
+    public static final int CAMPO_PRECIO = 2;
+    public static final int CAMPO_CANTIDAD = 3;
+    public static final int CAMPO_ID_CATEGORIA = 4;
+
     // Declaramos atributos
     private int id;
     private String nombre;
     private String descripcion;
-    private double precio;
+    private long precio; // En centavos, ver Dinero
     private int cantidad;
-    private int idCategoria;   
+    private int idCategoria;
+    private int version;
     
     // Creamos los constructores
-    public Producto(String nombre, String descripcion, double precio, int cantidad, int idCategoria) {
+    public Producto(String nombre, String descripcion, long precio, int cantidad, int idCategoria) {
         this.nombre = nombre;
         this.descripcion = descripcion;
         this.precio = precio;
@@ -18,7 +27,7 @@ public class Producto {
         this.idCategoria = idCategoria;
     }
 
-    public Producto(int id, String nombre, String descripcion, double precio, int cantidad, int idCategoria) {
+    public Producto(int id, String nombre, String descripcion, long precio, int cantidad, int idCategoria) {
         this.id = id;
         this.nombre = nombre;
         this.descripcion = descripcion;
@@ -26,6 +35,11 @@ public class Producto {
         this.cantidad = cantidad;
         this.idCategoria = idCategoria;
     }
+
+    public Producto(int id, String nombre, String descripcion, long precio, int cantidad, int idCategoria, int version) {
+        this(id, nombre, descripcion, precio, cantidad, idCategoria);
+        this.version = version;
+    }
     
 
     // Creamos los getter y setter
@@ -43,6 +57,7 @@ public class Producto {
 
     public void setNombre(String nombre) {
         this.nombre = nombre;
+        marcarModificado(CAMPO_NOMBRE);
     }
 
     public String getDescripcion() {
@@ -51,14 +66,16 @@ public class Producto {
 
     public void setDescripcion(String descripcion) {
         this.descripcion = descripcion;
+        marcarModificado(CAMPO_DESCRIPCION);
     }
 
-    public double getPrecio() {
+    public long getPrecio() {
         return precio;
     }
 
-    public void setPrecio(double precio) {
+    public void setPrecio(long precio) {
         this.precio = precio;
+        marcarModificado(CAMPO_PRECIO);
     }
 
     public int getCantidad() {
@@ -67,6 +84,7 @@ public class Producto {
 
     public void setCantidad(int cantidad) {
         this.cantidad = cantidad;
+        marcarModificado(CAMPO_CANTIDAD);
     }
 
     public int getIdCategoria() {
@@ -75,6 +93,15 @@ public class Producto {
 
     public void setIdCategoria(int idCategoria) {
         this.idCategoria = idCategoria;
+        marcarModificado(CAMPO_ID_CATEGORIA);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 
 }
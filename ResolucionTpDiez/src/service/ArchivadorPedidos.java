@@ -0,0 +1,203 @@
+package service;
+
+import config.BaseDatos;
+import config.CargaRechazadaException;
+import config.DatabaseConnection;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ArchivoPedidosDAO;
+import java.sql.Connection;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Pedido;
+
+/**
+ * Mueve los pedidos anteriores a una fecha de corte, con sus items, a las
+ * tablas históricas particionadas por año.
+ *
+ * Cada shard se archiva por separado, de a lotes chicos: cada lote es una
+ * transacción corta que bloquea sus pedidos, los copia al histórico, los borra
+ * de las tablas principales y guarda el avance. Los lotes avanzan por la clave
+ * (fecha, id) desde el último pedido movido, así que cada uno empieza donde
+ * terminó el anterior sin volver a recorrer lo ya borrado. Entre lote y lote
+ * el archivador hace una pausa al menos tan larga como el lote, de modo que
+ * nunca ocupa la base más de la mitad del tiempo.
+ *
+ * El avance queda guardado en la misma transacción que cada lote: si el
+ * proceso se detiene o falla, la próxima ejecución con el mismo corte sigue
+ * desde el último lote confirmado. Con otro corte se empieza desde el
+ * principio.
+ *
+ * Los IDs no se reutilizan (el contador AUTO_INCREMENT de MySQL 8 persiste
+ * aunque se borre el último pedido), así que un ID está en la tabla principal
+ * o en el histórico, nunca en ambas. {@link PedidoServiceImpl#leer} busca en
+ * el histórico cuando el pedido no está en la tabla principal.
+ */
+public class ArchivadorPedidos {
+
+    /**
+     * Totales de un archivado.
+     */
+    public static final class Resultado {
+
+        private final long pedidos;
+        private final long items;
+        private final long lotes;
+
+        private Resultado(long pedidos, long items, long lotes) {
+            this.pedidos = pedidos;
+            this.items = items;
+            this.lotes = lotes;
+        }
+
+        public long getPedidos() {
+            return pedidos;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getLotes() {
+            return lotes;
+        }
+    }
+
+    private static final String TRABAJO = "pedidos";
+
+    // Reintentos de un lote elegido como víctima de un interbloqueo o
+    // rechazado por el pool de lotes
+    private static final int MAX_INTENTOS_LOTE = 3;
+
+    private final ArchivoPedidosDAO archivoDAO;
+    private final int tamanoLote;
+    private final long pausaMinimaMillis;
+    private volatile boolean detenido;
+
+    /**
+     * @param archivoDAO DAO del histórico de pedidos.
+     * @param tamanoLote Cantidad de pedidos por lote y transacción.
+     * @param pausaMinimaMillis Pausa mínima entre lotes, en milisegundos.
+     */
+    public ArchivadorPedidos(ArchivoPedidosDAO archivoDAO, int tamanoLote, long pausaMinimaMillis) {
+        if (tamanoLote <= 0 || pausaMinimaMillis < 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor a 0 y la pausa no puede ser negativa.");
+        }
+        this.archivoDAO = archivoDAO;
+        this.tamanoLote = tamanoLote;
+        this.pausaMinimaMillis = pausaMinimaMillis;
+    }
+
+    /**
+     * Archiva los pedidos con fecha anterior al corte en todos los shards.
+     * Termina cuando no quedan pedidos para archivar o cuando se llama a
+     * {@link #detener}.
+     *
+     * @param corte Fecha de corte (exclusiva); solo se tiene en cuenta el día.
+     * @return Totales movidos en esta ejecución.
+     * @throws Exception Si un lote falla después de los reintentos; los lotes
+     * anteriores quedan confirmados.
+     */
+    public Resultado archivar(Date corte) throws Exception {
+        if (corte == null) {
+            throw new IllegalArgumentException("La fecha de corte no puede ser nula.");
+        }
+        detenido = false;
+        java.sql.Date dia = java.sql.Date.valueOf(new java.sql.Date(corte.getTime()).toLocalDate());
+        long[] totales = new long[3];
+        for (int i = 0; i < DatabaseConnection.cantidadShards() && !detenido; i++) {
+            archivar(DatabaseConnection.shard(i), dia, totales);
+        }
+        return new Resultado(totales[0], totales[1], totales[2]);
+    }
+
+    /**
+     * Pide que el archivado en curso termine después del lote actual. La
+     * próxima ejecución con el mismo corte sigue desde ahí.
+     */
+    public void detener() {
+        detenido = true;
+    }
+
+    private void archivar(BaseDatos shard, java.sql.Date corte, long[] totales) throws Exception {
+        // En MySQL el DDL confirma implícitamente: va fuera de los lotes
+        try (Connection conn = shard.getConnection(TipoCarga.LOTE)) {
+            archivoDAO.prepararParticiones(conn, corte);
+        }
+
+        ArchivoPedidosDAO.Avance avance = TransactionTemplate.leer(shard, TipoCarga.LOTE,
+                conn -> archivoDAO.leerAvance(conn, TRABAJO));
+        if (avance == null || !avance.getCorte().toLocalDate().equals(corte.toLocalDate())) {
+            avance = new ArchivoPedidosDAO.Avance(corte, null, 0);
+        }
+
+        int[] movidos = new int[2];
+        while (!detenido) {
+            long inicio = System.nanoTime();
+            avance = moverLote(shard, corte, avance, movidos);
+            if (movidos[0] == 0) {
+                return;
+            }
+            totales[0] += movidos[0];
+            totales[1] += movidos[1];
+            totales[2]++;
+            if (!pausar(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mueve un lote en su propia transacción, reintentando si la base la
+     * deshace por un interbloqueo.
+     *
+     * @param movidos Recibe la cantidad de pedidos y de items movidos.
+     * @return Avance después del lote, o el mismo si no quedaban pedidos.
+     */
+    private ArchivoPedidosDAO.Avance moverLote(BaseDatos shard, java.sql.Date corte, ArchivoPedidosDAO.Avance desde,
+            int[] movidos) throws Exception {
+        for (int intento = 1;; intento++) {
+            movidos[0] = 0;
+            movidos[1] = 0;
+            try {
+                // Con READ COMMITTED el FOR UPDATE bloquea solo los pedidos
+                // del lote, sin bloquear huecos del índice para las inserciones
+                return TransactionTemplate.ejecutar(shard, TipoCarga.LOTE, TransactionTemplate.Modo.LECTURA_ESCRITURA,
+                        Connection.TRANSACTION_READ_COMMITTED, conn -> {
+                            List<Pedido> lote = archivoDAO.siguienteLote(conn, corte, desde, tamanoLote);
+                            if (lote.isEmpty()) {
+                                return desde;
+                            }
+                            int items = archivoDAO.mover(conn, lote);
+                            Pedido ultimo = lote.get(lote.size() - 1);
+                            ArchivoPedidosDAO.Avance avance = new ArchivoPedidosDAO.Avance(corte,
+                                    new java.sql.Date(ultimo.getFecha().getTime()), ultimo.getId());
+                            archivoDAO.guardarAvance(conn, TRABAJO, avance);
+                            movidos[0] = lote.size();
+                            movidos[1] = items;
+                            return avance;
+                        });
+            } catch (SQLTransactionRollbackException | CargaRechazadaException ex) {
+                if (intento >= MAX_INTENTOS_LOTE || !pausar(100L * intento)) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Espera entre lotes. Devuelve false si el hilo fue interrumpido, lo que
+     * detiene el archivado.
+     */
+    private boolean pausar(long duracionLoteMillis) {
+        try {
+            Thread.sleep(Math.max(pausaMinimaMillis, duracionLoteMillis));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package service;
+
+import config.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bus de eventos en proceso sobre un anillo acotado.
+ *
+ * Los servicios publican con {@link #publicar}, que espera al commit de la
+ * transacción en curso: un evento nunca describe un cambio que se deshizo.
+ * Cada consumidor tiene su propio hilo y su propia posición en el anillo, y
+ * recibe los eventos en el orden de publicación, en lotes de hasta el tamaño
+ * que pidió. Un lote que falla se vuelve a entregar entero, con una espera
+ * creciente, hasta cinco veces; recién entonces se
+ * registra como error y se saltea. Mientras tanto ese consumidor no avanza,
+ * pero no frena a los demás. Lo que no puede perderse, como invalidar la
+ * cache del catálogo, no se hace en un consumidor sino al confirmar la
+ * transacción (ver {@link CacheCatalogo#invalidarAlConfirmar}).
+ *
+ * Un lugar del anillo se reutiliza cuando todos los consumidores pasaron por
+ * él. Si el consumidor más lento se atrasa la capacidad completa, la
+ * {@link Contrapresion} decide si el que publica espera o el evento se
+ * descarta. Los consumidores no deben publicar con {@link Contrapresion#BLOQUEAR}:
+ * podrían esperarse a sí mismos.
+ *
+ * Propiedades del sistema: {@code eventos.capacidad} (por defecto 8192,
+ * se redondea a potencia de 2) y {@code eventos.contrapresion}
+ * ({@code bloquear}, por defecto, o {@code descartar}).
+ */
+public final class BusEventos {
+
+    /**
+     * Qué hacer al publicar con el anillo lleno.
+     */
+    public enum Contrapresion {
+        /**
+         * El que publica espera a que el consumidor más lento libere lugar.
+         * No se pierden eventos, pero un consumidor trabado frena las
+         * escrituras.
+         */
+        BLOQUEAR,
+        /**
+         * El evento se descarta y se cuenta en {@link #getDescartados()}. Las
+         * escrituras nunca esperan; los consumidores deben tolerar huecos.
+         */
+        DESCARTAR
+    }
+
+    /**
+     * Receptor de lotes de eventos.
+     */
+    @FunctionalInterface
+    public interface Consumidor {
+
+        /**
+         * Procesa un lote de eventos, en orden de publicación.
+         *
+         * @param lote Eventos del lote; la lista no se puede modificar.
+         * @throws Exception Si falla; el lote se vuelve a entregar entero, así
+         * que procesar dos veces los mismos eventos no debe tener efectos
+         * distintos.
+         */
+        void procesar(List<EventoDominio> lote) throws Exception;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(BusEventos.class);
+
+    // Entregas de un lote que falla antes de saltearlo
+    private static final int MAX_INTENTOS_LOTE = 5;
+
+    private static final class Instancia {
+
+        private static final BusEventos BUS = new BusEventos(Integer.getInteger("eventos.capacidad", 8192),
+                Contrapresion.valueOf(System.getProperty("eventos.contrapresion", "bloquear").toUpperCase(Locale.ROOT)));
+    }
+
+    private final EventoDominio[] anillo;
+    private final int mascara;
+    private final Contrapresion contrapresion;
+
+    private final ReentrantLock candado = new ReentrantLock();
+    private final Condition hayEventos = candado.newCondition();
+    private final Condition hayLugar = candado.newCondition();
+
+    // Protegidos por el candado
+    private long publicados;
+    private long descartados;
+    private final List<Suscripcion> suscripciones = new ArrayList<>();
+
+    /**
+     * Crea un bus independiente del de {@link #instancia()}.
+     *
+     * @param capacidad Eventos que entran en el anillo; se redondea a la
+     * potencia de 2 siguiente.
+     * @param contrapresion Comportamiento con el anillo lleno.
+     */
+    public BusEventos(int capacidad, Contrapresion contrapresion) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor a 0.");
+        }
+        int tamano = Integer.highestOneBit(capacidad) == capacidad ? capacidad : Integer.highestOneBit(capacidad) << 1;
+        this.anillo = new EventoDominio[tamano];
+        this.mascara = tamano - 1;
+        this.contrapresion = contrapresion;
+    }
+
+    /**
+     * Devuelve el bus del proceso.
+     *
+     * @return Bus único del proceso.
+     */
+    public static BusEventos instancia() {
+        return Instancia.BUS;
+    }
+
+    /**
+     * Publica un evento cuando confirme la transacción en curso del hilo, o
+     * enseguida si no hay ninguna.
+     *
+     * @param evento Evento a publicar.
+     */
+    public void publicar(EventoDominio evento) {
+        TransactionTemplate.alConfirmar(() -> encolar(evento));
+    }
+
+    private void encolar(EventoDominio evento) {
+        candado.lock();
+        try {
+            while (publicados - minimoProcesado() >= anillo.length) {
+                if (contrapresion == Contrapresion.DESCARTAR) {
+                    descartados++;
+                    return;
+                }
+                try {
+                    hayLugar.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    descartados++;
+                    return;
+                }
+            }
+            evento.setSecuencia(publicados);
+            anillo[(int) (publicados & mascara)] = evento;
+            publicados++;
+            hayEventos.signalAll();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Posición del consumidor más atrasado. Sin consumidores no hay nada que
+     * retener.
+     */
+    private long minimoProcesado() {
+        long minimo = publicados;
+        for (Suscripcion suscripcion : suscripciones) {
+            minimo = Math.min(minimo, suscripcion.cursor);
+        }
+        return minimo;
+    }
+
+    /**
+     * Agrega un consumidor con su propio hilo. Recibe los eventos publicados a
+     * partir de este momento.
+     *
+     * @param nombre Nombre del consumidor, para el hilo y las métricas.
+     * @param tamanoLote Máximo de eventos por llamada al consumidor.
+     * @param consumidor Receptor de los lotes.
+     */
+    public void suscribir(String nombre, int tamanoLote, Consumidor consumidor) {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor a 0.");
+        }
+        Suscripcion suscripcion = new Suscripcion(nombre, tamanoLote, consumidor);
+        candado.lock();
+        try {
+            suscripcion.cursor = publicados;
+            suscripciones.add(suscripcion);
+        } finally {
+            candado.unlock();
+        }
+        Thread hilo = new Thread(suscripcion, "eventos-" + nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Detiene a todos los consumidores después del lote que estén procesando.
+     * Los eventos pendientes no se entregan.
+     */
+    public void cerrar() {
+        candado.lock();
+        try {
+            for (Suscripcion suscripcion : suscripciones) {
+                suscripcion.activa = false;
+            }
+            suscripciones.clear();
+            hayEventos.signalAll();
+            hayLugar.signalAll();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Cantidad total de eventos publicados.
+     *
+     * @return Eventos publicados, sin contar los descartados.
+     */
+    public long getPublicados() {
+        candado.lock();
+        try {
+            return publicados;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Eventos descartados por falta de lugar en el anillo.
+     *
+     * @return Cantidad de eventos descartados.
+     */
+    public long getDescartados() {
+        candado.lock();
+        try {
+            return descartados;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Devuelve el estado de cada consumidor.
+     *
+     * @return Métricas de cada consumidor, en orden de suscripción.
+     */
+    public List<MetricasConsumidor> metricas() {
+        long ahora = System.currentTimeMillis();
+        List<MetricasConsumidor> metricas = new ArrayList<>();
+        candado.lock();
+        try {
+            for (Suscripcion s : suscripciones) {
+                long retraso = publicados - s.cursor;
+                long antiguedad = retraso == 0 ? 0 : Math.max(0, ahora - anillo[(int) (s.cursor & mascara)].getMomento());
+                metricas.add(new MetricasConsumidor(s.nombre, retraso, antiguedad, s.procesados, s.lotes, s.errores,
+                        s.lotes == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(s.nanosProcesando / s.lotes)));
+            }
+        } finally {
+            candado.unlock();
+        }
+        return metricas;
+    }
+
+    private final class Suscripcion implements Runnable {
+
+        private final String nombre;
+        private final int tamanoLote;
+        private final Consumidor consumidor;
+
+        // Protegidos por el candado del bus
+        private long cursor;
+        private boolean activa = true;
+        private long procesados;
+        private long lotes;
+        private long errores;
+        private long nanosProcesando;
+
+        private Suscripcion(String nombre, int tamanoLote, Consumidor consumidor) {
+            this.nombre = nombre;
+            this.tamanoLote = tamanoLote;
+            this.consumidor = consumidor;
+        }
+
+        @Override
+        public void run() {
+            List<EventoDominio> lote = new ArrayList<>(tamanoLote);
+            List<EventoDominio> vista = Collections.unmodifiableList(lote);
+            while (true) {
+                long hasta;
+                candado.lock();
+                try {
+                    while (activa && cursor == publicados) {
+                        hayEventos.await();
+                    }
+                    if (!activa) {
+                        return;
+                    }
+                    // Los lugares hasta el cursor no se reutilizan, así que
+                    // pueden leerse sin carrera con los que publican
+                    hasta = Math.min(publicados, cursor + tamanoLote);
+                    for (long i = cursor; i < hasta; i++) {
+                        lote.add(anillo[(int) (i & mascara)]);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                } finally {
+                    candado.unlock();
+                }
+
+                long inicio = System.nanoTime();
+                boolean fallo = false;
+                for (int intento = 1;; intento++) {
+                    try {
+                        consumidor.procesar(vista);
+                        break;
+                    } catch (Exception ex) {
+                        if (intento >= MAX_INTENTOS_LOTE) {
+                            fallo = true;
+                            log.error("El consumidor {} falló {} veces con {} eventos desde la secuencia {}; se saltean",
+                                    nombre, intento, lote.size(), lote.get(0).getSecuencia(), ex);
+                            break;
+                        }
+                        log.warn("El consumidor {} falló con {} eventos; se reintenta: {}", nombre, lote.size(), ex.toString());
+                    }
+                    try {
+                        Thread.sleep(100L * intento);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                long duracion = System.nanoTime() - inicio;
+
+                candado.lock();
+                try {
+                    cursor = hasta;
+                    procesados += lote.size();
+                    lotes++;
+                    nanosProcesando += duracion;
+                    if (fallo) {
+                        errores++;
+                    }
+                    hayLugar.signalAll();
+                } finally {
+                    candado.unlock();
+                }
+                lote.clear();
+            }
+        }
+    }
+}
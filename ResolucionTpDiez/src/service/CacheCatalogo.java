@@ -0,0 +1,615 @@
+package service;
+
+import config.DatabaseConnection;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.CategoriaDAO;
+import dao.FabricaDAO;
+import dao.ProductoDAO;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import model.Categoria;
+import model.CodecBinario;
+import model.Producto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache en memoria de productos y categorías leídos por ID, con arranque en
+ * caliente.
+ *
+ * Las lecturas que no encuentran la entrada van a la base y guardan el
+ * resultado. Las entradas modificadas por este proceso se invalidan con
+ * {@link #invalidarAlConfirmar}, en el hilo que confirma la transacción y
+ * antes de que sus eventos lleguen a {@link BusEventos}: una lectura posterior
+ * al commit nunca ve el valor anterior, y un consumidor del bus atrasado o que
+ * falla no deja entradas viejas en la cache. Los cambios hechos
+ * por otros procesos se incorporan al reconciliar, cada
+ * {@code cache.catalogo.periodo} segundos, con los productos y categorías cuya
+ * columna {@code actualizado_en} es posterior a la última marca. Como una
+ * fila borrada no deja marca, cada reconciliación además verifica, de a mil
+ * IDs por consulta, que las entradas en cache sigan existiendo y descarta las
+ * que otro proceso eliminó.
+ *
+ * Con {@code cache.catalogo.snapshot} el contenido se guarda periódicamente y
+ * al terminar la JVM en un archivo binario. Al arrancar, {@link #iniciar()} lo
+ * carga decodificando sus segmentos en paralelo y lo reconcilia contra la base
+ * desde la marca guardada, lo que también descarta las entradas que se
+ * eliminaron mientras el proceso estaba detenido. Así la cache arranca con las entradas
+ * que estaban en uso en lugar de vacía.
+ *
+ * Con la base en memoria la cache no se usa: las lecturas van directo al DAO.
+ *
+ * Propiedades del sistema:
+ * <ul>
+ * <li>{@code cache.catalogo.capacidad}: entradas de cada tipo (por defecto
+ * 100000). Al superarla se descarta la usada hace más tiempo.</li>
+ * <li>{@code cache.catalogo.periodo}: segundos entre reconciliaciones y
+ * guardados (por defecto 60).</li>
+ * <li>{@code cache.catalogo.snapshot}: archivo de la instantánea.</li>
+ * </ul>
+ */
+public final class CacheCatalogo {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheCatalogo.class);
+
+    private static final int MAGICO = 0x54504331; // "TPC1"
+    private static final int VERSION_FORMATO = 2;
+
+    private static final byte SEGMENTO_CATEGORIAS = 1;
+    private static final byte SEGMENTO_PRODUCTOS = 2;
+
+    // Filas por segmento de la instantánea; cada segmento se decodifica por separado
+    private static final int FILAS_POR_SEGMENTO = 4096;
+
+    // IDs por consulta al verificar qué entradas siguen existiendo
+    private static final int IDS_POR_CONSULTA = 1000;
+
+    // Se reconcilia desde un poco antes de la hora leída, para incluir filas
+    // modificadas por transacciones que confirmaron después de leerla
+    private static final long MARGEN_RECONCILIACION_MS = 30_000;
+
+    private static final class Instancia {
+
+        private static final CacheCatalogo CACHE = crear();
+
+        private static CacheCatalogo crear() {
+            return new CacheCatalogo(FabricaDAO.productos(), FabricaDAO.categorias(),
+                    Integer.getInteger("cache.catalogo.capacidad", 100_000),
+                    Integer.getInteger("cache.catalogo.periodo", 60),
+                    System.getProperty("cache.catalogo.snapshot"));
+        }
+    }
+
+    private final ProductoDAO productoDAO;
+    private final CategoriaDAO categoriaDAO;
+    private final boolean habilitada;
+    private final int periodoSegundos;
+    private final Path archivo;
+
+    private final Map<Integer, Producto> productos;
+    private final Map<Integer, Categoria> categorias;
+
+    // Cambia con cada invalidación; una lectura solo guarda su resultado si no
+    // hubo invalidaciones mientras consultaba la base
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    // Los cambios anteriores a esta marca (hora del servidor) ya están en la cache
+    private volatile Timestamp marca;
+
+    private ScheduledExecutorService programador;
+
+    private CacheCatalogo(ProductoDAO productoDAO, CategoriaDAO categoriaDAO, int capacidad, int periodoSegundos, String archivo) {
+        this.productoDAO = productoDAO;
+        this.categoriaDAO = categoriaDAO;
+        this.habilitada = !DatabaseConnection.enMemoria() && capacidad > 0;
+        this.periodoSegundos = periodoSegundos;
+        this.archivo = archivo == null ? null : Paths.get(archivo);
+        this.productos = lru(capacidad);
+        this.categorias = lru(capacidad);
+    }
+
+    private static <T> Map<Integer, T> lru(int capacidad) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /**
+     * Devuelve la cache del proceso.
+     *
+     * @return Cache única del proceso.
+     */
+    public static CacheCatalogo instancia() {
+        return Instancia.CACHE;
+    }
+
+    /**
+     * Carga la instantánea si existe, la reconcilia contra la base y programa
+     * las reconciliaciones y guardados periódicos. Si la instantánea no se
+     * puede leer, la cache arranca vacía. Llamarlo más de una vez no tiene
+     * efecto.
+     *
+     * @throws Exception Si ocurre un error al consultar la base de datos.
+     */
+    public synchronized void iniciar() throws Exception {
+        if (!habilitada || programador != null) {
+            return;
+        }
+
+        if (archivo != null && Files.exists(archivo)) {
+            try {
+                cargar(archivo);
+            } catch (IOException ex) {
+                log.warn("No se pudo cargar la instantánea {}; se empieza vacía", archivo, ex);
+                vaciar();
+            }
+        }
+        reconciliar();
+
+        programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cache-catalogo");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        programador.scheduleWithFixedDelay(this::mantener, periodoSegundos, periodoSegundos, TimeUnit.SECONDS);
+        if (archivo != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    guardar(archivo);
+                } catch (Exception ex) {
+                    log.error("No se pudo guardar la instantánea {}", archivo, ex);
+                }
+            }, "instantanea-cache-catalogo"));
+        }
+    }
+
+    private void mantener() {
+        try {
+            reconciliar();
+            if (archivo != null) {
+                guardar(archivo);
+            }
+        } catch (Exception ex) {
+            log.error("Falló el mantenimiento de la cache del catálogo", ex);
+        }
+    }
+
+    /**
+     * Obtiene un producto por su ID, desde la cache o desde la base.
+     *
+     * @param id Identificador del producto.
+     * @return Copia del producto o null si no existe.
+     * @throws Exception Si ocurre un error al acceder a la base de datos.
+     */
+    public Producto leerProducto(int id) throws Exception {
+        if (habilitada) {
+            synchronized (productos) {
+                Producto producto = productos.get(id);
+                if (producto != null) {
+                    return copiar(producto);
+                }
+            }
+        }
+
+        long generacion = invalidaciones.get();
+        Producto producto = TransactionTemplate.leer(conn -> productoDAO.leer(id, conn));
+        if (habilitada && producto != null) {
+            synchronized (productos) {
+                if (invalidaciones.get() == generacion) {
+                    productos.put(id, copiar(producto));
+                }
+            }
+        }
+        return producto;
+    }
+
+    /**
+     * Obtiene una categoría por su ID, desde la cache o desde la base.
+     *
+     * @param id Identificador de la categoría.
+     * @return Copia de la categoría o null si no existe.
+     * @throws Exception Si ocurre un error al acceder a la base de datos.
+     */
+    public Categoria leerCategoria(int id) throws Exception {
+        if (habilitada) {
+            synchronized (categorias) {
+                Categoria categoria = categorias.get(id);
+                if (categoria != null) {
+                    return copiar(categoria);
+                }
+            }
+        }
+
+        long generacion = invalidaciones.get();
+        Categoria categoria = TransactionTemplate.leer(conn -> categoriaDAO.leer(id, conn));
+        if (habilitada && categoria != null) {
+            synchronized (categorias) {
+                if (invalidaciones.get() == generacion) {
+                    categorias.put(id, copiar(categoria));
+                }
+            }
+        }
+        return categoria;
+    }
+
+    /**
+     * Descarta un producto de la cache. Se llama después de modificarlo.
+     *
+     * @param id Identificador del producto.
+     */
+    public void invalidarProducto(int id) {
+        invalidaciones.incrementAndGet();
+        synchronized (productos) {
+            productos.remove(id);
+        }
+    }
+
+    /**
+     * Descarta varios productos de la cache.
+     *
+     * @param ids Identificadores de los productos.
+     */
+    public void invalidarProductos(Collection<Integer> ids) {
+        invalidaciones.incrementAndGet();
+        synchronized (productos) {
+            productos.keySet().removeAll(ids);
+        }
+    }
+
+    /**
+     * Descarta todos los productos de la cache, por ejemplo después de una
+     * carga masiva.
+     */
+    public void invalidarProductos() {
+        invalidaciones.incrementAndGet();
+        synchronized (productos) {
+            productos.clear();
+        }
+    }
+
+    /**
+     * Descarta de la cache los productos de una categoría.
+     *
+     * @param idCategoria ID de la categoría.
+     */
+    public void invalidarProductosDeCategoria(int idCategoria) {
+        invalidaciones.incrementAndGet();
+        synchronized (productos) {
+            productos.values().removeIf(producto -> producto.getIdCategoria() == idCategoria);
+        }
+    }
+
+    /**
+     * Descarta una categoría de la cache. Se llama después de modificarla.
+     *
+     * @param id Identificador de la categoría.
+     */
+    public void invalidarCategoria(int id) {
+        invalidaciones.incrementAndGet();
+        synchronized (categorias) {
+            categorias.remove(id);
+        }
+    }
+
+    /**
+     * Invalida las entradas afectadas por un evento cuando confirme la
+     * transacción en curso del hilo, o enseguida si no hay ninguna. Los
+     * servicios la llaman junto con {@link BusEventos#publicar}, antes, así
+     * que la invalidación corre antes que la publicación.
+     *
+     * @param evento Evento que describe el cambio.
+     */
+    public void invalidarAlConfirmar(EventoDominio evento) {
+        if (habilitada) {
+            TransactionTemplate.alConfirmar(() -> aplicar(evento));
+        }
+    }
+
+    private void aplicar(EventoDominio evento) {
+        if (evento instanceof ProductoActualizado actualizado) {
+            invalidarProducto(actualizado.getIdProducto());
+        } else if (evento instanceof StockDecrementado decrementado) {
+            invalidarProducto(decrementado.getIdProducto());
+        } else if (evento instanceof CategoriaActualizada actualizada) {
+            invalidarCategoria(actualizada.getIdCategoria());
+        } else if (evento instanceof CategoriaEliminada eliminada) {
+            invalidarCategoria(eliminada.getIdCategoria());
+        } else if (evento instanceof PreciosAjustados ajustados) {
+            if (ajustados.getIdCategoria() != 0) {
+                invalidarProductosDeCategoria(ajustados.getIdCategoria());
+            } else {
+                invalidarProductos(ajustados.getIdsProducto());
+            }
+        }
+    }
+
+    private void vaciar() {
+        invalidaciones.incrementAndGet();
+        synchronized (productos) {
+            productos.clear();
+        }
+        synchronized (categorias) {
+            categorias.clear();
+        }
+        marca = null;
+    }
+
+    /**
+     * Actualiza las entradas presentes con los cambios posteriores a la marca
+     * y descarta las que ya no existen en la base. Las entradas que no están
+     * en la cache no se agregan.
+     */
+    private void reconciliar() throws Exception {
+        Timestamp desde = marca;
+        TransactionTemplate.leer(TipoCarga.LOTE, conn -> {
+            Timestamp ahora = productoDAO.horaServidor(conn);
+            if (desde != null) {
+                List<Categoria> cambiadas = categoriaDAO.listarActualizadasDesde(conn, desde);
+                List<Producto> cambiados = productoDAO.listarActualizadosDesde(conn, desde);
+                invalidaciones.incrementAndGet();
+                synchronized (categorias) {
+                    for (Categoria categoria : cambiadas) {
+                        categorias.replace(categoria.getId(), categoria);
+                    }
+                }
+                synchronized (productos) {
+                    for (Producto producto : cambiados) {
+                        productos.replace(producto.getId(), producto);
+                    }
+                }
+            }
+
+            Set<Integer> idsCategorias;
+            synchronized (categorias) {
+                idsCategorias = new HashSet<>(categorias.keySet());
+            }
+            for (List<Integer> parte : partir(idsCategorias)) {
+                Set<Integer> eliminadas = new HashSet<>(parte);
+                eliminadas.removeAll(productoDAO.categoriasExistentes(conn, new HashSet<>(parte)));
+                if (!eliminadas.isEmpty()) {
+                    // Una lectura en curso pudo leer la fila antes del borrado
+                    invalidaciones.incrementAndGet();
+                    synchronized (categorias) {
+                        categorias.keySet().removeAll(eliminadas);
+                    }
+                }
+            }
+
+            Set<Integer> idsProductos;
+            synchronized (productos) {
+                idsProductos = new HashSet<>(productos.keySet());
+            }
+            for (List<Integer> parte : partir(idsProductos)) {
+                Set<Integer> eliminados = new HashSet<>(parte);
+                eliminados.removeAll(productoDAO.productosExistentes(conn, new HashSet<>(parte)));
+                if (!eliminados.isEmpty()) {
+                    invalidaciones.incrementAndGet();
+                    synchronized (productos) {
+                        productos.keySet().removeAll(eliminados);
+                    }
+                }
+            }
+
+            marca = new Timestamp(ahora.getTime() - MARGEN_RECONCILIACION_MS);
+            return null;
+        });
+    }
+
+    private static List<List<Integer>> partir(Set<Integer> ids) {
+        List<List<Integer>> partes = new ArrayList<>();
+        List<Integer> parte = new ArrayList<>(IDS_POR_CONSULTA);
+        for (int id : ids) {
+            parte.add(id);
+            if (parte.size() == IDS_POR_CONSULTA) {
+                partes.add(parte);
+                parte = new ArrayList<>(IDS_POR_CONSULTA);
+            }
+        }
+        if (!parte.isEmpty()) {
+            partes.add(parte);
+        }
+        return partes;
+    }
+
+    /**
+     * Guarda el contenido de la cache y su marca en un archivo. Se escribe
+     * primero en un archivo temporal que luego reemplaza al destino.
+     *
+     * Formato: mágico, versión, marca en milisegundos (-1 sin marca) y
+     * cantidad de segmentos; cada segmento es un tipo, su largo en bytes y sus
+     * filas en el formato de {@link CodecBinario}.
+     *
+     * @param destino Archivo de la instantánea.
+     * @throws IOException Si ocurre un error al escribir.
+     */
+    public void guardar(Path destino) throws IOException {
+        // La marca se toma antes que las entradas: al reconciliar desde ella
+        // se cubre todo lo que pudo cambiar después de copiarlas
+        Timestamp marcaGuardada = marca;
+        List<Categoria> copiaCategorias;
+        synchronized (categorias) {
+            copiaCategorias = new ArrayList<>(categorias.values());
+        }
+        List<Producto> copiaProductos;
+        synchronized (productos) {
+            copiaProductos = new ArrayList<>(productos.values());
+        }
+
+        List<byte[]> segmentos = new ArrayList<>();
+        for (int desde = 0; desde < copiaCategorias.size(); desde += FILAS_POR_SEGMENTO) {
+            segmentos.add(codificarCategorias(copiaCategorias.subList(desde, Math.min(desde + FILAS_POR_SEGMENTO, copiaCategorias.size()))));
+        }
+        for (int desde = 0; desde < copiaProductos.size(); desde += FILAS_POR_SEGMENTO) {
+            segmentos.add(codificarProductos(copiaProductos.subList(desde, Math.min(desde + FILAS_POR_SEGMENTO, copiaProductos.size()))));
+        }
+
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer cabecera = ByteBuffer.allocate(4 + 4 + 8 + 4);
+            cabecera.putInt(MAGICO).putInt(VERSION_FORMATO)
+                    .putLong(marcaGuardada == null ? -1 : marcaGuardada.getTime())
+                    .putInt(segmentos.size())
+                    .flip();
+            escribirTodo(canal, cabecera);
+            for (byte[] segmento : segmentos) {
+                escribirTodo(canal, ByteBuffer.wrap(segmento));
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void escribirTodo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    /**
+     * Reemplaza el contenido de la cache por el de una instantánea. Los
+     * segmentos se decodifican en paralelo.
+     *
+     * @param origen Archivo de la instantánea.
+     * @throws IOException Si el archivo no es una instantánea válida o no se
+     * puede leer.
+     */
+    private void cargar(Path origen) throws IOException {
+        List<ByteBuffer> segmentos = new ArrayList<>();
+        long marcaGuardada;
+        try (FileChannel canal = FileChannel.open(origen, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGICO) {
+                throw new IOException("El archivo " + origen + " no es una instantánea de la cache del catálogo.");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION_FORMATO) {
+                throw new IOException("Versión de instantánea no soportada: " + version);
+            }
+            marcaGuardada = buffer.getLong();
+            for (int n = buffer.getInt(); n > 0; n--) {
+                ByteBuffer cabecera = buffer.duplicate();
+                cabecera.get();
+                int largo = cabecera.getInt();
+                if (largo < 0 || largo > buffer.remaining() - 5) {
+                    throw new IOException("Instantánea truncada: " + origen);
+                }
+                segmentos.add(buffer.slice(buffer.position(), 5 + largo));
+                buffer.position(buffer.position() + 5 + largo);
+            }
+        }
+
+        int hilos = Math.max(1, Math.min(segmentos.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService decodificadores = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<List<?>>> partes = new ArrayList<>(segmentos.size());
+            for (ByteBuffer segmento : segmentos) {
+                partes.add(decodificadores.submit(() -> decodificar(segmento)));
+            }
+            vaciar();
+            for (Future<List<?>> parte : partes) {
+                for (Object fila : parte.get()) {
+                    if (fila instanceof Producto producto) {
+                        synchronized (productos) {
+                            productos.put(producto.getId(), producto);
+                        }
+                    } else {
+                        Categoria categoria = (Categoria) fila;
+                        synchronized (categorias) {
+                            categorias.put(categoria.getId(), categoria);
+                        }
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            throw ex instanceof IOException io ? io : new IOException("Instantánea inválida: " + origen, ex);
+        } finally {
+            decodificadores.shutdown();
+        }
+        marca = marcaGuardada < 0 ? null : new Timestamp(marcaGuardada);
+    }
+
+    private static byte[] codificarCategorias(List<Categoria> filas) {
+        int tamano = CodecBinario.tamanoVarint(filas.size());
+        for (Categoria c : filas) {
+            tamano += CodecBinario.tamano(c);
+        }
+        ByteBuffer buffer = segmento(SEGMENTO_CATEGORIAS, tamano);
+        CodecBinario.escribirVarint(buffer, filas.size());
+        for (Categoria c : filas) {
+            CodecBinario.escribir(buffer, c);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] codificarProductos(List<Producto> filas) {
+        int tamano = CodecBinario.tamanoVarint(filas.size());
+        for (Producto p : filas) {
+            tamano += CodecBinario.tamano(p);
+        }
+        ByteBuffer buffer = segmento(SEGMENTO_PRODUCTOS, tamano);
+        CodecBinario.escribirVarint(buffer, filas.size());
+        for (Producto p : filas) {
+            CodecBinario.escribir(buffer, p);
+        }
+        return buffer.array();
+    }
+
+    private static ByteBuffer segmento(byte tipo, int largo) {
+        return ByteBuffer.allocate(5 + largo).put(tipo).putInt(largo);
+    }
+
+    private static List<?> decodificar(ByteBuffer segmento) {
+        byte tipo = segmento.get();
+        segmento.getInt();
+        int filas = (int) CodecBinario.leerVarint(segmento);
+        if (tipo == SEGMENTO_CATEGORIAS) {
+            List<Categoria> categorias = new ArrayList<>(filas);
+            for (int i = 0; i < filas; i++) {
+                categorias.add(CodecBinario.leerCategoria(segmento));
+            }
+            return categorias;
+        }
+        if (tipo == SEGMENTO_PRODUCTOS) {
+            List<Producto> productos = new ArrayList<>(filas);
+            for (int i = 0; i < filas; i++) {
+                productos.add(CodecBinario.leerProducto(segmento));
+            }
+            return productos;
+        }
+        throw new IllegalStateException("Tipo de segmento desconocido: " + tipo);
+    }
+
+    private static Producto copiar(Producto p) {
+        return new Producto(p.getId(), p.getNombre(), p.getDescripcion(), p.getPrecio(), p.getCantidad(), p.getIdCategoria(), p.getVersion());
+    }
+
+    private static Categoria copiar(Categoria c) {
+        return new Categoria(c.getId(), c.getNombre(), c.getDescripcion());
+    }
+}
@@ -0,0 +1,18 @@
+package service;
+
+/**
+ * Terminó una importación de catálogo. Los productos se guardan por nombre,
+ * sin conocer sus IDs, así que el evento no dice cuáles cambiaron.
+ */
+public final class CatalogoImportado extends EventoDominio {
+
+    private final long importados;
+
+    public CatalogoImportado(long importados) {
+        this.importados = importados;
+    }
+
+    public long getImportados() {
+        return importados;
+    }
+}
@@ -0,0 +1,17 @@
+package service;
+
+/**
+ * Se modificó una categoría.
+ */
+public final class CategoriaActualizada extends EventoDominio {
+
+    private final int idCategoria;
+
+    public CategoriaActualizada(int idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
+    public int getIdCategoria() {
+        return idCategoria;
+    }
+}
@@ -0,0 +1,17 @@
+package service;
+
+/**
+ * Se eliminó una categoría.
+ */
+public final class CategoriaEliminada extends EventoDominio {
+
+    private final int idCategoria;
+
+    public CategoriaEliminada(int idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
+    public int getIdCategoria() {
+        return idCategoria;
+    }
+}
@@ -1,17 +1,17 @@
 package service;
 
-import dao.CategoriaDAOImpl;
+import dao.CategoriaDAO;
 import model.Categoria;
-import java.sql.Connection;
-import config.DatabaseConnection;
+import config.TransactionTemplate;
 
 import java.util.List;
 
 public class CategoriaServiceImpl {
 
-    private final CategoriaDAOImpl categoriaDAO;
+    private final CategoriaDAO categoriaDAO;
+    private final CacheCatalogo cache = CacheCatalogo.instancia();
 
-    public CategoriaServiceImpl(CategoriaDAOImpl categoriaDAO) {
+    public CategoriaServiceImpl(CategoriaDAO categoriaDAO) {
         this.categoriaDAO = categoriaDAO;
     }
 
@@ -30,27 +30,13 @@ public class CategoriaServiceImpl {
             throw new IllegalArgumentException("El nombre de la categoría no puede estar vacío.");
         }
 
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
+        TransactionTemplate.ejecutar(conn -> {
             if (categoriaDAO.existeNombre(categoria.getNombre(), conn)) {
                 throw new IllegalArgumentException("Ya existe una categoría con ese nombre.");
             }
 
             categoriaDAO.crear(categoria, conn);
-            conn.commit();
-        } catch (Exception ex) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw ex;
-        } finally {
-            if (conn != null) {
-                conn.close();
-            }
-        }
+        });
     }
 
     /**
@@ -62,24 +48,12 @@ public class CategoriaServiceImpl {
      * de datos.
      */
     public void actualizar(Categoria categoria) throws Exception {
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
+        TransactionTemplate.ejecutar(conn -> {
             categoriaDAO.actualizar(categoria, conn);
-
-            conn.commit();
-        } catch (Exception ex) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw ex;
-        } finally {
-            if (conn != null) {
-                conn.close();
-            }
-        }
+            CategoriaActualizada actualizada = new CategoriaActualizada(categoria.getId());
+            cache.invalidarAlConfirmar(actualizada);
+            BusEventos.instancia().publicar(actualizada);
+        });
     }
 
     /**
@@ -90,28 +64,16 @@ public class CategoriaServiceImpl {
      * de datos.
      */
     public void eliminar(int id) throws Exception {
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
+        TransactionTemplate.ejecutar(conn -> {
             categoriaDAO.eliminar(id, conn);
-
-            conn.commit();
-        } catch (Exception ex) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw ex;
-        } finally {
-            if (conn != null) {
-                conn.close();
-            }
-        }
+            CategoriaEliminada eliminada = new CategoriaEliminada(id);
+            cache.invalidarAlConfirmar(eliminada);
+            BusEventos.instancia().publicar(eliminada);
+        });
     }
 
     /**
-     * Obtiene una categoría por su ID.
+     * Obtiene una categoría por su ID, desde {@link CacheCatalogo} si está.
      *
      * @param id Identificador de la categoría.
      * @return Objeto Categoría o null si no existe.
@@ -119,9 +81,7 @@ public class CategoriaServiceImpl {
      * de datos.
      */
     public Categoria leer(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            return categoriaDAO.leer(id, conn);
-        }
+        return cache.leerCategoria(id);
     }
 
     /**
@@ -132,9 +92,7 @@ public class CategoriaServiceImpl {
      * de datos.
      */
     public List<Categoria> listar() throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            return categoriaDAO.listar(conn);
-        }
+        return TransactionTemplate.leer(conn -> categoriaDAO.listar(conn));
     }
 
 }
@@ -0,0 +1,52 @@
+package service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache acotada en memoria de claves de idempotencia recientes y el ID del
+ * pedido que generaron. Permite responder a los reintentos sin consultar la
+ * base de datos. Cuando se supera la capacidad se descarta la clave usada hace
+ * más tiempo.
+ */
+public class ClavesIdempotenciaCache {
+
+    private final Map<String, Integer> claves;
+
+    /**
+     * Crea la cache con una capacidad máxima de claves.
+     *
+     * @param capacidad Cantidad máxima de claves que se mantienen en memoria.
+     */
+    public ClavesIdempotenciaCache(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor a 0.");
+        }
+        this.claves = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /**
+     * Busca el pedido asociado a una clave.
+     *
+     * @param clave Clave de idempotencia.
+     * @return ID del pedido o null si la clave no está en la cache.
+     */
+    public synchronized Integer buscar(String clave) {
+        return claves.get(clave);
+    }
+
+    /**
+     * Registra el pedido generado por una clave.
+     *
+     * @param clave Clave de idempotencia.
+     * @param pedidoId ID del pedido creado.
+     */
+    public synchronized void registrar(String clave, int pedidoId) {
+        claves.put(clave, pedidoId);
+    }
+}
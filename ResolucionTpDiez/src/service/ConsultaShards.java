@@ -0,0 +1,189 @@
+package service;
+
+import config.BaseDatos;
+import config.DatabaseConnection;
+import dao.Procesador;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ejecuta una consulta en todos los shards de pedidos y combina los
+ * resultados. Con un solo shard la consulta se ejecuta directamente en el hilo
+ * que llama.
+ */
+final class ConsultaShards {
+
+    /**
+     * Consulta sobre un shard que devuelve un resultado.
+     *
+     * @param <T> Tipo del resultado.
+     */
+    @FunctionalInterface
+    interface Consulta<T> {
+
+        T ejecutar(BaseDatos shard) throws Exception;
+    }
+
+    /**
+     * Recorrido de un shard que entrega sus elementos ya ordenados.
+     *
+     * @param <T> Tipo de los elementos.
+     */
+    @FunctionalInterface
+    interface Recorrido<T> {
+
+        void recorrer(BaseDatos shard, Procesador<T> procesador) throws Exception;
+    }
+
+    // Elementos que cada shard puede adelantar a la mezcla
+    private static final int CAPACIDAD_COLA = 1024;
+
+    private static final Object FIN = new Object();
+
+    private static final ExecutorService ejecutor = Executors.newCachedThreadPool(r -> {
+        Thread hilo = new Thread(r, "consulta-shards");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private ConsultaShards() {
+    }
+
+    /**
+     * Ejecuta la consulta en todos los shards al mismo tiempo.
+     *
+     * @return Resultados en el orden de los shards.
+     * @throws Exception La primera falla de un shard.
+     */
+    static <T> List<T> enParalelo(Consulta<T> consulta) throws Exception {
+        int cantidad = DatabaseConnection.cantidadShards();
+        List<T> resultados = new ArrayList<>(cantidad);
+        if (cantidad == 1) {
+            resultados.add(consulta.ejecutar(DatabaseConnection.shard(0)));
+            return resultados;
+        }
+
+        List<Future<T>> pendientes = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            BaseDatos shard = DatabaseConnection.shard(i);
+            pendientes.add(ejecutor.submit(() -> consulta.ejecutar(shard)));
+        }
+        try {
+            for (Future<T> pendiente : pendientes) {
+                resultados.add(pendiente.get());
+            }
+        } catch (ExecutionException ex) {
+            for (Future<T> pendiente : pendientes) {
+                pendiente.cancel(true);
+            }
+            throw ex.getCause() instanceof Exception causa ? causa : ex;
+        }
+        return resultados;
+    }
+
+    /**
+     * Recorre todos los shards al mismo tiempo y entrega los elementos en un
+     * único orden global, mezclando los recorridos ya ordenados de cada shard.
+     * Cada shard adelanta como mucho {@value #CAPACIDAD_COLA} elementos, así
+     * que la memoria no depende del tamaño del resultado.
+     *
+     * @param recorrido Recorrido de un shard, ordenado por {@code orden}.
+     * @param orden Orden del resultado.
+     * @param procesador Receptor de los elementos, llamado desde el hilo que
+     * invoca este método.
+     * @throws Exception Si falla un shard o el procesador.
+     */
+    static <T> void recorrerOrdenado(Recorrido<T> recorrido, Comparator<? super T> orden, Procesador<T> procesador) throws Exception {
+        int cantidad = DatabaseConnection.cantidadShards();
+        if (cantidad == 1) {
+            recorrido.recorrer(DatabaseConnection.shard(0), procesador);
+            return;
+        }
+
+        List<BlockingQueue<Object>> colas = new ArrayList<>(cantidad);
+        AtomicBoolean cancelado = new AtomicBoolean();
+        for (int i = 0; i < cantidad; i++) {
+            BlockingQueue<Object> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+            colas.add(cola);
+            BaseDatos shard = DatabaseConnection.shard(i);
+            ejecutor.submit(() -> {
+                try {
+                    recorrido.recorrer(shard, elemento -> poner(cola, elemento, cancelado));
+                    poner(cola, FIN, cancelado);
+                } catch (Exception ex) {
+                    // La falla viaja por la cola en lugar del elemento siguiente
+                    cola.clear();
+                    cola.offer(new Falla(ex));
+                }
+                return null;
+            });
+        }
+
+        // Cabeza de cada shard: el elemento actual y el índice de su cola
+        PriorityQueue<Object[]> cabezas = new PriorityQueue<>(cantidad,
+                (a, b) -> orden.compare(elemento(a), elemento(b)));
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                avanzar(colas.get(i), i, cabezas);
+            }
+            while (!cabezas.isEmpty()) {
+                Object[] cabeza = cabezas.poll();
+                procesador.procesar(elemento(cabeza));
+                avanzar(colas.get((Integer) cabeza[1]), (Integer) cabeza[1], cabezas);
+            }
+        } finally {
+            // Los recorridos que siguen abiertos terminan en su próximo elemento
+            cancelado.set(true);
+        }
+    }
+
+    private static void avanzar(BlockingQueue<Object> cola, int indice, PriorityQueue<Object[]> cabezas) throws Exception {
+        Object siguiente = cola.take();
+        if (siguiente instanceof Falla falla) {
+            throw falla.causa;
+        }
+        if (siguiente != FIN) {
+            cabezas.add(new Object[]{siguiente, indice});
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T elemento(Object[] cabeza) {
+        return (T) cabeza[0];
+    }
+
+    /**
+     * Encola un elemento esperando lugar, salvo que la mezcla ya haya
+     * terminado.
+     */
+    private static void poner(BlockingQueue<Object> cola, Object elemento, AtomicBoolean cancelado) throws Exception {
+        if (cancelado.get()) {
+            throw new CancellationException();
+        }
+        while (!cola.offer(elemento, 100, TimeUnit.MILLISECONDS)) {
+            if (cancelado.get()) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    private static final class Falla {
+
+        private final Exception causa;
+
+        private Falla(Exception causa) {
+            this.causa = causa;
+        }
+    }
+}
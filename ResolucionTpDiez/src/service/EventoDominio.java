@@ -0,0 +1,33 @@
+package service;
+
+/**
+ * Evento publicado en {@link BusEventos} después de confirmar una
+ * modificación.
+ */
+public abstract class EventoDominio {
+
+    private final long momento = System.currentTimeMillis();
+    private long secuencia = -1;
+
+    /**
+     * Momento en que se creó el evento, en milisegundos desde la época.
+     *
+     * @return Momento de creación.
+     */
+    public long getMomento() {
+        return momento;
+    }
+
+    /**
+     * Posición del evento en el bus, asignada al publicarlo.
+     *
+     * @return Número de secuencia, o -1 si todavía no se publicó.
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    void setSecuencia(long secuencia) {
+        this.secuencia = secuencia;
+    }
+}
@@ -0,0 +1,334 @@
+package service;
+
+import config.BaseDatos;
+import config.DatabaseConnection;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ArchivoPedidosDAO;
+import dao.FabricaDAO;
+import dao.PedidoDAO;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import model.Dinero;
+import service.RangosIds.Rango;
+
+/**
+ * Exporta pedidos con sus items a archivos CSV o JSON Lines.
+ *
+ * Los datos se leen con una única consulta ordenada y un cursor del servidor,
+ * y cada fila se escribe apenas llega a través de un canal de archivo con
+ * buffer, sin armar listas intermedias. La memoria usada es constante sin
+ * importar la cantidad de pedidos.
+ *
+ * En CSV se escribe una línea por item (los pedidos sin items ocupan una línea
+ * con las columnas del item vacías). En JSON Lines se escribe un objeto por
+ * pedido con sus items anidados.
+ *
+ * Con shards de pedidos, {@link #exportar} escribe los shards uno tras otro en
+ * el mismo archivo (los pedidos quedan ordenados por ID dentro de cada shard) y
+ * {@link #exportarParalelo} divide el rango de IDs de cada shard por separado.
+ *
+ * Se exportan también los pedidos archivados: en cada shard, después de los
+ * pedidos actuales vienen los del histórico, también ordenados por ID. Un ID
+ * está en una sola de las dos tablas, así que ningún pedido sale dos veces.
+ */
+public class ExportadorPedidos {
+
+    /**
+     * Formato de salida.
+     */
+    public enum Formato {
+        CSV(".csv"),
+        JSONL(".jsonl");
+
+        private final String extension;
+
+        Formato(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    private final PedidoDAO pedidoDAO;
+    private final ArchivoPedidosDAO archivoDAO;
+
+    public ExportadorPedidos(PedidoDAO pedidoDAO) {
+        this.pedidoDAO = pedidoDAO;
+        this.archivoDAO = FabricaDAO.archivoPedidos();
+    }
+
+    /**
+     * Exporta los pedidos de un rango de fechas a un archivo.
+     *
+     * @param destino Archivo de salida (se reemplaza si existe).
+     * @param formato Formato de salida.
+     * @param gzip true para comprimir la salida con gzip.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @return Cantidad de líneas escritas, sin contar el encabezado.
+     * @throws Exception Si ocurre un error en la base de datos o al escribir.
+     */
+    public long exportar(Path destino, Formato formato, boolean gzip, Date desde, Date hasta) throws Exception {
+        try (Writer salida = abrir(destino, gzip)) {
+            Escritor escritor = formato == Formato.CSV ? new EscritorCsv(salida) : new EscritorJsonLines(salida);
+            for (int i = 0; i < DatabaseConnection.cantidadShards(); i++) {
+                BaseDatos shard = DatabaseConnection.shard(i);
+                recorrer(new Rango(shard, i, false, 0, Integer.MAX_VALUE), escritor, desde, hasta);
+                recorrer(new Rango(shard, i, true, 0, Integer.MAX_VALUE), escritor, desde, hasta);
+            }
+            escritor.terminar();
+            return escritor.lineas;
+        }
+    }
+
+    /**
+     * Exporta los pedidos de un rango de fechas en paralelo. El rango de IDs se
+     * divide en partes iguales y cada parte se escribe en su propio archivo
+     * usando su propia conexión del pool de lotes. Se escriben a la vez como
+     * mucho tantas partes como conexiones tiene ese pool; una parte rechazada
+     * por el pool saturado se vuelve a escribir desde el principio. Con shards,
+     * el rango de cada shard se divide por separado y el nombre de cada archivo
+     * incluye el número de shard. Los pedidos archivados se dividen aparte y
+     * sus archivos llevan {@code -historico} en el nombre.
+     *
+     * @param directorio Directorio donde se crean los archivos.
+     * @param prefijo Prefijo del nombre de cada archivo.
+     * @param formato Formato de salida.
+     * @param gzip true para comprimir la salida con gzip.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @param particiones Cantidad de partes por shard.
+     * @return Archivos generados, en orden de shard (los del histórico después
+     * de los actuales) e ID.
+     * @throws Exception Si ocurre un error en la base de datos o al escribir.
+     */
+    public List<Path> exportarParalelo(Path directorio, String prefijo, Formato formato, boolean gzip,
+            Date desde, Date hasta, int particiones) throws Exception {
+        if (particiones <= 0) {
+            throw new IllegalArgumentException("La cantidad de particiones debe ser mayor a 0.");
+        }
+
+        List<Rango> rangos = new ArrayList<>();
+        List<Path> archivos = new ArrayList<>();
+        for (int i = 0; i < DatabaseConnection.cantidadShards(); i++) {
+            BaseDatos shard = DatabaseConnection.shard(i);
+            String prefijoShard = DatabaseConnection.conShards() ? String.format("%s-shard-%02d", prefijo, i) : prefijo;
+            int[] ids = TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> pedidoDAO.rangoIds(conn, desde, hasta));
+            agregarPartes(rangos, archivos, RangosIds.enPartes(shard, i, false, ids, particiones),
+                    directorio, prefijoShard, formato, gzip);
+            int[] archivados = TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> archivoDAO.rangoIds(conn, desde, hasta));
+            agregarPartes(rangos, archivos, RangosIds.enPartes(shard, i, true, archivados, particiones),
+                    directorio, prefijoShard + "-historico", formato, gzip);
+        }
+        if (rangos.isEmpty()) {
+            return archivos;
+        }
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(Math.min(rangos.size(), TipoCarga.LOTE.getTamanoPool()));
+        try {
+            List<Future<Long>> escrituras = new ArrayList<>();
+            for (int i = 0; i < rangos.size(); i++) {
+                Rango rango = rangos.get(i);
+                Path archivo = archivos.get(i);
+                escrituras.add(ejecutor.submit(() -> RangosIds.conReintentos(
+                        () -> exportarRango(rango, archivo, formato, gzip, desde, hasta))));
+            }
+            for (Future<Long> escritura : escrituras) {
+                escritura.get();
+            }
+        } finally {
+            ejecutor.shutdownNow();
+        }
+        return archivos;
+    }
+
+    private static void agregarPartes(List<Rango> rangos, List<Path> archivos, List<Rango> partes, Path directorio,
+            String prefijo, Formato formato, boolean gzip) {
+        for (int parte = 0; parte < partes.size(); parte++) {
+            String nombre = String.format("%s-parte-%03d%s%s", prefijo, parte, formato.extension, gzip ? ".gz" : "");
+            archivos.add(directorio.resolve(nombre));
+        }
+        rangos.addAll(partes);
+    }
+
+    private long exportarRango(Rango rango, Path destino, Formato formato, boolean gzip, Date desde, Date hasta) throws Exception {
+        try (Writer salida = abrir(destino, gzip)) {
+            Escritor escritor = formato == Formato.CSV ? new EscritorCsv(salida) : new EscritorJsonLines(salida);
+            recorrer(rango, escritor, desde, hasta);
+            escritor.terminar();
+            return escritor.lineas;
+        }
+    }
+
+    private void recorrer(Rango rango, Escritor escritor, Date desde, Date hasta) throws Exception {
+        TransactionTemplate.leer(rango.base, TipoCarga.LOTE, conn -> {
+            if (rango.historico) {
+                archivoDAO.recorrerConItems(conn, desde, hasta, rango.idDesde, rango.idHasta, escritor);
+            } else {
+                pedidoDAO.recorrerConItems(conn, desde, hasta, rango.idDesde, rango.idHasta, escritor);
+            }
+            return null;
+        });
+    }
+
+    private static Writer abrir(Path destino, boolean gzip) throws IOException {
+        FileChannel canal = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream salida = Channels.newOutputStream(canal);
+        if (gzip) {
+            salida = new GZIPOutputStream(salida, TAMANO_BUFFER);
+        }
+        return new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), TAMANO_BUFFER);
+    }
+
+    /**
+     * Base de los escritores: arma cada línea en un buffer reutilizable y la
+     * copia a la salida sin crear Strings intermedios.
+     */
+    private abstract static class Escritor implements PedidoDAO.FilaPedidoItem {
+
+        protected final Writer salida;
+        protected final StringBuilder linea = new StringBuilder(256);
+        private char[] caracteres = new char[256];
+        protected long lineas;
+        // Última fecha escrita, ya formateada como AAAA-MM-DD: los items de un
+        // pedido y los pedidos de un mismo día la repiten
+        private long ultimaFecha = Long.MIN_VALUE;
+        private final char[] fechaFormateada = new char[10];
+
+        protected Escritor(Writer salida) {
+            this.salida = salida;
+        }
+
+        protected void volcarLinea() throws IOException {
+            int largo = linea.length();
+            if (caracteres.length < largo) {
+                caracteres = new char[Math.max(largo, caracteres.length * 2)];
+            }
+            linea.getChars(0, largo, caracteres, 0);
+            salida.write(caracteres, 0, largo);
+            linea.setLength(0);
+        }
+
+        /**
+         * Agrega una fecha a la línea en formato AAAA-MM-DD, sin crear un
+         * String por fila.
+         */
+        protected StringBuilder agregarFecha(java.sql.Date fecha) {
+            if (fecha == null) {
+                return linea.append("null");
+            }
+            if (fecha.getTime() != ultimaFecha) {
+                LocalDate dia = fecha.toLocalDate();
+                digitos(dia.getYear(), 0, 4);
+                fechaFormateada[4] = '-';
+                digitos(dia.getMonthValue(), 5, 2);
+                fechaFormateada[7] = '-';
+                digitos(dia.getDayOfMonth(), 8, 2);
+                ultimaFecha = fecha.getTime();
+            }
+            return linea.append(fechaFormateada);
+        }
+
+        private void digitos(int valor, int posicion, int cantidad) {
+            for (int i = posicion + cantidad - 1; i >= posicion; i--) {
+                fechaFormateada[i] = (char) ('0' + valor % 10);
+                valor /= 10;
+            }
+        }
+
+        protected void terminar() throws IOException {
+        }
+    }
+
+    private static final class EscritorCsv extends Escritor {
+
+        private EscritorCsv(Writer salida) throws IOException {
+            super(salida);
+            salida.write("pedido_id,fecha,total,item_id,producto_id,cantidad,subtotal\n");
+        }
+
+        @Override
+        public void procesar(int pedidoId, java.sql.Date fecha, long total, int itemId, int productoId,
+                int cantidad, long subtotal) throws Exception {
+            linea.append(pedidoId).append(',');
+            agregarFecha(fecha).append(',');
+            Dinero.formatear(linea, total).append(',');
+            if (itemId != 0) {
+                linea.append(itemId).append(',').append(productoId).append(',').append(cantidad).append(',');
+                Dinero.formatear(linea, subtotal);
+            } else {
+                linea.append(",,,");
+            }
+            linea.append('\n');
+            volcarLinea();
+            lineas++;
+        }
+    }
+
+    private static final class EscritorJsonLines extends Escritor {
+
+        private int pedidoActual;
+        private boolean primerItem;
+
+        private EscritorJsonLines(Writer salida) {
+            super(salida);
+        }
+
+        @Override
+        public void procesar(int pedidoId, java.sql.Date fecha, long total, int itemId, int productoId,
+                int cantidad, long subtotal) throws Exception {
+            if (pedidoId != pedidoActual) {
+                cerrarPedido();
+                pedidoActual = pedidoId;
+                primerItem = true;
+                linea.append("{\"id\":").append(pedidoId).append(",\"fecha\":\"");
+                agregarFecha(fecha).append("\",\"total\":");
+                Dinero.formatear(linea, total).append(",\"items\":[");
+            }
+            if (itemId != 0) {
+                if (!primerItem) {
+                    linea.append(',');
+                }
+                primerItem = false;
+                linea.append("{\"id\":").append(itemId)
+                        .append(",\"producto_id\":").append(productoId)
+                        .append(",\"cantidad\":").append(cantidad)
+                        .append(",\"subtotal\":");
+                Dinero.formatear(linea, subtotal).append('}');
+            }
+            // Los items de un pedido se vuelcan a medida que llegan
+            volcarLinea();
+        }
+
+        private void cerrarPedido() throws IOException {
+            if (pedidoActual != 0) {
+                linea.append("]}\n");
+                volcarLinea();
+                lineas++;
+            }
+        }
+
+        @Override
+        protected void terminar() throws IOException {
+            cerrarPedido();
+        }
+    }
+}
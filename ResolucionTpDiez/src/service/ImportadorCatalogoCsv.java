@@ -0,0 +1,386 @@
+package service;
+
+import config.CargaRechazadaException;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ProductoDAO;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLTransactionRollbackException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import model.Dinero;
+import model.Producto;
+
+/**
+ * Importa catálogos de proveedores desde archivos CSV con columnas
+ * {@code nombre,descripcion,precio,cantidad,id_categoria} (la primera línea es
+ * el encabezado).
+ *
+ * El archivo se lee en streaming y las filas válidas se agrupan en lotes que
+ * se guardan en paralelo, cada uno en su propia conexión y transacción, con
+ * sentencias INSERT de varias filas. La existencia de las categorías se
+ * verifica con una sola consulta por lote. La cantidad de lotes en memoria
+ * está acotada, por lo que el consumo no depende del tamaño del archivo.
+ *
+ * Los productos se identifican por nombre: si ya existe uno con el mismo
+ * nombre, se actualizan sus datos. Requiere un índice único sobre
+ * {@code productos(nombre)}.
+ */
+public class ImportadorCatalogoCsv {
+
+    /**
+     * Recibe el avance de la importación. Puede invocarse desde los hilos de
+     * trabajo.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+
+        void informar(long leidas, long importadas, long rechazadas);
+    }
+
+    /**
+     * Totales de una importación terminada.
+     */
+    public static final class Resultado {
+
+        private final long leidas;
+        private final long importadas;
+        private final long rechazadas;
+
+        private Resultado(long leidas, long importadas, long rechazadas) {
+            this.leidas = leidas;
+            this.importadas = importadas;
+            this.rechazadas = rechazadas;
+        }
+
+        public long getLeidas() {
+            return leidas;
+        }
+
+        public long getImportadas() {
+            return importadas;
+        }
+
+        public long getRechazadas() {
+            return rechazadas;
+        }
+    }
+
+    // Fila válida del CSV junto con su número de línea para informar rechazos
+    private static final class Fila {
+
+        private final long linea;
+        private final String original;
+        private final Producto producto;
+
+        private Fila(long linea, String original, Producto producto) {
+            this.linea = linea;
+            this.original = original;
+            this.producto = producto;
+        }
+    }
+
+    // Reintentos de un lote cuando la base de datos lo elige como víctima de un interbloqueo
+    private static final int MAX_INTENTOS_LOTE = 3;
+
+    private final ProductoDAO productoDAO;
+    private final int trabajadores;
+    private final int tamanoLote;
+
+    /**
+     * @param productoDAO DAO de productos.
+     * @param trabajadores Cantidad de lotes que se guardan en paralelo (una
+     * conexión por cada uno).
+     * @param tamanoLote Cantidad de filas por lote y transacción.
+     */
+    public ImportadorCatalogoCsv(ProductoDAO productoDAO, int trabajadores, int tamanoLote) {
+        if (trabajadores <= 0 || tamanoLote <= 0) {
+            throw new IllegalArgumentException("Los trabajadores y el tamaño de lote deben ser mayores a 0.");
+        }
+        this.productoDAO = productoDAO;
+        this.trabajadores = trabajadores;
+        this.tamanoLote = tamanoLote;
+    }
+
+    /**
+     * Importa un archivo CSV.
+     *
+     * @param archivo Archivo CSV a importar.
+     * @param rechazados Archivo donde se escriben las filas rechazadas con el
+     * motivo.
+     * @param progreso Receptor del avance, o null.
+     * @return Totales de la importación.
+     * @throws Exception Si no se puede leer el archivo o escribir los rechazos.
+     */
+    public Resultado importar(Path archivo, Path rechazados, Progreso progreso) throws Exception {
+        AtomicLong leidas = new AtomicLong();
+        AtomicLong importadas = new AtomicLong();
+        AtomicLong rechazadasTotal = new AtomicLong();
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(trabajadores);
+        // Limita los lotes pendientes para que la lectura no se adelante a la escritura
+        Semaphore lotesEnCurso = new Semaphore(trabajadores * 2);
+        List<Future<?>> pendientes = new ArrayList<>();
+
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8);
+                BufferedWriter escritorRechazos = Files.newBufferedWriter(rechazados, StandardCharsets.UTF_8)) {
+            try {
+                String linea = lector.readLine(); // Encabezado
+                long numeroLinea = 1;
+                List<Fila> lote = new ArrayList<>(tamanoLote);
+
+                while ((linea = lector.readLine()) != null) {
+                    numeroLinea++;
+                    if (linea.isBlank()) {
+                        continue;
+                    }
+                    leidas.incrementAndGet();
+
+                    try {
+                        lote.add(new Fila(numeroLinea, linea, parsear(linea)));
+                    } catch (IllegalArgumentException ex) {
+                        rechazar(escritorRechazos, numeroLinea, linea, ex.getMessage());
+                        rechazadasTotal.incrementAndGet();
+                        continue;
+                    }
+
+                    if (lote.size() == tamanoLote) {
+                        pendientes.add(enviar(ejecutor, lotesEnCurso, lote, escritorRechazos,
+                                leidas, importadas, rechazadasTotal, progreso));
+                        lote = new ArrayList<>(tamanoLote);
+                        pendientes.removeIf(Future::isDone);
+                    }
+                }
+                if (!lote.isEmpty()) {
+                    pendientes.add(enviar(ejecutor, lotesEnCurso, lote, escritorRechazos,
+                            leidas, importadas, rechazadasTotal, progreso));
+                }
+
+                for (Future<?> pendiente : pendientes) {
+                    pendiente.get();
+                }
+            } finally {
+                // Los lotes en curso escriben rechazos: se esperan antes de
+                // cerrar el archivo, también si la lectura falló
+                ejecutor.shutdown();
+                if (!ejecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    ejecutor.shutdownNow();
+                }
+            }
+        } finally {
+            // Si no se pudieron abrir los archivos, el ejecutor sigue sin cerrar
+            ejecutor.shutdownNow();
+            // Los lotes se guardan por nombre, sin conocer los IDs modificados
+            CacheCatalogo.instancia().invalidarProductos();
+            if (importadas.get() > 0) {
+                BusEventos.instancia().publicar(new CatalogoImportado(importadas.get()));
+            }
+        }
+
+        if (progreso != null) {
+            progreso.informar(leidas.get(), importadas.get(), rechazadasTotal.get());
+        }
+        return new Resultado(leidas.get(), importadas.get(), rechazadasTotal.get());
+    }
+
+    private Future<?> enviar(ExecutorService ejecutor, Semaphore lotesEnCurso, List<Fila> lote,
+            BufferedWriter escritorRechazos, AtomicLong leidas, AtomicLong importadas,
+            AtomicLong rechazadasTotal, Progreso progreso) throws InterruptedException {
+        lotesEnCurso.acquire();
+        return ejecutor.submit(() -> {
+            try {
+                int rechazadas = guardarLote(lote, escritorRechazos);
+                importadas.addAndGet(lote.size() - rechazadas);
+                rechazadasTotal.addAndGet(rechazadas);
+                if (progreso != null) {
+                    progreso.informar(leidas.get(), importadas.get(), rechazadasTotal.get());
+                }
+            } finally {
+                lotesEnCurso.release();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Verifica las categorías del lote y guarda las filas válidas en una
+     * transacción. Si el lote falla, todas sus filas se rechazan.
+     *
+     * @return Cantidad de filas rechazadas.
+     */
+    private int guardarLote(List<Fila> lote, BufferedWriter escritorRechazos) throws IOException {
+        for (int intento = 1;; intento++) {
+            List<Fila> sinCategoria = new ArrayList<>();
+            try {
+                TransactionTemplate.ejecutar(TipoCarga.LOTE, conn -> {
+                    Set<Integer> idsCategoria = new HashSet<>();
+                    for (Fila fila : lote) {
+                        if (fila.producto.getIdCategoria() != 0) {
+                            idsCategoria.add(fila.producto.getIdCategoria());
+                        }
+                    }
+                    Set<Integer> existentes = productoDAO.categoriasExistentes(conn, idsCategoria);
+
+                    List<Producto> validos = new ArrayList<>(lote.size());
+                    for (Fila fila : lote) {
+                        int idCategoria = fila.producto.getIdCategoria();
+                        if (idCategoria != 0 && !existentes.contains(idCategoria)) {
+                            sinCategoria.add(fila);
+                        } else {
+                            validos.add(fila.producto);
+                        }
+                    }
+                    productoDAO.upsertLote(validos, conn);
+                });
+            } catch (SQLTransactionRollbackException ex) {
+                if (intento < MAX_INTENTOS_LOTE) {
+                    continue;
+                }
+                return rechazarLote(lote, escritorRechazos, ex);
+            } catch (CargaRechazadaException ex) {
+                // El pool de lotes está saturado: se espera un poco antes de reintentar
+                if (intento < MAX_INTENTOS_LOTE && esperar(intento)) {
+                    continue;
+                }
+                return rechazarLote(lote, escritorRechazos, ex);
+            } catch (Exception ex) {
+                return rechazarLote(lote, escritorRechazos, ex);
+            }
+
+            for (Fila fila : sinCategoria) {
+                rechazar(escritorRechazos, fila.linea, fila.original, "La categoría no existe.");
+            }
+            return sinCategoria.size();
+        }
+    }
+
+    private static boolean esperar(int intento) {
+        try {
+            Thread.sleep(100L * intento);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int rechazarLote(List<Fila> lote, BufferedWriter escritorRechazos, Exception causa) throws IOException {
+        for (Fila fila : lote) {
+            rechazar(escritorRechazos, fila.linea, fila.original, "Error al guardar el lote: " + causa.getMessage());
+        }
+        return lote.size();
+    }
+
+    private void rechazar(BufferedWriter escritorRechazos, long linea, String original, String motivo) throws IOException {
+        synchronized (escritorRechazos) {
+            escritorRechazos.write(Long.toString(linea));
+            escritorRechazos.write(',');
+            escritorRechazos.write(escaparCsv(motivo));
+            escritorRechazos.write(',');
+            escritorRechazos.write(escaparCsv(original));
+            escritorRechazos.newLine();
+        }
+    }
+
+    /**
+     * Convierte una línea del CSV en un producto, aplicando las mismas
+     * validaciones de campos que el alta individual.
+     *
+     * @throws IllegalArgumentException Si la línea no tiene el formato
+     * esperado o algún campo es inválido.
+     */
+    private static Producto parsear(String linea) {
+        List<String> campos = separarCampos(linea);
+        if (campos.size() != 5) {
+            throw new IllegalArgumentException("Se esperaban 5 columnas y hay " + campos.size() + ".");
+        }
+
+        String nombre = campos.get(0).trim();
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("El nombre no puede estar vacío.");
+        }
+        long precio;
+        int cantidad;
+        int idCategoria;
+        try {
+            precio = Dinero.parsear(campos.get(2).trim());
+            cantidad = Integer.parseInt(campos.get(3).trim());
+            String categoria = campos.get(4).trim();
+            idCategoria = categoria.isEmpty() ? 0 : Integer.parseInt(categoria);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Valor numérico inválido: " + ex.getMessage());
+        }
+        if (precio <= 0) {
+            throw new IllegalArgumentException("El precio debe ser mayor a 0.");
+        }
+        if (precio > Dinero.MAXIMO) {
+            throw new IllegalArgumentException("El precio supera el máximo de " + Dinero.formatear(Dinero.MAXIMO) + ".");
+        }
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a 0.");
+        }
+
+        return new Producto(nombre, campos.get(1), precio, cantidad, idCategoria);
+    }
+
+    /**
+     * Separa una línea CSV respetando campos entre comillas y comillas
+     * duplicadas dentro de ellos.
+     */
+    private static List<String> separarCampos(String linea) {
+        List<String> campos = new ArrayList<>(5);
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        actual.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    actual.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        if (entreComillas) {
+            throw new IllegalArgumentException("Comillas sin cerrar.");
+        }
+        campos.add(actual.toString());
+        return campos;
+    }
+
+    private static String escaparCsv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,76 @@
+package service;
+
+/**
+ * Estado de un consumidor de {@link BusEventos} en un momento dado.
+ */
+public final class MetricasConsumidor {
+
+    private final String consumidor;
+    private final long retraso;
+    private final long antiguedadMillis;
+    private final long procesados;
+    private final long lotes;
+    private final long errores;
+    private final long lotePromedioMicros;
+
+    MetricasConsumidor(String consumidor, long retraso, long antiguedadMillis, long procesados, long lotes,
+            long errores, long lotePromedioMicros) {
+        this.consumidor = consumidor;
+        this.retraso = retraso;
+        this.antiguedadMillis = antiguedadMillis;
+        this.procesados = procesados;
+        this.lotes = lotes;
+        this.errores = errores;
+        this.lotePromedioMicros = lotePromedioMicros;
+    }
+
+    public String getConsumidor() {
+        return consumidor;
+    }
+
+    /**
+     * Eventos publicados que el consumidor todavía no procesó.
+     *
+     * @return Cantidad de eventos pendientes.
+     */
+    public long getRetraso() {
+        return retraso;
+    }
+
+    /**
+     * Tiempo que lleva esperando el evento pendiente más antiguo.
+     *
+     * @return Milisegundos (0 si no hay pendientes).
+     */
+    public long getAntiguedadMillis() {
+        return antiguedadMillis;
+    }
+
+    public long getProcesados() {
+        return procesados;
+    }
+
+    public long getLotes() {
+        return lotes;
+    }
+
+    /**
+     * Lotes que se saltearon porque el consumidor lanzó una excepción en las
+     * cinco entregas del lote ({@code MAX_INTENTOS_LOTE} de {@link BusEventos}).
+     *
+     * @return Cantidad de lotes salteados.
+     */
+    public long getErrores() {
+        return errores;
+    }
+
+    public long getLotePromedioMicros() {
+        return lotePromedioMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: retraso=%d (%d ms), procesados=%d, lotes=%d, errores=%d, lote promedio=%d us",
+                consumidor, retraso, antiguedadMillis, procesados, lotes, errores, lotePromedioMicros);
+    }
+}
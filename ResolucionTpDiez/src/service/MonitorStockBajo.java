@@ -0,0 +1,308 @@
+package service;
+
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ProductoDAO;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import model.Producto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lista de los productos con stock por debajo de un umbral, mantenida al día
+ * con los eventos de {@link BusEventos}.
+ *
+ * Los productos bajo el umbral se guardan en un árbol ordenado por (cantidad,
+ * id), con un índice por ID para ubicarlos: cada evento cuesta O(log n) y
+ * {@link #masBajos} recorre solo los k primeros. La base se consulta una vez
+ * al iniciar y otra después de cada importación de catálogo, que no informa
+ * qué productos cambió; el catálogo nunca se recorre periódicamente.
+ *
+ * Cuando un producto cruza el umbral, en cualquier sentido, se avisa a los
+ * {@link Oyente}s en el hilo del consumidor. Si dos pedidos del mismo producto
+ * confirman casi a la vez, sus eventos pueden llegar en otro orden; el próximo
+ * cambio del producto corrige la entrada.
+ *
+ * Las recargas desde la base se hacen de a una: la de {@link #iniciar} y las
+ * que piden las importaciones esperan a que termine la anterior.
+ */
+public class MonitorStockBajo {
+
+    private static final Logger log = LoggerFactory.getLogger(MonitorStockBajo.class);
+
+    /**
+     * Receptor de los cruces de umbral.
+     */
+    public interface Oyente {
+
+        /**
+         * Un producto cruzó el umbral. Se llama en el hilo del consumidor del
+         * bus: no debe bloquearse.
+         *
+         * @param idProducto ID del producto.
+         * @param cantidad Stock actual, o -1 si se eliminó o se repuso con una
+         * importación.
+         * @param bajo true si quedó por debajo del umbral, false si salió.
+         */
+        void cruzoUmbral(int idProducto, int cantidad, boolean bajo);
+    }
+
+    /**
+     * Stock de un producto bajo el umbral.
+     */
+    public static final class StockBajo {
+
+        private final int idProducto;
+        private final int cantidad;
+
+        private StockBajo(int idProducto, int cantidad) {
+            this.idProducto = idProducto;
+            this.cantidad = cantidad;
+        }
+
+        public int getIdProducto() {
+            return idProducto;
+        }
+
+        public int getCantidad() {
+            return cantidad;
+        }
+
+        @Override
+        public String toString() {
+            return idProducto + ": " + cantidad;
+        }
+    }
+
+    private static final class Cruce {
+
+        private final StockBajo stock;
+        private final boolean bajo;
+
+        private Cruce(StockBajo stock, boolean bajo) {
+            this.stock = stock;
+            this.bajo = bajo;
+        }
+    }
+
+    private static final Comparator<StockBajo> POR_CANTIDAD_E_ID = Comparator.comparingInt(StockBajo::getCantidad)
+            .thenComparingInt(StockBajo::getIdProducto);
+
+    // Eventos por lote del consumidor
+    private static final int EVENTOS_POR_LOTE = 256;
+
+    private final ProductoDAO productoDAO;
+    private final int umbral;
+    private final AtomicBoolean iniciado = new AtomicBoolean();
+    private final List<Oyente> oyentes = new ArrayList<>();
+
+    private final TreeSet<StockBajo> ordenados = new TreeSet<>(POR_CANTIDAD_E_ID);
+    private final Map<Integer, StockBajo> porId = new HashMap<>();
+
+    // Serializa las recargas: cada una usa su propio registro de tocados
+    private final Object recarga = new Object();
+
+    // Productos cambiados por eventos mientras se consulta la base: la
+    // consulta pudo leerlos antes del cambio, así que no los pisa
+    private Set<Integer> tocadosDuranteCarga;
+
+    /**
+     * @param productoDAO DAO de productos, para la carga inicial.
+     * @param umbral Stock mínimo: se siguen los productos con menos.
+     */
+    public MonitorStockBajo(ProductoDAO productoDAO, int umbral) {
+        if (umbral <= 0) {
+            throw new IllegalArgumentException("El umbral debe ser mayor a 0.");
+        }
+        this.productoDAO = productoDAO;
+        this.umbral = umbral;
+    }
+
+    /**
+     * Agrega un oyente. Conviene agregarlos antes de {@link #iniciar} para
+     * recibir los productos que ya están bajo el umbral.
+     *
+     * @param oyente Receptor de los cruces.
+     */
+    public void agregarOyente(Oyente oyente) {
+        synchronized (oyentes) {
+            oyentes.add(oyente);
+        }
+    }
+
+    /**
+     * Se suscribe al bus del proceso y carga los productos que ya están bajo
+     * el umbral. Llamarlo más de una vez no tiene efecto.
+     *
+     * @throws Exception Si falla la consulta inicial.
+     */
+    public void iniciar() throws Exception {
+        if (!iniciado.compareAndSet(false, true)) {
+            return;
+        }
+        // Primero la suscripción: los cambios confirmados durante la consulta
+        // llegan como eventos
+        BusEventos.instancia().suscribir("stock-bajo", EVENTOS_POR_LOTE, this::aplicar);
+        recargar();
+    }
+
+    public int getUmbral() {
+        return umbral;
+    }
+
+    /**
+     * Devuelve los productos con menos stock.
+     *
+     * @param k Cantidad máxima de productos.
+     * @return Hasta k productos bajo el umbral, de menor a mayor stock.
+     */
+    public synchronized List<StockBajo> masBajos(int k) {
+        List<StockBajo> resultado = new ArrayList<>(Math.min(k, ordenados.size()));
+        for (StockBajo stock : ordenados) {
+            if (resultado.size() >= k) {
+                break;
+            }
+            resultado.add(stock);
+        }
+        return resultado;
+    }
+
+    /**
+     * @return Cantidad de productos bajo el umbral.
+     */
+    public synchronized int cantidad() {
+        return ordenados.size();
+    }
+
+    public synchronized boolean contiene(int idProducto) {
+        return porId.containsKey(idProducto);
+    }
+
+    /**
+     * Aplica un lote de eventos. Una importación de catálogo se resuelve
+     * releyendo la base al final del lote.
+     */
+    private void aplicar(List<EventoDominio> lote) throws Exception {
+        List<Cruce> cruces = new ArrayList<>();
+        boolean recargar = false;
+        synchronized (this) {
+            for (EventoDominio evento : lote) {
+                if (evento instanceof StockDecrementado decrementado) {
+                    actualizar(decrementado.getIdProducto(), decrementado.getStockRestante(), cruces);
+                } else if (evento instanceof ProductoActualizado actualizado) {
+                    if (actualizado.isEliminado()) {
+                        quitar(actualizado.getIdProducto(), -1, cruces);
+                    } else {
+                        actualizar(actualizado.getIdProducto(), actualizado.getProducto().getCantidad(), cruces);
+                    }
+                } else if (evento instanceof CatalogoImportado) {
+                    recargar = true;
+                }
+            }
+        }
+        avisar(cruces);
+        if (recargar) {
+            recargar();
+        }
+    }
+
+    /**
+     * Reemplaza la lista con los productos bajo el umbral según la base,
+     * salvo los que cambiaron por eventos durante la consulta.
+     */
+    private void recargar() throws Exception {
+        synchronized (recarga) {
+            Set<Integer> tocados = new HashSet<>();
+            synchronized (this) {
+                tocadosDuranteCarga = tocados;
+            }
+            List<Producto> bajos;
+            try {
+                bajos = TransactionTemplate.leer(TipoCarga.LOTE, conn -> productoDAO.listarConStockMenorA(conn, umbral));
+            } catch (Exception ex) {
+                synchronized (this) {
+                    tocadosDuranteCarga = null;
+                }
+                throw ex;
+            }
+
+            List<Cruce> cruces = new ArrayList<>();
+            synchronized (this) {
+                tocadosDuranteCarga = null;
+                Set<Integer> leidos = new HashSet<>();
+                for (Producto producto : bajos) {
+                    leidos.add(producto.getId());
+                    if (!tocados.contains(producto.getId())) {
+                        actualizar(producto.getId(), producto.getCantidad(), cruces);
+                    }
+                }
+                for (Integer id : new ArrayList<>(porId.keySet())) {
+                    if (!leidos.contains(id) && !tocados.contains(id)) {
+                        quitar(id, -1, cruces);
+                    }
+                }
+            }
+            avisar(cruces);
+        }
+    }
+
+    private void actualizar(int idProducto, int cantidad, List<Cruce> cruces) {
+        if (cantidad >= umbral) {
+            quitar(idProducto, cantidad, cruces);
+            return;
+        }
+        if (tocadosDuranteCarga != null) {
+            tocadosDuranteCarga.add(idProducto);
+        }
+        StockBajo nuevo = new StockBajo(idProducto, cantidad);
+        StockBajo anterior = porId.put(idProducto, nuevo);
+        if (anterior != null) {
+            ordenados.remove(anterior);
+        } else {
+            cruces.add(new Cruce(nuevo, true));
+        }
+        ordenados.add(nuevo);
+    }
+
+    private void quitar(int idProducto, int cantidad, List<Cruce> cruces) {
+        if (tocadosDuranteCarga != null) {
+            tocadosDuranteCarga.add(idProducto);
+        }
+        StockBajo anterior = porId.remove(idProducto);
+        if (anterior != null) {
+            ordenados.remove(anterior);
+            cruces.add(new Cruce(new StockBajo(idProducto, cantidad), false));
+        }
+    }
+
+    /**
+     * Avisa los cruces a los oyentes, fuera del candado del monitor. Un oyente
+     * que falla no impide avisar a los demás.
+     */
+    private void avisar(List<Cruce> cruces) {
+        if (cruces.isEmpty()) {
+            return;
+        }
+        List<Oyente> destinatarios;
+        synchronized (oyentes) {
+            destinatarios = new ArrayList<>(oyentes);
+        }
+        for (Cruce cruce : cruces) {
+            for (Oyente oyente : destinatarios) {
+                try {
+                    oyente.cruzoUmbral(cruce.stock.getIdProducto(), cruce.stock.getCantidad(), cruce.bajo);
+                } catch (RuntimeException ex) {
+                    log.warn("Falló un oyente de stock bajo con el producto {}", cruce.stock.getIdProducto(), ex);
+                }
+            }
+        }
+    }
+}
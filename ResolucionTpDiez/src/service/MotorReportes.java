@@ -0,0 +1,301 @@
+package service;
+
+import config.BaseDatos;
+import config.DatabaseConnection;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ArchivoPedidosDAO;
+import dao.FabricaDAO;
+import dao.PedidoDAO;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import service.RangosIds.Rango;
+
+/**
+ * Calcula reportes sobre los pedidos de un rango de fechas en paralelo, sin
+ * traer los pedidos a memoria.
+ *
+ * El rango de IDs de cada shard se divide en rangos de tamaño fijo, por
+ * separado para los pedidos actuales y los archivados, así que los reportes
+ * incluyen los pedidos que el archivado ya movió al histórico. Cada rango se
+ * recorre con {@link PedidoDAO#recorrerConItems} o
+ * {@link ArchivoPedidosDAO#recorrerConItems} en su propia conexión del pool de
+ * lotes y acumula un resultado parcial; los parciales se combinan de a
+ * pares a medida que terminan, en un {@link ForkJoinPool}. Un semáforo limita
+ * las conexiones que usa el motor, sumando todos los reportes en curso, así
+ * que los reportes nunca ocupan más que esa parte del pool de lotes y no
+ * tocan los pools interactivo y de escritura.
+ *
+ * Una ejecución se puede cancelar: los rangos en curso se abandonan en la
+ * fila siguiente y los pendientes no empiezan.
+ */
+public class MotorReportes {
+
+    /**
+     * Definición de un reporte: cómo crear un resultado parcial vacío y cómo
+     * combinar dos. Cada parcial recibe las filas de un solo rango, desde un
+     * solo hilo.
+     *
+     * @param <A> Tipo del resultado parcial, que acumula las filas.
+     */
+    public interface Reporte<A extends PedidoDAO.FilaPedidoItem> {
+
+        A nuevoParcial();
+
+        /**
+         * Combina dos parciales de rangos distintos. Puede devolver uno de
+         * los dos modificado.
+         */
+        A combinar(A primero, A segundo);
+    }
+
+    /**
+     * Recibe el avance de un reporte. Puede invocarse desde varios hilos del
+     * motor a la vez.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+
+        void informar(int rangosTerminados, int rangosTotales);
+    }
+
+    /**
+     * Reporte en curso.
+     *
+     * @param <A> Tipo del resultado.
+     */
+    public static final class Ejecucion<A> {
+
+        private final ForkJoinTask<A> tarea;
+        private final AtomicBoolean cancelada;
+        private final AtomicInteger terminados;
+        private final int rangos;
+
+        private Ejecucion(ForkJoinTask<A> tarea, AtomicBoolean cancelada, AtomicInteger terminados, int rangos) {
+            this.tarea = tarea;
+            this.cancelada = cancelada;
+            this.terminados = terminados;
+            this.rangos = rangos;
+        }
+
+        /**
+         * Espera el resultado.
+         *
+         * @return Resultado combinado de todos los rangos.
+         * @throws CancellationException Si se canceló.
+         * @throws Exception La primera falla de un rango.
+         */
+        public A esperar() throws Exception {
+            try {
+                return tarea.get();
+            } catch (ExecutionException ex) {
+                // ForkJoinTask puede envolver la excepción original en otra del
+                // mismo tipo al pasarla entre hilos
+                Throwable causa = ex.getCause();
+                while ((causa instanceof FallaRango || causa instanceof CancellationException) && causa.getCause() != null) {
+                    causa = causa.getCause();
+                }
+                throw causa instanceof Exception excepcion ? excepcion : ex;
+            }
+        }
+
+        /**
+         * Cancela el reporte. Las conexiones en uso se devuelven al abandonar
+         * cada rango.
+         */
+        public void cancelar() {
+            cancelada.set(true);
+            tarea.cancel(false);
+        }
+
+        public boolean isCancelada() {
+            return cancelada.get();
+        }
+
+        public int getRangosTerminados() {
+            return terminados.get();
+        }
+
+        public int getRangosTotales() {
+            return rangos;
+        }
+    }
+
+    private final PedidoDAO pedidoDAO;
+    private final ArchivoPedidosDAO archivoDAO;
+    private final int tamanoRango;
+    private final Semaphore conexiones;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pedidoDAO DAO de pedidos.
+     * @param maxConexiones Conexiones que puede usar el motor a la vez, entre
+     * 1 y el tamaño del pool de lotes.
+     * @param tamanoRango IDs de pedido por rango.
+     */
+    public MotorReportes(PedidoDAO pedidoDAO, int maxConexiones, int tamanoRango) {
+        RangosIds.validarConexiones(maxConexiones);
+        if (tamanoRango <= 0) {
+            throw new IllegalArgumentException("El tamaño de rango debe ser mayor a 0.");
+        }
+        this.pedidoDAO = pedidoDAO;
+        this.archivoDAO = FabricaDAO.archivoPedidos();
+        this.tamanoRango = tamanoRango;
+        this.conexiones = new Semaphore(maxConexiones);
+        this.pool = new ForkJoinPool(maxConexiones);
+    }
+
+    /**
+     * Empieza un reporte sobre los pedidos de un rango de fechas, actuales y
+     * archivados. Los rangos de IDs se calculan antes de volver, con dos
+     * consultas por shard.
+     *
+     * @param reporte Definición del reporte.
+     * @param desde Fecha mínima (inclusive) o null.
+     * @param hasta Fecha máxima (exclusiva) o null.
+     * @param progreso Receptor del avance, o null.
+     * @return Reporte en curso.
+     * @throws Exception Si falla el cálculo de los rangos.
+     */
+    public <A extends PedidoDAO.FilaPedidoItem> Ejecucion<A> iniciar(Reporte<A> reporte, Date desde, Date hasta,
+            Progreso progreso) throws Exception {
+        List<Rango> rangos = new ArrayList<>();
+        for (int i = 0; i < DatabaseConnection.cantidadShards(); i++) {
+            BaseDatos shard = DatabaseConnection.shard(i);
+            int[] ids = TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> pedidoDAO.rangoIds(conn, desde, hasta));
+            rangos.addAll(RangosIds.porTamano(shard, i, false, ids, tamanoRango));
+            int[] archivados = TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> archivoDAO.rangoIds(conn, desde, hasta));
+            rangos.addAll(RangosIds.porTamano(shard, i, true, archivados, tamanoRango));
+        }
+
+        AtomicBoolean cancelada = new AtomicBoolean();
+        AtomicInteger terminados = new AtomicInteger();
+        Ejecutor<A> ejecutor = new Ejecutor<>(reporte, desde, hasta, progreso, rangos, cancelada, terminados);
+        ForkJoinTask<A> tarea = rangos.isEmpty()
+                ? ForkJoinTask.adapt(reporte::nuevoParcial)
+                : new TareaRangos<>(ejecutor, 0, rangos.size());
+        pool.execute(tarea);
+        return new Ejecucion<>(tarea, cancelada, terminados, rangos.size());
+    }
+
+    /**
+     * Estado compartido por las tareas de una ejecución.
+     */
+    private final class Ejecutor<A extends PedidoDAO.FilaPedidoItem> {
+
+        private final Reporte<A> reporte;
+        private final Date desde;
+        private final Date hasta;
+        private final Progreso progreso;
+        private final List<Rango> rangos;
+        private final AtomicBoolean cancelada;
+        private final AtomicInteger terminados;
+
+        private Ejecutor(Reporte<A> reporte, Date desde, Date hasta, Progreso progreso, List<Rango> rangos,
+                AtomicBoolean cancelada, AtomicInteger terminados) {
+            this.reporte = reporte;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.progreso = progreso;
+            this.rangos = rangos;
+            this.cancelada = cancelada;
+            this.terminados = terminados;
+        }
+
+        private A recorrer(Rango rango) throws Exception {
+            A parcial = RangosIds.conReintentos(() -> {
+                if (cancelada.get()) {
+                    throw new CancellationException();
+                }
+                A nuevo = reporte.nuevoParcial();
+                conexiones.acquire();
+                try {
+                    PedidoDAO.FilaPedidoItem fila = (pedidoId, fecha, total, itemId, productoId, cantidad, subtotal) -> {
+                        if (cancelada.get()) {
+                            throw new CancellationException();
+                        }
+                        nuevo.procesar(pedidoId, fecha, total, itemId, productoId, cantidad, subtotal);
+                    };
+                    TransactionTemplate.leer(rango.base, TipoCarga.LOTE, conn -> {
+                        if (rango.historico) {
+                            archivoDAO.recorrerConItems(conn, desde, hasta, rango.idDesde, rango.idHasta, fila);
+                        } else {
+                            pedidoDAO.recorrerConItems(conn, desde, hasta, rango.idDesde, rango.idHasta, fila);
+                        }
+                        return null;
+                    });
+                } finally {
+                    conexiones.release();
+                }
+                return nuevo;
+            });
+
+            int listos = terminados.incrementAndGet();
+            if (progreso != null) {
+                progreso.informar(listos, rangos.size());
+            }
+            return parcial;
+        }
+    }
+
+    /**
+     * Excepción verificada de un rango, para atravesar {@link RecursiveTask}.
+     */
+    private static final class FallaRango extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private FallaRango(Exception causa) {
+            super(causa);
+        }
+    }
+
+    /**
+     * Recorre los rangos [inicio, fin) dividiéndolos a la mitad hasta llegar
+     * a un rango por tarea, y combina los parciales al volver.
+     */
+    private static final class TareaRangos<A extends PedidoDAO.FilaPedidoItem> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MotorReportes.Ejecutor<A> ejecutor;
+        private final int inicio;
+        private final int fin;
+
+        private TareaRangos(MotorReportes.Ejecutor<A> ejecutor, int inicio, int fin) {
+            this.ejecutor = ejecutor;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        protected A compute() {
+            if (fin - inicio == 1) {
+                try {
+                    return ejecutor.recorrer(ejecutor.rangos.get(inicio));
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    if (ex instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new FallaRango(ex);
+                }
+            }
+            int medio = (inicio + fin) >>> 1;
+            TareaRangos<A> izquierda = new TareaRangos<>(ejecutor, inicio, medio);
+            izquierda.fork();
+            A derecha = new TareaRangos<>(ejecutor, medio, fin).compute();
+            return ejecutor.reporte.combinar(izquierda.join(), derecha);
+        }
+    }
+}
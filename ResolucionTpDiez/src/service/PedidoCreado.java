@@ -0,0 +1,37 @@
+package service;
+
+import java.util.Date;
+
+/**
+ * Se confirmó un pedido nuevo con sus items. El total va en centavos.
+ */
+public final class PedidoCreado extends EventoDominio {
+
+    private final int idPedido;
+    private final Date fecha;
+    private final long total;
+    private final int cantidadItems;
+
+    public PedidoCreado(int idPedido, Date fecha, long total, int cantidadItems) {
+        this.idPedido = idPedido;
+        this.fecha = new Date(fecha.getTime());
+        this.total = total;
+        this.cantidadItems = cantidadItems;
+    }
+
+    public int getIdPedido() {
+        return idPedido;
+    }
+
+    public Date getFecha() {
+        return new Date(fecha.getTime());
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCantidadItems() {
+        return cantidadItems;
+    }
+}
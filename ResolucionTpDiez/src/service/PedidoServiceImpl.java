@@ -1,25 +1,67 @@
 package service;
 
-import dao.PedidoDAOImpl;
-import dao.ProductoDAOImpl;
+import dao.PedidoDAO;
+import dao.ProductoDAO;
+import model.DetallePedido;
+import model.Dinero;
 import model.ItemPedido;
 import model.Pedido;
 import model.Producto;
 import java.sql.Connection;
+import config.BaseDatos;
 import config.DatabaseConnection;
-import dao.ItemPedidoDAOImpl;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ArchivoPedidosDAO;
+import dao.FabricaDAO;
+import dao.IdempotenciaDAO;
+import dao.ItemPedidoDAO;
+import dao.Procesador;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Operaciones sobre pedidos. Los pedidos y sus items se guardan en los shards
+ * de {@link DatabaseConnection}; los productos, en la base de referencia. Sin
+ * shards configurados ambas son la misma base y cada pedido se crea en una
+ * única transacción.
+ */
 public class PedidoServiceImpl {
 
-    private final PedidoDAOImpl pedidoDAO;
-    private final ItemPedidoDAOImpl itemPedidoDAO;
-    private final ProductoDAOImpl productoDAO;
+    private final PedidoDAO pedidoDAO;
+    private final ItemPedidoDAO itemPedidoDAO;
+    private final ProductoDAO productoDAO;
+    private final IdempotenciaDAO idempotenciaDAO;
+    private final ArchivoPedidosDAO archivoDAO;
+    private final BusEventos eventos = BusEventos.instancia();
+    private final CacheCatalogo cache = CacheCatalogo.instancia();
+    private final TrazasCrearPedido trazas = TrazasCrearPedido.instancia();
 
-    public PedidoServiceImpl(PedidoDAOImpl pedidoDAO, ItemPedidoDAOImpl itemPedidoDAO, ProductoDAOImpl productoDAO) {
+    // Claves ya resueltas y claves que se están procesando en este momento
+    private final ClavesIdempotenciaCache clavesRecientes;
+    private final ConcurrentHashMap<String, CompletableFuture<Integer>> clavesEnCurso = new ConcurrentHashMap<>();
+
+    private static final int CAPACIDAD_CLAVES_RECIENTES = 10_000;
+    // Largo de la columna pedidos_idempotencia.clave
+    private static final int LARGO_MAXIMO_CLAVE = 64;
+
+    public PedidoServiceImpl(PedidoDAO pedidoDAO, ItemPedidoDAO itemPedidoDAO, ProductoDAO productoDAO) {
         this.pedidoDAO = pedidoDAO;
         this.itemPedidoDAO = itemPedidoDAO;
         this.productoDAO = productoDAO;
+        this.idempotenciaDAO = FabricaDAO.idempotencia();
+        this.archivoDAO = FabricaDAO.archivoPedidos();
+        this.clavesRecientes = new ClavesIdempotenciaCache(CAPACIDAD_CLAVES_RECIENTES);
     }
 
     /**
@@ -33,76 +75,418 @@ public class PedidoServiceImpl {
      * o ocurre un error en la base de datos.
      */
     public void crearPedido(Pedido pedido, List<ItemPedido> items) throws Exception {
-        Connection conn = null;
+        crearEnShard(DatabaseConnection.siguienteShard(), null, pedido, items);
+    }
+
+    /**
+     * Crea un pedido de forma idempotente. Si la clave ya fue usada, no se
+     * escribe nada y se devuelve el ID del pedido original. Los envíos
+     * duplicados que llegan al mismo tiempo a este proceso esperan el resultado
+     * del primero; entre procesos distintos la clave primaria de la tabla de
+     * idempotencia impide que se creen dos pedidos.
+     *
+     * @param clave Clave de idempotencia enviada por el cliente, de hasta 64
+     * caracteres.
+     * @param pedido Pedido a crear (el total será calculado e actualizado).
+     * @param items Lista de items que pertenecen al pedido.
+     * @return ID del pedido creado o del pedido original si es un reintento.
+     * @throws Exception Si algún producto no existe, no tiene stock suficiente
+     * o ocurre un error en la base de datos.
+     */
+    public int crearPedido(String clave, Pedido pedido, List<ItemPedido> items) throws Exception {
+        if (clave == null || clave.trim().isEmpty()) {
+            throw new IllegalArgumentException("La clave de idempotencia no puede estar vacía.");
+        }
+        if (clave.length() > LARGO_MAXIMO_CLAVE) {
+            throw new IllegalArgumentException("La clave de idempotencia no puede superar los "
+                    + LARGO_MAXIMO_CLAVE + " caracteres.");
+        }
+
+        while (true) {
+            // Reintento ya conocido: no se consulta la base de datos
+            Integer existente = clavesRecientes.buscar(clave);
+            if (existente != null) {
+                pedido.setId(existente);
+                return existente;
+            }
+
+            CompletableFuture<Integer> propio = new CompletableFuture<>();
+            CompletableFuture<Integer> enCurso = clavesEnCurso.putIfAbsent(clave, propio);
+            if (enCurso != null) {
+                try {
+                    int pedidoId = enCurso.get();
+                    pedido.setId(pedidoId);
+                    return pedidoId;
+                } catch (ExecutionException ex) {
+                    // El primer envío falló; este lo vuelve a intentar
+                    continue;
+                }
+            }
+
+            try {
+                int pedidoId = crearPedidoConClave(clave, pedido, items);
+                clavesRecientes.registrar(clave, pedidoId);
+                propio.complete(pedidoId);
+                return pedidoId;
+            } catch (Exception e) {
+                propio.completeExceptionally(e);
+                throw e;
+            } finally {
+                clavesEnCurso.remove(clave, propio);
+            }
+        }
+    }
+
+    /**
+     * Reserva la clave en el shard del pedido y, solo si no existía, crea el
+     * pedido en la misma transacción.
+     */
+    private int crearPedidoConClave(String clave, Pedido pedido, List<ItemPedido> items) throws Exception {
+        return crearEnShard(DatabaseConnection.shardParaClave(clave), clave, pedido, items);
+    }
+
+    /**
+     * Crea el pedido en un shard. El stock se descuenta en una transacción
+     * sobre la base de referencia anidada dentro de la del shard: si ambas son
+     * la misma base, la anidada se une a la exterior y todo se confirma junto.
+     * Si son bases distintas, el stock se confirma primero y, si después falla
+     * la confirmación del pedido, se devuelve con una compensación. Los
+     * eventos {@link StockDecrementado} y {@link PedidoCreado} se publican
+     * recién cuando confirma el shard.
+     *
+     * El tiempo de cada fase queda en {@link TrazasCrearPedido}.
+     *
+     * @param clave Clave de idempotencia o null.
+     */
+    private int crearEnShard(BaseDatos shard, String clave, Pedido pedido, List<ItemPedido> items) throws Exception {
+        BaseDatos referencia = DatabaseConnection.referencia();
+        AtomicBoolean stockConfirmado = new AtomicBoolean();
+        TrazasCrearPedido.Traza traza = trazas.iniciar(items.size());
+        boolean exito = false;
+        traza.entrar(TrazasCrearPedido.Fase.ADQUIRIR_CONEXION);
         try {
-            conn = config.DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Validar stock para todos los items
-            for (ItemPedido item : items) {
-                Producto producto = productoDAO.leer(item.getIdProducto(), conn);
-                if (producto == null) {
-                    throw new RuntimeException("Producto no encontrado ID " + item.getIdProducto());
+            int id = TransactionTemplate.escribir(shard, connPedido -> {
+                traza.salir();
+                if (clave != null && !idempotenciaDAO.reservar(clave, connPedido)) {
+                    // Otro envío con la misma clave ya confirmó su pedido. La
+                    // inserción fallida no abre la vista consistente, así que la
+                    // consulta siguiente ve la fila confirmada.
+                    Integer pedidoId = idempotenciaDAO.buscarPedidoId(clave, connPedido);
+                    if (pedidoId == null) {
+                        throw new IllegalStateException("La clave " + clave + " no tiene un pedido asociado.");
+                    }
+                    pedido.setId(pedidoId);
+                    traza.descartar();
+                    return pedidoId;
                 }
-                if (producto.getCantidad() < item.getCantidad()) {
-                    throw new RuntimeException("Stock insuficiente para producto: " + producto.getNombre());
+
+                traza.entrar(TrazasCrearPedido.Fase.ADQUIRIR_CONEXION);
+                TransactionTemplate.ejecutar(referencia, connRef -> crearPedido(pedido, items, connRef, connPedido, traza));
+                traza.salir();
+                stockConfirmado.set(shard != referencia);
+
+                if (clave != null) {
+                    idempotenciaDAO.asociarPedido(clave, pedido.getId(), connPedido);
                 }
+                traza.entrar(TrazasCrearPedido.Fase.CONFIRMAR);
+                return pedido.getId();
+            });
+            exito = true;
+            return id;
+        } catch (Exception ex) {
+            if (stockConfirmado.get()) {
+                devolverStock(items, ex);
             }
+            throw ex;
+        } finally {
+            trazas.terminar(traza, pedido.getId(), exito);
+        }
+    }
 
-            // Crear pedido (total inicial 0, luego actualizamos)
-            pedidoDAO.crear(pedido, conn);
+    /**
+     * Compensa el stock descontado por un pedido que no llegó a confirmarse.
+     * Si la compensación también falla, queda registrada en la excepción
+     * original.
+     *
+     * Los eventos del pedido se descartaron con la transacción del shard, pero
+     * entre ambas transacciones la cache pudo leer el stock descontado.
+     */
+    private void devolverStock(List<ItemPedido> items, Exception causa) {
+        Set<Integer> idsProducto = new HashSet<>();
+        try {
+            TransactionTemplate.ejecutar(conn -> {
+                for (ItemPedido item : items) {
+                    productoDAO.devolverStock(conn, item.getIdProducto(), item.getCantidad());
+                    idsProducto.add(item.getIdProducto());
+                }
+            });
+        } catch (Exception ex) {
+            causa.addSuppressed(ex);
+        } finally {
+            cache.invalidarProductos(idsProducto);
+        }
+    }
 
-            double totalPedido = 0;
+    /**
+     * Valida stock, inserta el pedido con sus items y descuenta el stock.
+     * Productos en connRef; pedido e items en connPedido (pueden ser la misma
+     * conexión). Termina con la traza en la fase de confirmación.
+     */
+    private void crearPedido(Pedido pedido, List<ItemPedido> items, Connection connRef, Connection connPedido,
+            TrazasCrearPedido.Traza traza) throws Exception {
+        // Validar stock para todos los items
+        traza.entrar(TrazasCrearPedido.Fase.VALIDAR_STOCK);
+        List<Producto> productos = new ArrayList<>(items.size());
+        for (ItemPedido item : items) {
+            Producto producto = productoDAO.leer(item.getIdProducto(), connRef);
+            if (producto == null) {
+                throw new RuntimeException("Producto no encontrado ID " + item.getIdProducto());
+            }
+            if (producto.getCantidad() < item.getCantidad()) {
+                throw new RuntimeException("Stock insuficiente para producto: " + producto.getNombre());
+            }
+            productos.add(producto);
+        }
 
-            // Crear items, calcular subtotal y actualizar stock
-            for (ItemPedido item : items) {
-                Producto producto = productoDAO.leer(item.getIdProducto(), conn);
+        // Crear pedido (total inicial 0, luego actualizamos)
+        traza.entrar(TrazasCrearPedido.Fase.INSERTAR_PEDIDO);
+        pedidoDAO.crear(pedido, connPedido);
 
-                item.setIdPedido(pedido.getId());
-                item.setSubtotal(producto.getPrecio() * item.getCantidad());
-                totalPedido += item.getSubtotal();
+        long totalPedido = 0;
 
-                itemPedidoDAO.crear(item, conn);
+        // Crear items, calcular subtotal y actualizar stock
+        for (int i = 0; i < items.size(); i++) {
+            ItemPedido item = items.get(i);
+            Producto producto = productos.get(i);
 
-                // Actualizar stock producto
-                producto.setCantidad(producto.getCantidad() - item.getCantidad());
-                productoDAO.actualizar(producto, conn);
-            }
+            traza.entrar(TrazasCrearPedido.Fase.INSERTAR_ITEMS);
+            item.setIdPedido(pedido.getId());
+            item.setSubtotal(Dinero.multiplicar(producto.getPrecio(), item.getCantidad()));
+            totalPedido = Dinero.sumar(totalPedido, item.getSubtotal());
 
-            // Actualizar total del pedido
-            pedido.setTotal(totalPedido);
-            pedidoDAO.actualizar(pedido, conn);
+            itemPedidoDAO.crear(item, connPedido);
 
-            conn.commit();
-        } catch (Exception e) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.close();
+            // Descontar stock en una sola sentencia: otro pedido pudo tomarlo
+            // después de la validación
+            traza.entrar(TrazasCrearPedido.Fase.ACTUALIZAR_STOCK);
+            Integer restante = productoDAO.descontarStock(connRef, producto.getId(), item.getCantidad());
+            if (restante == null) {
+                throw new RuntimeException("Stock insuficiente para producto: " + producto.getNombre());
             }
+            StockDecrementado decrementado = new StockDecrementado(producto.getId(), pedido.getId(), item.getCantidad(), restante);
+            cache.invalidarAlConfirmar(decrementado);
+            eventos.publicar(decrementado);
         }
+
+        // Actualizar total del pedido
+        traza.entrar(TrazasCrearPedido.Fase.ACTUALIZAR_TOTAL);
+        pedido.setTotal(totalPedido);
+        pedidoDAO.actualizarCambios(pedido, connPedido);
+        eventos.publicar(new PedidoCreado(pedido.getId(), pedido.getFecha(), pedido.getTotal(), items.size()));
+        traza.entrar(TrazasCrearPedido.Fase.CONFIRMAR);
     }
 
     /**
-     * Muestra el detalle completo de un pedido por su ID, incluyendo
-     * información general y detalle de items. Si el pedido no existe, imprime
-     * un mensaje indicando que no fue encontrado.
+     * Obtiene un pedido por su ID desde su shard. Si no está en la tabla de
+     * pedidos, se busca en el histórico de pedidos archivados.
+     *
+     * @param pedidoId ID del pedido.
+     * @return Pedido encontrado o null si no existe.
+     * @throws Exception Si ocurre un error al acceder a la base de datos.
+     */
+    public Pedido leer(int pedidoId) throws Exception {
+        return TransactionTemplate.leer(DatabaseConnection.shardDePedido(pedidoId), conn -> {
+            Pedido pedido = pedidoDAO.leer(pedidoId, conn);
+            return pedido != null ? pedido : archivoDAO.leer(pedidoId, conn);
+        });
+    }
+
+    /**
+     * Lista los pedidos de todos los shards, ordenados por ID.
+     *
+     * @return Lista de pedidos.
+     * @throws Exception Si ocurre un error al acceder a la base de datos.
+     */
+    public List<Pedido> listar() throws Exception {
+        List<Pedido> pedidos = new ArrayList<>();
+        for (List<Pedido> parte : ConsultaShards.enParalelo(shard -> TransactionTemplate.leer(shard, TipoCarga.LOTE, pedidoDAO::listar))) {
+            pedidos.addAll(parte);
+        }
+        pedidos.sort(Comparator.comparingInt(Pedido::getId));
+        return pedidos;
+    }
+
+    /**
+     * Muestra por consola el detalle completo de un pedido por su ID,
+     * incluyendo información general y detalle de items. Si el pedido no
+     * existe, imprime un mensaje indicando que no fue encontrado.
      *
      * @param pedidoId ID del pedido a mostrar.
      * @throws Exception Si ocurre un error al acceder a la base de datos.
      */
     public void mostrarDetallePedido(int pedidoId) throws Exception {
-        try (Connection conn = config.DatabaseConnection.getConnection()) {
-            Pedido pedido = pedidoDAO.leer(pedidoId, conn);
-            if (pedido == null) {
-                System.out.println("Pedido no encontrado con ID " + pedidoId);
-                return;
+        DetallePedido detalle = leerDetalle(pedidoId);
+        if (detalle == null) {
+            System.out.println("Pedido no encontrado con ID " + pedidoId);
+            return;
+        }
+        // La conexión ya se devolvió: la consola no la retiene
+        new RenderizadorDetallePedido(RenderizadorDetallePedido.Formato.TEXTO).renderizar(detalle, System.out);
+    }
+
+    /**
+     * Lee el detalle completo de un pedido: sus datos y cada item con el
+     * nombre del producto y de la categoría. Los pedidos archivados se leen
+     * desde el histórico. Se omiten los items cuyo producto no existe o no
+     * tiene categoría. Para mostrarlo o serializarlo, ver
+     * {@link RenderizadorDetallePedido}.
+     *
+     * @param pedidoId ID del pedido.
+     * @return Detalle del pedido, o null si no existe.
+     * @throws Exception Si ocurre un error al acceder a la base de datos.
+     */
+    public DetallePedido leerDetalle(int pedidoId) throws Exception {
+        if (!DatabaseConnection.conShards()) {
+            DetallePedido detalle = TransactionTemplate.leer(conn -> pedidoDAO.leerDetalle(conn, pedidoId));
+            if (detalle != null) {
+                return detalle;
+            }
+        }
+
+        // Con shards, o si el pedido fue archivado, el pedido y sus items se
+        // leen del shard (o del histórico), y los nombres de productos y
+        // categorías de la base de referencia
+        List<ItemPedido> items = new ArrayList<>();
+        Pedido pedido = TransactionTemplate.leer(DatabaseConnection.shardDePedido(pedidoId), conn -> {
+            Pedido encontrado = pedidoDAO.leer(pedidoId, conn);
+            if (encontrado != null) {
+                items.addAll(itemPedidoDAO.listarPorPedido(conn, pedidoId));
+                return encontrado;
+            }
+            encontrado = archivoDAO.leer(pedidoId, conn);
+            if (encontrado != null) {
+                items.addAll(archivoDAO.listarItems(conn, pedidoId));
+            }
+            return encontrado;
+        });
+        if (pedido == null) {
+            return null;
+        }
+
+        Set<Integer> idsProducto = new LinkedHashSet<>();
+        for (ItemPedido item : items) {
+            idsProducto.add(item.getIdProducto());
+        }
+        Map<Integer, String[]> nombres = TransactionTemplate.leer(conn -> productoDAO.nombresConCategoria(conn, idsProducto));
+
+        DetallePedido detalle = new DetallePedido(pedido.getId(), pedido.getFecha(), pedido.getTotal());
+        for (ItemPedido item : items) {
+            String[] nombre = nombres.get(item.getIdProducto());
+            // Igual que la consulta sin shards, se omiten los items sin
+            // producto o sin categoría
+            if (nombre != null && nombre[1] != null) {
+                detalle.agregarLinea(new DetallePedido.Linea(nombre[0], nombre[1], item.getCantidad(), item.getSubtotal()));
             }
-            System.out.println("Pedido ID: " + pedido.getId() + ", Fecha: " + pedido.getFecha() + ", Total: " + pedido.getTotal());
-            pedidoDAO.mostrarDetallePedido(conn, pedidoId);
+        }
+        return detalle;
+    }
+
+    /**
+     * Recorre los pedidos con fecha dentro de un rango, en orden de fecha,
+     * incluidos los archivados. Los pedidos se entregan a medida que se leen,
+     * sin cargarlos todos en memoria. El procesador no debe hacer otras consultas a la base de datos
+     * mientras recibe pedidos.
+     *
+     * Con shards, cada shard se recorre en paralelo y los resultados se mezclan
+     * por fecha e ID.
+     *
+     * @param desde Fecha mínima (inclusive).
+     * @param hasta Fecha máxima (exclusiva).
+     * @param procesador Receptor de los pedidos.
+     * @throws Exception Si ocurre un error al acceder a la base de datos o en el
+     * procesador.
+     */
+    public void listarPorFechas(Date desde, Date hasta, Procesador<Pedido> procesador) throws Exception {
+        validarRango(desde, hasta);
+        ConsultaShards.recorrerOrdenado(
+                (shard, receptor) -> TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> {
+                    pedidoDAO.recorrerPorFechas(conn, desde, hasta, receptor);
+                    return null;
+                }),
+                Comparator.comparing(Pedido::getFecha).thenComparingInt(Pedido::getId),
+                procesador);
+    }
+
+    /**
+     * Recorre la cantidad de pedidos y el total vendido por día dentro de un
+     * rango, en orden de fecha, incluidos los pedidos archivados. Los días sin
+     * pedidos no se informan.
+     *
+     * @param desde Fecha mínima (inclusive).
+     * @param hasta Fecha máxima (exclusiva).
+     * @param procesador Receptor de los totales diarios.
+     * @throws Exception Si ocurre un error al acceder a la base de datos o en el
+     * procesador.
+     */
+    public void totalesPorDia(Date desde, Date hasta, PedidoDAO.TotalDiario procesador) throws Exception {
+        validarRango(desde, hasta);
+        if (DatabaseConnection.cantidadShards() == 1) {
+            TransactionTemplate.leer(DatabaseConnection.shard(0), TipoCarga.LOTE, conn -> {
+                pedidoDAO.totalesPorDia(conn, desde, hasta, procesador);
+                return null;
+            });
+            return;
+        }
+
+        // Los totales de cada shard llegan ordenados por día; los del mismo
+        // día quedan consecutivos y se suman antes de entregarlos
+        TotalDia[] acumulado = new TotalDia[1];
+        ConsultaShards.<TotalDia>recorrerOrdenado(
+                (shard, receptor) -> TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> {
+                    pedidoDAO.totalesPorDia(conn, desde, hasta,
+                            (dia, cantidad, total) -> receptor.procesar(new TotalDia(dia, cantidad, total)));
+                    return null;
+                }),
+                Comparator.comparing(t -> t.dia),
+                parcial -> {
+                    TotalDia actual = acumulado[0];
+                    if (actual != null && actual.dia.equals(parcial.dia)) {
+                        actual.cantidad += parcial.cantidad;
+                        actual.total = Dinero.sumar(actual.total, parcial.total);
+                        return;
+                    }
+                    if (actual != null) {
+                        procesador.procesar(actual.dia, actual.cantidad, actual.total);
+                    }
+                    acumulado[0] = parcial;
+                });
+        if (acumulado[0] != null) {
+            procesador.procesar(acumulado[0].dia, acumulado[0].cantidad, acumulado[0].total);
+        }
+    }
+
+    private void validarRango(Date desde, Date hasta) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("El rango de fechas debe tener inicio y fin.");
+        }
+        if (!desde.before(hasta)) {
+            throw new IllegalArgumentException("La fecha de inicio debe ser anterior a la de fin.");
+        }
+    }
+
+    /**
+     * Total de un día en un shard, mientras se mezclan los shards.
+     */
+    private static final class TotalDia {
+
+        private final java.sql.Date dia;
+        private int cantidad;
+        private long total;
+
+        private TotalDia(java.sql.Date dia, int cantidad, long total) {
+            this.dia = dia;
+            this.cantidad = cantidad;
+            this.total = total;
         }
     }
 }
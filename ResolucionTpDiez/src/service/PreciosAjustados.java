@@ -0,0 +1,40 @@
+package service;
+
+import java.util.Set;
+
+/**
+ * Se ajustó el precio de muchos productos con una sola operación: todos los de
+ * una categoría o un conjunto de IDs. Reemplaza a un
+ * {@link ProductoActualizado} por producto.
+ */
+public final class PreciosAjustados extends EventoDominio {
+
+    private final int idCategoria;
+    private final Set<Integer> idsProducto;
+    private final int cantidad;
+
+    public PreciosAjustados(int idCategoria, Set<Integer> idsProducto, int cantidad) {
+        this.idCategoria = idCategoria;
+        this.idsProducto = Set.copyOf(idsProducto);
+        this.cantidad = cantidad;
+    }
+
+    /**
+     * @return ID de la categoría ajustada, o 0 si el ajuste fue por IDs.
+     */
+    public int getIdCategoria() {
+        return idCategoria;
+    }
+
+    /**
+     * @return IDs de los productos ajustados; vacío si el ajuste fue por
+     * categoría.
+     */
+    public Set<Integer> getIdsProducto() {
+        return idsProducto;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+}
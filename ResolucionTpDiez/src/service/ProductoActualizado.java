@@ -0,0 +1,40 @@
+package service;
+
+import model.Producto;
+
+/**
+ * Un producto se creó, se modificó o se eliminó.
+ */
+public final class ProductoActualizado extends EventoDominio {
+
+    private final int idProducto;
+    private final Producto producto;
+
+    /**
+     * @param idProducto ID del producto.
+     * @param producto Estado guardado del producto, o null si se eliminó.
+     */
+    public ProductoActualizado(int idProducto, Producto producto) {
+        this.idProducto = idProducto;
+        this.producto = producto == null ? null : new Producto(producto.getId(), producto.getNombre(), producto.getDescripcion(),
+                producto.getPrecio(), producto.getCantidad(), producto.getIdCategoria(), producto.getVersion());
+    }
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    /**
+     * Estado del producto después del cambio. Es una copia propia del evento:
+     * los consumidores no deben modificarla.
+     *
+     * @return Producto guardado, o null si se eliminó.
+     */
+    public Producto getProducto() {
+        return producto;
+    }
+
+    public boolean isEliminado() {
+        return producto == null;
+    }
+}
@@ -1,23 +1,75 @@
 package service;
 
 import config.DatabaseConnection;
-import dao.ProductoDAOImpl;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ConflictoVersionException;
+import dao.FabricaDAO;
+import dao.ProductoDAO;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import model.AjustePrecio;
+import model.Dinero;
 import model.Producto;
 import java.sql.Connection;
 
 public class ProductoServiceImpl {
 
-    private final ProductoDAOImpl productoDAO;
+    private final ProductoDAO productoDAO;
+    private final CacheCatalogo cache = CacheCatalogo.instancia();
+    private final BusEventos eventos = BusEventos.instancia();
+
+    // Intentos de actualización antes de abandonar ante conflictos de versión
+    private static final int MAX_INTENTOS_ACTUALIZACION = 5;
+
+    // Productos por sentencia y transacción en los ajustes de precio masivos
+    private static final int PRODUCTOS_POR_AJUSTE = 1000;
 
     public ProductoServiceImpl() {
-        this.productoDAO = new ProductoDAOImpl();
+        this.productoDAO = FabricaDAO.productos();
+    }
+
+    /**
+     * Resultado de {@link #crearLote}: los productos creados y los errores de
+     * validación de los rechazados.
+     */
+    public static final class ResultadoLote {
+
+        private final List<Producto> creados;
+        private final Map<Integer, List<String>> errores;
+
+        private ResultadoLote(List<Producto> creados, Map<Integer, List<String>> errores) {
+            this.creados = creados;
+            this.errores = errores;
+        }
+
+        /**
+         * @return Productos creados, con su ID, en el orden del lote.
+         */
+        public List<Producto> getCreados() {
+            return creados;
+        }
+
+        /**
+         * @return Errores por posición del producto en el lote, en orden de
+         * posición; vacío si no se rechazó ninguno.
+         */
+        public Map<Integer, List<String>> getErrores() {
+            return errores;
+        }
     }
 
     /**
      * Valida los datos de un producto antes de insertarlo o actualizarlo.
      * Verifica que el nombre no sea vacío, el precio y la cantidad sean mayores
-     * a cero, y que la categoría asociada exista si se especifica.
+     * a cero, que el precio entre en la columna DECIMAL(12,2) y que la
+     * categoría asociada exista si se especifica.
      *
      * @param p Producto a validar.
      * @param conn Conexión activa a la base de datos para validar existencia de
@@ -25,14 +77,9 @@ public class ProductoServiceImpl {
      * @throws Exception Si alguna validación falla.
      */
     private void validar(Producto p, Connection conn) throws Exception {
-        if (p.getNombre() == null || p.getNombre().trim().isEmpty()) {
-            throw new Exception("El nombre no puede estar vacío.");
-        }
-        if (p.getPrecio() <= 0) {
-            throw new Exception("El precio debe ser mayor a 0.");
-        }
-        if (p.getCantidad() <= 0) {
-            throw new Exception("La cantidad debe ser mayor a 0.");
+        List<String> errores = erroresDeCampos(p);
+        if (!errores.isEmpty()) {
+            throw new Exception(errores.get(0));
         }
         if (p.getIdCategoria() != 0) {
             if (!productoDAO.existeCategoria(conn, p.getIdCategoria())) {
@@ -41,6 +88,28 @@ public class ProductoServiceImpl {
         }
     }
 
+    /**
+     * Verifica los campos de un producto sin consultar la base de datos.
+     *
+     * @return Mensajes de error, en el orden de {@link #validar}; vacía si los
+     * campos son válidos.
+     */
+    private static List<String> erroresDeCampos(Producto p) {
+        List<String> errores = new ArrayList<>();
+        if (p.getNombre() == null || p.getNombre().trim().isEmpty()) {
+            errores.add("El nombre no puede estar vacío.");
+        }
+        if (p.getPrecio() <= 0) {
+            errores.add("El precio debe ser mayor a 0.");
+        } else if (p.getPrecio() > Dinero.MAXIMO) {
+            errores.add("El precio supera el máximo de " + Dinero.formatear(Dinero.MAXIMO) + ".");
+        }
+        if (p.getCantidad() <= 0) {
+            errores.add("La cantidad debe ser mayor a 0.");
+        }
+        return errores;
+    }
+
     /**
      * Crea un nuevo producto en la base de datos tras validar los datos.
      * Realiza la operación en una transacción.
@@ -51,73 +120,198 @@ public class ProductoServiceImpl {
      * de base de datos.
      */
     public Producto crear(Producto p) throws Exception {
-
-        Connection conn = null;
-
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
+        return TransactionTemplate.escribir(conn -> {
             validar(p, conn);
             productoDAO.crear(p, conn);
-            conn.commit();
+            publicar(new ProductoActualizado(p.getId(), p));
             return p;
-        } catch (Exception e) {
-            if (conn != null) {
-                conn.rollback();
+        });
+    }
+
+    /**
+     * Crea un lote de productos. Primero se validan los campos de todos, sin
+     * consultar la base; después, con una consulta cada uno, se verifican
+     * todas las categorías referenciadas y los nombres ya usados. Los
+     * productos válidos se insertan con sentencias de varias filas en una
+     * sola transacción del pool de lotes, así que la cantidad de viajes a la
+     * base depende de los lotes de {@link dao.ProductoDAOImpl#FILAS_POR_SENTENCIA}
+     * filas y no de la cantidad de productos.
+     *
+     * Un producto inválido no impide crear los demás: todos sus errores se
+     * informan juntos en el resultado. Un nombre repetido dentro del lote se
+     * rechaza en todas sus apariciones menos la primera.
+     *
+     * @param productos Productos a crear. Los creados reciben su ID.
+     * @return Productos creados y errores de los rechazados.
+     * @throws Exception Si falla la base de datos; en ese caso no se crea
+     * ninguno.
+     */
+    public ResultadoLote crearLote(List<Producto> productos) throws Exception {
+        Map<Integer, List<String>> errores = new TreeMap<>();
+        Set<Integer> idsCategoria = new HashSet<>();
+        Set<String> nombres = new HashSet<>();
+        for (int i = 0; i < productos.size(); i++) {
+            Producto p = productos.get(i);
+            if (p == null) {
+                errores.put(i, new ArrayList<>(List.of("El producto no puede ser nulo.")));
+                continue;
             }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            List<String> erroresProducto = erroresDeCampos(p);
+            if (p.getNombre() != null && !p.getNombre().trim().isEmpty() && !nombres.add(p.getNombre())) {
+                erroresProducto.add("El nombre está repetido en el lote.");
+            }
+            if (!erroresProducto.isEmpty()) {
+                errores.put(i, erroresProducto);
+            }
+            if (p.getIdCategoria() != 0) {
+                idsCategoria.add(p.getIdCategoria());
             }
         }
+
+        List<Producto> creados = TransactionTemplate.ejecutar(DatabaseConnection.referencia(), TipoCarga.LOTE,
+                TransactionTemplate.Modo.LECTURA_ESCRITURA, TransactionTemplate.AISLAMIENTO_POR_DEFECTO, conn -> {
+                    Set<Integer> categorias = productoDAO.categoriasExistentes(conn, idsCategoria);
+                    Set<String> usados = productoDAO.nombresExistentes(conn, nombres);
+
+                    List<Producto> validos = new ArrayList<>(productos.size());
+                    for (int i = 0; i < productos.size(); i++) {
+                        Producto p = productos.get(i);
+                        if (p == null) {
+                            continue;
+                        }
+                        List<String> erroresProducto = errores.get(i);
+                        if (p.getIdCategoria() != 0 && !categorias.contains(p.getIdCategoria())) {
+                            erroresProducto = agregarError(errores, i, "La categoría no existe.");
+                        }
+                        // Las apariciones repetidas ya tienen su error: el de
+                        // nombre existente va solo en la primera
+                        if (usados.contains(p.getNombre()) && (erroresProducto == null
+                                || !erroresProducto.contains("El nombre está repetido en el lote."))) {
+                            erroresProducto = agregarError(errores, i, "Ya existe un producto con ese nombre.");
+                        }
+                        if (erroresProducto == null) {
+                            validos.add(p);
+                        }
+                    }
+
+                    productoDAO.crearLote(validos, conn);
+                    for (Producto p : validos) {
+                        publicar(new ProductoActualizado(p.getId(), p));
+                    }
+                    return validos;
+                });
+        return new ResultadoLote(creados, errores);
+    }
+
+    /**
+     * Invalida la cache al confirmar, en el mismo hilo, y publica el evento
+     * para los demás consumidores.
+     */
+    private void publicar(EventoDominio evento) {
+        cache.invalidarAlConfirmar(evento);
+        eventos.publicar(evento);
+    }
+
+    private static List<String> agregarError(Map<Integer, List<String>> errores, int indice, String mensaje) {
+        List<String> mensajes = errores.computeIfAbsent(indice, i -> new ArrayList<>());
+        mensajes.add(mensaje);
+        return mensajes;
     }
 
     /**
-     * Obtiene un producto por su ID.
+     * Obtiene un producto por su ID, desde {@link CacheCatalogo} si está.
      *
      * @param id Identificador del producto.
      * @return Producto encontrado o null si no existe.
      * @throws Exception Si ocurre un error en la operación de base de datos.
      */
     public Producto leer(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            return productoDAO.leer(id, conn);
-        }
+        return cache.leerProducto(id);
     }
 
     /**
      * Actualiza un producto existente tras validar sus datos. Realiza la
      * operación en una transacción.
      *
-     * @param p Producto con los datos actualizados.
+     * @param p Producto con los datos actualizados y la versión leída.
      * @return Producto actualizado.
+     * @throws ConflictoVersionException Si otra operación modificó el producto
+     * desde que se leyó.
      * @throws Exception Si ocurre un error en la validación o en la operación
      * de base de datos.
      */
     public Producto actualizar(Producto p) throws Exception {
-
-        Connection conn = null;
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+            return TransactionTemplate.escribir(conn -> {
+                validar(p, conn);
+                productoDAO.actualizar(p, conn);
+                publicar(new ProductoActualizado(p.getId(), p));
+                return p;
+            });
+        } catch (ConflictoVersionException ex) {
+            // La entrada en cache puede ser la versión desactualizada
+            cache.invalidarProducto(p.getId());
+            throw ex;
+        }
+    }
 
-            validar(p, conn);
-            productoDAO.actualizar(p, conn);
+    /**
+     * Guarda solo los campos modificados de un producto leído previamente.
+     * Realiza la operación en una transacción.
+     *
+     * @param p Producto leído con los cambios aplicados mediante sus setters.
+     * @return Producto actualizado.
+     * @throws ConflictoVersionException Si otra operación modificó el producto
+     * desde que se leyó.
+     * @throws Exception Si ocurre un error en la validación o en la operación
+     * de base de datos.
+     */
+    public Producto actualizarCambios(Producto p) throws Exception {
+        try {
+            return TransactionTemplate.escribir(conn -> {
+                validar(p, conn);
+                productoDAO.actualizarCambios(p, conn);
+                publicar(new ProductoActualizado(p.getId(), p));
+                return p;
+            });
+        } catch (ConflictoVersionException ex) {
+            cache.invalidarProducto(p.getId());
+            throw ex;
+        }
+    }
 
-            conn.commit();
-            return p;
-        } catch (Exception e) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+    /**
+     * Actualiza un producto y, si otra operación lo modificó antes, le pide a
+     * la estrategia de resolución que combine los cambios con el estado actual
+     * y vuelve a intentar. La combinación se hace fuera de la transacción, sin
+     * mantener bloqueos de fila.
+     *
+     * @param p Producto con los datos actualizados y la versión leída.
+     * @param resolucion Estrategia para combinar los cambios en caso de
+     * conflicto.
+     * @return Producto actualizado.
+     * @throws ConflictoVersionException Si la estrategia abandona, el producto
+     * ya no existe o se agotan los intentos.
+     * @throws Exception Si ocurre un error en la validación o en la operación
+     * de base de datos.
+     */
+    public Producto actualizar(Producto p, ResolucionConflicto<Producto> resolucion) throws Exception {
+        Producto propuesto = p;
+        for (int intento = 1;; intento++) {
+            try {
+                return actualizar(propuesto);
+            } catch (ConflictoVersionException ex) {
+                if (intento >= MAX_INTENTOS_ACTUALIZACION) {
+                    throw ex;
+                }
+                Producto actual = leer(propuesto.getId());
+                if (actual == null) {
+                    throw ex;
+                }
+                propuesto = resolucion.fusionar(propuesto, actual);
+                if (propuesto == null) {
+                    throw ex;
+                }
             }
         }
     }
@@ -130,23 +324,93 @@ public class ProductoServiceImpl {
      * @throws Exception Si ocurre un error en la operación de base de datos.
      */
     public void eliminar(int id) throws Exception {
-        Connection conn = null;
+        TransactionTemplate.ejecutar(conn -> {
+            productoDAO.eliminar(id, conn);
+            publicar(new ProductoActualizado(id, null));
+        });
+    }
+
+    /**
+     * Ajusta el precio de todos los productos de una categoría.
+     *
+     * El ajuste se hace con sentencias UPDATE por rangos de ID de hasta
+     * {@value #PRODUCTOS_POR_AJUSTE} productos, cada una en su propia
+     * transacción del pool de lotes: ninguna transacción bloquea la categoría
+     * entera ni crece con ella. Los productos cuyo precio quedaría en 0 o menos
+     * no se modifican. Al terminar se publica un único
+     * {@link PreciosAjustados}; si un rango falla, los anteriores quedan
+     * confirmados y el evento se publica igual con lo ya ajustado.
+     *
+     * @param idCategoria ID de la categoría.
+     * @param ajuste Cambio de precio.
+     * @return Cantidad de productos modificados.
+     * @throws Exception Si la categoría no existe o falla un rango.
+     */
+    public int ajustarPrecios(int idCategoria, AjustePrecio ajuste) throws Exception {
+        if (ajuste == null) {
+            throw new Exception("El ajuste no puede ser nulo.");
+        }
+        if (!TransactionTemplate.leer(conn -> productoDAO.existeCategoria(conn, idCategoria))) {
+            throw new Exception("La categoría no existe.");
+        }
+
+        int modificados = 0;
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+            int desde = 0;
+            while (true) {
+                int despuesDe = desde;
+                // [modificados, ID donde terminó el rango o -1 si fue el último]
+                int[] rango = TransactionTemplate.ejecutar(DatabaseConnection.referencia(), TipoCarga.LOTE,
+                        TransactionTemplate.Modo.LECTURA_ESCRITURA, TransactionTemplate.AISLAMIENTO_POR_DEFECTO, conn -> {
+                            Integer fin = productoDAO.idFinLote(conn, idCategoria, despuesDe, PRODUCTOS_POR_AJUSTE);
+                            int hasta = fin == null ? Integer.MAX_VALUE : fin;
+                            return new int[]{productoDAO.ajustarPrecios(conn, idCategoria, despuesDe, hasta, ajuste),
+                                fin == null ? -1 : fin};
+                        });
+                modificados += rango[0];
+                if (rango[1] < 0) {
+                    return modificados;
+                }
+                desde = rango[1];
+            }
+        } finally {
+            if (modificados > 0) {
+                publicar(new PreciosAjustados(idCategoria, Set.of(), modificados));
+            }
+        }
+    }
 
-            productoDAO.eliminar(id, conn);
+    /**
+     * Ajusta el precio de un conjunto de productos, en orden de ID y de a
+     * {@value #PRODUCTOS_POR_AJUSTE} por sentencia y transacción. Los IDs que
+     * no existen se ignoran, igual que los productos cuyo precio quedaría en
+     * 0 o menos. Al terminar se publica un único {@link PreciosAjustados}.
+     *
+     * @param idsProducto IDs de los productos.
+     * @param ajuste Cambio de precio.
+     * @return Cantidad de productos modificados.
+     * @throws Exception Si falla un grupo; los anteriores quedan confirmados.
+     */
+    public int ajustarPrecios(Set<Integer> idsProducto, AjustePrecio ajuste) throws Exception {
+        if (ajuste == null) {
+            throw new Exception("El ajuste no puede ser nulo.");
+        }
 
-            conn.commit();
-        } catch (Exception e) {
-            if (conn != null) {
-                conn.rollback();
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(idsProducto));
+        Set<Integer> ajustados = new LinkedHashSet<>();
+        int modificados = 0;
+        try {
+            for (int i = 0; i < ids.size(); i += PRODUCTOS_POR_AJUSTE) {
+                Set<Integer> grupo = new LinkedHashSet<>(ids.subList(i, Math.min(i + PRODUCTOS_POR_AJUSTE, ids.size())));
+                modificados += TransactionTemplate.ejecutar(DatabaseConnection.referencia(), TipoCarga.LOTE,
+                        TransactionTemplate.Modo.LECTURA_ESCRITURA, TransactionTemplate.AISLAMIENTO_POR_DEFECTO,
+                        conn -> productoDAO.ajustarPrecios(conn, grupo, ajuste));
+                ajustados.addAll(grupo);
             }
-            throw e;
+            return modificados;
         } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            if (modificados > 0) {
+                publicar(new PreciosAjustados(0, ajustados, modificados));
             }
         }
     }
@@ -158,9 +422,7 @@ public class ProductoServiceImpl {
      * @throws Exception Si ocurre un error en la operación de base de datos.
      */
     public List<Producto> listar() throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            return productoDAO.listar(conn);
-        }
+        return TransactionTemplate.leer(TipoCarga.LOTE, conn -> productoDAO.listar(conn));
     }
 
     /**
@@ -171,8 +433,6 @@ public class ProductoServiceImpl {
      * @throws Exception Si ocurre un error en la operación de base de datos.
      */
     public List<Producto> listarPorCategoria(int idCategoria) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            return productoDAO.listarPorCategoria(conn, idCategoria);
-        }
+        return TransactionTemplate.leer(conn -> productoDAO.listarPorCategoria(conn, idCategoria));
     }
 }
@@ -0,0 +1,121 @@
+package service;
+
+import config.BaseDatos;
+import config.CargaRechazadaException;
+import config.TipoCarga;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reparto de una tabla en rangos de IDs para recorrerla en paralelo con
+ * conexiones del pool de lotes, y reintento de un rango cuando el pool lo
+ * rechaza por saturado. Lo usan {@link MotorReportes},
+ * {@link VerificadorConsistencia} y {@link ExportadorPedidos}.
+ */
+final class RangosIds {
+
+    /**
+     * Rango de IDs de una base, inclusive en ambos extremos.
+     */
+    static final class Rango {
+
+        final BaseDatos base;
+        // Índice del shard, o -1 para la base de referencia
+        final int shard;
+        // true si el rango es de las tablas de pedidos archivados
+        final boolean historico;
+        final int idDesde;
+        final int idHasta;
+
+        Rango(BaseDatos base, int shard, boolean historico, int idDesde, int idHasta) {
+            this.base = base;
+            this.shard = shard;
+            this.historico = historico;
+            this.idDesde = idDesde;
+            this.idHasta = idHasta;
+        }
+    }
+
+    // Intentos de un rango rechazado por el pool de lotes saturado
+    private static final int MAX_INTENTOS = 3;
+
+    private RangosIds() {
+    }
+
+    /**
+     * Verifica que una cantidad de conexiones en paralelo entre en el pool de
+     * lotes.
+     *
+     * @throws IllegalArgumentException Si no está entre 1 y el tamaño del
+     * pool.
+     */
+    static void validarConexiones(int conexiones) {
+        if (conexiones <= 0 || conexiones > TipoCarga.LOTE.getTamanoPool()) {
+            throw new IllegalArgumentException("Las conexiones deben estar entre 1 y " + TipoCarga.LOTE.getTamanoPool() + ".");
+        }
+    }
+
+    /**
+     * Divide un rango de IDs en rangos de tamaño fijo.
+     *
+     * @param historico true si los IDs son de las tablas de pedidos
+     * archivados.
+     * @param ids {ID mínimo, ID máximo}, o null si la tabla está vacía.
+     * @param tamano IDs por rango.
+     * @return Rangos en orden de ID; vacía si ids es null.
+     */
+    static List<Rango> porTamano(BaseDatos base, int shard, boolean historico, int[] ids, int tamano) {
+        List<Rango> rangos = new ArrayList<>();
+        if (ids == null) {
+            return rangos;
+        }
+        for (long idDesde = ids[0]; idDesde <= ids[1]; idDesde += tamano) {
+            rangos.add(new Rango(base, shard, historico, (int) idDesde, (int) Math.min(ids[1], idDesde + tamano - 1)));
+        }
+        return rangos;
+    }
+
+    /**
+     * Divide un rango de IDs en una cantidad de partes iguales. Con menos IDs
+     * que partes devuelve menos rangos.
+     *
+     * @param historico true si los IDs son de las tablas de pedidos
+     * archivados.
+     * @param ids {ID mínimo, ID máximo}, o null si la tabla está vacía.
+     * @param partes Cantidad de partes.
+     * @return Rangos en orden de ID; vacía si ids es null.
+     */
+    static List<Rango> enPartes(BaseDatos base, int shard, boolean historico, int[] ids, int partes) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        long total = (long) ids[1] - ids[0] + 1;
+        return porTamano(base, shard, historico, ids, (int) Math.min(Integer.MAX_VALUE, (total + partes - 1) / partes));
+    }
+
+    /**
+     * Ejecuta el trabajo de un rango y lo reintenta, con una espera creciente,
+     * si el pool de lotes lo rechaza. Otras fallas no se reintentan.
+     *
+     * @param <T> Tipo del resultado.
+     * @param trabajo Trabajo del rango; se vuelve a ejecutar completo en cada
+     * intento.
+     * @return Resultado del trabajo.
+     * @throws CargaRechazadaException Si el pool lo rechazó en todos los
+     * intentos.
+     * @throws Exception Si el trabajo falla.
+     */
+    static <T> T conReintentos(Callable<T> trabajo) throws Exception {
+        for (int intento = 1;; intento++) {
+            try {
+                return trabajo.call();
+            } catch (CargaRechazadaException ex) {
+                if (intento >= MAX_INTENTOS) {
+                    throw ex;
+                }
+                Thread.sleep(100L * intento);
+            }
+        }
+    }
+}
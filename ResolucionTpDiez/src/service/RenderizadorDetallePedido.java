@@ -0,0 +1,155 @@
+package service;
+
+import java.io.IOException;
+import model.DetallePedido;
+import model.Dinero;
+
+/**
+ * Escribe el detalle de un pedido como texto, CSV o JSON en cualquier
+ * {@link Appendable} (un {@link java.io.Writer}, un {@link StringBuilder},
+ * {@code System.out}).
+ *
+ * Cada línea se arma en un buffer que se reutiliza entre líneas y entre
+ * detalles, y se entrega al destino de una vez, sin concatenar Strings. Un
+ * renderizador no se debe usar desde varios hilos a la vez.
+ */
+public class RenderizadorDetallePedido {
+
+    /**
+     * Formato de salida.
+     */
+    public enum Formato {
+        /**
+         * El formato de consola de siempre: una línea con los datos del pedido
+         * y una por item.
+         */
+        TEXTO,
+        /**
+         * Una fila por item con los datos del pedido repetidos, con
+         * encabezado.
+         */
+        CSV,
+        /**
+         * Un objeto por pedido con sus items anidados, en una sola línea.
+         */
+        JSON
+    }
+
+    private final Formato formato;
+    private final StringBuilder linea = new StringBuilder(256);
+
+    public RenderizadorDetallePedido(Formato formato) {
+        this.formato = formato;
+    }
+
+    /**
+     * Escribe un detalle en el destino.
+     *
+     * @param detalle Detalle del pedido.
+     * @param destino Destino de la salida; no se cierra ni se vacía.
+     * @throws IOException Si falla la escritura.
+     */
+    public void renderizar(DetallePedido detalle, Appendable destino) throws IOException {
+        switch (formato) {
+            case TEXTO -> renderizarTexto(detalle, destino);
+            case CSV -> renderizarCsv(detalle, destino);
+            case JSON -> renderizarJson(detalle, destino);
+        }
+    }
+
+    private void renderizarTexto(DetallePedido detalle, Appendable destino) throws IOException {
+        linea.append("Pedido ID: ").append(detalle.getIdPedido())
+                .append(", Fecha: ").append(detalle.getFecha())
+                .append(", Total: ");
+        Dinero.formatear(linea, detalle.getTotal()).append('\n');
+        volcar(destino);
+        for (DetallePedido.Linea item : detalle.getLineas()) {
+            linea.append("Producto=").append(item.getProducto())
+                    .append(", Categoría=").append(item.getCategoria())
+                    .append(", Cantidad=").append(item.getCantidad())
+                    .append(", Subtotal=");
+            Dinero.formatear(linea, item.getSubtotal()).append('\n');
+            volcar(destino);
+        }
+    }
+
+    private void renderizarCsv(DetallePedido detalle, Appendable destino) throws IOException {
+        linea.append("pedido_id,fecha,total,producto,categoria,cantidad,subtotal\n");
+        volcar(destino);
+        for (DetallePedido.Linea item : detalle.getLineas()) {
+            linea.append(detalle.getIdPedido()).append(',').append(detalle.getFecha()).append(',');
+            Dinero.formatear(linea, detalle.getTotal()).append(',');
+            campoCsv(item.getProducto()).append(',');
+            campoCsv(item.getCategoria()).append(',').append(item.getCantidad()).append(',');
+            Dinero.formatear(linea, item.getSubtotal()).append('\n');
+            volcar(destino);
+        }
+    }
+
+    private void renderizarJson(DetallePedido detalle, Appendable destino) throws IOException {
+        linea.append("{\"id\":").append(detalle.getIdPedido())
+                .append(",\"fecha\":\"").append(detalle.getFecha())
+                .append("\",\"total\":");
+        Dinero.formatear(linea, detalle.getTotal()).append(",\"items\":[");
+        boolean primero = true;
+        for (DetallePedido.Linea item : detalle.getLineas()) {
+            if (!primero) {
+                linea.append(',');
+            }
+            primero = false;
+            linea.append("{\"producto\":");
+            cadenaJson(item.getProducto()).append(",\"categoria\":");
+            cadenaJson(item.getCategoria()).append(",\"cantidad\":").append(item.getCantidad())
+                    .append(",\"subtotal\":");
+            Dinero.formatear(linea, item.getSubtotal()).append('}');
+        }
+        linea.append("]}\n");
+        volcar(destino);
+    }
+
+    /**
+     * Agrega un campo CSV, entre comillas si contiene separadores, comillas o
+     * saltos de línea.
+     */
+    private StringBuilder campoCsv(String valor) {
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return linea.append(valor);
+        }
+        linea.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                linea.append('"');
+            }
+            linea.append(c);
+        }
+        return linea.append('"');
+    }
+
+    private StringBuilder cadenaJson(String valor) {
+        linea.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"' -> linea.append("\\\"");
+                case '\\' -> linea.append("\\\\");
+                case '\n' -> linea.append("\\n");
+                case '\r' -> linea.append("\\r");
+                case '\t' -> linea.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        linea.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        linea.append(c);
+                    }
+                }
+            }
+        }
+        return linea.append('"');
+    }
+
+    private void volcar(Appendable destino) throws IOException {
+        destino.append(linea);
+        linea.setLength(0);
+    }
+}
@@ -0,0 +1,198 @@
+package service;
+
+import config.TransactionTemplate;
+import dao.PedidoDAO;
+import dao.ProductoDAO;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import model.Dinero;
+
+/**
+ * Reportes de pedidos para {@link MotorReportes}. Los importes van en
+ * centavos.
+ */
+public final class ReportesPedidos {
+
+    public static final String SIN_CATEGORIA = "(sin categoría)";
+
+    private ReportesPedidos() {
+    }
+
+    /**
+     * Unidades vendidas e importe por producto.
+     *
+     * @return Definición del reporte.
+     */
+    public static MotorReportes.Reporte<VentasPorProducto> ventasPorProducto() {
+        return new MotorReportes.Reporte<>() {
+            @Override
+            public VentasPorProducto nuevoParcial() {
+                return new VentasPorProducto();
+            }
+
+            @Override
+            public VentasPorProducto combinar(VentasPorProducto primero, VentasPorProducto segundo) {
+                return primero.combinar(segundo);
+            }
+        };
+    }
+
+    /**
+     * Cantidad de pedidos, items, unidades e importe, para calcular el tamaño
+     * promedio de los pedidos.
+     *
+     * @return Definición del reporte.
+     */
+    public static MotorReportes.Reporte<TamanoPedidos> tamanoPedidos() {
+        return new MotorReportes.Reporte<>() {
+            @Override
+            public TamanoPedidos nuevoParcial() {
+                return new TamanoPedidos();
+            }
+
+            @Override
+            public TamanoPedidos combinar(TamanoPedidos primero, TamanoPedidos segundo) {
+                return primero.combinar(segundo);
+            }
+        };
+    }
+
+    /**
+     * Agrupa las ventas por producto en ventas por categoría, con una consulta
+     * a la base de referencia para los nombres.
+     *
+     * @param ventas Resultado de {@link #ventasPorProducto()}.
+     * @param productoDAO DAO de productos.
+     * @return Importe por nombre de categoría, en orden alfabético. Los
+     * productos sin categoría o ya eliminados quedan bajo
+     * {@value #SIN_CATEGORIA}.
+     * @throws Exception Si ocurre un error al consultar la base de datos.
+     */
+    public static Map<String, Long> ingresosPorCategoria(VentasPorProducto ventas, ProductoDAO productoDAO) throws Exception {
+        Map<Integer, String[]> nombres = TransactionTemplate.leer(conn -> productoDAO.nombresConCategoria(conn, ventas.totales.keySet()));
+        Map<String, Long> ingresos = new TreeMap<>();
+        for (Map.Entry<Integer, long[]> venta : ventas.totales.entrySet()) {
+            String[] nombre = nombres.get(venta.getKey());
+            String categoria = nombre == null || nombre[1] == null ? SIN_CATEGORIA : nombre[1];
+            ingresos.merge(categoria, venta.getValue()[1], Dinero::sumar);
+        }
+        return ingresos;
+    }
+
+    /**
+     * Unidades e importe vendidos por producto.
+     */
+    public static final class VentasPorProducto implements PedidoDAO.FilaPedidoItem {
+
+        // Producto -> {unidades, importe}
+        private final Map<Integer, long[]> totales = new HashMap<>();
+
+        @Override
+        public void procesar(int pedidoId, java.sql.Date fecha, long total, int itemId, int productoId,
+                int cantidad, long subtotal) {
+            if (itemId == 0) {
+                return;
+            }
+            long[] venta = totales.computeIfAbsent(productoId, id -> new long[2]);
+            venta[0] += cantidad;
+            venta[1] = Dinero.sumar(venta[1], subtotal);
+        }
+
+        private VentasPorProducto combinar(VentasPorProducto otro) {
+            VentasPorProducto mayor = totales.size() >= otro.totales.size() ? this : otro;
+            VentasPorProducto menor = mayor == this ? otro : this;
+            for (Map.Entry<Integer, long[]> venta : menor.totales.entrySet()) {
+                long[] acumulado = mayor.totales.computeIfAbsent(venta.getKey(), id -> new long[2]);
+                acumulado[0] += venta.getValue()[0];
+                acumulado[1] = Dinero.sumar(acumulado[1], venta.getValue()[1]);
+            }
+            return mayor;
+        }
+
+        /**
+         * @return Unidades vendidas por ID de producto.
+         */
+        public Map<Integer, Long> getUnidades() {
+            Map<Integer, Long> unidades = new TreeMap<>();
+            totales.forEach((id, venta) -> unidades.put(id, venta[0]));
+            return unidades;
+        }
+
+        /**
+         * @return Importe vendido por ID de producto.
+         */
+        public Map<Integer, Long> getImportes() {
+            Map<Integer, Long> importes = new TreeMap<>();
+            totales.forEach((id, venta) -> importes.put(id, venta[1]));
+            return importes;
+        }
+    }
+
+    /**
+     * Totales para el tamaño promedio de los pedidos. Las filas de un pedido
+     * llegan juntas y cada pedido está en un solo rango, así que se cuenta al
+     * cambiar de pedido.
+     */
+    public static final class TamanoPedidos implements PedidoDAO.FilaPedidoItem {
+
+        private int ultimoPedido;
+        private long pedidos;
+        private long items;
+        private long unidades;
+        private long importe;
+
+        @Override
+        public void procesar(int pedidoId, java.sql.Date fecha, long total, int itemId, int productoId,
+                int cantidad, long subtotal) {
+            if (pedidoId != ultimoPedido) {
+                ultimoPedido = pedidoId;
+                pedidos++;
+                importe = Dinero.sumar(importe, total);
+            }
+            if (itemId != 0) {
+                items++;
+                unidades += cantidad;
+            }
+        }
+
+        private TamanoPedidos combinar(TamanoPedidos otro) {
+            pedidos += otro.pedidos;
+            items += otro.items;
+            unidades += otro.unidades;
+            importe = Dinero.sumar(importe, otro.importe);
+            return this;
+        }
+
+        public long getPedidos() {
+            return pedidos;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getUnidades() {
+            return unidades;
+        }
+
+        public long getImporte() {
+            return importe;
+        }
+
+        /**
+         * @return Unidades promedio por pedido, o 0 si no hay pedidos.
+         */
+        public double getUnidadesPromedio() {
+            return pedidos == 0 ? 0 : (double) unidades / pedidos;
+        }
+
+        /**
+         * @return Importe promedio por pedido en centavos, redondeado hacia
+         * abajo, o 0 si no hay pedidos.
+         */
+        public long getImportePromedio() {
+            return pedidos == 0 ? 0 : importe / pedidos;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package service;
+
+/**
+ * Estrategia para resolver un conflicto de versión al actualizar una entidad.
+ *
+ * @param <T> Tipo de la entidad.
+ */
+@FunctionalInterface
+public interface ResolucionConflicto<T> {
+
+    /**
+     * Combina los cambios que se intentaron guardar con el estado actual de la
+     * base de datos.
+     *
+     * @param propuesto Entidad con los cambios que no se pudieron guardar.
+     * @param actual Entidad tal como está ahora en la base de datos.
+     * @return Entidad a guardar en el siguiente intento (con la versión de
+     * {@code actual}), o null para abandonar la actualización.
+     */
+    T fusionar(T propuesto, T actual);
+}
@@ -0,0 +1,35 @@
+package service;
+
+/**
+ * Se descontó stock de un producto al confirmar un pedido.
+ */
+public final class StockDecrementado extends EventoDominio {
+
+    private final int idProducto;
+    private final int idPedido;
+    private final int cantidad;
+    private final int stockRestante;
+
+    public StockDecrementado(int idProducto, int idPedido, int cantidad, int stockRestante) {
+        this.idProducto = idProducto;
+        this.idPedido = idPedido;
+        this.cantidad = cantidad;
+        this.stockRestante = stockRestante;
+    }
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    public int getIdPedido() {
+        return idPedido;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public int getStockRestante() {
+        return stockRestante;
+    }
+}
@@ -0,0 +1,478 @@
+package service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mide cuánto tarda cada fase de {@link PedidoServiceImpl#crearPedido}: obtener
+ * las conexiones, validar el stock, insertar el pedido y sus items, descontar
+ * el stock, actualizar el total y confirmar.
+ *
+ * Cada pedido deja una {@link Traza} en un anillo de tamaño fijo con los más
+ * recientes, y la duración de cada fase de los pedidos confirmados se suma a
+ * un histograma por fase, de donde salen los percentiles. Los histogramas
+ * tienen cubetas logarítmicas con un error menor al 12,5 % y no guardan las
+ * muestras, así que la memoria no crece con la cantidad de pedidos.
+ *
+ * Opcionalmente mide también los bytes que asigna el hilo en cada fase, con
+ * el {@code ThreadMXBean} de la JVM. Cuesta una llamada más por cambio de
+ * fase, así que está desactivado salvo que se active por JMX o con la
+ * propiedad {@code pedidos.trazas.asignaciones=true}. La propiedad
+ * {@code pedidos.trazas.capacidad} fija el tamaño del anillo (256 por
+ * defecto).
+ *
+ * Todo se publica por JMX ({@link TrazasCrearPedidoMXBean}) y se puede volcar
+ * como texto con {@link #volcar(Appendable)}.
+ */
+public final class TrazasCrearPedido implements TrazasCrearPedidoMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TrazasCrearPedido.class);
+
+    /**
+     * Nombre con el que se registra en el servidor JMX de la plataforma.
+     */
+    public static final String NOMBRE_JMX = "ResolucionTpDiez:type=TrazasCrearPedido";
+
+    /**
+     * Fases de la creación de un pedido, en el orden en que ocurren. El stock
+     * se descuenta item por item, intercalado con la inserción de cada item;
+     * el tiempo de cada parte se suma a su fase.
+     */
+    public enum Fase {
+        /**
+         * Obtener la conexión del shard y la de la base de referencia.
+         */
+        ADQUIRIR_CONEXION,
+        VALIDAR_STOCK,
+        INSERTAR_PEDIDO,
+        INSERTAR_ITEMS,
+        /**
+         * Descontar el stock de cada producto y publicar el evento.
+         */
+        ACTUALIZAR_STOCK,
+        ACTUALIZAR_TOTAL,
+        /**
+         * Confirmar las transacciones, incluidos los eventos que se
+         * entregan al confirmar.
+         */
+        CONFIRMAR
+    }
+
+    private static final Fase[] FASES = Fase.values();
+
+    /**
+     * Tiempos de un pedido. La llena un único hilo mientras crea el pedido y
+     * no cambia después de registrarse.
+     */
+    public static final class Traza {
+
+        private final long inicioMillis = System.currentTimeMillis();
+        private final long inicioNanos = System.nanoTime();
+        private final int items;
+        private final long[] nanos = new long[FASES.length];
+        private final long[] bytes; // null si no se miden asignaciones
+        private Fase fase;
+        private long inicioFase;
+        private long bytesInicioFase;
+        private long totalNanos;
+        private int pedidoId;
+        private boolean exito;
+        private boolean descartada;
+
+        private Traza(int items, boolean asignaciones) {
+            this.items = items;
+            this.bytes = asignaciones ? new long[FASES.length] : null;
+        }
+
+        /**
+         * Cierra la fase en curso, si hay una, y empieza otra.
+         */
+        void entrar(Fase siguiente) {
+            long ahora = System.nanoTime();
+            long asignados = bytes != null ? bytesAsignados() : 0;
+            cerrarFase(ahora, asignados);
+            fase = siguiente;
+            inicioFase = ahora;
+            bytesInicioFase = asignados;
+        }
+
+        /**
+         * Cierra la fase en curso. El tiempo hasta la próxima fase no se
+         * atribuye a ninguna.
+         */
+        void salir() {
+            cerrarFase(System.nanoTime(), bytes != null ? bytesAsignados() : 0);
+        }
+
+        /**
+         * Marca la traza para no registrarla, por ejemplo cuando la clave de
+         * idempotencia ya tenía un pedido y no se creó nada.
+         */
+        void descartar() {
+            descartada = true;
+        }
+
+        private void cerrarFase(long ahora, long asignados) {
+            if (fase != null) {
+                nanos[fase.ordinal()] += ahora - inicioFase;
+                if (bytes != null) {
+                    bytes[fase.ordinal()] += asignados - bytesInicioFase;
+                }
+                fase = null;
+            }
+        }
+
+        public long getInicioMillis() {
+            return inicioMillis;
+        }
+
+        public int getPedidoId() {
+            return pedidoId;
+        }
+
+        public int getItems() {
+            return items;
+        }
+
+        public boolean isExito() {
+            return exito;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getNanos(Fase fase) {
+            return nanos[fase.ordinal()];
+        }
+
+        /**
+         * @return Bytes asignados por el hilo en la fase, o -1 si no se
+         * midieron.
+         */
+        public long getBytes(Fase fase) {
+            return bytes != null ? bytes[fase.ordinal()] : -1;
+        }
+    }
+
+    /**
+     * Histograma de duraciones con cubetas logarítmicas: cada potencia de 2
+     * se divide en {@link #SUBCUBETAS} cubetas iguales.
+     */
+    private static final class Histograma {
+
+        private static final int SUBCUBETAS = 8;
+        private static final int BITS_SUBCUBETA = 3;
+
+        private final AtomicLongArray cubetas = new AtomicLongArray(64 * SUBCUBETAS);
+        private final LongAdder cantidad = new LongAdder();
+        private final LongAdder suma = new LongAdder();
+        private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        void registrar(long valor) {
+            valor = Math.max(0, valor);
+            cubetas.incrementAndGet(indice(valor));
+            cantidad.increment();
+            suma.add(valor);
+            maximo.accumulate(valor);
+        }
+
+        /**
+         * Devuelve el límite superior de la cubeta donde cae el percentil.
+         */
+        long percentil(double fraccion) {
+            long total = cantidad.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(fraccion * total));
+            long acumulado = 0;
+            for (int i = 0; i < cubetas.length(); i++) {
+                acumulado += cubetas.get(i);
+                if (acumulado >= objetivo) {
+                    return Math.min(limiteSuperior(i), maximo.get());
+                }
+            }
+            return maximo.get();
+        }
+
+        void reiniciar() {
+            for (int i = 0; i < cubetas.length(); i++) {
+                cubetas.set(i, 0);
+            }
+            cantidad.reset();
+            suma.reset();
+            maximo.reset();
+        }
+
+        private static int indice(long valor) {
+            if (valor < SUBCUBETAS) {
+                return (int) valor;
+            }
+            int exponente = 63 - Long.numberOfLeadingZeros(valor);
+            int subcubeta = (int) (valor >>> (exponente - BITS_SUBCUBETA)) & (SUBCUBETAS - 1);
+            return (exponente - BITS_SUBCUBETA + 1) * SUBCUBETAS + subcubeta;
+        }
+
+        private static long limiteSuperior(int indice) {
+            if (indice < SUBCUBETAS) {
+                return indice;
+            }
+            int exponente = indice / SUBCUBETAS + BITS_SUBCUBETA - 1;
+            int subcubeta = indice % SUBCUBETAS;
+            return ((long) (SUBCUBETAS + subcubeta + 1) << (exponente - BITS_SUBCUBETA)) - 1;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final TrazasCrearPedido INSTANCIA = new TrazasCrearPedido(
+                Integer.getInteger("pedidos.trazas.capacidad", 256),
+                Boolean.getBoolean("pedidos.trazas.asignaciones"));
+
+        static {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCIA, new ObjectName(NOMBRE_JMX));
+            } catch (Exception ex) {
+                log.warn("No se pudieron publicar las trazas de pedidos por JMX", ex);
+            }
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean HILOS = hilos();
+
+    // Trazas recientes; la próxima se escribe en escritas % capacidad
+    private final AtomicReferenceArray<Traza> anillo;
+    private final AtomicLong escritas = new AtomicLong();
+    private final LongAdder errores = new LongAdder();
+    private final Histograma[] histogramas = new Histograma[FASES.length];
+    private final Histograma total = new Histograma();
+    private final LongAdder[] bytesPorFase = new LongAdder[FASES.length];
+    private final LongAdder trazasConBytes = new LongAdder();
+    private volatile boolean asignaciones;
+
+    private TrazasCrearPedido(int capacidad, boolean asignaciones) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor a 0.");
+        }
+        this.anillo = new AtomicReferenceArray<>(capacidad);
+        for (int i = 0; i < FASES.length; i++) {
+            histogramas[i] = new Histograma();
+            bytesPorFase[i] = new LongAdder();
+        }
+        setAsignacionesActivas(asignaciones);
+    }
+
+    public static TrazasCrearPedido instancia() {
+        return Holder.INSTANCIA;
+    }
+
+    /**
+     * Empieza la traza de un pedido.
+     *
+     * @param items Cantidad de items del pedido.
+     * @return Traza a completar por quien crea el pedido.
+     */
+    Traza iniciar(int items) {
+        return new Traza(items, asignaciones);
+    }
+
+    /**
+     * Cierra la traza y la registra, salvo que se haya descartado.
+     *
+     * @param traza Traza del pedido.
+     * @param pedidoId ID del pedido, o 0 si no llegó a insertarse.
+     * @param exito true si el pedido se confirmó.
+     */
+    void terminar(Traza traza, int pedidoId, boolean exito) {
+        traza.salir();
+        if (traza.descartada) {
+            return;
+        }
+        traza.totalNanos = System.nanoTime() - traza.inicioNanos;
+        traza.pedidoId = pedidoId;
+        traza.exito = exito;
+
+        if (exito) {
+            for (int i = 0; i < FASES.length; i++) {
+                histogramas[i].registrar(traza.nanos[i]);
+                if (traza.bytes != null) {
+                    bytesPorFase[i].add(traza.bytes[i]);
+                }
+            }
+            total.registrar(traza.totalNanos);
+            if (traza.bytes != null) {
+                trazasConBytes.increment();
+            }
+        } else {
+            errores.increment();
+        }
+        long posicion = escritas.getAndIncrement();
+        anillo.set((int) (posicion % anillo.length()), traza);
+    }
+
+    /**
+     * Devuelve las trazas recientes, de la más nueva a la más vieja.
+     *
+     * @param limite Cantidad máxima de trazas.
+     * @return Trazas del anillo.
+     */
+    public List<Traza> recientes(int limite) {
+        List<Traza> trazas = new ArrayList<>();
+        long ultima = escritas.get() - 1;
+        for (long i = ultima; i >= 0 && i > ultima - anillo.length() && trazas.size() < limite; i--) {
+            Traza traza = anillo.get((int) (i % anillo.length()));
+            if (traza != null) {
+                trazas.add(traza);
+            }
+        }
+        return trazas;
+    }
+
+    /**
+     * Escribe el resumen por fase, con percentiles, la parte del tiempo total
+     * de cada fase y los bytes asignados en promedio, seguido de las últimas
+     * trazas.
+     *
+     * @param destino Destino de la salida; no se cierra ni se vacía.
+     * @throws IOException Si falla la escritura.
+     */
+    public void volcar(Appendable destino) throws IOException {
+        long confirmados = total.cantidad.sum();
+        long conBytes = trazasConBytes.sum();
+        destino.append(String.format("crearPedido: %d pedidos confirmados, %d con error, asignaciones %s%n",
+                confirmados, errores.sum(), asignaciones ? "activas" : "inactivas"));
+        destino.append(String.format("%-18s %10s %10s %10s %10s %8s %12s%n",
+                "Fase", "p50 us", "p90 us", "p99 us", "máx us", "% total", "KB promedio"));
+        long sumaTotal = total.suma.sum();
+        for (int i = 0; i < FASES.length; i++) {
+            Histograma histograma = histogramas[i];
+            destino.append(String.format("%-18s %10d %10d %10d %10d %8.1f %12s%n", FASES[i],
+                    micros(histograma.percentil(0.5)), micros(histograma.percentil(0.9)),
+                    micros(histograma.percentil(0.99)), micros(histograma.maximo.get()),
+                    sumaTotal == 0 ? 0.0 : 100.0 * histograma.suma.sum() / sumaTotal,
+                    conBytes == 0 ? "-" : String.format("%.1f", bytesPorFase[i].sum() / 1024.0 / conBytes)));
+        }
+        destino.append(String.format("%-18s %10d %10d %10d %10d %8s %12s%n", "TOTAL",
+                micros(total.percentil(0.5)), micros(total.percentil(0.9)),
+                micros(total.percentil(0.99)), micros(total.maximo.get()), "100.0", ""));
+
+        List<Traza> recientes = recientes(10);
+        if (!recientes.isEmpty()) {
+            destino.append("Últimas trazas (us):").append(System.lineSeparator());
+        }
+        StringBuilder linea = new StringBuilder(160);
+        for (Traza traza : recientes) {
+            linea.setLength(0);
+            linea.append("  pedido ").append(traza.pedidoId).append(", ").append(traza.items).append(" items, ")
+                    .append(traza.exito ? "ok" : "error").append(", total ").append(micros(traza.totalNanos)).append(':');
+            for (Fase fase : FASES) {
+                linea.append(' ').append(fase.name().toLowerCase(Locale.ROOT)).append('=').append(micros(traza.getNanos(fase)));
+            }
+            destino.append(linea).append(System.lineSeparator());
+        }
+    }
+
+    @Override
+    public long getTrazas() {
+        return escritas.get();
+    }
+
+    @Override
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    @Override
+    public int getCapacidad() {
+        return anillo.length();
+    }
+
+    @Override
+    public String[] getFases() {
+        String[] nombres = new String[FASES.length];
+        for (int i = 0; i < FASES.length; i++) {
+            nombres[i] = FASES[i].name();
+        }
+        return nombres;
+    }
+
+    @Override
+    public boolean isAsignacionesActivas() {
+        return asignaciones;
+    }
+
+    @Override
+    public void setAsignacionesActivas(boolean activas) {
+        if (activas && HILOS == null) {
+            log.warn("La JVM no permite medir los bytes asignados por hilo");
+            return;
+        }
+        if (activas && !HILOS.isThreadAllocatedMemoryEnabled()) {
+            HILOS.setThreadAllocatedMemoryEnabled(true);
+        }
+        asignaciones = activas;
+    }
+
+    @Override
+    public long[] percentilesMicros(String fase) {
+        Histograma histograma = fase.equalsIgnoreCase("TOTAL") ? total : histogramas[Fase.valueOf(fase.toUpperCase(Locale.ROOT)).ordinal()];
+        return new long[]{micros(histograma.percentil(0.5)), micros(histograma.percentil(0.9)),
+            micros(histograma.percentil(0.99)), micros(histograma.maximo.get())};
+    }
+
+    @Override
+    public String volcar() {
+        StringBuilder texto = new StringBuilder(2048);
+        try {
+            volcar(texto);
+        } catch (IOException ex) {
+            // Un StringBuilder no falla al escribir
+            throw new IllegalStateException(ex);
+        }
+        return texto.toString();
+    }
+
+    @Override
+    public void reiniciar() {
+        for (int i = 0; i < FASES.length; i++) {
+            histogramas[i].reiniciar();
+            bytesPorFase[i].reset();
+        }
+        total.reiniciar();
+        trazasConBytes.reset();
+        errores.reset();
+        for (int i = 0; i < anillo.length(); i++) {
+            anillo.set(i, null);
+        }
+        escritas.set(0);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static long bytesAsignados() {
+        return HILOS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean hilos() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean hilos
+                && hilos.isThreadAllocatedMemorySupported()) {
+            return hilos;
+        }
+        return null;
+    }
+}
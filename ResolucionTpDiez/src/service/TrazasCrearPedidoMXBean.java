@@ -0,0 +1,57 @@
+package service;
+
+/**
+ * Vista JMX de {@link TrazasCrearPedido}, registrada con el nombre
+ * {@link TrazasCrearPedido#NOMBRE_JMX}. Se puede consultar con jconsole o con
+ * {@code main.VolcarTrazasPedidos}.
+ */
+public interface TrazasCrearPedidoMXBean {
+
+    /**
+     * @return Pedidos medidos desde el inicio o el último reinicio, incluidos
+     * los que fallaron.
+     */
+    long getTrazas();
+
+    /**
+     * @return Pedidos medidos que terminaron con una excepción.
+     */
+    long getErrores();
+
+    /**
+     * @return Trazas recientes que guarda el anillo.
+     */
+    int getCapacidad();
+
+    /**
+     * @return Nombres de las fases, en el orden en que ocurren.
+     */
+    String[] getFases();
+
+    boolean isAsignacionesActivas();
+
+    /**
+     * Activa o desactiva la medición de bytes asignados por fase. Afecta a
+     * los pedidos que empiecen después.
+     */
+    void setAsignacionesActivas(boolean activas);
+
+    /**
+     * Percentiles de duración de una fase, o del pedido completo con
+     * {@code TOTAL}, sobre los pedidos confirmados.
+     *
+     * @param fase Nombre de la fase.
+     * @return {p50, p90, p99, máximo}, en microsegundos.
+     */
+    long[] percentilesMicros(String fase);
+
+    /**
+     * @return Resumen por fase y últimas trazas, en texto.
+     */
+    String volcar();
+
+    /**
+     * Descarta las trazas y los histogramas.
+     */
+    void reiniciar();
+}
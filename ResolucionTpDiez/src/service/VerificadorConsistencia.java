@@ -0,0 +1,445 @@
+package service;
+
+import config.BaseDatos;
+import config.DatabaseConnection;
+import config.TipoCarga;
+import config.TransactionTemplate;
+import dao.ItemPedidoDAO;
+import dao.PedidoDAO;
+import dao.ProductoDAO;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import model.Dinero;
+import service.RangosIds.Rango;
+
+/**
+ * Revisa la consistencia entre pedidos, items y productos sin traer las tablas
+ * a memoria. Busca:
+ * <ul>
+ * <li>pedidos cuyo total no es la suma de los subtotales de sus items,</li>
+ * <li>items cuyo pedido no existe,</li>
+ * <li>items cuyo producto no existe,</li>
+ * <li>productos con stock negativo.</li>
+ * </ul>
+ *
+ * Cada tabla se divide en rangos de IDs de tamaño fijo, por shard en el caso
+ * de pedidos e items, y los rangos se recorren en paralelo con conexiones del
+ * pool de lotes, como en {@link MotorReportes}. Cada rango se lee en una sola
+ * transacción, así que un pedido y sus items se ven siempre en el mismo
+ * estado. Los productos de los items se buscan en la base de referencia
+ * después de recorrer cada rango, porque con shards están en otra base.
+ *
+ * El informe guarda la cantidad de hallazgos de cada tipo y solo los primeros
+ * por ID, así que su tamaño no depende de cuántas filas estén mal.
+ */
+public class VerificadorConsistencia {
+
+    /**
+     * Tipo de inconsistencia.
+     */
+    public enum Tipo {
+        TOTAL_DISTINTO("Pedidos cuyo total no es la suma de sus subtotales", "pedido"),
+        ITEM_SIN_PEDIDO("Items cuyo pedido no existe", "item"),
+        ITEM_SIN_PRODUCTO("Items cuyo producto no existe", "item"),
+        STOCK_NEGATIVO("Productos con stock negativo", "producto");
+
+        private final String descripcion;
+        private final String entidad;
+
+        Tipo(String descripcion, String entidad) {
+            this.descripcion = descripcion;
+            this.entidad = entidad;
+        }
+
+        public String getDescripcion() {
+            return descripcion;
+        }
+    }
+
+    /**
+     * Una fila inconsistente.
+     */
+    public static final class Hallazgo {
+
+        private final Tipo tipo;
+        private final int id;
+        private final String detalle;
+
+        private Hallazgo(Tipo tipo, int id, String detalle) {
+            this.tipo = tipo;
+            this.id = id;
+            this.detalle = detalle;
+        }
+
+        public Tipo getTipo() {
+            return tipo;
+        }
+
+        /**
+         * @return ID del pedido, item o producto, según el tipo.
+         */
+        public int getId() {
+            return id;
+        }
+
+        public String getDetalle() {
+            return detalle;
+        }
+
+        @Override
+        public String toString() {
+            return tipo.entidad + " " + id + ": " + detalle;
+        }
+    }
+
+    /**
+     * Resultado de una verificación.
+     */
+    public static final class Informe {
+
+        // Tipo -> {filas inconsistentes, hallazgos}
+        private final Map<Tipo, long[]> cantidades = new EnumMap<>(Tipo.class);
+        private final Map<Tipo, List<Hallazgo>> muestras = new EnumMap<>(Tipo.class);
+        private long pedidosRevisados;
+        private long itemsRevisados;
+        private int rangos;
+        private long millis;
+
+        private Informe() {
+            for (Tipo tipo : Tipo.values()) {
+                cantidades.put(tipo, new long[2]);
+                muestras.put(tipo, new ArrayList<>());
+            }
+        }
+
+        /**
+         * Registra un hallazgo que representa {@code filas} filas
+         * inconsistentes.
+         */
+        private void agregar(Hallazgo hallazgo, long filas) {
+            long[] cantidad = cantidades.get(hallazgo.tipo);
+            cantidad[0] += filas;
+            cantidad[1]++;
+            List<Hallazgo> lista = muestras.get(hallazgo.tipo);
+            if (lista.size() < MUESTRAS_POR_TIPO) {
+                lista.add(hallazgo);
+            }
+        }
+
+        /**
+         * Suma otro parcial, conservando los hallazgos de menor ID.
+         */
+        private void combinar(Informe otro) {
+            pedidosRevisados += otro.pedidosRevisados;
+            itemsRevisados += otro.itemsRevisados;
+            for (Tipo tipo : Tipo.values()) {
+                cantidades.get(tipo)[0] += otro.cantidades.get(tipo)[0];
+                cantidades.get(tipo)[1] += otro.cantidades.get(tipo)[1];
+                List<Hallazgo> lista = muestras.get(tipo);
+                lista.addAll(otro.muestras.get(tipo));
+                if (!otro.muestras.get(tipo).isEmpty()) {
+                    lista.sort(Comparator.comparingInt(Hallazgo::getId));
+                    if (lista.size() > MUESTRAS_POR_TIPO) {
+                        lista.subList(MUESTRAS_POR_TIPO, lista.size()).clear();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return Cantidad de filas inconsistentes del tipo.
+         */
+        public long getCantidad(Tipo tipo) {
+            return cantidades.get(tipo)[0];
+        }
+
+        /**
+         * @return Los primeros hallazgos del tipo por ID, como mucho
+         * {@link VerificadorConsistencia#MUESTRAS_POR_TIPO}.
+         */
+        public List<Hallazgo> getMuestras(Tipo tipo) {
+            return List.copyOf(muestras.get(tipo));
+        }
+
+        public boolean isConsistente() {
+            for (long[] cantidad : cantidades.values()) {
+                if (cantidad[0] > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public long getPedidosRevisados() {
+            return pedidosRevisados;
+        }
+
+        public long getItemsRevisados() {
+            return itemsRevisados;
+        }
+
+        public int getRangos() {
+            return rangos;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Escribe el informe: una línea de resumen, una por tipo con su
+         * cantidad y, debajo de cada tipo con hallazgos, los primeros.
+         *
+         * @param destino Destino de la salida; no se cierra ni se vacía.
+         * @throws IOException Si falla la escritura.
+         */
+        public void escribir(Appendable destino) throws IOException {
+            destino.append(String.format("Consistencia: %d pedidos y %d items revisados en %d rangos (%d ms)%n",
+                    pedidosRevisados, itemsRevisados, rangos, millis));
+            for (Tipo tipo : Tipo.values()) {
+                long cantidad = getCantidad(tipo);
+                destino.append(String.format("%s: %d%n", tipo.descripcion, cantidad));
+                for (Hallazgo hallazgo : muestras.get(tipo)) {
+                    destino.append("  ").append(hallazgo.toString()).append(System.lineSeparator());
+                }
+                long resto = cantidades.get(tipo)[1] - muestras.get(tipo).size();
+                if (resto > 0) {
+                    destino.append(String.format("  ... y %d más%n", resto));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hallazgos de cada tipo que se guardan en el informe.
+     */
+    public static final int MUESTRAS_POR_TIPO = 20;
+
+    // IDs de producto por consulta al buscar los productos de los items
+    private static final int PRODUCTOS_POR_CONSULTA = 1000;
+
+    private enum Tabla {
+        PEDIDOS, ITEMS, PRODUCTOS
+    }
+
+    /**
+     * Rango de IDs de una tabla.
+     */
+    private static final class Tramo {
+
+        private final Tabla tabla;
+        private final Rango rango;
+
+        private Tramo(Tabla tabla, Rango rango) {
+            this.tabla = tabla;
+            this.rango = rango;
+        }
+    }
+
+    private final PedidoDAO pedidoDAO;
+    private final ItemPedidoDAO itemDAO;
+    private final ProductoDAO productoDAO;
+    private final int maxConexiones;
+    private final int tamanoRango;
+
+    /**
+     * @param pedidoDAO DAO de pedidos.
+     * @param itemDAO DAO de items de pedido.
+     * @param productoDAO DAO de productos.
+     * @param maxConexiones Conexiones que puede usar la verificación a la vez,
+     * entre 1 y el tamaño del pool de lotes.
+     * @param tamanoRango IDs por rango.
+     */
+    public VerificadorConsistencia(PedidoDAO pedidoDAO, ItemPedidoDAO itemDAO, ProductoDAO productoDAO,
+            int maxConexiones, int tamanoRango) {
+        RangosIds.validarConexiones(maxConexiones);
+        if (tamanoRango <= 0) {
+            throw new IllegalArgumentException("El tamaño de rango debe ser mayor a 0.");
+        }
+        this.pedidoDAO = pedidoDAO;
+        this.itemDAO = itemDAO;
+        this.productoDAO = productoDAO;
+        this.maxConexiones = maxConexiones;
+        this.tamanoRango = tamanoRango;
+    }
+
+    /**
+     * Verifica todas las tablas y espera el resultado.
+     *
+     * @return Informe con los hallazgos.
+     * @throws Exception La primera falla de un rango; los demás rangos se
+     * abandonan.
+     */
+    public Informe verificar() throws Exception {
+        long inicio = System.nanoTime();
+        List<Tramo> tramos = tramos();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(maxConexiones);
+        try {
+            CompletionService<Informe> terminados = new ExecutorCompletionService<>(hilos);
+            for (Tramo tramo : tramos) {
+                terminados.submit(() -> RangosIds.conReintentos(() -> revisar(tramo)));
+            }
+            Informe informe = new Informe();
+            for (int i = 0; i < tramos.size(); i++) {
+                try {
+                    informe.combinar(terminados.take().get());
+                } catch (ExecutionException ex) {
+                    throw ex.getCause() instanceof Exception causa ? causa : ex;
+                }
+            }
+            informe.rangos = tramos.size();
+            informe.millis = (System.nanoTime() - inicio) / 1_000_000;
+            return informe;
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    /**
+     * Divide las tablas en rangos, con una consulta por tabla y base.
+     */
+    private List<Tramo> tramos() throws Exception {
+        List<Tramo> tramos = new ArrayList<>();
+        for (int i = 0; i < DatabaseConnection.cantidadShards(); i++) {
+            BaseDatos shard = DatabaseConnection.shard(i);
+            dividir(tramos, Tabla.PEDIDOS, shard, i,
+                    TransactionTemplate.leer(shard, TipoCarga.LOTE, conn -> pedidoDAO.rangoIds(conn, null, null)));
+            dividir(tramos, Tabla.ITEMS, shard, i,
+                    TransactionTemplate.leer(shard, TipoCarga.LOTE, itemDAO::rangoIds));
+        }
+        BaseDatos referencia = DatabaseConnection.referencia();
+        dividir(tramos, Tabla.PRODUCTOS, referencia, -1,
+                TransactionTemplate.leer(referencia, TipoCarga.LOTE, productoDAO::rangoIds));
+        return tramos;
+    }
+
+    private void dividir(List<Tramo> tramos, Tabla tabla, BaseDatos base, int shard, int[] ids) {
+        for (Rango rango : RangosIds.porTamano(base, shard, false, ids, tamanoRango)) {
+            tramos.add(new Tramo(tabla, rango));
+        }
+    }
+
+    private Informe revisar(Tramo tramo) throws Exception {
+        return switch (tramo.tabla) {
+            case PEDIDOS -> revisarPedidos(tramo.rango);
+            case ITEMS -> revisarItems(tramo.rango);
+            case PRODUCTOS -> revisarProductos(tramo.rango);
+        };
+    }
+
+    /**
+     * Compara el total de cada pedido del rango con la suma de sus
+     * subtotales. Las filas llegan ordenadas por pedido, así que alcanza con
+     * acumular el pedido actual.
+     */
+    private Informe revisarPedidos(Rango rango) throws Exception {
+        Informe parcial = new Informe();
+        TransactionTemplate.leer(rango.base, TipoCarga.LOTE, conn -> {
+            long[] actual = new long[3]; // {pedido, total, suma de subtotales}
+            pedidoDAO.recorrerConItems(conn, null, null, rango.idDesde, rango.idHasta,
+                    (pedidoId, fecha, total, itemId, productoId, cantidad, subtotal) -> {
+                        if (pedidoId != actual[0]) {
+                            compararTotal(parcial, actual);
+                            actual[0] = pedidoId;
+                            actual[1] = total;
+                            actual[2] = 0;
+                            parcial.pedidosRevisados++;
+                        }
+                        if (itemId != 0) {
+                            actual[2] = Dinero.sumar(actual[2], subtotal);
+                        }
+                    });
+            compararTotal(parcial, actual);
+            return null;
+        });
+        return parcial;
+    }
+
+    private static void compararTotal(Informe parcial, long[] actual) {
+        if (actual[0] != 0 && actual[1] != actual[2]) {
+            parcial.agregar(new Hallazgo(Tipo.TOTAL_DISTINTO, (int) actual[0],
+                    "total " + Dinero.formatear(actual[1]) + ", suma de subtotales " + Dinero.formatear(actual[2])), 1);
+        }
+    }
+
+    /**
+     * Busca los items del rango sin pedido y, después de devolver la conexión
+     * del shard, los que apuntan a productos que no existen. Solo se guardan
+     * los productos distintos del rango, no sus items.
+     */
+    private Informe revisarItems(Rango rango) throws Exception {
+        Informe parcial = new Informe();
+        // Producto -> {items que lo usan, primer item}
+        Map<Integer, int[]> usos = new HashMap<>();
+        TransactionTemplate.leer(rango.base, TipoCarga.LOTE, conn -> {
+            itemDAO.recorrerConPedido(conn, rango.idDesde, rango.idHasta, (itemId, pedidoId, productoId, pedidoExiste) -> {
+                parcial.itemsRevisados++;
+                if (!pedidoExiste) {
+                    parcial.agregar(new Hallazgo(Tipo.ITEM_SIN_PEDIDO, itemId, "pedido " + pedidoId + enShard(rango)), 1);
+                }
+                usos.computeIfAbsent(productoId, id -> new int[]{0, itemId})[0]++;
+            });
+            return null;
+        });
+
+        Set<Integer> existentes = productosExistentes(usos.keySet());
+        List<Map.Entry<Integer, int[]>> faltantes = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> uso : usos.entrySet()) {
+            if (!existentes.contains(uso.getKey())) {
+                faltantes.add(uso);
+            }
+        }
+        faltantes.sort(Comparator.comparingInt(uso -> uso.getValue()[1]));
+        for (Map.Entry<Integer, int[]> faltante : faltantes) {
+            int items = faltante.getValue()[0];
+            parcial.agregar(new Hallazgo(Tipo.ITEM_SIN_PRODUCTO, faltante.getValue()[1],
+                    "producto " + faltante.getKey() + enShard(rango)
+                    + (items > 1 ? " (y " + (items - 1) + " items más del mismo producto)" : "")), items);
+        }
+        return parcial;
+    }
+
+    private Set<Integer> productosExistentes(Set<Integer> ids) throws Exception {
+        Set<Integer> existentes = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existentes;
+        }
+        List<Integer> pendientes = new ArrayList<>(ids);
+        TransactionTemplate.leer(DatabaseConnection.referencia(), TipoCarga.LOTE, conn -> {
+            for (int i = 0; i < pendientes.size(); i += PRODUCTOS_POR_CONSULTA) {
+                Set<Integer> lote = new HashSet<>(pendientes.subList(i, Math.min(pendientes.size(), i + PRODUCTOS_POR_CONSULTA)));
+                existentes.addAll(productoDAO.productosExistentes(conn, lote));
+            }
+            return null;
+        });
+        return existentes;
+    }
+
+    private Informe revisarProductos(Rango rango) throws Exception {
+        Informe parcial = new Informe();
+        TransactionTemplate.leer(rango.base, TipoCarga.LOTE, conn -> {
+            productoDAO.recorrerConStockMenorA(conn, 0, rango.idDesde, rango.idHasta, producto
+                    -> parcial.agregar(new Hallazgo(Tipo.STOCK_NEGATIVO, producto.getId(),
+                            "stock " + producto.getCantidad()), 1));
+            return null;
+        });
+        return parcial;
+    }
+
+    private static String enShard(Rango rango) {
+        return DatabaseConnection.conShards() ? " en el shard " + rango.shard : "";
+    }
+}